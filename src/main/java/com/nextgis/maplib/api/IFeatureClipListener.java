@@ -0,0 +1,34 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplib.api;
+
+import com.nextgis.maplib.datasource.GeoGeometry;
+
+/**
+ * Receives layer features clipped to an area one at a time
+ */
+public interface IFeatureClipListener {
+    /**
+     * @param featureId Feature identificator
+     * @param geometry Part of the feature geometry inside the area
+     */
+    void onFeatureClipped(long featureId, GeoGeometry geometry);
+}
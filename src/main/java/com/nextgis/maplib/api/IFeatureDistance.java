@@ -0,0 +1,35 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplib.api;
+
+/**
+ * Exact distance to a feature geometry, used to refine nearest item search in a geometry cache
+ */
+public interface IFeatureDistance {
+    /**
+     * @param featureId Feature identificator
+     * @param x Point X coordinate
+     * @param y Point Y coordinate
+     * @return Distance from the point to the feature geometry, it can not be less than the
+     * distance to the feature envelope. Double.MAX_VALUE skips the feature.
+     */
+    double getDistance(long featureId, double x, double y);
+}
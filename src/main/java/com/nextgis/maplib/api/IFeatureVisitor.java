@@ -0,0 +1,35 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplib.api;
+
+import com.nextgis.maplib.datasource.Feature;
+
+/**
+ * Receives the features of a layer scan one at a time
+ */
+public interface IFeatureVisitor {
+    /**
+     * @param feature Feature of the current row. The instance and its list of field values are
+     *                reused for the next rows, keep the geometry and a copy of the values instead
+     * @return false to stop the scan
+     */
+    boolean visit(Feature feature);
+}
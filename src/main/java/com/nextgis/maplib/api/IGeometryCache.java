@@ -24,8 +24,11 @@ package com.nextgis.maplib.api;
 import com.nextgis.maplib.datasource.GeoEnvelope;
 import com.nextgis.maplib.datasource.GeoGeometry;
 import com.nextgis.maplib.datasource.GeometryRTree;
+import com.nextgis.maplib.util.LongList;
+
 import java.io.File;
 import java.util.List;
+import java.util.function.LongConsumer;
 
 /**
  * A geometry cache for fast drawing and searching
@@ -46,6 +49,14 @@ public interface IGeometryCache {
      */
     IGeometryCacheItem addItem(long id, GeoEnvelope envelope);
 
+    /**
+     * Replace cache content with provided items. Faster than adding items one by one
+     * @param ids Feature identificators
+     * @param envelopes Envelopes as minX, minY, maxX, maxY for each identificator
+     * @param count Number of items
+     */
+    void bulkLoad(long[] ids, double[] envelopes, int count);
+
     /**
      * Return cache item by feature identificator
      * @param featureId Feature identificator
@@ -78,18 +89,60 @@ public interface IGeometryCache {
      */
     List<IGeometryCacheItem> search(GeoEnvelope extent);
 
+    /**
+     * Visit identificators of items intersected provided bounds, no list is built
+     * @param visitor Called for each found feature identificator
+     */
+    void search(double minX, double minY, double maxX, double maxY, LongConsumer visitor);
+
+    /**
+     * Search identificators of items intersected provided bounds
+     * @param result Reusable buffer, cleared before search
+     * @return Count of found items
+     */
+    int search(double minX, double minY, double maxX, double maxY, LongList result);
+
+    /**
+     * Find items nearest to the point, closest first
+     * @param x Point X coordinate
+     * @param y Point Y coordinate
+     * @param k Maximum count of items
+     * @param maxDistance Items farther than this are skipped
+     * @param distance Exact distance to a feature geometry or null to use envelope distance
+     * @param result Reusable buffer for found feature identificators, cleared before search
+     * @return Count of found items
+     */
+    int nearest(double x, double y, int k, double maxDistance, IFeatureDistance distance,
+                LongList result);
+
     /**
      * Get all items
      * @return List of all items
      */
     List<IGeometryCacheItem> getAll();
 
+    /**
+     * Change feature identificator of cache item
+     * @param oldFeatureId Current feature identificator
+     * @param newFeatureId New feature identificator
+     * @return true if item with old identificator was found
+     */
     boolean changeId(long oldFeatureId, long newFeatureId);
 
     void changeIdForAll(long from, long to, GeometryRTree.Node n);
 
+    /**
+     * Save changes. Implementations may append them to a journal instead of rewriting the file
+     * @param path Cache file
+     */
     void save(File path);
 
+    /**
+     * Save a full snapshot of the cache, so nothing is left to replay on the next load
+     * @param path Cache file
+     */
+    void compact(File path);
+
     void load(File path);
 
     GeometryRTree.Node getRoot();
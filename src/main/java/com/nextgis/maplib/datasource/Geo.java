@@ -65,6 +65,19 @@ public class Geo
     }
 
 
+    /**
+     * Project the points [from, to) of the packed x0, y0, x1, y1, ... array in place with
+     * {@link #mercatorToWgs84SphereX(double)} and {@link #mercatorToWgs84SphereY(double)}
+     */
+    public static void mercatorToWgs84Sphere(double[] xy, int from, int to)
+    {
+        for (int i = from * 2; i < to * 2; i += 2) {
+            xy[i] = mercatorToWgs84SphereX(xy[i]);
+            xy[i + 1] = mercatorToWgs84SphereY(xy[i + 1]);
+        }
+    }
+
+
     public static GeoPoint mercatorToWgs84EllipseRet(final GeoPoint point)
     {
         GeoPoint retPt = new GeoPoint();
@@ -126,6 +139,40 @@ public class Geo
     }
 
 
+    /**
+     * Project the points [from, to) of the packed x0, y0, x1, y1, ... array in place with
+     * {@link #wgs84ToMercatorSphereX(double)} and {@link #wgs84ToMercatorSphereY(double)}
+     */
+    public static void wgs84ToMercatorSphere(double[] xy, int from, int to)
+    {
+        for (int i = from * 2; i < to * 2; i += 2) {
+            xy[i] = wgs84ToMercatorSphereX(xy[i]);
+            xy[i + 1] = wgs84ToMercatorSphereY(xy[i + 1]);
+        }
+    }
+
+
+    /**
+     * Project the points [from, to) of the packed x0, y0, x1, y1, ... array in place
+     * @return false if the projection is not supported, the array is not changed then
+     */
+    public static boolean projectInPlace(double[] xy, int from, int to, int fromCrs, int toCrs)
+    {
+        if (fromCrs == toCrs) {
+            return true;
+        }
+        if (fromCrs == GeoConstants.CRS_WGS84 && toCrs == GeoConstants.CRS_WEB_MERCATOR) {
+            wgs84ToMercatorSphere(xy, from, to);
+            return true;
+        }
+        if (fromCrs == GeoConstants.CRS_WEB_MERCATOR && toCrs == GeoConstants.CRS_WGS84) {
+            mercatorToWgs84Sphere(xy, from, to);
+            return true;
+        }
+        return false;
+    }
+
+
     public static boolean isGeometryTypeSame(
             final int type1,
             final int type2)
@@ -36,10 +36,11 @@ import static com.nextgis.maplib.util.Constants.JSON_BBOX_MINY_KEY;
 public class GeoEnvelope
         implements IJSONStore
 {
-    protected Double mMinX;
-    protected Double mMaxX;
-    protected Double mMinY;
-    protected Double mMaxY;
+    // NaN while the envelope is not initialized
+    protected double mMinX;
+    protected double mMaxX;
+    protected double mMinY;
+    protected double mMaxY;
 
     public final static int enumGISPtPosLeft = 1;
     public final static int enumGISPtPosRight = 2;
@@ -54,10 +55,10 @@ public class GeoEnvelope
 
     public void unInit()
     {
-        mMinX = null;
-        mMaxX = null;
-        mMinY = null;
-        mMaxY = null;
+        mMinX = Double.NaN;
+        mMaxX = Double.NaN;
+        mMinY = Double.NaN;
+        mMaxY = Double.NaN;
     }
 
 
@@ -171,7 +172,8 @@ public class GeoEnvelope
 
     public final boolean isInit()
     {
-        return mMinX != null && mMinY != null && mMaxX != null && mMaxY != null;
+        return !Double.isNaN(mMinX) && !Double.isNaN(mMinY) && !Double.isNaN(mMaxX) &&
+               !Double.isNaN(mMaxY);
     }
 
 
@@ -191,6 +193,45 @@ public class GeoEnvelope
     }
 
 
+    /**
+     * Merge the bounds, the envelope takes them as is if not initialized
+     */
+    public void merge(
+            double minX,
+            double minY,
+            double maxX,
+            double maxY)
+    {
+        if (isInit()) {
+            mMinX = Math.min(mMinX, minX);
+            mMaxX = Math.max(mMaxX, maxX);
+            mMinY = Math.min(mMinY, minY);
+            mMaxY = Math.max(mMaxY, maxY);
+        } else {
+            mMinX = minX;
+            mMaxX = maxX;
+            mMinY = minY;
+            mMaxY = maxY;
+        }
+    }
+
+
+    /**
+     * Set all bounds at once
+     */
+    public void set(
+            double minX,
+            double minY,
+            double maxX,
+            double maxY)
+    {
+        mMinX = minX;
+        mMaxX = maxX;
+        mMinY = minY;
+        mMaxY = maxY;
+    }
+
+
     public void intersect(final GeoEnvelope other)
     {
         if (intersects(other)) {
@@ -276,6 +317,9 @@ public class GeoEnvelope
             throws JSONException
     {
         JSONObject oJSONBBox = new JSONObject();
+        if (!isInit()) {
+            return oJSONBBox;
+        }
         oJSONBBox.put(JSON_BBOX_MINX_KEY, getMinX());
         oJSONBBox.put(JSON_BBOX_MINY_KEY, getMinY());
         oJSONBBox.put(JSON_BBOX_MAXX_KEY, getMaxX());
@@ -284,7 +328,7 @@ public class GeoEnvelope
     }
 
 
-    public final Double getMinX()
+    public final double getMinX()
     {
         return mMinX;
     }
@@ -296,7 +340,7 @@ public class GeoEnvelope
     }
 
 
-    public final Double getMinY()
+    public final double getMinY()
     {
         return mMinY;
     }
@@ -308,7 +352,7 @@ public class GeoEnvelope
     }
 
 
-    public final Double getMaxX()
+    public final double getMaxX()
     {
         return mMaxX;
     }
@@ -320,7 +364,7 @@ public class GeoEnvelope
     }
 
 
-    public final Double getMaxY()
+    public final double getMaxY()
     {
         return mMaxY;
     }
@@ -360,16 +404,20 @@ public class GeoEnvelope
      * @return true if point inside envelope or false
      */
     public boolean isInside(final GeoPoint pt, int nPos) {
+        return isInside(pt.getX(), pt.getY(), nPos);
+    }
+
+    public boolean isInside(double x, double y, int nPos) {
         switch(nPos)
         {
             case enumGISPtPosLeft://XMin
-                return (pt.getX() > mMinX);
+                return (x > mMinX);
             case enumGISPtPosRight://XMax
-                return (pt.getX() < mMaxX);
+                return (x < mMaxX);
             case enumGISPtPosBottom://YMin
-                return (pt.getY() < mMaxY);
+                return (y < mMaxY);
             case enumGISPtPosTop://YMax
-                return (pt.getY() > mMinY);
+                return (y > mMinY);
         }
         return false;
     }
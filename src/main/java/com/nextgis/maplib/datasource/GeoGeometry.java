@@ -79,7 +79,18 @@ public abstract class GeoGeometry
     }
 
 
-    public abstract GeoEnvelope getEnvelope();
+    public GeoEnvelope getEnvelope()
+    {
+        return getEnvelope(new GeoEnvelope());
+    }
+
+
+    /**
+     * Set the envelope to the geometry bounds, nothing is allocated
+     * @param envelope The envelope to fill, it is uninitialized for an empty geometry
+     * @return The same envelope
+     */
+    public abstract GeoEnvelope getEnvelope(GeoEnvelope envelope);
 
 
     public void setCRS(int crs)
@@ -155,8 +166,31 @@ public abstract class GeoGeometry
     }
 
 
+    /**
+     * @return The compact blob on the Web Mercator grid, see {@link GeometryBlobCodec}
+     */
     public byte[] toBlob()
             throws IOException
+    {
+        return toBlob(GeometryBlobCodec.ENCODING_GRID);
+    }
+
+
+    /**
+     * @param encoding One of GeometryBlobCodec.ENCODING_*
+     */
+    public byte[] toBlob(int encoding)
+            throws IOException
+    {
+        return new GeometryBlobCodec().encode(this, encoding);
+    }
+
+
+    /**
+     * @return The version 1 blob, the {@link #write} output
+     */
+    public byte[] toBlobV1()
+            throws IOException
     {
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         DataOutputStream dataOutputStream = new DataOutputStream(out);
@@ -168,6 +202,27 @@ public abstract class GeoGeometry
     public abstract String toWKT(boolean full);
 
 
+    /**
+     * @return Little endian 2D WKB
+     */
+    public byte[] toWKB()
+            throws IOException
+    {
+        return new GeometryWKBCodec().writeWKB(this);
+    }
+
+
+    /**
+     * @param precision Count of decimal digits kept, -7 to 7
+     * @return 2D TWKB
+     */
+    public byte[] toTWKB(int precision)
+            throws IOException
+    {
+        return new GeometryWKBCodec().writeTWKB(this, precision);
+    }
+
+
     public boolean equals(Object o)
     {
         if (super.equals(o)) {
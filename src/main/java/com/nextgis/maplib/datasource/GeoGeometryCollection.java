@@ -128,11 +128,20 @@ public class GeoGeometryCollection
 
 
     @Override
-    public GeoEnvelope getEnvelope() {
-        GeoEnvelope envelope = new GeoEnvelope();
+    public GeoEnvelope getEnvelope(GeoEnvelope envelope) {
+        envelope.unInit();
+        if (mGeometries.isEmpty()) {
+            return envelope;
+        }
 
+        // members keep their own envelopes, so only merge them here
+        GeoEnvelope member = new GeoEnvelope();
         for (GeoGeometry geometry : mGeometries) {
-            envelope.merge(geometry.getEnvelope());
+            geometry.getEnvelope(member);
+            if (member.isInit()) {
+                envelope.merge(member.getMinX(), member.getMinY(), member.getMaxX(),
+                               member.getMaxY());
+            }
         }
 
         return envelope;
@@ -342,13 +351,9 @@ public class GeoGeometryCollection
     public double distance(GeoGeometry geometry) {
         if(mGeometries.isEmpty())
             return 0;
-        double distance = 0;
+        double distance = Double.MAX_VALUE;
         for(GeoGeometry collectionGeometry : mGeometries){
-            double currentDist = collectionGeometry.distance(geometry);
-            if(distance == 0)
-                distance = currentDist;
-            else if(distance > currentDist)
-                distance = currentDist;
+            distance = Math.min(distance, collectionGeometry.distance(geometry));
         }
         return distance;
     }
@@ -37,6 +37,7 @@ import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
 
 import static com.nextgis.maplib.util.GeoConstants.GEOJSON_COORDINATES;
 import static com.nextgis.maplib.util.GeoConstants.GEOJSON_GEOMETRIES;
@@ -252,6 +253,9 @@ public class GeoGeometryFactory
         if (null == raw) {
             return null;
         }
+        if (GeometryBlobCodec.isCompact(raw)) {
+            return new GeometryBlobCodec().decode(raw);
+        }
 
         ByteArrayInputStream in = new ByteArrayInputStream(raw);
         DataInputStream dataInputStream = new DataInputStream(in);
@@ -259,6 +263,39 @@ public class GeoGeometryFactory
     }
 
 
+    /**
+     * Read one WKB or PostGIS EWKB geometry from the buffer position, the position is moved past
+     * it, so a buffer of consecutive geometries may be read in a loop. The buffer byte order is
+     * changed.
+     * @param crs The geometry CRS, the EWKB SRID replaces it
+     */
+    public static GeoGeometry fromWKB(ByteBuffer wkb, int crs)
+            throws IOException
+    {
+        return new GeometryWKBCodec().readWKB(wkb, crs);
+    }
+
+
+    /**
+     * @param wkb Hex encoded WKB
+     */
+    public static GeoGeometry fromWKB(String wkb, int crs)
+            throws IOException
+    {
+        return fromWKB(ByteBuffer.wrap(GeometryWKBCodec.fromHex(wkb)), crs);
+    }
+
+
+    /**
+     * Read one TWKB geometry from the buffer position, the position is moved past it
+     */
+    public static GeoGeometry fromTWKB(ByteBuffer twkb, int crs)
+            throws IOException
+    {
+        return new GeometryWKBCodec().readTWKB(twkb, crs);
+    }
+
+
     public static GeoGeometry fromWKT(String wkt, int crs)
     {
         GeoGeometry output = null;
@@ -28,7 +28,6 @@ package com.nextgis.maplib.datasource;
 
 import android.annotation.TargetApi;
 import android.location.Location;
-import android.location.LocationManager;
 import android.os.Build;
 import android.util.JsonReader;
 
@@ -41,80 +40,262 @@ import org.json.JSONException;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.BitSet;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.RandomAccess;
 
 import static com.nextgis.maplib.util.GeoConstants.CRS_WEB_MERCATOR;
 import static com.nextgis.maplib.util.GeoConstants.CRS_WGS84;
+import static com.nextgis.maplib.util.GeoConstants.GTPoint;
 
 
 public class GeoLineString
         extends GeoGeometry
 {
     protected static final long serialVersionUID = -1241179697270831763L;
-    protected List<GeoPoint> mPoints;
+    protected static final int  DEFAULT_CAPACITY = 8;
+
+    // x0, y0, x1, y1, ..., only the first mPointCount * 2 values are used
+    protected double[] mCoordinates;
+    protected int      mPointCount;
+
+    // cached bounds, kept up to date by add() and recomputed lazily after other changes
+    protected transient volatile boolean mEnvelopeValid;
+    protected transient double mEnvelopeMinX, mEnvelopeMinY, mEnvelopeMaxX, mEnvelopeMaxY;
 
     public GeoLineString()
     {
-        mPoints = new LinkedList<>();
+        mCoordinates = new double[DEFAULT_CAPACITY * 2];
+        mEnvelopeValid = true;
     }
 
 
     public GeoLineString(GeoLineString geoLineString)
     {
-        mPoints = new LinkedList<>();
-        for (GeoPoint point : geoLineString.mPoints) {
-            mPoints.add((GeoPoint) point.copy());
+        mCoordinates = Arrays.copyOf(geoLineString.mCoordinates,
+                                     Math.max(geoLineString.mPointCount, 1) * 2);
+        mPointCount = geoLineString.mPointCount;
+        mCRS = geoLineString.mCRS;
+        if (geoLineString.mEnvelopeValid) {
+            mEnvelopeMinX = geoLineString.mEnvelopeMinX;
+            mEnvelopeMinY = geoLineString.mEnvelopeMinY;
+            mEnvelopeMaxX = geoLineString.mEnvelopeMaxX;
+            mEnvelopeMaxY = geoLineString.mEnvelopeMaxY;
+            mEnvelopeValid = true;
+        }
+    }
+
+
+    /**
+     * Read the packed coordinates, or the point list of the serialized geometries written before
+     * them. {@link GeoGeometryFactory#fromBlobOld(byte[])} reads such blobs when an old database
+     * is upgraded.
+     */
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException
+    {
+        ObjectInputStream.GetField fields = in.readFields();
+        if (null != fields.getObjectStreamClass().getField("mPoints")) {
+            List<?> points = (List<?>) fields.get("mPoints", null);
+            int count = null == points ? 0 : points.size();
+            mCoordinates = new double[Math.max(count, DEFAULT_CAPACITY) * 2];
+            mPointCount = 0;
+            if (null != points) {
+                for (Object point : points) {
+                    GeoPoint geoPoint = (GeoPoint) point;
+                    mCoordinates[mPointCount * 2] = geoPoint.getX();
+                    mCoordinates[mPointCount * 2 + 1] = geoPoint.getY();
+                    mPointCount++;
+                }
+            }
+        } else {
+            mCoordinates = (double[]) fields.get("mCoordinates", null);
+            mPointCount = fields.get("mPointCount", 0);
+            if (null == mCoordinates) {
+                mCoordinates = new double[DEFAULT_CAPACITY * 2];
+                mPointCount = 0;
+            }
         }
     }
 
 
     public int getPointCount()
     {
-        if (null == mPoints) {
-            return 0;
+        return mPointCount;
+    }
+
+
+    public double getX(int index)
+    {
+        return mCoordinates[index * 2];
+    }
+
+
+    public double getY(int index)
+    {
+        return mCoordinates[index * 2 + 1];
+    }
+
+
+    /**
+     * @return Coordinates buffer x0, y0, x1, y1, ... Only the first
+     * {@link #getPointCount()} * 2 values are used, changes go to the geometry. Call
+     * {@link #invalidateEnvelope()} after moving points in place.
+     */
+    public double[] getCoordinates()
+    {
+        return mCoordinates;
+    }
+
+
+    /**
+     * Replace points with the coordinates
+     * @param coordinates x0, y0, x1, y1, ...
+     * @param pointCount Count of points to take
+     */
+    public void setCoordinates(double[] coordinates, int pointCount)
+    {
+        ensureCapacity(pointCount);
+        System.arraycopy(coordinates, 0, mCoordinates, 0, pointCount * 2);
+        mPointCount = pointCount;
+        invalidateEnvelope();
+    }
+
+
+    public void setPoint(int index, double x, double y)
+    {
+        checkIndex(index, mPointCount);
+        mCoordinates[index * 2] = x;
+        mCoordinates[index * 2 + 1] = y;
+        invalidateEnvelope();
+    }
+
+
+    public void ensureCapacity(int pointCount)
+    {
+        if (pointCount * 2 > mCoordinates.length) {
+            mCoordinates = Arrays.copyOf(mCoordinates,
+                                         Math.max(pointCount * 2, mCoordinates.length * 2));
         }
-        return mPoints.size();
     }
 
 
+    /**
+     * Points as a list. The list is a view, changing it changes the geometry. Its points are
+     * created on each get() and write {@link GeoPoint#setX(double)}, {@link GeoPoint#setY(double)}
+     * and {@link GeoPoint#setCoordinates(double, double)} back to their vertex, other changes
+     * of a point are not written. A point is bound to its index, do not keep it over adding or
+     * removing vertices.
+     */
     public List<GeoPoint> getPoints()
     {
-        return mPoints;
+        return new PointList();
     }
 
 
     public GeoPoint remove(int index)
     {
-        return mPoints.remove(index);
+        checkIndex(index, mPointCount);
+        GeoPoint point = getPoint(index);
+        System.arraycopy(mCoordinates, index * 2 + 2, mCoordinates, index * 2,
+                         (mPointCount - index - 1) * 2);
+        mPointCount--;
+        invalidateEnvelope();
+        return point;
     }
 
 
     @Override
     protected boolean rawProject(int toCrs)
     {
-        boolean isOk = true;
-        for (GeoPoint point : mPoints) {
-            isOk = isOk && point.rawProject(toCrs);
-        }
-        if (isOk) {
-            super.rawProject(toCrs);
+        // the parts of a multi geometry or polygon do not track their own CRS, so the source
+        // is the other one of the supported pair, as for GeoPoint
+        int fromCrs = toCrs == CRS_WEB_MERCATOR ? CRS_WGS84 : CRS_WEB_MERCATOR;
+        if (!Geo.projectInPlace(mCoordinates, 0, mPointCount, fromCrs, toCrs)) {
+            return false;
         }
-        return isOk;
+        invalidateEnvelope();
+        return super.rawProject(toCrs);
     }
 
 
     @Override
-    public GeoEnvelope getEnvelope()
+    public GeoEnvelope getEnvelope(GeoEnvelope envelope)
     {
-        GeoEnvelope envelope = new GeoEnvelope();
+        updateEnvelope();
+        if (mPointCount == 0) {
+            envelope.unInit();
+        } else {
+            envelope.set(mEnvelopeMinX, mEnvelopeMinY, mEnvelopeMaxX, mEnvelopeMaxY);
+        }
+        return envelope;
+    }
+
+
+    /**
+     * Drop the cached envelope, it is computed again on the next request
+     */
+    public void invalidateEnvelope()
+    {
+        mEnvelopeValid = false;
+    }
+
 
-        for (GeoPoint point : mPoints) {
-            envelope.merge(point.getEnvelope());
+    protected void updateEnvelope()
+    {
+        if (mEnvelopeValid) {
+            return;
         }
 
-        return envelope;
+        double minX = Double.NaN, maxX = Double.NaN;
+        double minY = Double.NaN, maxY = Double.NaN;
+        if (mPointCount > 0) {
+            double[] coordinates = mCoordinates;
+            minX = maxX = coordinates[0];
+            minY = maxY = coordinates[1];
+            for (int i = 2; i < mPointCount * 2; i += 2) {
+                double x = coordinates[i], y = coordinates[i + 1];
+                if (x < minX) {
+                    minX = x;
+                } else if (x > maxX) {
+                    maxX = x;
+                }
+                if (y < minY) {
+                    minY = y;
+                } else if (y > maxY) {
+                    maxY = y;
+                }
+            }
+        }
+
+        mEnvelopeMinX = minX;
+        mEnvelopeMinY = minY;
+        mEnvelopeMaxX = maxX;
+        mEnvelopeMaxY = maxY;
+        mEnvelopeValid = true;
+    }
+
+
+    protected void expandEnvelope(double x, double y)
+    {
+        if (mPointCount == 1) {
+            mEnvelopeMinX = mEnvelopeMaxX = x;
+            mEnvelopeMinY = mEnvelopeMaxY = y;
+            return;
+        }
+        if (x < mEnvelopeMinX) {
+            mEnvelopeMinX = x;
+        } else if (x > mEnvelopeMaxX) {
+            mEnvelopeMaxX = x;
+        }
+        if (y < mEnvelopeMinY) {
+            mEnvelopeMinY = y;
+        } else if (y > mEnvelopeMaxY) {
+            mEnvelopeMaxY = y;
+        }
     }
 
 
@@ -124,8 +305,11 @@ public class GeoLineString
     {
         JSONArray coordinates = new JSONArray();
 
-        for (GeoPoint point : this.mPoints) {
-            coordinates.put(point.coordinatesToJSON());
+        for (int i = 0; i < mPointCount; i++) {
+            JSONArray point = new JSONArray();
+            point.put(getX(i));
+            point.put(getY(i));
+            coordinates.put(point);
         }
 
         return coordinates;
@@ -148,21 +332,21 @@ public class GeoLineString
                     "For type \"LineString\", the \"coordinates\" member must be an array of two or more positions.");
         }
 
+        ensureCapacity(mPointCount + coordinates.length());
         for (int i = 0; i < coordinates.length(); ++i) {
-            GeoPoint point = new GeoPoint();
-            point.setCoordinatesFromJSON(coordinates.getJSONArray(i));
-            add(point);
+            JSONArray point = coordinates.getJSONArray(i);
+            add(point.getDouble(0), point.getDouble(1));
         }
     }
 
     @Override
     public void setCoordinatesFromJSONStream(JsonReader reader, int crs) throws IOException {
         setCRS(crs);
+        GeoPoint pt = new GeoPoint();
         reader.beginArray();
         while (reader.hasNext()){
-            GeoPoint pt = new GeoPoint();
             pt.setCoordinatesFromJSONStream(reader, crs);
-            mPoints.add(pt);
+            add(pt.getX(), pt.getY());
         }
         reader.endArray();
     }
@@ -184,10 +368,10 @@ public class GeoLineString
             wkt = wkt.substring(1, len);
         }
 
+        GeoPoint point = new GeoPoint();
         for (String token : wkt.split(",")) {
-            GeoPoint point = new GeoPoint();
             point.setCoordinatesFromWKT(token.trim(), crs);
-            add(point);
+            add(point.getX(), point.getY());
         }
     }
 
@@ -199,7 +383,36 @@ public class GeoLineString
             throw new IllegalArgumentException("GeoLineString: point == null.");
         }
 
-        mPoints.add(point);
+        add(point.getX(), point.getY());
+    }
+
+
+    public void add(double x, double y)
+    {
+        if (mPointCount * 2 == mCoordinates.length) {
+            ensureCapacity(mPointCount + 1);
+        }
+        mCoordinates[mPointCount * 2] = x;
+        mCoordinates[mPointCount * 2 + 1] = y;
+        mPointCount++;
+        if (mEnvelopeValid) {
+            expandEnvelope(x, y);
+        }
+    }
+
+
+    public void insert(int index, double x, double y)
+    {
+        checkIndex(index, mPointCount + 1);
+        ensureCapacity(mPointCount + 1);
+        System.arraycopy(mCoordinates, index * 2, mCoordinates, index * 2 + 2,
+                         (mPointCount - index) * 2);
+        mCoordinates[index * 2] = x;
+        mCoordinates[index * 2 + 1] = y;
+        mPointCount++;
+        if (mEnvelopeValid) {
+            expandEnvelope(x, y);
+        }
     }
 
 
@@ -210,15 +423,16 @@ public class GeoLineString
         if (full) {
             buf.append("LINESTRING ");
         }
-        if (mPoints.size() == 0) {
+        if (mPointCount == 0) {
             buf.append(" EMPTY");
         } else {
             buf.append("(");
-            for (int i = 0; i < mPoints.size(); i++) {
+            GeoPoint pt = new GeoPoint();
+            for (int i = 0; i < mPointCount; i++) {
                 if (i > 0) {
                     buf.append(", ");
                 }
-                GeoPoint pt = mPoints.get(i);
+                pt.setCoordinates(getX(i), getY(i));
                 buf.append(pt.toWKT(false));
             }
             buf.append(")");
@@ -235,13 +449,11 @@ public class GeoLineString
         }
 
         GeoLineString otherLn = (GeoLineString) o;
-        if (mPoints.size() != otherLn.getPointCount())
+        if (mPointCount != otherLn.mPointCount)
             return false;
 
-        for (int i = 0; i < mPoints.size(); i++) {
-            GeoPoint pt = mPoints.get(i);
-            GeoPoint otherPt = otherLn.getPoint(i);
-            if (!pt.equals(otherPt)) {
+        for (int i = 0; i < mPointCount * 2; i++) {
+            if (mCoordinates[i] != otherLn.mCoordinates[i]) {
                 return false;
             }
         }
@@ -249,10 +461,15 @@ public class GeoLineString
     }
 
 
+    /**
+     * @return Copy of the point or null if the index is out of range
+     */
     public GeoPoint getPoint(int index)
     {
-        if (index < mPoints.size()) {
-            return mPoints.get(index);
+        if (index >= 0 && index < mPointCount) {
+            GeoPoint point = new GeoPoint(getX(index), getY(index));
+            point.setCRS(mCRS);
+            return point;
         }
         return null;
     }
@@ -261,42 +478,39 @@ public class GeoLineString
     @Override
     public boolean intersects(GeoEnvelope envelope)
     {
-        if (super.intersects(envelope)) {
+        if (mPointCount == 0) {
+            return false;
+        }
 
-            if(envelope.contains(getEnvelope()))
-                return true;
+        updateEnvelope();
+        double minX = envelope.getMinX(), minY = envelope.getMinY();
+        double maxX = envelope.getMaxX(), maxY = envelope.getMaxY();
+        if (mEnvelopeMinX <= maxX && mEnvelopeMaxX >= minX &&
+                mEnvelopeMinY <= maxY && mEnvelopeMaxY >= minY) {
 
-            GeoPoint pte1 = new GeoPoint(envelope.getMinX(), envelope.getMaxY());
-            GeoPoint pte2 = new GeoPoint(envelope.getMaxX(), envelope.getMaxY());
-            GeoPoint pte3 = new GeoPoint(envelope.getMaxX(), envelope.getMinY());
-            GeoPoint pte4 = new GeoPoint(envelope.getMinX(), envelope.getMinY());
+            if (minX <= mEnvelopeMinX && minY <= mEnvelopeMinY &&
+                    maxX >= mEnvelopeMaxX && maxY >= mEnvelopeMaxY)
+                return true;
 
-            for (int i = 0; i < mPoints.size() - 1; i++) {
-                GeoPoint pt1 = mPoints.get(i);
-                GeoPoint pt2 = mPoints.get(i + 1);
+            double[] coordinates = mCoordinates;
+            for (int i = 0; i < (mPointCount - 1) * 2; i += 2) {
+                double x1 = coordinates[i], y1 = coordinates[i + 1];
+                double x2 = coordinates[i + 2], y2 = coordinates[i + 3];
 
                 //test top
-                if (linesIntersect(
-                        pt1.getX(), pt1.getY(), pt2.getX(), pt2.getY(), pte1.getX(), pte1.getY(),
-                        pte2.getX(), pte2.getY())) {
+                if (linesIntersect(x1, y1, x2, y2, minX, maxY, maxX, maxY)) {
                     return true;
                 }
                 //test left
-                if (linesIntersect(
-                        pt1.getX(), pt1.getY(), pt2.getX(), pt2.getY(), pte2.getX(), pte2.getY(),
-                        pte3.getX(), pte3.getY())) {
+                if (linesIntersect(x1, y1, x2, y2, maxX, maxY, maxX, minY)) {
                     return true;
                 }
                 //test right
-                if (linesIntersect(
-                        pt1.getX(), pt1.getY(), pt2.getX(), pt2.getY(), pte3.getX(), pte3.getY(),
-                        pte4.getX(), pte4.getY())) {
+                if (linesIntersect(x1, y1, x2, y2, maxX, minY, minX, minY)) {
                     return true;
                 }
                 //test bottom
-                if (linesIntersect(
-                        pt1.getX(), pt1.getY(), pt2.getX(), pt2.getY(), pte4.getX(), pte4.getY(),
-                        pte1.getX(), pte1.getY())) {
+                if (linesIntersect(x1, y1, x2, y2, minX, minY, minX, maxY)) {
                     return true;
                 }
             }
@@ -333,21 +547,31 @@ public class GeoLineString
      * @return      Do lines intersect
      */
     public boolean intersects(GeoPoint a, GeoPoint b, GeoPoint c, GeoPoint d, double A1, double B1, double C1) {
-        double A2 = d.getY() - c.getY();
-        double B2 = c.getX() - d.getX();
-        double C2 = A2 * c.getX() + B2 * c.getY();
+        return intersects(a.getX(), a.getY(), b.getX(), b.getY(), c.getX(), c.getY(), d.getX(),
+                          d.getY(), A1, B1, C1);
+    }
+
+    /**
+     * Detects line ab and cd intersection, see the method above
+     */
+    protected static boolean intersects(double ax, double ay, double bx, double by, double cx,
+                                        double cy, double dx, double dy, double A1, double B1,
+                                        double C1) {
+        double A2 = dy - cy;
+        double B2 = cx - dx;
+        double C2 = A2 * cx + B2 * cy;
 
         double det = A1 * B2 - A2 * B1;
         if (det != 0) {
             double x = (B2 * C1 - B1 * C2) / det;
             double y = (A1 * C2 - A2 * C1) / det;
 
-            boolean xOnAB = Math.min(a.getX(), b.getX()) <= x && x <= Math.max(a.getX(), b.getX());
-            boolean yOnAB = Math.min(a.getY(), b.getY()) <= y && y <= Math.max(a.getY(), b.getY());
+            boolean xOnAB = Math.min(ax, bx) <= x && x <= Math.max(ax, bx);
+            boolean yOnAB = Math.min(ay, by) <= y && y <= Math.max(ay, by);
 
             if (xOnAB && yOnAB) {
-                boolean xOnCD = Math.min(c.getX(), d.getX()) <= x && x <= Math.max(c.getX(), d.getX());
-                boolean yOnCD = Math.min(c.getY(), d.getY()) <= y && y <= Math.max(c.getY(), d.getY());
+                boolean xOnCD = Math.min(cx, dx) <= x && x <= Math.max(cx, dx);
+                boolean yOnCD = Math.min(cy, dy) <= y && y <= Math.max(cy, dy);
 
                 if (xOnCD && yOnCD)
                     return true;
@@ -436,7 +660,8 @@ public class GeoLineString
     @Override
     public void clear()
     {
-        mPoints.clear();
+        mPointCount = 0;
+        mEnvelopeValid = true; // the next add() starts the bounds again
     }
 
 
@@ -452,8 +677,8 @@ public class GeoLineString
         else if(sqTolerance > area){
             GeoLineString result = new GeoLineString();
             result.setCRS(getCRS());
-            result.add(new GeoPoint(env.getMinX(), env.getMinY()));
-            result.add(new GeoPoint(env.getMaxX(), env.getMaxY()));
+            result.add(env.getMinX(), env.getMinY());
+            result.add(env.getMaxX(), env.getMaxY());
             return result;
         }
 
@@ -462,88 +687,92 @@ public class GeoLineString
 
     @Override
     public GeoGeometry clip(GeoEnvelope envelope) {
-        if(mPoints.isEmpty())
+        if(mPointCount == 0)
             return null;
         GeoLineString result = new GeoLineString();
-        clip(mPoints, result.mPoints, envelope, true);
+        result.setCRS(mCRS);
+        clip(this, result, envelope, true);
 
         if(result.getPointCount() < 2)
             return null;
         return result;
     }
 
-    protected void trimPoints(List<GeoPoint> pointsIn, List<GeoPoint> pointsOut, int pos, GeoEnvelope envelope, boolean shapeOpen ) {
+    protected void trimPoints(GeoLineString pointsIn, GeoLineString pointsOut, int pos, GeoEnvelope envelope, boolean shapeOpen ) {
         // The shapeOpen parameter selects whether this function treats the
         // shape as open or closed. False is appropriate for polygons and
         // true for polylines.
 
-        int i1 = pointsIn.size() - 1; // start with last point
+        double[] in = pointsIn.mCoordinates;
+        int count = pointsIn.mPointCount;
+        if (count == 0) {
+            return;
+        }
+        pointsOut.ensureCapacity(pointsOut.mPointCount + count + count / 2 + 1);
+
+        int i1 = count - 1; // start with last point
+        boolean isInside1 = envelope.isInside(in[i1 * 2], in[i1 * 2 + 1], pos);
 
         // and compare to the first point initially.
-        for ( int i2 = 0; i2 < pointsIn.size(); ++i2 ) { // look at each edge of the polygon in turn
-            if ( envelope.isInside(pointsIn.get(i2), pos) ) { // end point of edge is inside boundary
-                if(envelope.isInside(pointsIn.get(i1), pos)) {
-                    pointsOut.add(pointsIn.get(i2));
+        for ( int i2 = 0; i2 < count; ++i2 ) { // look at each edge of the polygon in turn
+            double x2 = in[i2 * 2], y2 = in[i2 * 2 + 1];
+            boolean isInside2 = envelope.isInside(x2, y2, pos);
+            if ( isInside2 ) { // end point of edge is inside boundary
+                if(isInside1) {
+                    pointsOut.add(x2, y2);
                 }
                 else {
                     // edge crosses into the boundary, so trim back to the boundary, and
                     // store both ends of the new edge
                     if ( !( i2 == 0 && shapeOpen ) ) {
-                        GeoPoint pointNew = solveIntersection(pointsIn.get(i1), pointsIn.get(i2), pos, envelope);
-                        if (null != pointNew)
-                            pointsOut.add(pointNew);
+                        solveIntersection(in[i1 * 2], in[i1 * 2 + 1], x2, y2, pos, envelope, pointsOut);
                     }
-                    pointsOut.add(pointsIn.get(i2));
+                    pointsOut.add(x2, y2);
                 }
             }
             else { // end point of edge is outside boundary
                 // start point is in boundary, so need to trim back
-                if ( envelope.isInside(pointsIn.get(i1), pos)) {
+                if ( isInside1 ) {
                     if ( !( i2 == 0 && shapeOpen ) ) {
-                        GeoPoint pointNew = solveIntersection(pointsIn.get(i1), pointsIn.get(i2), pos, envelope);
-                        if (null != pointNew)
-                            pointsOut.add(pointNew);
+                        solveIntersection(in[i1 * 2], in[i1 * 2 + 1], x2, y2, pos, envelope, pointsOut);
                     }
                 }
             }
             i1 = i2;
+            isInside1 = isInside2;
         }
     }
 
-    protected GeoPoint solveIntersection(GeoPoint pt1, GeoPoint pt2, int pos, GeoEnvelope envelope) {
+    /**
+     * Add the intersection of the edge and the envelope side to the output if they cross
+     */
+    protected void solveIntersection(double x1, double y1, double x2, double y2, int pos, GeoEnvelope envelope, GeoLineString pointsOut) {
         double EPSILON = 0.0000000000000001;
         double r_n = EPSILON, r_d = EPSILON;
 
         switch ( pos )
         {
             case GeoEnvelope.enumGISPtPosRight: // x = MAX_X boundary
-                r_n = -( pt1.getX() - envelope.getMaxX() ) * ( envelope.getMaxY() - envelope.getMinY() );
-                r_d = ( pt2.getX() - pt1.getX() ) * ( envelope.getMaxY() - envelope.getMinY() );
+                r_n = -( x1 - envelope.getMaxX() ) * ( envelope.getMaxY() - envelope.getMinY() );
+                r_d = ( x2 - x1 ) * ( envelope.getMaxY() - envelope.getMinY() );
                 break;
             case GeoEnvelope.enumGISPtPosLeft: // x = MIN_X boundary
-                r_n = -( pt1.getX() - envelope.getMinX() ) * ( envelope.getMaxY() - envelope.getMinY() );
-                r_d = ( pt2.getX() - pt1.getX() ) * ( envelope.getMaxY() - envelope.getMinY() );
+                r_n = -( x1 - envelope.getMinX() ) * ( envelope.getMaxY() - envelope.getMinY() );
+                r_d = ( x2 - x1 ) * ( envelope.getMaxY() - envelope.getMinY() );
                 break;
             case GeoEnvelope.enumGISPtPosTop: // y = MAX_Y boundary
-                r_n = ( pt1.getY() - envelope.getMaxY() ) * ( envelope.getMaxX() - envelope.getMinX() );
-                r_d = -( pt2.getY() - pt1.getY() ) * ( envelope.getMaxX() - envelope.getMinX() );
+                r_n = ( y1 - envelope.getMaxY() ) * ( envelope.getMaxX() - envelope.getMinX() );
+                r_d = -( y2 - y1 ) * ( envelope.getMaxX() - envelope.getMinX() );
                 break;
             case GeoEnvelope.enumGISPtPosBottom: // y = MIN_Y boundary
-                r_n = ( pt1.getY() - envelope.getMinY() ) * ( envelope.getMaxX() - envelope.getMinX() );
-                r_d = -( pt2.getY() - pt1.getY() ) * ( envelope.getMaxX() - envelope.getMinX() );
+                r_n = ( y1 - envelope.getMinY() ) * ( envelope.getMaxX() - envelope.getMinX() );
+                r_d = -( y2 - y1 ) * ( envelope.getMaxX() - envelope.getMinX() );
                 break;
         }
 
         if ( Math.abs(r_d) > EPSILON && Math.abs(r_n) > EPSILON ) { // they cross
-            GeoPoint out = new GeoPoint();
             double r = r_n / r_d;
-            out.setX( pt1.getX() + r * ( pt2.getX() - pt1.getX() ) );
-            out.setY( pt1.getY() + r * ( pt2.getY() - pt1.getY() ) );
-
-            return out;
-        }
-        else {
-            return null;
+            pointsOut.add(x1 + r * ( x2 - x1 ), y1 + r * ( y2 - y1 ));
         }
     }
 
@@ -551,9 +780,9 @@ public class GeoLineString
      * Sutherland-Hodgman Polygon Clipping
      * Adopted from (C) 2005 by Gavin Macaulay QGIS Project
      */
-    protected void clip(List<GeoPoint> pointsIn, List<GeoPoint> pointsOut, GeoEnvelope envelope, boolean shapeOpen ){
-        List<GeoPoint> tmpPointsOut = new LinkedList<>();
-        List<GeoPoint> tmpPointsOutAdd = new LinkedList<>();
+    protected void clip(GeoLineString pointsIn, GeoLineString pointsOut, GeoEnvelope envelope, boolean shapeOpen ){
+        GeoLineString tmpPointsOut = new GeoLineString();
+        GeoLineString tmpPointsOutAdd = new GeoLineString();
         trimPoints(pointsIn, tmpPointsOut, GeoEnvelope.enumGISPtPosRight, envelope, shapeOpen);
         trimPoints(tmpPointsOut, tmpPointsOutAdd, GeoEnvelope.enumGISPtPosTop, envelope, shapeOpen);
         tmpPointsOut.clear();
@@ -566,27 +795,29 @@ public class GeoLineString
     }
 
     protected GeoLineString simplifyRadialDistance(double sqTolerance){
-        if(mPoints.isEmpty())
+        if(mPointCount == 0)
             return null;
 
-        GeoPoint point = null;
-        GeoPoint prevPoint = mPoints.get(0);
+        double[] coordinates = mCoordinates;
+        int prev = 0;
 
         GeoLineString result = getInstance();
         result.setCRS(mCRS);
-        result.add(prevPoint);
+        result.add(coordinates[0], coordinates[1]);
 
-        for (int i = 1; i < mPoints.size(); ++i) {
-            point = mPoints.get(i);
+        for (int i = 1; i < mPointCount; ++i) {
+            double dx = coordinates[i * 2] - coordinates[prev * 2];
+            double dy = coordinates[i * 2 + 1] - coordinates[prev * 2 + 1];
 
-            if (getSquareDistance(point, prevPoint) > sqTolerance) {
-                result.add(point);
-                prevPoint = point;
+            if (dx * dx + dy * dy > sqTolerance) {
+                result.add(coordinates[i * 2], coordinates[i * 2 + 1]);
+                prev = i;
             }
         }
 
-        if (prevPoint != point) {
-            result.add(point);
+        int last = mPointCount - 1;
+        if (prev != last) {
+            result.add(coordinates[last * 2], coordinates[last * 2 + 1]);
         }
 
         return result;
@@ -601,22 +832,30 @@ public class GeoLineString
 
 
     protected GeoLineString simplifyDouglasPeucker(double sqTolerance){
-        BitSet bitSet = new BitSet(mPoints.size());
+        BitSet bitSet = new BitSet(mPointCount);
         bitSet.set(0);
-        bitSet.set(mPoints.size() - 1);
+        bitSet.set(mPointCount - 1);
 
-        List<Range> stack = new LinkedList<>();
-        stack.add(new Range(0, mPoints.size() - 1));
+        // ranges of first and last point indexes
+        int[] stack = new int[64];
+        int stackSize = 0;
+        stack[stackSize++] = 0;
+        stack[stackSize++] = mPointCount - 1;
 
-        while (!stack.isEmpty()) {
-            Range range = stack.remove(stack.size() - 1);
+        double[] coordinates = mCoordinates;
+        while (stackSize > 0) {
+            int last = stack[--stackSize];
+            int first = stack[--stackSize];
 
             int index = -1;
             double maxSqDist = 0f;
 
             // find index of point with maximum square distance from first and last point
-            for (int i = range.first + 1; i < range.last; ++i) {
-                double sqDist = getSquareSegmentDistance(mPoints.get(i), mPoints.get(range.first), mPoints.get(range.last));
+            for (int i = first + 1; i < last; ++i) {
+                double sqDist = getSquareSegmentDistance(
+                        coordinates[i * 2], coordinates[i * 2 + 1], coordinates[first * 2],
+                        coordinates[first * 2 + 1], coordinates[last * 2],
+                        coordinates[last * 2 + 1]);
 
                 if (sqDist > maxSqDist) {
                     index = i;
@@ -627,30 +866,38 @@ public class GeoLineString
             if (maxSqDist > sqTolerance) {
                 bitSet.set(index);
 
-                stack.add(new Range(range.first, index));
-                stack.add(new Range(index, range.last));
+                if (stackSize + 4 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[stackSize++] = first;
+                stack[stackSize++] = index;
+                stack[stackSize++] = index;
+                stack[stackSize++] = last;
             }
         }
 
 
         GeoLineString result = getInstance();
         result.setCRS(mCRS);
+        result.ensureCapacity(bitSet.cardinality());
         for (int index = bitSet.nextSetBit(0); index >= 0; index = bitSet.nextSetBit(index + 1)) {
-            result.add(mPoints.get(index));
+            result.add(coordinates[index * 2], coordinates[index * 2 + 1]);
         }
 
         return result;
     }
 
     protected double getSquareSegmentDistance(GeoPoint p0, GeoPoint p1, GeoPoint p2){
-        double x0, y0, x1, y1, x2, y2, dx, dy, t;
+        return getSquareSegmentDistance(p0.getX(), p0.getY(), p1.getX(), p1.getY(), p2.getX(),
+                                        p2.getY());
+    }
 
-        x1 = p1.getX();
-        y1 = p1.getY();
-        x2 = p2.getX();
-        y2 = p2.getY();
-        x0 = p0.getX();
-        y0 = p0.getY();
+    /**
+     * Squared distance from the point 0 to the segment 1-2
+     */
+    protected static double getSquareSegmentDistance(double x0, double y0, double x1, double y1,
+                                                     double x2, double y2){
+        double dx, dy, t;
 
         dx = x2 - x1;
         dy = y2 - y1;
@@ -674,24 +921,16 @@ public class GeoLineString
         return dx * dx + dy * dy;
     }
 
-    protected static class Range {
-        private Range(int first, int last) {
-            this.first = first;
-            this.last = last;
-        }
-
-        int first;
-        int last;
-    }
-
     @Override
     public void write(DataOutputStream stream) throws IOException {
         super.write(stream);
-        int pointCount = mPoints.size();
-        stream.writeInt(pointCount);
-        for (int i = 0; i < pointCount; i++){
-            GeoPoint pt = mPoints.get(i);
-            pt.write(stream);
+        stream.writeInt(mPointCount);
+        // same layout as the points written one by one
+        for (int i = 0; i < mPointCount * 2; i += 2){
+            stream.writeInt(GTPoint);
+            stream.writeInt(mCRS);
+            stream.writeDouble(mCoordinates[i]);
+            stream.writeDouble(mCoordinates[i + 1]);
         }
     }
 
@@ -699,52 +938,207 @@ public class GeoLineString
     public void read(DataInputStream stream) throws IOException {
         super.read(stream);
         int pointCount = stream.readInt();
+        ensureCapacity(mPointCount + pointCount);
         for (int i = 0; i < pointCount; i++){
-            GeoGeometry geometry = GeoGeometryFactory.fromDataStream(stream);
-            if(null != geometry && geometry instanceof GeoPoint)
-                mPoints.add((GeoPoint) geometry);
+            int type = stream.readInt();
+            if (type != GTPoint) {
+                throw new IOException("Unexpected geometry type " + type + " in a line");
+            }
+            stream.readInt(); // point CRS, the same as the line one
+            double x = stream.readDouble();
+            double y = stream.readDouble();
+            add(x, y);
         }
     }
 
     @Override
     public boolean isValid() {
-        for (GeoPoint point : mPoints)
+        GeoPoint point = new GeoPoint();
+        point.setCRS(mCRS);
+        for (int i = 0; i < mPointCount; i++) {
+            point.setCoordinates(getX(i), getY(i));
             if (!point.isValid())
                 return false;
+        }
 
-        return mPoints.size() > 1;
+        return mPointCount > 1;
     }
 
     @Override
     public double distance(GeoGeometry geometry) {
-        // TODO: 04.09.15 release this
+        if (geometry instanceof GeoPoint) {
+            GeoPoint point = (GeoPoint) geometry;
+            return Math.sqrt(getSquaredDistance(point.getX(), point.getY(), false));
+        }
+        // TODO: 04.09.15 release this for other geometries
         return 0;
     }
 
+    /**
+     * Squared distance from the point to the nearest segment
+     * @param closed Add the segment from the last point to the first one
+     */
+    protected double getSquaredDistance(double x, double y, boolean closed) {
+        if (mPointCount == 0) {
+            return Double.MAX_VALUE;
+        }
+
+        double[] coordinates = mCoordinates;
+        int start = closed ? mPointCount - 1 : 0;
+        double ax = coordinates[start * 2];
+        double ay = coordinates[start * 2 + 1];
+        double min = (x - ax) * (x - ax) + (y - ay) * (y - ay);
+        for (int i = 0; i < mPointCount * 2; i += 2) {
+            double bx = coordinates[i];
+            double by = coordinates[i + 1];
+            double dx = bx - ax;
+            double dy = by - ay;
+            double length = dx * dx + dy * dy;
+            double t = length == 0 ? 0 : ((x - ax) * dx + (y - ay) * dy) / length;
+            t = Math.max(0, Math.min(1, t));
+            double px = ax + t * dx - x;
+            double py = ay + t * dy - y;
+            min = Math.min(min, px * px + py * py);
+            ax = bx;
+            ay = by;
+        }
+        return min;
+    }
+
+    /**
+     * @return Length in meters on the WGS84 ellipsoid, coordinates are taken as Web Mercator
+     */
     public double getLength() {
         double length = 0;
 
-        if (mPoints.size() < 2)
+        if (mPointCount < 2)
             return length;
 
-        Location location1 = new Location(LocationManager.GPS_PROVIDER);
-        GeoPoint point = (GeoPoint) mPoints.get(0).copy();
-        point.setCRS(CRS_WEB_MERCATOR);
-        point.project(CRS_WGS84);
-        location1.setLongitude(point.getX());
-        location1.setLatitude(point.getY());
-
-        for (int i = 1; i < mPoints.size(); i++) {
-            Location location2 = new Location(LocationManager.GPS_PROVIDER);
-            point = (GeoPoint) mPoints.get(i).copy();
-            point.setCRS(CRS_WEB_MERCATOR);
-            point.project(CRS_WGS84);
-            location2.setLongitude(point.getX());
-            location2.setLatitude(point.getY());
-            length += location1.distanceTo(location2);
-            location1 = location2;
+        float[] distance = new float[1];
+        double longitude1 = Geo.mercatorToWgs84SphereX(getX(0));
+        double latitude1 = Geo.mercatorToWgs84SphereY(getY(0));
+        for (int i = 1; i < mPointCount; i++) {
+            double longitude2 = Geo.mercatorToWgs84SphereX(getX(i));
+            double latitude2 = Geo.mercatorToWgs84SphereY(getY(i));
+            Location.distanceBetween(latitude1, longitude1, latitude2, longitude2, distance);
+            length += distance[0];
+            longitude1 = longitude2;
+            latitude1 = latitude2;
         }
 
         return length;
     }
+
+    protected static void checkIndex(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+    }
+
+    /**
+     * List view of the points, see {@link #getPoints()}
+     */
+    protected class PointList
+            extends AbstractList<GeoPoint>
+            implements RandomAccess
+    {
+        @Override
+        public GeoPoint get(int index)
+        {
+            checkIndex(index, mPointCount);
+            return new VertexPoint(index);
+        }
+
+        @Override
+        public int size()
+        {
+            return mPointCount;
+        }
+
+        @Override
+        public GeoPoint set(int index, GeoPoint point)
+        {
+            checkIndex(index, mPointCount);
+            GeoPoint previous = getPoint(index);
+            setPoint(index, point.getX(), point.getY());
+            return previous;
+        }
+
+        @Override
+        public void add(int index, GeoPoint point)
+        {
+            if (point == null) {
+                throw new IllegalArgumentException("GeoLineString: point == null.");
+            }
+            insert(index, point.getX(), point.getY());
+            modCount++;
+        }
+
+        @Override
+        public GeoPoint remove(int index)
+        {
+            modCount++;
+            return GeoLineString.this.remove(index);
+        }
+
+        @Override
+        public void clear()
+        {
+            modCount++;
+            GeoLineString.this.clear();
+        }
+    }
+
+
+    /**
+     * Point of {@link PointList} writing the coordinates back to its vertex
+     */
+    protected class VertexPoint
+            extends GeoPoint
+    {
+        protected final int mIndex;
+
+
+        public VertexPoint(int index)
+        {
+            super(GeoLineString.this.getX(index), GeoLineString.this.getY(index));
+            mIndex = index;
+            setCRS(GeoLineString.this.mCRS);
+        }
+
+
+        @Override
+        public void setX(double x)
+        {
+            super.setX(x);
+            setPoint(mIndex, getX(), getY());
+        }
+
+
+        @Override
+        public void setY(double y)
+        {
+            super.setY(y);
+            setPoint(mIndex, getX(), getY());
+        }
+
+
+        @Override
+        public void setCoordinates(
+                double x,
+                double y)
+        {
+            super.setCoordinates(x, y);
+            setPoint(mIndex, x, y);
+        }
+
+
+        /**
+         * Serialize a plain point, not the line string
+         */
+        protected Object writeReplace()
+        {
+            return new GeoPoint(this);
+        }
+    }
 }
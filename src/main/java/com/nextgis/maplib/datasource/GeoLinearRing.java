@@ -25,8 +25,6 @@ package com.nextgis.maplib.datasource;
 import com.nextgis.maplib.util.Constants;
 import com.nextgis.maplib.util.GeoConstants;
 
-import java.util.LinkedList;
-import java.util.List;
 
 
 public class GeoLinearRing
@@ -52,17 +50,19 @@ public class GeoLinearRing
         if (full) {
             buf.append("LINEARRING ");
         }
-        if (mPoints.size() == 0) {
+        if (mPointCount == 0) {
             buf.append(" EMPTY");
         } else {
             buf.append("(");
-            for (int i = 0; i < mPoints.size(); i++) {
-                GeoPoint pt = mPoints.get(i);
+            GeoPoint pt = new GeoPoint();
+            for (int i = 0; i < mPointCount; i++) {
+                pt.setCoordinates(getX(i), getY(i));
                 buf.append(pt.toWKT(false));
                 buf.append(", ");
             }
             if (!isClosed()) {
-                buf.append(mPoints.get(0).toWKT(false));
+                pt.setCoordinates(getX(0), getY(0));
+                buf.append(pt.toWKT(false));
                 buf.append(")");
             } else {
                 buf.deleteCharAt(buf.length() - 1);
@@ -75,21 +75,23 @@ public class GeoLinearRing
 
     public boolean isClosed()
     {
-        List<GeoPoint> points = getPoints();
-        if (points.size() < 3)
+        if (mPointCount < 3)
             return false;
-        GeoPoint first = points.get(0);
-        GeoPoint last = points.get(points.size() - 1);
-        return first.equals(last);
+        int last = mPointCount - 1;
+        return getX(0) == getX(last) && getY(0) == getY(last);
     }
 
     @Override
     public boolean isValid() {
-        for (GeoPoint point : mPoints)
+        GeoPoint point = new GeoPoint();
+        point.setCRS(mCRS);
+        for (int i = 0; i < mPointCount; i++) {
+            point.setCoordinates(getX(i), getY(i));
             if (!point.isValid())
                 return false;
+        }
 
-        return mPoints.size() > 2;
+        return mPointCount > 2;
     }
 
     public GeoPoint getCentroid(){
@@ -103,11 +105,10 @@ public class GeoLinearRing
     protected GeoPoint getCentroidOfFiniteSetOfPoints(){
         double x = 0.;
         double y = 0.;
-        int pointCount = mPoints.size();
+        int pointCount = mPointCount;
         for (int i = 0; i < pointCount - 1; i++){
-            final GeoPoint point = mPoints.get(i);
-            x += point.getX();
-            y += point.getY();
+            x += getX(i);
+            y += getY(i);
         }
 
         x = x/pointCount;
@@ -127,13 +128,13 @@ public class GeoLinearRing
         double y = 0.;
         double area = 0.;
 
-        for (int i = 0; i < mPoints.size() - 1; i++) {
-            final GeoPoint point = mPoints.get(i);
-            final GeoPoint pointN = mPoints.get(i + 1);
+        for (int i = 0; i < mPointCount - 1; i++) {
+            final double x0 = getX(i), y0 = getY(i);
+            final double x1 = getX(i + 1), y1 = getY(i + 1);
 
-            final double temp = point.getX() * pointN.getY() - pointN.getX() * point.getY();
-            x += (point.getX() + pointN.getX()) * temp;
-            y += (point.getY() + pointN.getY()) * temp;
+            final double temp = x0 * y1 - x1 * y0;
+            x += (x0 + x1) * temp;
+            y += (y0 + y1) * temp;
 
             area += temp;
         }
@@ -149,61 +150,44 @@ public class GeoLinearRing
     }
 
     public void closeRing() {
-        if (!isClosed())
-            add((GeoPoint) getPoint(0).copy());
+        if (!isClosed() && mPointCount > 0)
+            add(getX(0), getY(0));
     }
 
     public boolean intersects() {
-        closeRing();
-
-        for (int i = 0; i < getPointCount() - 1; i++) {
-            GeoPoint a = getPoint(i);
-            GeoPoint b = getPoint(i + 1);
-
-            double A1 = b.getY() - a.getY();
-            double B1 = a.getX() - b.getX();
-            double C1 = A1 * a.getX() + B1 * a.getY();
-
-            for (int j = i + 2; j < getPointCount() - 1; j++) {
-                GeoPoint c = getPoint(j);
-                GeoPoint d = getPoint(j + 1);
-
-                if (a.equals(c) || a.equals(d) || b.equals(c) || b.equals(d))
-                    continue;
+        return findIntersection() != null;
+    }
 
-                if (intersects(a, b, c, d, A1, B1, C1))
-                    return true;
-            }
-        }
+    /**
+     * Closes the ring and looks for its crossing segments.
+     *
+     * @return the intersector holding the found segment pair or null
+     */
+    public SegmentIntersector findIntersection() {
+        closeRing();
 
-        return false;
+        SegmentIntersector intersector = new SegmentIntersector();
+        intersector.addPart(this);
+        return intersector.findSelfIntersection() ? intersector : null;
     }
 
     public boolean intersects(GeoLinearRing ring) {
+        return findIntersection(ring) != null;
+    }
+
+    /**
+     * Closes both rings and looks for a segment of this ring crossing the given one.
+     *
+     * @return the intersector holding the found segment pair or null, this ring is part 0
+     */
+    public SegmentIntersector findIntersection(GeoLinearRing ring) {
         closeRing();
         ring.closeRing();
 
-        for (int i = 0; i < getPointCount() - 1; i++) {
-            GeoPoint a = getPoint(i);
-            GeoPoint b = getPoint(i + 1);
-
-            double A1 = b.getY() - a.getY();
-            double B1 = a.getX() - b.getX();
-            double C1 = A1 * a.getX() + B1 * a.getY();
-
-            for (int j = 0; j < ring.getPointCount() - 1; j++) {
-                GeoPoint c = ring.getPoint(j);
-                GeoPoint d = ring.getPoint(j + 1);
-
-                if (a.equals(c) || a.equals(d) || b.equals(c) || b.equals(d))
-                    continue;
-
-                if (intersects(a, b, c, d, A1, B1, C1))
-                    return true;
-            }
-        }
-
-        return false;
+        SegmentIntersector intersector = new SegmentIntersector();
+        intersector.addPart(this);
+        intersector.addPart(ring);
+        return intersector.findPartsIntersection() ? intersector : null;
     }
 
     @Override
@@ -212,6 +196,36 @@ public class GeoLinearRing
         return new GeoLinearRing(this);
     }
 
+    @Override
+    public double distance(GeoGeometry geometry) {
+        if (geometry instanceof GeoPoint) {
+            GeoPoint point = (GeoPoint) geometry;
+            return Math.sqrt(getSquaredDistance(point.getX(), point.getY(), true));
+        }
+        return super.distance(geometry);
+    }
+
+    /**
+     * Point in ring test (even-odd rule)
+     */
+    public boolean contains(double x, double y) {
+        boolean c = false;
+        if (mPointCount == 0) {
+            return false;
+        }
+        double[] xy = mCoordinates;
+        double xj = xy[mPointCount * 2 - 2], yj = xy[mPointCount * 2 - 1];
+        for (int i = 0; i < mPointCount * 2; i += 2) {
+            double xi = xy[i], yi = xy[i + 1];
+            if (((yi > y) != (yj > y)) && (x < (xj - xi) * (y - yi) / (yj - yi) + xi)) {
+                c = !c;
+            }
+            xj = xi;
+            yj = yi;
+        }
+        return c;
+    }
+
     public boolean contains(GeoEnvelope envelope) {
         //check each corner, not exactly accurate, but fast
         GeoPoint pt = new GeoPoint(envelope.getMinX(), envelope.getMinY());
@@ -252,11 +266,11 @@ public class GeoLinearRing
         else if(sqTolerance > area){
             GeoLinearRing result = new GeoLinearRing();
             result.setCRS(getCRS());
-            result.add(new GeoPoint(env.getMinX(), env.getMinY()));
-            result.add(new GeoPoint(env.getMinX(), env.getMaxY()));
-            result.add(new GeoPoint(env.getMaxX(), env.getMaxY()));
-            result.add(new GeoPoint(env.getMaxX(), env.getMinY()));
-            result.add(new GeoPoint(env.getMinX(), env.getMinY()));
+            result.add(env.getMinX(), env.getMinY());
+            result.add(env.getMinX(), env.getMaxY());
+            result.add(env.getMaxX(), env.getMaxY());
+            result.add(env.getMaxX(), env.getMinY());
+            result.add(env.getMinX(), env.getMinY());
             return result;
         }
 
@@ -274,10 +288,10 @@ public class GeoLinearRing
         if(sqTolerance > area){
             GeoLinearRing result = new GeoLinearRing();
             result.setCRS(getCRS());
-            result.add(new GeoPoint(env.getMinX(), env.getMinY()));
-            result.add(new GeoPoint(env.getMinX(), env.getMaxY()));
-            result.add(new GeoPoint(env.getMaxX(), env.getMaxY()));
-            result.add(new GeoPoint(env.getMinX(), env.getMinY()));
+            result.add(env.getMinX(), env.getMinY());
+            result.add(env.getMinX(), env.getMaxY());
+            result.add(env.getMaxX(), env.getMaxY());
+            result.add(env.getMinX(), env.getMinY());
             return result;
         }
 
@@ -286,10 +300,11 @@ public class GeoLinearRing
 
     @Override
     public GeoGeometry clip(GeoEnvelope envelope) {
-        if(mPoints.isEmpty())
+        if(mPointCount == 0)
             return null;
         GeoLinearRing result = new GeoLinearRing();
-        clip(mPoints, result.mPoints, envelope, true);
+        result.setCRS(mCRS);
+        clip(this, result, envelope, true);
 
         if(result.getPointCount() < 4)
             return null;
@@ -302,60 +317,65 @@ public class GeoLinearRing
     }
 
     public void clipForTiled(GeoLinearRing newRing, GeoLineString newBorder, GeoEnvelope envelope) {
-        List<GeoPoint> tmpPointsOut = new LinkedList<>();
-        trimPoints(mPoints, tmpPointsOut, GeoEnvelope.enumGISPtPosRight, envelope, false);
-        if(tmpPointsOut.size() < 4)
+        GeoLineString tmpPointsOut = new GeoLineString();
+        trimPoints(this, tmpPointsOut, GeoEnvelope.enumGISPtPosRight, envelope, false);
+        if(tmpPointsOut.getPointCount() < 4)
             return;
-        List<GeoPoint> tmpPointsOutAdd = new LinkedList<>();
+        GeoLineString tmpPointsOutAdd = new GeoLineString();
         trimPoints(tmpPointsOut, tmpPointsOutAdd, GeoEnvelope.enumGISPtPosTop, envelope, false);
-        if(tmpPointsOutAdd.size() < 4)
+        if(tmpPointsOutAdd.getPointCount() < 4)
             return;
         tmpPointsOut.clear();
         trimPoints(tmpPointsOutAdd, tmpPointsOut, GeoEnvelope.enumGISPtPosLeft, envelope, false);
-        if(tmpPointsOut.size() < 4)
+        if(tmpPointsOut.getPointCount() < 4)
             return;
-        trimPoints(tmpPointsOut, newRing.mPoints, GeoEnvelope.enumGISPtPosLeft, envelope, false);
-        //trimPoints(tmpPointsOut, newRing.mPoints, newBorder.mPoints, GeoEnvelope.enumGISPtPosBottom, envelope);
+        trimPoints(tmpPointsOut, newRing, GeoEnvelope.enumGISPtPosLeft, envelope, false);
+        //trimPoints(tmpPointsOut, newRing, newBorder, GeoEnvelope.enumGISPtPosBottom, envelope);
     }
 
-    protected void trimPoints(List<GeoPoint> pointsIn, List<GeoPoint> pointsOut, List<GeoPoint> borderOut, int pos, GeoEnvelope envelope) {
+    protected void trimPoints(GeoLineString pointsIn, GeoLineString pointsOut, GeoLineString borderOut, int pos, GeoEnvelope envelope) {
         // The shapeOpen parameter selects whether this function treats the
         // shape as open or closed. False is appropriate for polygons and
         // true for polylines.
 
-        int i1 = pointsIn.size() - 1; // start with last point
+        double[] in = pointsIn.mCoordinates;
+        int count = pointsIn.mPointCount;
+        if (count == 0) {
+            return;
+        }
+
+        int i1 = count - 1; // start with last point
+        boolean isInside1 = envelope.isInside(in[i1 * 2], in[i1 * 2 + 1], pos);
 
         // and compare to the first point initially.
-        for ( int i2 = 0; i2 < pointsIn.size(); ++i2 ) { // look at each edge of the polygon in turn
-            if ( envelope.isInside(pointsIn.get(i2), pos) ) { // end point of edge is inside boundary
-                if(envelope.isInside(pointsIn.get(i1), pos)) {
-                    pointsOut.add(pointsIn.get(i2));
-                    borderOut.add(pointsIn.get(i2));
+        for ( int i2 = 0; i2 < count; ++i2 ) { // look at each edge of the polygon in turn
+            double x2 = in[i2 * 2], y2 = in[i2 * 2 + 1];
+            boolean isInside2 = envelope.isInside(x2, y2, pos);
+            if ( isInside2 ) { // end point of edge is inside boundary
+                if(isInside1) {
+                    pointsOut.add(x2, y2);
+                    borderOut.add(x2, y2);
                 }
                 else {
                     // edge crosses into the boundary, so trim back to the boundary, and
                     // store both ends of the new edge
                     if ( !( i2 == 0 ) ) {
-                        GeoPoint pointNew = solveIntersection(pointsIn.get(i1), pointsIn.get(i2), pos, envelope);
-                        if (null != pointNew) {
-                            pointsOut.add(pointNew);
-                        }
+                        solveIntersection(in[i1 * 2], in[i1 * 2 + 1], x2, y2, pos, envelope, pointsOut);
                     }
-                    pointsOut.add(pointsIn.get(i2));
-                    borderOut.add(pointsIn.get(i2));
+                    pointsOut.add(x2, y2);
+                    borderOut.add(x2, y2);
                 }
             }
             else { // end point of edge is outside boundary
                 // start point is in boundary, so need to trim back
-                if ( envelope.isInside(pointsIn.get(i1), pos)) {
+                if ( isInside1 ) {
                     if ( !( i2 == 0 ) ) {
-                        GeoPoint pointNew = solveIntersection(pointsIn.get(i1), pointsIn.get(i2), pos, envelope);
-                        if (null != pointNew)
-                            pointsOut.add(pointNew);
+                        solveIntersection(in[i1 * 2], in[i1 * 2 + 1], x2, y2, pos, envelope, pointsOut);
                     }
                 }
             }
             i1 = i2;
+            isInside1 = isInside2;
         }
     }
 }
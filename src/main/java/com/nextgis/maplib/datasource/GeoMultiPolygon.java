@@ -180,12 +180,24 @@ public class GeoMultiPolygon
     }
 
     public boolean isSelfIntersects() {
+        return findIntersection() != null;
+    }
+
+    /**
+     * Closes the rings and looks for crossing segments inside each ring in one sweep.
+     *
+     * @return the intersector holding the found segment pair or null, the parts are the rings
+     * of the polygons in order, each outer ring followed by its holes
+     */
+    public SegmentIntersector findIntersection() {
+        SegmentIntersector intersector = new SegmentIntersector();
         for (GeoGeometry polygon : mGeometries)
-            if (polygon instanceof GeoPolygon)
-                if (((GeoPolygon) polygon).intersects())
-                    return true;
+            if (polygon instanceof GeoPolygon) {
+                ((GeoPolygon) polygon).closeRings();
+                ((GeoPolygon) polygon).addRings(intersector, true);
+            }
 
-        return false;
+        return intersector.findSelfIntersection() ? intersector : null;
     }
 
     public boolean isHolesInside() {
@@ -137,9 +137,10 @@ public class GeoPoint
 
 
     @Override
-    public GeoEnvelope getEnvelope()
+    public GeoEnvelope getEnvelope(GeoEnvelope envelope)
     {
-        return new GeoEnvelope(mX, mX, mY, mY);
+        envelope.set(mX, mY, mX, mY);
+        return envelope;
     }
 
 
@@ -287,7 +288,7 @@ public class GeoPoint
     }
 
     public boolean inBounds() {
-        if (getEnvelope().isInit()) {
+        if (!Double.isNaN(mX) && !Double.isNaN(mY)) {
             switch (mCRS) {
                 case CRS_WGS84:
                     return mX >= -WGS_LONG_MAX && mX <= WGS_LONG_MAX && mY >= -WGS_LAT_MAX && mY < WGS_LAT_MAX;
@@ -305,7 +306,7 @@ public class GeoPoint
             GeoPoint pt = (GeoPoint) geometry;
             return Math.sqrt((pt.getX() - mX)*(pt.getX() - mX) + (pt.getY() - mY)*(pt.getY() - mY));
         }
-        // TODO: 04.09.15 release for other types of geometries
-        return 0;
+        // other geometries know the distance to a point
+        return geometry.distance(this);
     }
 }
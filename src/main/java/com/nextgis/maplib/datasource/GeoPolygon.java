@@ -97,9 +97,9 @@ public class GeoPolygon
 
 
     @Override
-    public GeoEnvelope getEnvelope()
+    public GeoEnvelope getEnvelope(GeoEnvelope envelope)
     {
-        return mOuterRing.getEnvelope();
+        return mOuterRing.getEnvelope(envelope);
     }
 
 
@@ -244,7 +244,7 @@ public class GeoPolygon
         if (full) {
             buf.append("POLYGON ");
         }
-        if (mOuterRing.getPoints().size() == 0) {
+        if (mOuterRing.getPointCount() == 0) {
             buf.append(" EMPTY");
         } else {
             buf.append("(");
@@ -409,6 +409,29 @@ public class GeoPolygon
 
     @Override
     public double distance(GeoGeometry geometry) {
+        if (geometry instanceof GeoPoint) {
+            GeoPoint point = (GeoPoint) geometry;
+            double x = point.getX();
+            double y = point.getY();
+            if (mOuterRing.contains(x, y)) {
+                boolean inHole = false;
+                for (GeoLinearRing ring : mInnerRings) {
+                    if (ring.contains(x, y)) {
+                        inHole = true;
+                        break;
+                    }
+                }
+                if (!inHole) {
+                    return 0;
+                }
+            }
+
+            double min = mOuterRing.getSquaredDistance(x, y, true);
+            for (GeoLinearRing ring : mInnerRings) {
+                min = Math.min(min, ring.getSquaredDistance(x, y, true));
+            }
+            return Math.sqrt(min);
+        }
         return mOuterRing.distance(geometry);
     }
 
@@ -432,40 +455,72 @@ public class GeoPolygon
     }
 
     public boolean intersects() {
-        if (mOuterRing.intersects())
-            return true;
+        return findIntersection() != null;
+    }
 
-        for (GeoLinearRing ring : mInnerRings)
-            if (ring.intersects())
-                return true;
+    /**
+     * Closes the rings and looks for crossing segments inside each ring.
+     *
+     * @return the intersector holding the found segment pair or null, the outer ring is part 0
+     * and the holes follow it
+     */
+    public SegmentIntersector findIntersection() {
+        closeRings();
 
-        return false;
+        SegmentIntersector intersector = new SegmentIntersector();
+        addRings(intersector, true);
+        return intersector.findSelfIntersection() ? intersector : null;
+    }
+
+    /**
+     * Adds the rings to the intersector, the outer ring first if asked.
+     */
+    protected void addRings(SegmentIntersector intersector, boolean outer) {
+        if (outer)
+            intersector.addPart(mOuterRing);
+
+        for (GeoLinearRing ring : mInnerRings)
+            intersector.addPart(ring);
     }
 
     public boolean isHolesInside() {
         mOuterRing.closeRing();
 
+        PreparedPolygon outer = null;
         for (GeoLinearRing ring: mInnerRings) {
             ring.closeRing();
 
             if (!mOuterRing.getEnvelope().contains(ring.getEnvelope()))
                 return false;
 
-            for (int i = 0; i < ring.getPointCount(); i++)
-                if (!contains(ring.getPoint(i)))
-                    return false;
+            if (null == outer)
+                outer = new PreparedPolygon(mOuterRing);
+            if (!outer.containsAll(ring.getCoordinates(), ring.getPointCount()))
+                return false;
         }
 
         return true;
     }
 
     public boolean isHolesIntersect() {
-        for (int i = 0; i < mInnerRings.size() - 1; i++)
-            for (int j = i + 1; j < mInnerRings.size(); j++)
-                if (mInnerRings.get(i).intersects(mInnerRings.get(j)))
-                    return true;
+        return findHolesIntersection() != null;
+    }
 
-        return false;
+    /**
+     * Closes the rings and looks for crossing segments of different holes.
+     *
+     * @return the intersector holding the found segment pair or null, the holes are parts in
+     * their order
+     */
+    public SegmentIntersector findHolesIntersection() {
+        if (mInnerRings.size() < 2)
+            return null;
+
+        closeRings();
+
+        SegmentIntersector intersector = new SegmentIntersector();
+        addRings(intersector, false);
+        return intersector.findPartsIntersection() ? intersector : null;
     }
 
     // https://www.ecse.rpi.edu/Homepages/wrf/Research/Short_Notes/pnpoly.html
@@ -479,10 +534,10 @@ public class GeoPolygon
             return false;
 
         for (i = 0, j = mOuterRing.getPointCount() - 1; i < mOuterRing.getPointCount(); j = i++) {
-            vertix = mOuterRing.getPoints().get(i).getX();
-            vertiy = mOuterRing.getPoints().get(i).getY();
-            vertjx = mOuterRing.getPoints().get(j).getX();
-            vertjy = mOuterRing.getPoints().get(j).getY();
+            vertix = mOuterRing.getX(i);
+            vertiy = mOuterRing.getY(i);
+            vertjx = mOuterRing.getX(j);
+            vertjy = mOuterRing.getY(j);
 
             if (((vertiy > point.getY()) != (vertjy > point.getY())) &&
                     (point.getX() < (vertjx - vertix) * (point.getY() - vertiy) / (vertjy - vertiy) + vertix))
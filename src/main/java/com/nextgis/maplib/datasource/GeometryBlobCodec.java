@@ -0,0 +1,571 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplib.datasource;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static com.nextgis.maplib.util.GeoConstants.CRS_WEB_MERCATOR;
+import static com.nextgis.maplib.util.GeoConstants.GTGeometryCollection;
+import static com.nextgis.maplib.util.GeoConstants.GTLineString;
+import static com.nextgis.maplib.util.GeoConstants.GTLinearRing;
+import static com.nextgis.maplib.util.GeoConstants.GTMultiLineString;
+import static com.nextgis.maplib.util.GeoConstants.GTMultiPoint;
+import static com.nextgis.maplib.util.GeoConstants.GTMultiPolygon;
+import static com.nextgis.maplib.util.GeoConstants.GTPoint;
+import static com.nextgis.maplib.util.GeoConstants.GTPolygon;
+
+
+/**
+ * Compact geometry blob, version 2. The blob starts with the version byte, the encoding byte
+ * and the CRS, then goes the geometry: a type, counts and coordinates, all integers are
+ * unsigned varints. A polygon is written as a count of rings and the rings, a collection as a
+ * count of members and the members. The members get the CRS of the blob.
+ * <p>
+ * The coordinates are written depending on the encoding:
+ * <ul>
+ * <li>{@link #ENCODING_GRID}: snapped to the {@link #GRID_SCALE} grid, every coordinate is a
+ * zig-zag varint of the delta from the previous vertex. Web Mercator only.</li>
+ * <li>{@link #ENCODING_FLOAT}: float offsets from the origin written after the header, the
+ * lower left corner of the envelope. Lossy but fast, for the overview geometries.</li>
+ * <li>{@link #ENCODING_DOUBLE}: doubles, used when the grid does not fit.</li>
+ * </ul>
+ * A version 1 blob of {@link GeoGeometry#write} starts with a zero byte of the type int, so
+ * the formats are told apart by the first byte.
+ */
+public class GeometryBlobCodec
+{
+    public static final byte VERSION = 2;
+
+    public static final int ENCODING_GRID   = 0;
+    public static final int ENCODING_FLOAT  = 1;
+    public static final int ENCODING_DOUBLE = 2;
+
+    /**
+     * The grid cells per meter, the grid step is 1 mm
+     */
+    public static final double GRID_SCALE = 1000;
+
+    // larger coordinates lose integer precision on the grid
+    protected static final double GRID_LIMIT = (1L << 52) / GRID_SCALE;
+    protected static final int    MAX_DEPTH  = 16;
+
+    protected byte[] mBuffer;
+    protected byte[] mOutput;
+    protected int    mPosition;
+    protected int    mLimit;
+
+    protected int     mEncoding;
+    protected int     mCRS;
+    protected long    mLastX, mLastY;
+    protected double  mOriginX, mOriginY;
+    protected boolean mOffGrid;
+    protected double[] mCoordinates = new double[16];
+
+
+    /**
+     * @return True if the blob is in the compact format
+     */
+    public static boolean isCompact(byte[] blob)
+    {
+        return null != blob && blob.length > 0 && blob[0] == VERSION;
+    }
+
+
+    /**
+     * Encode the geometry. The grid encoding falls back to doubles if the geometry is not in
+     * Web Mercator or does not fit the grid.
+     */
+    public byte[] encode(
+            GeoGeometry geometry,
+            int encoding)
+            throws IOException
+    {
+        if (encoding == ENCODING_GRID && geometry.getCRS() != CRS_WEB_MERCATOR) {
+            encoding = ENCODING_DOUBLE;
+        }
+
+        byte[] result = encodeAs(geometry, encoding);
+        if (mOffGrid) {
+            result = encodeAs(geometry, ENCODING_DOUBLE);
+        }
+        return result;
+    }
+
+
+    protected byte[] encodeAs(
+            GeoGeometry geometry,
+            int encoding)
+            throws IOException
+    {
+        if (null == mOutput) {
+            mOutput = new byte[256];
+        }
+        mBuffer = mOutput;
+        mPosition = 0;
+        mEncoding = encoding;
+        mCRS = geometry.getCRS();
+        mLastX = mLastY = 0;
+        mOffGrid = false;
+
+        writeByte(VERSION);
+        writeByte(encoding);
+        writeVarLong(mCRS);
+        if (encoding == ENCODING_FLOAT) {
+            GeoEnvelope envelope = geometry.getEnvelope();
+            mOriginX = envelope.isInit() ? envelope.getMinX() : 0;
+            mOriginY = envelope.isInit() ? envelope.getMinY() : 0;
+            writeLong(Double.doubleToRawLongBits(mOriginX));
+            writeLong(Double.doubleToRawLongBits(mOriginY));
+        }
+        writeGeometry(geometry, 0);
+        return Arrays.copyOf(mBuffer, mPosition);
+    }
+
+
+    protected void writeGeometry(
+            GeoGeometry geometry,
+            int depth)
+            throws IOException
+    {
+        int type = geometry.getType();
+        writeVarLong(type);
+        switch (type) {
+            case GTPoint:
+                GeoPoint point = (GeoPoint) geometry;
+                writeCoordinate(point.getX(), point.getY());
+                break;
+            case GTLineString:
+            case GTLinearRing:
+                writePart((GeoLineString) geometry);
+                break;
+            case GTPolygon:
+                GeoPolygon polygon = (GeoPolygon) geometry;
+                int innerRingCount = polygon.getInnerRingCount();
+                writeVarLong(innerRingCount + 1);
+                writePart(polygon.getOuterRing());
+                for (int i = 0; i < innerRingCount; i++) {
+                    writePart(polygon.getInnerRing(i));
+                }
+                break;
+            case GTMultiPoint:
+            case GTMultiLineString:
+            case GTMultiPolygon:
+            case GTGeometryCollection:
+                if (depth == MAX_DEPTH) {
+                    throw new IOException("Geometry collection is nested too deep");
+                }
+                GeoGeometryCollection collection = (GeoGeometryCollection) geometry;
+                int count = collection.size();
+                writeVarLong(count);
+                for (int i = 0; i < count; i++) {
+                    writeGeometry(collection.get(i), depth + 1);
+                }
+                break;
+            default:
+                throw new IOException("Unknown geometry type " + type);
+        }
+    }
+
+
+    protected void writePart(GeoLineString part)
+    {
+        int count = part.getPointCount();
+        double[] coordinates = part.getCoordinates();
+        writeVarLong(count);
+        for (int i = 0; i < count; i++) {
+            writeCoordinate(coordinates[i * 2], coordinates[i * 2 + 1]);
+        }
+    }
+
+
+    protected void writeCoordinate(
+            double x,
+            double y)
+    {
+        switch (mEncoding) {
+            case ENCODING_GRID:
+                // NaN fails the check too
+                if (!(Math.abs(x) < GRID_LIMIT && Math.abs(y) < GRID_LIMIT)) {
+                    mOffGrid = true;
+                    return;
+                }
+                long gridX = Math.round(x * GRID_SCALE);
+                long gridY = Math.round(y * GRID_SCALE);
+                writeVarLong(zigZag(gridX - mLastX));
+                writeVarLong(zigZag(gridY - mLastY));
+                mLastX = gridX;
+                mLastY = gridY;
+                break;
+            case ENCODING_FLOAT:
+                writeInt(Float.floatToRawIntBits((float) (x - mOriginX)));
+                writeInt(Float.floatToRawIntBits((float) (y - mOriginY)));
+                break;
+            default:
+                writeLong(Double.doubleToRawLongBits(x));
+                writeLong(Double.doubleToRawLongBits(y));
+                break;
+        }
+    }
+
+
+    protected void ensureCapacity(int size)
+    {
+        if (mPosition + size > mBuffer.length) {
+            mOutput = Arrays.copyOf(mBuffer, Math.max(mPosition + size, mBuffer.length * 2));
+            mBuffer = mOutput;
+        }
+    }
+
+
+    protected void writeByte(int value)
+    {
+        ensureCapacity(1);
+        mBuffer[mPosition++] = (byte) value;
+    }
+
+
+    protected void writeVarLong(long value)
+    {
+        ensureCapacity(10);
+        byte[] buffer = mBuffer;
+        int position = mPosition;
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        mPosition = position;
+    }
+
+
+    protected void writeInt(int value)
+    {
+        ensureCapacity(4);
+        byte[] buffer = mBuffer;
+        buffer[mPosition++] = (byte) (value >>> 24);
+        buffer[mPosition++] = (byte) (value >>> 16);
+        buffer[mPosition++] = (byte) (value >>> 8);
+        buffer[mPosition++] = (byte) value;
+    }
+
+
+    protected void writeLong(long value)
+    {
+        writeInt((int) (value >>> 32));
+        writeInt((int) value);
+    }
+
+
+    protected static long zigZag(long value)
+    {
+        return (value << 1) ^ (value >> 63);
+    }
+
+
+    public GeoGeometry decode(byte[] blob)
+            throws IOException
+    {
+        return decode(blob, 0, blob.length);
+    }
+
+
+    public GeoGeometry decode(
+            byte[] blob,
+            int offset,
+            int length)
+            throws IOException
+    {
+        start(blob, offset, length);
+        return readGeometry(0);
+    }
+
+
+    /**
+     * Read the blob header, the geometry is read next
+     */
+    protected void start(
+            byte[] blob,
+            int offset,
+            int length)
+            throws IOException
+    {
+        mBuffer = blob;
+        mPosition = offset;
+        mLimit = offset + length;
+        if (readByte() != VERSION) {
+            throw new IOException("Unsupported geometry blob version");
+        }
+        mEncoding = readByte();
+        if (mEncoding < ENCODING_GRID || mEncoding > ENCODING_DOUBLE) {
+            throw new IOException("Unknown geometry blob encoding " + mEncoding);
+        }
+        mCRS = readVarInt();
+        mLastX = mLastY = 0;
+        if (mEncoding == ENCODING_FLOAT) {
+            mOriginX = Double.longBitsToDouble(readLong());
+            mOriginY = Double.longBitsToDouble(readLong());
+        }
+    }
+
+
+    protected GeoGeometry readGeometry(int depth)
+            throws IOException
+    {
+        int type = readVarInt();
+        GeoGeometry geometry;
+        switch (type) {
+            case GTPoint:
+                readCoordinates(mCoordinates, 0, 1);
+                geometry = new GeoPoint(mCoordinates[0], mCoordinates[1]);
+                break;
+            case GTLineString:
+                geometry = readPart(new GeoLineString());
+                break;
+            case GTLinearRing:
+                geometry = readPart(new GeoLinearRing());
+                break;
+            case GTPolygon:
+                GeoPolygon polygon = new GeoPolygon();
+                int ringCount = readCount(1);
+                if (ringCount == 0) {
+                    throw new IOException("Polygon without the outer ring in a blob");
+                }
+                readPart(polygon.getOuterRing());
+                for (int i = 1; i < ringCount; i++) {
+                    GeoLinearRing ring = new GeoLinearRing();
+                    readPart(ring);
+                    ring.setCRS(mCRS);
+                    polygon.addInnerRing(ring);
+                }
+                geometry = polygon;
+                break;
+            case GTMultiPoint:
+            case GTMultiLineString:
+            case GTMultiPolygon:
+            case GTGeometryCollection:
+                if (depth == MAX_DEPTH) {
+                    throw new IOException("Geometry collection is nested too deep");
+                }
+                GeoGeometryCollection collection = newCollection(type);
+                int count = readCount(1);
+                try {
+                    for (int i = 0; i < count; i++) {
+                        collection.add(readGeometry(depth + 1));
+                    }
+                } catch (IllegalArgumentException | ClassCastException e) {
+                    // a member of a wrong type
+                    throw new IOException(e.getMessage());
+                }
+                geometry = collection;
+                break;
+            default:
+                throw new IOException("Unknown geometry type " + type + " in a blob");
+        }
+        geometry.setCRS(mCRS);
+        return geometry;
+    }
+
+
+    protected static GeoGeometryCollection newCollection(int type)
+    {
+        switch (type) {
+            case GTMultiPoint:
+                return new GeoMultiPoint();
+            case GTMultiLineString:
+                return new GeoMultiLineString();
+            case GTMultiPolygon:
+                return new GeoMultiPolygon();
+            default:
+                return new GeoGeometryCollection();
+        }
+    }
+
+
+    protected GeoLineString readPart(GeoLineString part)
+            throws IOException
+    {
+        int count = readCount(getMinVertexSize());
+        if (count * 2 > mCoordinates.length) {
+            mCoordinates = new double[Math.max(count * 2, mCoordinates.length * 2)];
+        }
+        readCoordinates(mCoordinates, 0, count);
+        part.setCoordinates(mCoordinates, count);
+        part.setCRS(mCRS);
+        return part;
+    }
+
+
+    /**
+     * @return The least count of bytes a vertex takes
+     */
+    protected int getMinVertexSize()
+    {
+        switch (mEncoding) {
+            case ENCODING_GRID:
+                return 2;
+            case ENCODING_FLOAT:
+                return 8;
+            default:
+                return 16;
+        }
+    }
+
+
+    /**
+     * Read a count and check it against the rest of the blob
+     */
+    protected int readCount(int minItemSize)
+            throws IOException
+    {
+        int count = readVarInt();
+        if (count > (mLimit - mPosition) / minItemSize) {
+            throw new IOException("Geometry blob is truncated");
+        }
+        return count;
+    }
+
+
+    /**
+     * Read the vertices as x0, y0, x1, y1, ...
+     */
+    protected void readCoordinates(
+            double[] coordinates,
+            int position,
+            int count)
+            throws IOException
+    {
+        int end = position + count * 2;
+        switch (mEncoding) {
+            case ENCODING_GRID:
+                long x = mLastX, y = mLastY;
+                while (position < end) {
+                    x += unZigZag(readVarLong());
+                    y += unZigZag(readVarLong());
+                    coordinates[position++] = x / GRID_SCALE;
+                    coordinates[position++] = y / GRID_SCALE;
+                }
+                mLastX = x;
+                mLastY = y;
+                break;
+            case ENCODING_FLOAT:
+                checkAvailable(count * 8);
+                while (position < end) {
+                    coordinates[position++] = mOriginX + Float.intBitsToFloat(getInt());
+                    coordinates[position++] = mOriginY + Float.intBitsToFloat(getInt());
+                }
+                break;
+            default:
+                checkAvailable(count * 16);
+                while (position < end) {
+                    coordinates[position++] = Double.longBitsToDouble(readLong());
+                    coordinates[position++] = Double.longBitsToDouble(readLong());
+                }
+                break;
+        }
+    }
+
+
+    protected static long unZigZag(long value)
+    {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+
+    protected void checkAvailable(int size)
+            throws IOException
+    {
+        if (size < 0 || mPosition + size > mLimit) {
+            throw new IOException("Geometry blob is truncated");
+        }
+    }
+
+
+    protected int readByte()
+            throws IOException
+    {
+        checkAvailable(1);
+        return mBuffer[mPosition++];
+    }
+
+
+    protected int readVarInt()
+            throws IOException
+    {
+        long value = readVarLong();
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IOException("Geometry blob value is out of range");
+        }
+        return (int) value;
+    }
+
+
+    protected long readVarLong()
+            throws IOException
+    {
+        byte[] buffer = mBuffer;
+        int position = mPosition;
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position == mLimit) {
+                throw new IOException("Geometry blob is truncated");
+            }
+            byte b = buffer[position++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                mPosition = position;
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in a geometry blob");
+    }
+
+
+    // the caller checks the bounds
+    protected int getInt()
+    {
+        byte[] buffer = mBuffer;
+        int position = mPosition;
+        mPosition = position + 4;
+        return buffer[position] << 24 | (buffer[position + 1] & 0xFF) << 16
+                | (buffer[position + 2] & 0xFF) << 8 | buffer[position + 3] & 0xFF;
+    }
+
+
+    protected long readLong()
+            throws IOException
+    {
+        checkAvailable(8);
+        return (long) getInt() << 32 | getInt() & 0xFFFFFFFFL;
+    }
+
+
+    public int getEncoding()
+    {
+        return mEncoding;
+    }
+
+
+    public int getCRS()
+    {
+        return mCRS;
+    }
+}
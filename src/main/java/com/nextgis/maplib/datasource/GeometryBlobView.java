@@ -0,0 +1,516 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplib.datasource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static com.nextgis.maplib.util.GeoConstants.GTGeometryCollection;
+import static com.nextgis.maplib.util.GeoConstants.GTLineString;
+import static com.nextgis.maplib.util.GeoConstants.GTLinearRing;
+import static com.nextgis.maplib.util.GeoConstants.GTMultiLineString;
+import static com.nextgis.maplib.util.GeoConstants.GTMultiPoint;
+import static com.nextgis.maplib.util.GeoConstants.GTMultiPolygon;
+import static com.nextgis.maplib.util.GeoConstants.GTPoint;
+import static com.nextgis.maplib.util.GeoConstants.GTPolygon;
+
+
+/**
+ * Read-only view of a geometry blob written by {@link GeoGeometry#write}. The blob is indexed
+ * once on {@link #wrap(ByteBuffer)} and coordinates are read straight from the buffer, no
+ * geometry objects are created. The coordinates of a {@link GeometryBlobCodec} blob are
+ * decoded on wrap into an array owned by the view.
+ * <p>
+ * The geometry is seen as a list of simple geometries (point, line string or polygon), each
+ * made of parts. A part is a run of vertices: a point, a line or a ring, the outer ring of a
+ * polygon goes first. The view may be reused for the next blob.
+ */
+public class GeometryBlobView
+{
+    // every vertex is a point record: type, crs, x, y
+    protected static final int VERTEX_SIZE = 24;
+    protected static final int HEADER_SIZE = 8;
+    protected static final int MAX_DEPTH   = 16;
+
+    protected ByteBuffer mBuffer;
+    protected int        mType;
+    protected int        mCRS;
+
+    protected int   mGeometryCount;
+    protected int[] mGeometryTypes = new int[4];
+    protected int[] mGeometryParts = new int[4];
+
+    protected int   mPartCount;
+    protected int[] mPartOffsets = new int[4];
+    protected int[] mPartSizes   = new int[4];
+    protected int   mPointCount;
+
+    protected boolean           mCompact;
+    protected GeometryBlobCodec mCodec;
+    protected double[]          mCoordinates;
+
+
+    public GeometryBlobView wrap(byte[] blob)
+            throws IOException
+    {
+        return wrap(ByteBuffer.wrap(blob));
+    }
+
+
+    /**
+     * Index the blob starting at the buffer position. The buffer is switched to big endian
+     * and must not change while the view is used.
+     */
+    public GeometryBlobView wrap(ByteBuffer buffer)
+            throws IOException
+    {
+        mBuffer = buffer.order(ByteOrder.BIG_ENDIAN);
+        mGeometryCount = 0;
+        mPartCount = 0;
+        mPointCount = 0;
+
+        int position = buffer.position();
+        mCompact = buffer.limit() > position && buffer.get(position) == GeometryBlobCodec.VERSION;
+        if (mCompact) {
+            wrapCompact(buffer);
+            return this;
+        }
+        if (buffer.limit() - position < HEADER_SIZE) {
+            throw new IOException("Geometry blob is too short");
+        }
+        mType = buffer.getInt(position);
+        mCRS = buffer.getInt(position + 4);
+        parse(position, 0);
+        return this;
+    }
+
+
+    protected void wrapCompact(ByteBuffer buffer)
+            throws IOException
+    {
+        byte[] blob;
+        int offset;
+        int length = buffer.remaining();
+        if (buffer.hasArray()) {
+            blob = buffer.array();
+            offset = buffer.arrayOffset() + buffer.position();
+        } else {
+            blob = new byte[length];
+            buffer.duplicate().get(blob);
+            offset = 0;
+        }
+
+        if (null == mCodec) {
+            mCodec = new GeometryBlobCodec();
+            mCoordinates = new double[16];
+        }
+        mCodec.start(blob, offset, length);
+        mCRS = mCodec.getCRS();
+        mType = parseCompact(0);
+    }
+
+
+    /**
+     * @return The geometry type
+     */
+    protected int parseCompact(int depth)
+            throws IOException
+    {
+        GeometryBlobCodec codec = mCodec;
+        int type = codec.readVarInt();
+        switch (type) {
+            case GTPoint:
+                addGeometry(GTPoint);
+                addCompactPart(1);
+                break;
+            case GTLineString:
+            case GTLinearRing:
+                addGeometry(GTLineString);
+                addCompactPart(codec.readCount(codec.getMinVertexSize()));
+                break;
+            case GTPolygon:
+                addGeometry(GTPolygon);
+                int ringCount = codec.readCount(1);
+                for (int i = 0; i < ringCount; i++) {
+                    addCompactPart(codec.readCount(codec.getMinVertexSize()));
+                }
+                break;
+            case GTMultiPoint:
+            case GTMultiLineString:
+            case GTMultiPolygon:
+            case GTGeometryCollection:
+                if (depth == MAX_DEPTH) {
+                    throw new IOException("Geometry collection is nested too deep");
+                }
+                int count = codec.readCount(1);
+                for (int i = 0; i < count; i++) {
+                    parseCompact(depth + 1);
+                }
+                break;
+            default:
+                throw new IOException("Unknown geometry type " + type + " in a blob");
+        }
+        return type;
+    }
+
+
+    protected void addCompactPart(int count)
+            throws IOException
+    {
+        int size = (mPointCount + count) * 2;
+        if (size > mCoordinates.length) {
+            mCoordinates = Arrays.copyOf(mCoordinates, Math.max(size, mCoordinates.length * 2));
+        }
+        mCodec.readCoordinates(mCoordinates, mPointCount * 2, count);
+        if (mPartCount == mPartOffsets.length) {
+            mPartOffsets = Arrays.copyOf(mPartOffsets, mPartCount * 2);
+            mPartSizes = Arrays.copyOf(mPartSizes, mPartCount * 2);
+        }
+        mPartOffsets[mPartCount] = mPointCount;
+        mPartSizes[mPartCount] = count;
+        mPartCount++;
+        mPointCount += count;
+    }
+
+
+    /**
+     * @return The offset just after the geometry
+     */
+    protected int parse(int offset, int depth)
+            throws IOException
+    {
+        int type = readInt(offset);
+        offset += HEADER_SIZE;
+        switch (type) {
+            case GTPoint:
+                addGeometry(GTPoint);
+                return addPart(offset - HEADER_SIZE, 1);
+            case GTLineString:
+            case GTLinearRing:
+                addGeometry(GTLineString);
+                return readPart(offset);
+            case GTPolygon:
+                addGeometry(GTPolygon);
+                return readPolygon(offset);
+            case GTMultiPoint:
+            case GTMultiLineString:
+            case GTMultiPolygon:
+            case GTGeometryCollection:
+                if (depth == MAX_DEPTH) {
+                    throw new IOException("Geometry collection is nested too deep");
+                }
+                int count = readInt(offset);
+                offset += 4;
+                for (int i = 0; i < count; i++) {
+                    offset = parse(offset, depth + 1);
+                }
+                return offset;
+            default:
+                throw new IOException("Unknown geometry type " + type + " in a blob");
+        }
+    }
+
+
+    protected int readPolygon(int offset)
+            throws IOException
+    {
+        offset = readRing(offset);
+        int innerRingCount = readInt(offset);
+        offset += 4;
+        for (int i = 0; i < innerRingCount; i++) {
+            offset = readRing(offset);
+        }
+        return offset;
+    }
+
+
+    protected int readRing(int offset)
+            throws IOException
+    {
+        int type = readInt(offset);
+        if (type != GTLinearRing && type != GTLineString) {
+            throw new IOException("Unexpected geometry type " + type + " in a polygon");
+        }
+        return readPart(offset + HEADER_SIZE);
+    }
+
+
+    protected int readPart(int offset)
+            throws IOException
+    {
+        int count = readInt(offset);
+        if (count < 0) {
+            throw new IOException("Negative point count in a blob");
+        }
+        return addPart(offset + 4, count);
+    }
+
+
+    protected int readInt(int offset)
+            throws IOException
+    {
+        if (offset + 4 > mBuffer.limit()) {
+            throw new IOException("Geometry blob is truncated");
+        }
+        return mBuffer.getInt(offset);
+    }
+
+
+    protected void addGeometry(int type)
+    {
+        if (mGeometryCount == mGeometryTypes.length) {
+            mGeometryTypes = Arrays.copyOf(mGeometryTypes, mGeometryCount * 2);
+            mGeometryParts = Arrays.copyOf(mGeometryParts, mGeometryCount * 2);
+        }
+        mGeometryTypes[mGeometryCount] = type;
+        mGeometryParts[mGeometryCount] = mPartCount;
+        mGeometryCount++;
+    }
+
+
+    protected int addPart(int offset, int count)
+            throws IOException
+    {
+        long end = offset + (long) count * VERTEX_SIZE;
+        if (end > mBuffer.limit()) {
+            throw new IOException("Geometry blob is truncated");
+        }
+        if (mPartCount == mPartOffsets.length) {
+            mPartOffsets = Arrays.copyOf(mPartOffsets, mPartCount * 2);
+            mPartSizes = Arrays.copyOf(mPartSizes, mPartCount * 2);
+        }
+        mPartOffsets[mPartCount] = offset;
+        mPartSizes[mPartCount] = count;
+        mPartCount++;
+        mPointCount += count;
+        return (int) end;
+    }
+
+
+    /**
+     * @return The blob geometry type, one of GeoConstants.GT*
+     */
+    public int getType()
+    {
+        return mType;
+    }
+
+
+    public int getCRS()
+    {
+        return mCRS;
+    }
+
+
+    /**
+     * @return Count of simple geometries, one for a point, a line or a polygon
+     */
+    public int getGeometryCount()
+    {
+        return mGeometryCount;
+    }
+
+
+    /**
+     * @return GTPoint, GTLineString or GTPolygon
+     */
+    public int getGeometryType(int geometry)
+    {
+        return mGeometryTypes[geometry];
+    }
+
+
+    /**
+     * @return Index of the first part of the simple geometry
+     */
+    public int getFirstPart(int geometry)
+    {
+        return mGeometryParts[geometry];
+    }
+
+
+    /**
+     * @return Count of parts of the simple geometry, the rings count for a polygon
+     */
+    public int getPartCount(int geometry)
+    {
+        int end = geometry + 1 < mGeometryCount ? mGeometryParts[geometry + 1] : mPartCount;
+        return end - mGeometryParts[geometry];
+    }
+
+
+    public int getPartCount()
+    {
+        return mPartCount;
+    }
+
+
+    /**
+     * @return True if the blob is in the {@link GeometryBlobCodec} format
+     */
+    public boolean isCompact()
+    {
+        return mCompact;
+    }
+
+
+    /**
+     * @return Byte offset of the first vertex record of the part in the buffer, or index of the
+     * first vertex of the part for a compact blob
+     */
+    public int getPartOffset(int part)
+    {
+        return mPartOffsets[part];
+    }
+
+
+    public int getPointCount(int part)
+    {
+        return mPartSizes[part];
+    }
+
+
+    /**
+     * @return Count of vertices in all parts
+     */
+    public int getPointCount()
+    {
+        return mPointCount;
+    }
+
+
+    public double getX(
+            int part,
+            int index)
+    {
+        if (mCompact) {
+            return mCoordinates[(mPartOffsets[part] + index) * 2];
+        }
+        return mBuffer.getDouble(mPartOffsets[part] + index * VERTEX_SIZE + HEADER_SIZE);
+    }
+
+
+    public double getY(
+            int part,
+            int index)
+    {
+        if (mCompact) {
+            return mCoordinates[(mPartOffsets[part] + index) * 2 + 1];
+        }
+        return mBuffer.getDouble(mPartOffsets[part] + index * VERTEX_SIZE + HEADER_SIZE + 8);
+    }
+
+
+    /**
+     * Copy the part coordinates as x0, y0, x1, y1, ...
+     * @return Count of copied points
+     */
+    public int getCoordinates(
+            int part,
+            double[] coordinates,
+            int position)
+    {
+        int count = mPartSizes[part];
+        if (mCompact) {
+            System.arraycopy(mCoordinates, mPartOffsets[part] * 2, coordinates, position, count * 2);
+            return count;
+        }
+
+        ByteBuffer buffer = mBuffer;
+        int offset = mPartOffsets[part] + HEADER_SIZE;
+        for (int i = 0; i < count; i++) {
+            coordinates[position++] = buffer.getDouble(offset);
+            coordinates[position++] = buffer.getDouble(offset + 8);
+            offset += VERTEX_SIZE;
+        }
+        return count;
+    }
+
+
+    /**
+     * Set the envelope to the bounds of all vertices
+     * @return The same envelope, uninitialized for an empty geometry
+     */
+    public GeoEnvelope getEnvelope(GeoEnvelope envelope)
+    {
+        if (mPointCount == 0) {
+            envelope.unInit();
+            return envelope;
+        }
+        if (mCompact) {
+            return getCompactEnvelope(envelope);
+        }
+
+        ByteBuffer buffer = mBuffer;
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int part = 0; part < mPartCount; part++) {
+            int offset = mPartOffsets[part] + HEADER_SIZE;
+            for (int i = 0, count = mPartSizes[part]; i < count; i++) {
+                double x = buffer.getDouble(offset);
+                double y = buffer.getDouble(offset + 8);
+                if (x < minX) {
+                    minX = x;
+                }
+                if (x > maxX) {
+                    maxX = x;
+                }
+                if (y < minY) {
+                    minY = y;
+                }
+                if (y > maxY) {
+                    maxY = y;
+                }
+                offset += VERTEX_SIZE;
+            }
+        }
+        envelope.set(minX, minY, maxX, maxY);
+        return envelope;
+    }
+
+
+    protected GeoEnvelope getCompactEnvelope(GeoEnvelope envelope)
+    {
+        double[] coordinates = mCoordinates;
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int i = 0, end = mPointCount * 2; i < end; i += 2) {
+            double x = coordinates[i];
+            double y = coordinates[i + 1];
+            if (x < minX) {
+                minX = x;
+            }
+            if (x > maxX) {
+                maxX = x;
+            }
+            if (y < minY) {
+                minY = y;
+            }
+            if (y > maxY) {
+                maxY = y;
+            }
+        }
+        envelope.set(minX, minY, maxX, maxY);
+        return envelope;
+    }
+}
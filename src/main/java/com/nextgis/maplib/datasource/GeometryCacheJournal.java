@@ -0,0 +1,201 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplib.datasource;
+
+import com.nextgis.maplib.api.IGeometryCache;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Append-only log of geometry cache changes made after the last full snapshot. Changes are
+ * collected in memory and appended to the file on save, so a single edit costs a few bytes
+ * instead of rewriting the whole cache.
+ *
+ * The file starts with the generation of the snapshot it belongs to. A journal left from
+ * another snapshot is ignored on replay. Appends are not synced, a torn record at the end of
+ * the file is dropped.
+ */
+public class GeometryCacheJournal {
+
+    protected static final int  MAGIC     = 0x4A52474E; // "NGRJ"
+    protected static final byte ADD       = 1;
+    protected static final byte REMOVE    = 2;
+    protected static final byte CHANGE_ID = 3;
+
+    protected static final int HEADER_SIZE = 12; // magic and generation
+
+    protected ByteArrayOutputStream mPending;
+    protected DataOutputStream      mStream;
+
+    public GeometryCacheJournal() {
+        mPending = new ByteArrayOutputStream();
+        mStream = new DataOutputStream(mPending);
+    }
+
+    public void add(long featureId, GeoEnvelope envelope) {
+        try {
+            mStream.writeByte(ADD);
+            mStream.writeLong(featureId);
+            mStream.writeDouble(envelope.getMinX());
+            mStream.writeDouble(envelope.getMinY());
+            mStream.writeDouble(envelope.getMaxX());
+            mStream.writeDouble(envelope.getMaxY());
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // in-memory stream
+        }
+    }
+
+    public void remove(long featureId) {
+        try {
+            mStream.writeByte(REMOVE);
+            mStream.writeLong(featureId);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void changeId(long oldFeatureId, long newFeatureId) {
+        try {
+            mStream.writeByte(CHANGE_ID);
+            mStream.writeLong(oldFeatureId);
+            mStream.writeLong(newFeatureId);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public boolean hasPending() {
+        return mPending.size() > 0;
+    }
+
+    /**
+     * Drop changes which are not written yet, e.g. when a full snapshot is saved
+     */
+    public void discard() {
+        mPending.reset();
+    }
+
+    /**
+     * Append pending changes to the file. The file is started over if it belongs to another
+     * snapshot.
+     * @param path Journal file
+     * @param generation Generation of the snapshot the changes are made to
+     * @return Journal file size
+     */
+    public long append(File path, long generation) throws IOException {
+        boolean isNew = readGeneration(path) != generation;
+        FileOutputStream stream = new FileOutputStream(path, !isNew);
+        try {
+            if (isNew) {
+                DataOutputStream header = new DataOutputStream(stream);
+                header.writeInt(MAGIC);
+                header.writeLong(generation);
+                header.flush();
+            }
+            mPending.writeTo(stream);
+        } finally {
+            stream.close();
+        }
+        mPending.reset();
+        return path.length();
+    }
+
+    /**
+     * Apply journal changes to the cache
+     * @param path Journal file
+     * @param generation Generation of the loaded snapshot
+     * @param cache Cache to apply changes to
+     * @return false if there is no journal for the snapshot
+     */
+    public static boolean replay(File path, long generation, IGeometryCache cache)
+            throws IOException {
+        if (readGeneration(path) != generation) {
+            return false;
+        }
+
+        long valid = HEADER_SIZE;
+        DataInputStream stream =
+                new DataInputStream(new BufferedInputStream(new FileInputStream(path)));
+        try {
+            stream.skipBytes(HEADER_SIZE);
+            while (true) {
+                int type = stream.read();
+                if (type == ADD) {
+                    long featureId = stream.readLong();
+                    double minX = stream.readDouble();
+                    double minY = stream.readDouble();
+                    double maxX = stream.readDouble();
+                    double maxY = stream.readDouble();
+                    cache.addItem(featureId, new GeoEnvelope(minX, maxX, minY, maxY));
+                    valid += 41;
+                } else if (type == REMOVE) {
+                    cache.removeItem(stream.readLong());
+                    valid += 9;
+                } else if (type == CHANGE_ID) {
+                    long oldFeatureId = stream.readLong();
+                    cache.changeId(oldFeatureId, stream.readLong());
+                    valid += 17;
+                } else {
+                    break; // end of file or garbage after a crash
+                }
+            }
+        } catch (EOFException ignored) {
+            // torn last record
+        } finally {
+            stream.close();
+        }
+
+        // cut the broken tail, so the next changes are appended after the last good record
+        if (valid < path.length()) {
+            RandomAccessFile file = new RandomAccessFile(path, "rw");
+            try {
+                file.setLength(valid);
+            } finally {
+                file.close();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return snapshot generation of the journal or -1 if there is no valid journal
+     */
+    protected static long readGeneration(File path) throws IOException {
+        if (path.length() < HEADER_SIZE) {
+            return -1;
+        }
+        DataInputStream stream = new DataInputStream(new FileInputStream(path));
+        try {
+            return stream.readInt() == MAGIC ? stream.readLong() : -1;
+        } finally {
+            stream.close();
+        }
+    }
+}
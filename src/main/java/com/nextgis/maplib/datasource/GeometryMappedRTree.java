@@ -0,0 +1,958 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * *****************************************************************************
+ * Hilbert sort and packed layout follow https://github.com/mourner/flatbush
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplib.datasource;
+
+import com.nextgis.maplib.api.IFeatureDistance;
+import com.nextgis.maplib.api.IGeometryCache;
+import com.nextgis.maplib.api.IGeometryCacheItem;
+import com.nextgis.maplib.util.Constants;
+import com.nextgis.maplib.util.FileUtil;
+import com.nextgis.maplib.util.LongHashMap;
+import com.nextgis.maplib.util.LongList;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * Geometry cache stored as a packed Hilbert R-tree in a memory-mapped file. Queries run directly
+ * off the mapped buffer, so opening a layer needs no deserialization and almost no heap.
+ *
+ * The packed part is read only. Added items go to a small in-memory delta tree, removed items
+ * are kept as tombstones. Both are merged into a new packed file on save.
+ *
+ * Searches do not lock. Every change publishes a new {@link Snapshot} of the packed part,
+ * tombstones and delta root, which is never changed afterwards, and searches run on the last
+ * published one. Changes are serialized by the instance lock.
+ *
+ * Saving to the file the cache was loaded from only appends the changes to a
+ * {@link GeometryCacheJournal} next to it, the journal is replayed on load. A full snapshot is
+ * written by {@link #compact(File)} or when the journal grows too big.
+ *
+ * File layout (little endian): magic, version, node size, item count, level count, snapshot
+ * generation, level bounds, then fixed size boxes (minX, minY, maxX, maxY, index) level by level from the leaves
+ * up, then (id, box position) pairs sorted by id. A leaf box index is the feature id, a node
+ * box index is the position of its first child.
+ *
+ * Files written by {@link GeometryRTree} are recognized and converted on the next save.
+ */
+public class GeometryMappedRTree implements IGeometryCache {
+
+    protected static final int MAGIC     = 0x5452474E; // "NGRT"
+    protected static final int VERSION   = 2;
+    protected static final int NODE_SIZE = 16;
+    protected static final int BOX_SIZE  = 40; // 4 doubles and a long
+    protected static final int ID_SIZE   = 12; // long id and int box position
+
+    protected static final int GENERATION_OFFSET = 20;
+    protected static final int HEADER_SIZE       = 28;
+    protected static final int HEADER_SIZE_V1    = 20; // no generation
+
+    // the journal is compacted when it is bigger than a quarter of the snapshot, within limits
+    protected static final long JOURNAL_MIN_SIZE = 64 * 1024;
+    protected static final long JOURNAL_MAX_SIZE = 1024 * 1024;
+
+    // tombstones are bits of leaf positions, in blocks of 1024 so a change copies only one block
+    protected static final int REMOVED_BLOCK_SHIFT = 10;
+    protected static final int REMOVED_BLOCK_SIZE  = (1 << REMOVED_BLOCK_SHIFT) / 32;
+
+    protected Packed        mPacked;
+    protected int[][]       mRemoved;
+    protected int           mRemovedCount;
+    protected GeometryRTree mDelta;
+
+    protected volatile Snapshot mSnapshot;
+
+    protected File    mPath;
+    protected boolean mHasEdits;
+
+    protected GeometryCacheJournal mJournal;
+    // the packed part is the snapshot in mPath, so changes may go to its journal
+    protected boolean              mJournaled;
+    protected long                 mGeneration;
+
+    public GeometryMappedRTree() {
+        this(GeometryRTree.SeedPicker.QUADRATIC);
+    }
+
+    /**
+     * @param seedPicker Insertion algorithm of the in-memory tree holding changes since the last
+     *                   full snapshot. The snapshot itself is always Hilbert packed.
+     */
+    public GeometryMappedRTree(GeometryRTree.SeedPicker seedPicker) {
+        mDelta = new GeometryRTree(seedPicker);
+        mJournal = new GeometryCacheJournal();
+        setPacked(null);
+        publish();
+    }
+
+    @Override
+    public synchronized boolean isItemExist(long featureId) {
+        return mDelta.isItemExist(featureId) || isPacked(featureId);
+    }
+
+    @Override
+    public synchronized IGeometryCacheItem addItem(long id, GeoEnvelope envelope) {
+        remove(id);
+        mHasEdits = true;
+        IGeometryCacheItem item = mDelta.addItem(id, envelope);
+        if (mJournaled) {
+            mJournal.add(id, envelope);
+        }
+        publish();
+        return item;
+    }
+
+    @Override
+    public synchronized void bulkLoad(long[] ids, double[] envelopes, int count) {
+        mDelta.clear();
+        setPacked(pack(ids, envelopes, count));
+        mHasEdits = true;
+        stopJournal();
+        publish();
+    }
+
+    @Override
+    public synchronized List<IGeometryCacheItem> getItem(long featureId) {
+        List<IGeometryCacheItem> result = mDelta.getItem(featureId);
+        if (result.isEmpty()) {
+            int position = mPacked.findPosition(featureId);
+            if (position != Constants.NOT_FOUND && !isRemoved(mRemoved, position)) {
+                result.add(mPacked.readItem(position));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized IGeometryCacheItem removeItem(long featureId) {
+        IGeometryCacheItem item = remove(featureId);
+        if (null != item && mJournaled) {
+            mJournal.remove(featureId);
+        }
+        publish();
+        return item;
+    }
+
+    protected IGeometryCacheItem remove(long featureId) {
+        IGeometryCacheItem item = mDelta.removeItem(featureId);
+        if (null != item) {
+            mHasEdits = true;
+            return item;
+        }
+
+        int position = mPacked.findPosition(featureId);
+        if (position == Constants.NOT_FOUND || isRemoved(mRemoved, position)) {
+            return null;
+        }
+
+        mRemoved = setRemoved(mRemoved, position);
+        mRemovedCount++;
+        mHasEdits = true;
+        return mPacked.readItem(position);
+    }
+
+    @Override
+    public int size() {
+        return mSnapshot.mSize;
+    }
+
+    @Override
+    public synchronized void clear() {
+        mDelta.clear();
+        setPacked(null);
+        mHasEdits = true;
+        stopJournal();
+        publish();
+    }
+
+    @Override
+    public List<IGeometryCacheItem> search(GeoEnvelope extent) {
+        Snapshot snapshot = mSnapshot;
+        List<IGeometryCacheItem> result = new LinkedList<>();
+        snapshot.mPacked.search(extent.getMinX(), extent.getMinY(), extent.getMaxX(),
+                                extent.getMaxY(), snapshot.mRemoved, null, result);
+        mDelta.search(extent, snapshot.mDelta, result);
+        return result;
+    }
+
+    @Override
+    public void search(double minX, double minY, double maxX, double maxY, LongConsumer visitor) {
+        Snapshot snapshot = mSnapshot;
+        snapshot.mPacked.search(minX, minY, maxX, maxY, snapshot.mRemoved, visitor, null);
+        mDelta.search(minX, minY, maxX, maxY, snapshot.mDelta, visitor);
+    }
+
+    @Override
+    public int search(double minX, double minY, double maxX, double maxY, LongList result) {
+        result.clear();
+        search(minX, minY, maxX, maxY, (LongConsumer) result);
+        return result.size();
+    }
+
+    @Override
+    public int nearest(double x, double y, int k, double maxDistance, IFeatureDistance distance,
+                       LongList result) {
+        Snapshot snapshot = mSnapshot;
+        result.clear();
+        NearestQueue queue = new NearestQueue(x, y, maxDistance, distance);
+        queue.push(0, 0, snapshot.mDelta, NearestQueue.NODE);
+        Packed packed = snapshot.mPacked;
+        if (packed.mNumItems > 0) {
+            queue.push(0, packed.mLevelBounds[packed.mLevelBounds.length - 1] - 1, null,
+                       NearestQueue.NODE);
+        }
+        while (queue.poll(k, result)) {
+            if (null != queue.getNode()) {
+                mDelta.addNearest((GeometryRTree.Node) queue.getNode(), queue);
+            } else {
+                packed.addNearest((int) queue.getValue(), snapshot.mRemoved, queue);
+            }
+        }
+        return result.size();
+    }
+
+    @Override
+    public List<IGeometryCacheItem> getAll() {
+        Snapshot snapshot = mSnapshot;
+        List<IGeometryCacheItem> result = new LinkedList<>();
+        for (int i = 0; i < snapshot.mPacked.mNumItems; i++) {
+            if (!isRemoved(snapshot.mRemoved, i)) {
+                result.add(snapshot.mPacked.readItem(i));
+            }
+        }
+        mDelta.getAll(snapshot.mDelta, result);
+        return result;
+    }
+
+    @Override
+    public synchronized boolean changeId(long oldFeatureId, long newFeatureId) {
+        if (oldFeatureId == newFeatureId) {
+            return isItemExist(oldFeatureId);
+        }
+
+        GeoEnvelope envelope;
+        if (mDelta.isItemExist(oldFeatureId)) {
+            envelope = null;
+        } else if (isPacked(oldFeatureId)) {
+            envelope = mPacked.readItem(mPacked.findPosition(oldFeatureId)).getEnvelope();
+        } else {
+            return false;
+        }
+
+        remove(newFeatureId);
+        if (null == envelope) {
+            mDelta.changeId(oldFeatureId, newFeatureId);
+        } else {
+            remove(oldFeatureId);
+            mDelta.addItem(newFeatureId, envelope);
+        }
+        if (mJournaled) {
+            mJournal.changeId(oldFeatureId, newFeatureId);
+        }
+        mHasEdits = true;
+        publish();
+        return true;
+    }
+
+    @Override
+    public void changeIdForAll(long from, long to, GeometryRTree.Node n) {
+        changeId(from, to);
+    }
+
+    @Override
+    public synchronized void save(File path) {
+        boolean isSameFile = null != mPath && mPath.equals(path);
+        if (isSameFile && !mHasEdits) {
+            return;
+        }
+
+        if (isSameFile && mJournaled) {
+            try {
+                long size = mJournal.append(getJournalPath(path), mPacked.mGeneration);
+                mHasEdits = false;
+                long limit = Math.max(JOURNAL_MIN_SIZE, mPacked.mBuffer.capacity() / 4);
+                if (size <= Math.min(limit, JOURNAL_MAX_SIZE)) {
+                    return;
+                }
+            } catch (IOException e) {
+                e.printStackTrace(); // write a full snapshot instead
+            }
+        }
+
+        write(path);
+    }
+
+    /**
+     * Write a full snapshot and drop the journal, e.g. when the layer is closed
+     */
+    @Override
+    public synchronized void compact(File path) {
+        boolean isSameFile = null != mPath && mPath.equals(path);
+        if (isSameFile && !mHasEdits && !getJournalPath(path).exists()) {
+            return;
+        }
+        write(path);
+    }
+
+    protected void write(File path) {
+        // merge packed items, tombstones and delta to the new packed tree
+        int count = mPacked.mNumItems - mRemovedCount + mDelta.size();
+        long[] ids = new long[count];
+        double[] envelopes = new double[count * 4];
+        int n = 0;
+        ByteBuffer buffer = mPacked.mBuffer;
+        for (int i = 0; i < mPacked.mNumItems; i++) {
+            if (!isRemoved(mRemoved, i)) {
+                ids[n] = mPacked.getIndex(i);
+                int box = mPacked.mBoxOffset + i * BOX_SIZE;
+                int offset = n * 4;
+                envelopes[offset] = buffer.getDouble(box);
+                envelopes[offset + 1] = buffer.getDouble(box + 8);
+                envelopes[offset + 2] = buffer.getDouble(box + 16);
+                envelopes[offset + 3] = buffer.getDouble(box + 24);
+                n++;
+            }
+        }
+        for (IGeometryCacheItem item : mDelta.getAll()) {
+            GeoEnvelope envelope = item.getEnvelope();
+            ids[n] = item.getFeatureId();
+            int offset = n * 4;
+            envelopes[offset] = envelope.getMinX();
+            envelopes[offset + 1] = envelope.getMinY();
+            envelopes[offset + 2] = envelope.getMaxX();
+            envelopes[offset + 3] = envelope.getMaxY();
+            n++;
+        }
+        ByteBuffer packed = pack(ids, envelopes, n);
+        // a journal left from the previous snapshot will not match it
+        long generation = mGeneration + 1;
+        packed.putLong(GENERATION_OFFSET, generation);
+
+        // write aside and rename, the old file may still be mapped
+        File tmp = new File(path.getParentFile(), path.getName() + ".tmp");
+        try {
+            FileUtil.createDir(path.getParentFile());
+            FileOutputStream fileOutputStream = new FileOutputStream(tmp);
+            FileChannel channel = fileOutputStream.getChannel();
+            packed.rewind();
+            while (packed.hasRemaining()) {
+                channel.write(packed);
+            }
+            fileOutputStream.getFD().sync();
+            fileOutputStream.close();
+
+            if (!tmp.renameTo(path)) {
+                throw new IOException("Failed to rename " + tmp + " to " + path);
+            }
+            getJournalPath(path).delete();
+
+            mPath = path;
+            mGeneration = generation;
+            mDelta.clear();
+            setPacked(map(path));
+            mJournal.discard();
+            mJournaled = true;
+            mHasEdits = false;
+            publish();
+        } catch (RuntimeException | IOException e) {
+            e.printStackTrace();
+            tmp.delete();
+        }
+    }
+
+    @Override
+    public synchronized void load(File path) {
+        mDelta.clear();
+        setPacked(null);
+        stopJournal();
+        mHasEdits = false;
+
+        if (!path.exists()) {
+            publish();
+            return;
+        }
+
+        mPath = path;
+
+        try {
+            if (isPackedFile(path)) {
+                setPacked(map(path));
+                mGeneration = mPacked.mGeneration;
+                GeometryCacheJournal.replay(getJournalPath(path), mGeneration, this);
+                mJournaled = true;
+                mHasEdits = false;
+                return;
+            }
+
+            // plain list or old object tree format, convert it on the next save
+            IGeometryCache tree;
+            if (GeometryPlainList.isPlainListFile(path)) {
+                tree = new GeometryPlainList();
+            } else {
+                tree = new GeometryRTree();
+            }
+            tree.load(path);
+            List<IGeometryCacheItem> items = tree.getAll();
+            long[] ids = new long[items.size()];
+            double[] envelopes = new double[items.size() * 4];
+            int n = 0;
+            for (IGeometryCacheItem item : items) {
+                GeoEnvelope envelope = item.getEnvelope();
+                ids[n] = item.getFeatureId();
+                envelopes[n * 4] = envelope.getMinX();
+                envelopes[n * 4 + 1] = envelope.getMinY();
+                envelopes[n * 4 + 2] = envelope.getMaxX();
+                envelopes[n * 4 + 3] = envelope.getMaxY();
+                n++;
+            }
+            setPacked(pack(ids, envelopes, n));
+            mHasEdits = true;
+        } catch (RuntimeException | IOException e) {
+            e.printStackTrace();
+            mDelta.clear();
+            setPacked(null);
+            stopJournal();
+        } finally {
+            publish();
+        }
+    }
+
+    @Override
+    public GeometryRTree.Node getRoot() {
+        return mDelta.getRoot();
+    }
+
+    protected boolean isPacked(long featureId) {
+        int position = mPacked.findPosition(featureId);
+        return position != Constants.NOT_FOUND && !isRemoved(mRemoved, position);
+    }
+
+    protected void stopJournal() {
+        mJournal.discard();
+        mJournaled = false;
+    }
+
+    protected static File getJournalPath(File path) {
+        return new File(path.getParentFile(), path.getName() + ".journal");
+    }
+
+    /**
+     * Makes the changes visible to searches
+     */
+    protected void publish() {
+        mSnapshot = new Snapshot(mPacked, mRemoved, mDelta.getRoot(),
+                                 mPacked.mNumItems - mRemovedCount + mDelta.size());
+    }
+
+    /**
+     * Replace the packed part, tombstones are dropped
+     */
+    protected void setPacked(ByteBuffer buffer) {
+        mPacked = new Packed(buffer);
+        mRemoved = new int[(mPacked.mNumItems >> REMOVED_BLOCK_SHIFT) + 1][];
+        mRemovedCount = 0;
+    }
+
+    protected static boolean isRemoved(int[][] removed, int position) {
+        int[] block = removed[position >> REMOVED_BLOCK_SHIFT];
+        return null != block && (block[(position >> 5) & (REMOVED_BLOCK_SIZE - 1)] & (1 << position)) != 0;
+    }
+
+    /**
+     * @return copy of the tombstones with the position set, the given ones are not changed
+     */
+    protected static int[][] setRemoved(int[][] removed, int position) {
+        int[][] result = removed.clone();
+        int[] block = result[position >> REMOVED_BLOCK_SHIFT];
+        block = null == block ? new int[REMOVED_BLOCK_SIZE] : block.clone();
+        block[(position >> 5) & (REMOVED_BLOCK_SIZE - 1)] |= 1 << position;
+        result[position >> REMOVED_BLOCK_SHIFT] = block;
+        return result;
+    }
+
+    protected static boolean isPackedFile(File path) throws IOException {
+        if (path.length() < 20) {
+            return false;
+        }
+        DataInputStream stream = new DataInputStream(new FileInputStream(path));
+        int magic = Integer.reverseBytes(stream.readInt());
+        stream.close();
+        return magic == MAGIC;
+    }
+
+    protected static ByteBuffer map(File path) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            // the mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                          .order(ByteOrder.LITTLE_ENDIAN);
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Build the packed tree. Items are sorted by the Hilbert value of their centers, then every
+     * NODE_SIZE boxes of a level get a parent box until a single root is left.
+     */
+    protected static ByteBuffer pack(long[] ids, double[] envelopes, int count) {
+        // keep the last envelope for duplicated ids
+        long[] sortedIds = Arrays.copyOf(ids, count);
+        Arrays.sort(sortedIds);
+        for (int i = 1; i < count; i++) {
+            if (sortedIds[i] == sortedIds[i - 1]) {
+                return packUnique(ids, envelopes, count);
+            }
+        }
+
+        List<Integer> bounds = new ArrayList<>();
+        int levelSize = count;
+        int total = count;
+        bounds.add(total);
+        while (levelSize > 1) {
+            levelSize = (levelSize + NODE_SIZE - 1) / NODE_SIZE;
+            total += levelSize;
+            bounds.add(total);
+        }
+
+        int boxOffset = HEADER_SIZE + bounds.size() * 4;
+        int idOffset = boxOffset + total * BOX_SIZE;
+        ByteBuffer buffer = ByteBuffer.allocate(idOffset + count * ID_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, NODE_SIZE);
+        buffer.putInt(12, count);
+        buffer.putInt(16, bounds.size());
+        for (int i = 0; i < bounds.size(); i++) {
+            buffer.putInt(HEADER_SIZE + i * 4, bounds.get(i));
+        }
+        if (count == 0) {
+            return buffer;
+        }
+
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            minX = Math.min(minX, envelopes[i * 4]);
+            minY = Math.min(minY, envelopes[i * 4 + 1]);
+            maxX = Math.max(maxX, envelopes[i * 4 + 2]);
+            maxY = Math.max(maxY, envelopes[i * 4 + 3]);
+        }
+        double scaleX = maxX > minX ? 0xFFFF / (maxX - minX) : 0;
+        double scaleY = maxY > minY ? 0xFFFF / (maxY - minY) : 0;
+
+        // the unsigned 32 bit hilbert value over the 31 bit item index keeps the key positive,
+        // so a plain primitive sort orders it
+        long[] order = new long[count];
+        for (int i = 0; i < count; i++) {
+            int offset = i * 4;
+            int x = (int) (scaleX * ((envelopes[offset] + envelopes[offset + 2]) / 2 - minX));
+            int y = (int) (scaleY * ((envelopes[offset + 1] + envelopes[offset + 3]) / 2 - minY));
+            order[i] = (hilbert(x, y) << 31) | i;
+        }
+        Arrays.sort(order);
+
+        long[] idKeys = new long[count];
+        int[] idPositions = new int[count];
+        for (int position = 0; position < count; position++) {
+            int i = (int) (order[position] & Integer.MAX_VALUE);
+            int box = boxOffset + position * BOX_SIZE;
+            buffer.putDouble(box, envelopes[i * 4]);
+            buffer.putDouble(box + 8, envelopes[i * 4 + 1]);
+            buffer.putDouble(box + 16, envelopes[i * 4 + 2]);
+            buffer.putDouble(box + 24, envelopes[i * 4 + 3]);
+            buffer.putLong(box + 32, ids[i]);
+            idKeys[position] = ids[i];
+            idPositions[position] = position;
+        }
+
+        int parent = count;
+        int childStart = 0;
+        for (int level = 1; level < bounds.size(); level++) {
+            int childEnd = bounds.get(level - 1);
+            for (int child = childStart; child < childEnd; child += NODE_SIZE) {
+                double nodeMinX = Double.MAX_VALUE, nodeMinY = Double.MAX_VALUE;
+                double nodeMaxX = -Double.MAX_VALUE, nodeMaxY = -Double.MAX_VALUE;
+                int last = Math.min(child + NODE_SIZE, childEnd);
+                for (int position = child; position < last; position++) {
+                    int box = boxOffset + position * BOX_SIZE;
+                    nodeMinX = Math.min(nodeMinX, buffer.getDouble(box));
+                    nodeMinY = Math.min(nodeMinY, buffer.getDouble(box + 8));
+                    nodeMaxX = Math.max(nodeMaxX, buffer.getDouble(box + 16));
+                    nodeMaxY = Math.max(nodeMaxY, buffer.getDouble(box + 24));
+                }
+                int box = boxOffset + parent * BOX_SIZE;
+                buffer.putDouble(box, nodeMinX);
+                buffer.putDouble(box + 8, nodeMinY);
+                buffer.putDouble(box + 16, nodeMaxX);
+                buffer.putDouble(box + 24, nodeMaxY);
+                buffer.putLong(box + 32, child);
+                parent++;
+            }
+            childStart = childEnd;
+        }
+
+        sort(idKeys, idPositions, 0, count - 1);
+        for (int i = 0; i < count; i++) {
+            buffer.putLong(idOffset + i * ID_SIZE, idKeys[i]);
+            buffer.putInt(idOffset + i * ID_SIZE + 8, idPositions[i]);
+        }
+        return buffer;
+    }
+
+    protected static ByteBuffer packUnique(long[] ids, double[] envelopes, int count) {
+        LongHashMap<Integer> last = new LongHashMap<>(count);
+        for (int i = 0; i < count; i++) {
+            last.put(ids[i], i);
+        }
+
+        long[] uniqueIds = new long[last.size()];
+        double[] uniqueEnvelopes = new double[last.size() * 4];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            if (last.get(ids[i]) == i) {
+                uniqueIds[n] = ids[i];
+                System.arraycopy(envelopes, i * 4, uniqueEnvelopes, n * 4, 4);
+                n++;
+            }
+        }
+        return pack(uniqueIds, uniqueEnvelopes, n);
+    }
+
+    /**
+     * Sorts ids with their positions in place.
+     */
+    protected static void sort(long[] keys, int[] values, int low, int high) {
+        while (high - low > 16) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle] < keys[low]) swap(keys, values, middle, low);
+            if (keys[high] < keys[low]) swap(keys, values, high, low);
+            if (keys[high] < keys[middle]) swap(keys, values, high, middle);
+            long pivot = keys[middle];
+
+            int i = low, j = high;
+            while (i <= j) {
+                while (keys[i] < pivot) i++;
+                while (keys[j] > pivot) j--;
+                if (i <= j) {
+                    swap(keys, values, i++, j--);
+                }
+            }
+
+            if (j - low < high - i) {
+                sort(keys, values, low, j);
+                low = i;
+            } else {
+                sort(keys, values, i, high);
+                high = j;
+            }
+        }
+
+        for (int i = low + 1; i <= high; i++) {
+            long key = keys[i];
+            int value = values[i];
+            int j = i - 1;
+            while (j >= low && keys[j] > key) {
+                keys[j + 1] = keys[j];
+                values[j + 1] = values[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            values[j + 1] = value;
+        }
+    }
+
+    private static void swap(long[] keys, int[] values, int i, int j) {
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        int value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+
+    /**
+     * Hilbert curve index of a point on a 2^16 x 2^16 grid. Branch free version from
+     * https://github.com/rawrunprotected/hilbert_curves (public domain).
+     */
+    protected static long hilbert(int x, int y) {
+        int a = x ^ y;
+        int b = 0xFFFF ^ a;
+        int c = 0xFFFF ^ (x | y);
+        int d = x & (y ^ 0xFFFF);
+
+        int A = a | (b >> 1);
+        int B = (a >> 1) ^ a;
+        int C = ((c >> 1) ^ (b & (d >> 1))) ^ c;
+        int D = ((a & (c >> 1)) ^ (d >> 1)) ^ d;
+
+        a = A; b = B; c = C; d = D;
+        A = ((a & (a >> 2)) ^ (b & (b >> 2)));
+        B = ((a & (b >> 2)) ^ (b & ((a ^ b) >> 2)));
+        C ^= ((a & (c >> 2)) ^ (b & (d >> 2)));
+        D ^= ((b & (c >> 2)) ^ ((a ^ b) & (d >> 2)));
+
+        a = A; b = B; c = C; d = D;
+        A = ((a & (a >> 4)) ^ (b & (b >> 4)));
+        B = ((a & (b >> 4)) ^ (b & ((a ^ b) >> 4)));
+        C ^= ((a & (c >> 4)) ^ (b & (d >> 4)));
+        D ^= ((b & (c >> 4)) ^ ((a ^ b) & (d >> 4)));
+
+        a = A; b = B; c = C; d = D;
+        C ^= ((a & (c >> 8)) ^ (b & (d >> 8)));
+        D ^= ((b & (c >> 8)) ^ ((a ^ b) & (d >> 8)));
+
+        a = C ^ (C >> 1);
+        b = D ^ (D >> 1);
+
+        int i0 = x ^ y;
+        int i1 = b | (0xFFFF ^ (i0 | a));
+
+        i0 = (i0 | (i0 << 8)) & 0x00FF00FF;
+        i0 = (i0 | (i0 << 4)) & 0x0F0F0F0F;
+        i0 = (i0 | (i0 << 2)) & 0x33333333;
+        i0 = (i0 | (i0 << 1)) & 0x55555555;
+
+        i1 = (i1 | (i1 << 8)) & 0x00FF00FF;
+        i1 = (i1 | (i1 << 4)) & 0x0F0F0F0F;
+        i1 = (i1 | (i1 << 2)) & 0x33333333;
+        i1 = (i1 | (i1 << 1)) & 0x55555555;
+
+        return ((i1 << 1) | i0) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Header and queries of a packed tree buffer. Never changed after it is created.
+     */
+    protected static class Packed
+    {
+        protected final ByteBuffer mBuffer;
+        protected final int        mNodeSize;
+        protected final int        mNumItems;
+        protected final int[]      mLevelBounds;
+        protected final int        mBoxOffset;
+        protected final int        mIdOffset;
+        protected final long       mGeneration;
+
+        protected Packed(ByteBuffer buffer)
+        {
+            mBuffer = buffer;
+            if (null == buffer) {
+                mNodeSize = NODE_SIZE;
+                mNumItems = 0;
+                mLevelBounds = new int[] {0};
+                mBoxOffset = mIdOffset = 0;
+                mGeneration = 0;
+                return;
+            }
+
+            int version = buffer.getInt(4);
+            if (buffer.getInt(0) != MAGIC || version < 1 || version > VERSION) {
+                throw new IllegalArgumentException("Unsupported geometry cache format");
+            }
+            int headerSize = version == 1 ? HEADER_SIZE_V1 : HEADER_SIZE;
+            mGeneration = version == 1 ? 0 : buffer.getLong(GENERATION_OFFSET);
+            mNodeSize = buffer.getInt(8);
+            mNumItems = buffer.getInt(12);
+            mLevelBounds = new int[buffer.getInt(16)];
+            for (int i = 0; i < mLevelBounds.length; i++) {
+                mLevelBounds[i] = buffer.getInt(headerSize + i * 4);
+            }
+            mBoxOffset = headerSize + mLevelBounds.length * 4;
+            mIdOffset = mBoxOffset + mLevelBounds[mLevelBounds.length - 1] * BOX_SIZE;
+        }
+
+        /**
+         * Found ids go to the visitor if any, otherwise items go to the list
+         */
+        protected void search(double minX, double minY, double maxX, double maxY,
+                              int[][] removed, LongConsumer visitor,
+                              List<IGeometryCacheItem> result)
+        {
+            if (mNumItems == 0) {
+                return;
+            }
+
+            int[] stack = new int[mNodeSize * mLevelBounds.length];
+            int top = 0;
+            int node = mLevelBounds[mLevelBounds.length - 1] - 1; // root
+            while (true) {
+                int end = Math.min(node + mNodeSize, levelEnd(node));
+                for (int position = node; position < end; position++) {
+                    int box = mBoxOffset + position * BOX_SIZE;
+                    if (mBuffer.getDouble(box) > maxX || mBuffer.getDouble(box + 8) > maxY ||
+                        mBuffer.getDouble(box + 16) < minX || mBuffer.getDouble(box + 24) < minY) {
+                        continue;
+                    }
+
+                    long index = mBuffer.getLong(box + 32);
+                    if (position >= mNumItems) {
+                        if (top == stack.length) {
+                            stack = Arrays.copyOf(stack, top * 2);
+                        }
+                        stack[top++] = (int) index;
+                    } else if (!isRemoved(removed, position)) {
+                        if (null != visitor) {
+                            visitor.accept(index);
+                        } else {
+                            result.add(readItem(position));
+                        }
+                    }
+                }
+
+                if (top == 0) {
+                    break;
+                }
+                node = stack[--top];
+            }
+        }
+
+        /**
+         * Add the boxes of a node to the queue
+         * @param first Position of the first box, the root node is the root box alone
+         */
+        protected void addNearest(int first, int[][] removed, NearestQueue queue)
+        {
+            int end = Math.min(first + mNodeSize, levelEnd(first));
+            for (int position = first; position < end; position++) {
+                int box = mBoxOffset + position * BOX_SIZE;
+                double minX = mBuffer.getDouble(box);
+                double minY = mBuffer.getDouble(box + 8);
+                double maxX = mBuffer.getDouble(box + 16);
+                double maxY = mBuffer.getDouble(box + 24);
+                long index = mBuffer.getLong(box + 32);
+                if (position >= mNumItems) {
+                    queue.add(minX, minY, maxX, maxY, index, null, NearestQueue.NODE);
+                } else if (!isRemoved(removed, position)) {
+                    queue.add(minX, minY, maxX, maxY, index, null, NearestQueue.ITEM);
+                }
+            }
+        }
+
+        protected int levelEnd(int position)
+        {
+            for (int bound : mLevelBounds) {
+                if (position < bound) {
+                    return bound;
+                }
+            }
+            return mLevelBounds[mLevelBounds.length - 1];
+        }
+
+        protected long getIndex(int position)
+        {
+            return mBuffer.getLong(mBoxOffset + position * BOX_SIZE + 32);
+        }
+
+        protected IGeometryCacheItem readItem(int position)
+        {
+            int box = mBoxOffset + position * BOX_SIZE;
+            GeoEnvelope envelope = new GeoEnvelope(mBuffer.getDouble(box), mBuffer.getDouble(box + 16),
+                                                   mBuffer.getDouble(box + 8), mBuffer.getDouble(box + 24));
+            return new PackedItem(mBuffer.getLong(box + 32), envelope);
+        }
+
+        /**
+         * Binary search over the id section
+         * @return leaf box position or NOT_FOUND
+         */
+        protected int findPosition(long featureId)
+        {
+            int low = 0;
+            int high = mNumItems - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                long id = mBuffer.getLong(mIdOffset + middle * ID_SIZE);
+                if (id < featureId) {
+                    low = middle + 1;
+                } else if (id > featureId) {
+                    high = middle - 1;
+                } else {
+                    return mBuffer.getInt(mIdOffset + middle * ID_SIZE + 8);
+                }
+            }
+            return Constants.NOT_FOUND;
+        }
+    }
+
+    /**
+     * State seen by searches
+     */
+    protected static class Snapshot
+    {
+        protected final Packed             mPacked;
+        protected final int[][]            mRemoved;
+        protected final GeometryRTree.Node mDelta;
+        protected final int                mSize;
+
+        protected Snapshot(Packed packed, int[][] removed, GeometryRTree.Node delta, int size)
+        {
+            mPacked = packed;
+            mRemoved = removed;
+            mDelta = delta;
+            mSize = size;
+        }
+    }
+
+    protected static class PackedItem implements IGeometryCacheItem
+    {
+        protected long        mFeatureId;
+        protected GeoEnvelope mEnvelope;
+
+        protected PackedItem(long featureId, GeoEnvelope envelope)
+        {
+            mFeatureId = featureId;
+            mEnvelope = envelope;
+        }
+
+        @Override
+        public GeoEnvelope getEnvelope()
+        {
+            return mEnvelope;
+        }
+
+        @Override
+        public long getFeatureId()
+        {
+            return mFeatureId;
+        }
+
+        @Override
+        public void setFeatureId(long id)
+        {
+            mFeatureId = id;
+        }
+    }
+}
@@ -21,107 +21,218 @@
 
 package com.nextgis.maplib.datasource;
 
+import com.nextgis.maplib.api.IFeatureDistance;
 import com.nextgis.maplib.api.IGeometryCache;
 import com.nextgis.maplib.api.IGeometryCacheItem;
+import com.nextgis.maplib.util.Constants;
+import com.nextgis.maplib.util.FileUtil;
+import com.nextgis.maplib.util.LongIntHashMap;
+import com.nextgis.maplib.util.LongList;
 
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.function.LongConsumer;
 
 /**
- * Geometry cache based on plain list (ArrayList)
+ * Geometry cache for small layers: feature ids and envelope bounds are kept in parallel
+ * primitive arrays and searched by a linear scan, an id to index hash serves id lookups.
+ *
+ * File format (little endian): magic, version, count, then ids, min x, min y, max x and max y
+ * columns. Files of other caches are converted on load.
  */
 public class GeometryPlainList implements IGeometryCache {
-    protected List<VectorCacheItem> mVectorCacheItems;
+    protected static final int MAGIC       = 0x4C50474E; // "NGPL"
+    protected static final int VERSION     = 1;
+    protected static final int HEADER_SIZE = 12;
+
+    protected long[]         mIds;
+    protected double[]       mMinX, mMinY, mMaxX, mMaxY;
+    protected int            mSize;
+    protected LongIntHashMap mIndex;
+
+    protected File    mPath;
+    protected boolean mHasEdits;
 
     public GeometryPlainList() {
-        mVectorCacheItems = new LinkedList<>();
+        allocate(16);
+        mIndex = new LongIntHashMap();
     }
 
     @Override
-    public boolean isItemExist(long featureId) {
-        for(VectorCacheItem item : mVectorCacheItems){
-            if(item.getFeatureId() == featureId)
-                return true;
-        }
-        return false;
+    public synchronized boolean isItemExist(long featureId) {
+        return mIndex.containsKey(featureId);
     }
 
+    /**
+     * Add item to the cache, the envelope of an existing item is replaced
+     */
     @Override
-    public IGeometryCacheItem addItem(long id, GeoEnvelope envelope) {
-        final VectorCacheItem item = new VectorCacheItem(envelope, id);
-        mVectorCacheItems.add(item);
-        return item;
+    public synchronized IGeometryCacheItem addItem(long id, GeoEnvelope envelope) {
+        int index = mIndex.get(id);
+        if (index == Constants.NOT_FOUND) {
+            if (mSize == mIds.length) {
+                grow(mSize * 2);
+            }
+            index = mSize++;
+            mIds[index] = id;
+            mIndex.put(id, index);
+        }
+        mMinX[index] = envelope.getMinX();
+        mMinY[index] = envelope.getMinY();
+        mMaxX[index] = envelope.getMaxX();
+        mMaxY[index] = envelope.getMaxY();
+        mHasEdits = true;
+        return new VectorCacheItem(envelope, id);
     }
 
     @Override
-    public List<IGeometryCacheItem> getItem(long featureId) {
-        List<IGeometryCacheItem> result= new ArrayList<>();
-        for (VectorCacheItem cacheItem : mVectorCacheItems) {
-            if (cacheItem.getFeatureId() == featureId) {
-                result.add(cacheItem);
+    public synchronized void bulkLoad(long[] ids, double[] envelopes, int count) {
+        allocate(Math.max(count, 16));
+        mIndex = new LongIntHashMap(count);
+        for (int i = 0; i < count; i++) {
+            int offset = i * 4;
+            int index = mIndex.get(ids[i]);
+            if (index == Constants.NOT_FOUND) {
+                index = mSize++;
+                mIds[index] = ids[i];
+                mIndex.put(ids[i], index);
             }
+            mMinX[index] = envelopes[offset];
+            mMinY[index] = envelopes[offset + 1];
+            mMaxX[index] = envelopes[offset + 2];
+            mMaxY[index] = envelopes[offset + 3];
+        }
+        mHasEdits = true;
+    }
+
+    @Override
+    public synchronized List<IGeometryCacheItem> getItem(long featureId) {
+        List<IGeometryCacheItem> result = new ArrayList<>(1);
+        int index = mIndex.get(featureId);
+        if (index != Constants.NOT_FOUND) {
+            result.add(getItemAt(index));
         }
         return result;
     }
 
     @Override
-    public IGeometryCacheItem removeItem(long featureId) {
-        Iterator<VectorCacheItem> cacheItemIterator = mVectorCacheItems.iterator();
-        while (cacheItemIterator.hasNext()) {
-            VectorCacheItem cacheItem = cacheItemIterator.next();
+    public synchronized IGeometryCacheItem removeItem(long featureId) {
+        int index = mIndex.remove(featureId);
+        if (index == Constants.NOT_FOUND) {
+            return null;
+        }
+        IGeometryCacheItem item = getItemAt(index);
+
+        // move the last item to the gap
+        int last = --mSize;
+        if (index != last) {
+            mIds[index] = mIds[last];
+            mMinX[index] = mMinX[last];
+            mMinY[index] = mMinY[last];
+            mMaxX[index] = mMaxX[last];
+            mMaxY[index] = mMaxY[last];
+            mIndex.put(mIds[index], index);
+        }
+        mHasEdits = true;
+        return item;
+    }
+
+    @Override
+    public synchronized int size() {
+        return mSize;
+    }
 
-            if (cacheItem.getFeatureId() == featureId) {
-                cacheItemIterator.remove();
+    @Override
+    public synchronized void clear() {
+        allocate(16);
+        mIndex.clear();
+        mHasEdits = true;
+    }
 
-                return cacheItem;
+    @Override
+    public synchronized List<IGeometryCacheItem> search(final GeoEnvelope extent) {
+        final List<IGeometryCacheItem> ret = new LinkedList<>();
+        double minX = extent.getMinX(), minY = extent.getMinY();
+        double maxX = extent.getMaxX(), maxY = extent.getMaxY();
+        for (int i = 0; i < mSize; i++) {
+            if (mMinX[i] <= maxX && mMinY[i] <= maxY && mMaxX[i] >= minX && mMaxY[i] >= minY) {
+                ret.add(getItemAt(i));
             }
         }
-        return null;
+        return ret;
     }
 
     @Override
-    public int size() {
-        return mVectorCacheItems.size();
+    public synchronized void search(double minX, double minY, double maxX, double maxY,
+                                    LongConsumer visitor) {
+        // non short-circuit '&' keeps the loop body free of branches except the hit
+        long[] ids = mIds;
+        double[] itemMinX = mMinX, itemMinY = mMinY, itemMaxX = mMaxX, itemMaxY = mMaxY;
+        for (int i = 0, size = mSize; i < size; i++) {
+            if (itemMinX[i] <= maxX & itemMinY[i] <= maxY & itemMaxX[i] >= minX &
+                itemMaxY[i] >= minY) {
+                visitor.accept(ids[i]);
+            }
+        }
     }
 
     @Override
-    public void clear() {
-        mVectorCacheItems.clear();
+    public int search(double minX, double minY, double maxX, double maxY, LongList result) {
+        result.clear();
+        search(minX, minY, maxX, maxY, (LongConsumer) result);
+        return result.size();
     }
 
     @Override
-    public List<IGeometryCacheItem> search(final GeoEnvelope extent) {
-
-        final List<IGeometryCacheItem> ret = new LinkedList<>();
-        for (VectorCacheItem cacheItem : mVectorCacheItems) {
-            if (cacheItem.getEnvelope().intersects(extent)) {
-                ret.add(cacheItem);
+    public int nearest(double x, double y, int k, double maxDistance, IFeatureDistance distance,
+                       LongList result) {
+        result.clear();
+        NearestQueue queue = new NearestQueue(x, y, maxDistance, distance);
+        synchronized (this) {
+            for (int i = 0; i < mSize; i++) {
+                queue.add(mMinX[i], mMinY[i], mMaxX[i], mMaxY[i], mIds[i], null,
+                          NearestQueue.ITEM);
             }
         }
-        return ret;
+        queue.poll(k, result);
+        return result.size();
     }
 
     @Override
-    public List<IGeometryCacheItem> getAll() {
-        LinkedList<IGeometryCacheItem> result = new LinkedList<>();
-        for(IGeometryCacheItem item : mVectorCacheItems){
-            result.add(item);
+    public synchronized List<IGeometryCacheItem> getAll() {
+        List<IGeometryCacheItem> result = new ArrayList<>(mSize);
+        for (int i = 0; i < mSize; i++) {
+            result.add(getItemAt(i));
         }
         return result;
     }
 
     @Override
-    public boolean changeId(long oldFeatureId, long newFeatureId) {
-        List<IGeometryCacheItem> items = getItem(oldFeatureId);
-        if (null != items) {
-            for (IGeometryCacheItem item : items)
-                item.setFeatureId(newFeatureId);
+    public synchronized boolean changeId(long oldFeatureId, long newFeatureId) {
+        if (!mIndex.containsKey(oldFeatureId)) {
+            return false;
+        }
+        if (oldFeatureId == newFeatureId) {
             return true;
         }
-        return false;
+
+        // one item per feature, the removal may move the old item to the gap
+        removeItem(newFeatureId);
+        int index = mIndex.remove(oldFeatureId);
+        mIds[index] = newFeatureId;
+        mIndex.put(newFeatureId, index);
+        mHasEdits = true;
+        return true;
     }
 
     @Override
@@ -130,13 +241,136 @@ public class GeometryPlainList implements IGeometryCache {
     }
 
     @Override
-    public void save(File path) {
-        // TODO: 02.09.15
+    public synchronized void save(File path) {
+        if (!mHasEdits && path.equals(mPath)) {
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + mSize * 40)
+                                      .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(mSize);
+        buffer.asLongBuffer().put(mIds, 0, mSize);
+        buffer.position(buffer.position() + mSize * 8);
+        for (double[] column : new double[][] {mMinX, mMinY, mMaxX, mMaxY}) {
+            buffer.asDoubleBuffer().put(column, 0, mSize);
+            buffer.position(buffer.position() + mSize * 8);
+        }
+        buffer.flip();
+
+        File tmp = new File(path.getParentFile(), path.getName() + ".tmp");
+        try {
+            FileUtil.createDir(path.getParentFile());
+            FileOutputStream fileOutputStream = new FileOutputStream(tmp);
+            try {
+                FileChannel channel = fileOutputStream.getChannel();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                fileOutputStream.getFD().sync();
+            } finally {
+                fileOutputStream.close();
+            }
+
+            if (!tmp.renameTo(path)) {
+                throw new IOException("Failed to rename " + tmp + " to " + path);
+            }
+            // journal of a mapped tree which was saved to the path before
+            GeometryMappedRTree.getJournalPath(path).delete();
+
+            mPath = path;
+            mHasEdits = false;
+        } catch (IOException e) {
+            e.printStackTrace();
+            tmp.delete();
+        }
+    }
+
+    @Override
+    public void compact(File path) {
+        save(path);
     }
 
     @Override
-    public void load(File path) {
-        // TODO: 02.09.15
+    public synchronized void load(File path) {
+        allocate(16);
+        mIndex.clear();
+        mHasEdits = false;
+
+        if (!path.exists()) {
+            return;
+        }
+        mPath = path;
+
+        try {
+            if (!isPlainListFile(path)) {
+                // R-tree file, convert it on the next save
+                loadFrom(path);
+                mHasEdits = true;
+                return;
+            }
+
+            ByteBuffer buffer;
+            FileInputStream stream = new FileInputStream(path);
+            try {
+                FileChannel channel = stream.getChannel();
+                buffer = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    // read the whole file
+                }
+                buffer.flip();
+            } finally {
+                stream.close();
+            }
+
+            buffer.position(8);
+            int count = buffer.getInt();
+            if (count < 0 || buffer.remaining() < (long) count * 40) {
+                throw new IOException("Truncated geometry cache " + path);
+            }
+            allocate(Math.max(count, 16));
+            mIndex = new LongIntHashMap(count);
+            buffer.asLongBuffer().get(mIds, 0, count);
+            buffer.position(buffer.position() + count * 8);
+            for (double[] column : new double[][] {mMinX, mMinY, mMaxX, mMaxY}) {
+                buffer.asDoubleBuffer().get(column, 0, count);
+                buffer.position(buffer.position() + count * 8);
+            }
+            for (int i = 0; i < count; i++) {
+                mIndex.put(mIds[i], i);
+            }
+            mSize = count;
+        } catch (RuntimeException | IOException e) {
+            e.printStackTrace();
+            allocate(16);
+            mIndex.clear();
+        }
+    }
+
+    protected void loadFrom(File path) {
+        GeometryMappedRTree tree = new GeometryMappedRTree();
+        tree.load(path);
+        List<IGeometryCacheItem> items = tree.getAll();
+        allocate(Math.max(items.size(), 16));
+        mIndex = new LongIntHashMap(items.size());
+        for (IGeometryCacheItem item : items) {
+            addItem(item.getFeatureId(), item.getEnvelope());
+        }
+    }
+
+    /**
+     * @return true if the file is written by this cache
+     */
+    public static boolean isPlainListFile(File path) throws IOException {
+        if (path.length() < HEADER_SIZE) {
+            return false;
+        }
+        DataInputStream stream = new DataInputStream(new FileInputStream(path));
+        try {
+            return Integer.reverseBytes(stream.readInt()) == MAGIC &&
+                   Integer.reverseBytes(stream.readInt()) == VERSION;
+        } finally {
+            stream.close();
+        }
     }
 
     @Override
@@ -144,6 +378,32 @@ public class GeometryPlainList implements IGeometryCache {
         return null;
     }
 
+    protected void allocate(int capacity) {
+        mIds = new long[capacity];
+        mMinX = new double[capacity];
+        mMinY = new double[capacity];
+        mMaxX = new double[capacity];
+        mMaxY = new double[capacity];
+        mSize = 0;
+    }
+
+    protected void grow(int capacity) {
+        mIds = Arrays.copyOf(mIds, capacity);
+        mMinX = Arrays.copyOf(mMinX, capacity);
+        mMinY = Arrays.copyOf(mMinY, capacity);
+        mMaxX = Arrays.copyOf(mMaxX, capacity);
+        mMaxY = Arrays.copyOf(mMaxY, capacity);
+    }
+
+    protected IGeometryCacheItem getItemAt(int index) {
+        return new VectorCacheItem(
+                new GeoEnvelope(mMinX[index], mMaxX[index], mMinY[index], mMaxY[index]),
+                mIds[index]);
+    }
+
+    /**
+     * Copy of a cache item, changing it does not change the cache
+     */
     protected class VectorCacheItem implements IGeometryCacheItem
     {
         protected GeoEnvelope mEnvelope;
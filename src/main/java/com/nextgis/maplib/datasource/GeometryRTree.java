@@ -26,13 +26,16 @@ package com.nextgis.maplib.datasource;
 
 import android.util.Log;
 
+import com.nextgis.maplib.api.IFeatureDistance;
 import com.nextgis.maplib.api.IGeometryCache;
 import com.nextgis.maplib.api.IGeometryCacheItem;
 import com.nextgis.maplib.util.FileUtil;
 import com.nextgis.maplib.util.GeoConstants;
+import com.nextgis.maplib.util.LongHashMap;
+import com.nextgis.maplib.util.LongList;
 
-import org.w3c.dom.Node;
-
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
@@ -40,29 +43,67 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.ConcurrentModificationException;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongConsumer;
 
 /**
  * Implementation of an arbitrary-dimension RTree. Based on R-Trees: A Dynamic
  * Index Structure for Spatial Searching (Antonn Guttmann, 1984)
  *
- * This class is not thread-safe.
+ * Searches are lock free: they run on the last published root, which is never changed.
+ * Writers are serialized, copy the nodes they change together with the path up to the root
+ * and publish the new root when the operation is complete.
  */
 public class GeometryRTree implements IGeometryCache {
 
-    public enum SeedPicker { LINEAR, QUADRATIC }
+    /**
+     * Insertion algorithm. LINEAR and QUADRATIC are Guttman splits, RSTAR is the R*-tree
+     * (Beckmann, Kriegel, Schneider, Seeger, 1990): overlap minimizing subtree choice, margin
+     * based split and forced reinsert. R* costs more per insert and gives less overlapping nodes
+     * for ordered input, like features collected along a survey route.
+     */
+    public enum SeedPicker { LINEAR, QUADRATIC, RSTAR }
     private final SeedPicker seedPicker;
 
+    // share of node entries reinserted on the first overflow of a level, R* paper recommends 30%
+    private static final double REINSERT_SHARE = 0.3;
+    // minimum share of node entries in an R* split group
+    private static final double SPLIT_MIN_SHARE = 0.4;
+    // bytes of a saved leaf entry: two flags, the box, the child count and the id
+    private static final int ENTRY_SIZE = 46;
+    // levels (from leaves) which already had a forced reinsert in the current insertion
+    private int mReinsertedLevels;
+
     private int maxEntries;
     private int minEntries;
+    // root of the writer, may contain changes which are not published yet
     private Node root;
+    // root for readers, nodes reachable from it are never changed
+    private volatile Node mSnapshot;
+    // nodes created in the current epoch are not published yet and may be changed in place
+    private int mEpoch;
 
     private volatile int size;
 
+    // feature id -> leaf entry, so id based operations don't need to walk the tree. It is not
+    // saved, entries are objects and are indexed as they are read: a load of 1M entries spends
+    // ~30 ms on it of ~1 s
+    private final LongHashMap<Entry> mIdIndex;
+    // entries read by load, more than indexed if the file has duplicated ids
+    private int mReadCount;
+    // write locked from the first change of a writer to its publish, the id lookups read the
+    // index optimistically and take the tree lock only if a change overlaps them
+    private final StampedLock mIdLock = new StampedLock();
+    private long mChangeStamp;
+
     protected File mPath;
     protected boolean mHasEdits;
 
@@ -79,8 +120,10 @@ public class GeometryRTree implements IGeometryCache {
         this.maxEntries = maxEntries;
         this.minEntries = minEntries;
         this.seedPicker = seedPicker;
+        mIdIndex = new LongHashMap<>();
         root = buildRoot(true);
         mHasEdits = false;
+        publish();
     }
 
     public GeometryRTree(int maxEntries, int minEntries){
@@ -94,11 +137,20 @@ public class GeometryRTree implements IGeometryCache {
     }
 
     /**
-     * Builds a new RTree using default parameters: maximum 50 entries per node
+     * Builds a new RTree using default parameters: maximum 8 entries per node
      * minimum 2 entries per node
      */
     public GeometryRTree(){
-        this(8, 2, SeedPicker.QUADRATIC);
+        this(SeedPicker.QUADRATIC);
+    }
+
+    public GeometryRTree(SeedPicker seedPicker){
+        this(8, 2, seedPicker);
+    }
+
+    public SeedPicker getSeedPicker()
+    {
+        return seedPicker;
     }
 
     /**
@@ -120,55 +172,83 @@ public class GeometryRTree implements IGeometryCache {
 
     @Override
     public boolean isItemExist(long featureId) {
-        return isItemExist(featureId, root);
+        return null != getEntry(featureId);
     }
 
-    public boolean isItemExist(long featureId, Node n) {
-        if (n.mLeaf)
-        {
-            for (Node e : n.mChildren){
-                if (!e.isNode()) {
-                    Entry entry = (Entry) e;
-                    if (entry.getFeatureId() == featureId) {
-                        return true;
-                    }
+    /**
+     * Lock free id lookup of the published state, like the searches
+     */
+    private Entry getEntry(long featureId) {
+        long stamp = mIdLock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                Entry entry = mIdIndex.get(featureId);
+                if (mIdLock.validate(stamp)) {
+                    return entry;
                 }
+            } catch (RuntimeException e) {
+                // a torn read of the index changed meanwhile, read it under the lock
             }
         }
-        else{
-            for (Node c : n.mChildren)
-            {
-                if (isItemExist(featureId, c))
-                {
-                    return true;
-                }
-            }
+        synchronized (this) {
+            return mIdIndex.get(featureId);
         }
-        return false;
     }
 
     @Override
-    public IGeometryCacheItem addItem(long id, GeoEnvelope envelope) {
+    public synchronized IGeometryCacheItem addItem(long id, GeoEnvelope envelope) {
+        // one envelope per feature, replace the stale one if any
+        if (mIdIndex.containsKey(id)) {
+            remove(id);
+        }
+
         mHasEdits = true;
-        return insert(id, envelope);
+        Entry e = new Entry(id, envelope);
+        beginChange();
+        mIdIndex.put(id, e);
+        insert(e);
+        publish();
+        return e;
     }
 
     @Override
     public List<IGeometryCacheItem> getItem(long featureId) {
-        return getItem(featureId, root);
+        List<IGeometryCacheItem> result = new ArrayList<>(1);
+        Entry entry = getEntry(featureId);
+        if (null != entry) {
+            result.add(entry);
+        }
+        return result;
     }
 
     @Override
     public boolean changeId(long oldFeatureId, long newFeatureId) {
-        List<IGeometryCacheItem> items = getItem(oldFeatureId);
-        if(null != items) {
-//            Log.e("CCACHH","changeId items num " + items.size());
+        // most renamed features are not cached, answer them without the lock
+        if (null == getEntry(oldFeatureId)) {
+            return false;
+        }
+        if (oldFeatureId == newFeatureId) {
+            return true;
+        }
 
-            for (IGeometryCacheItem item:items)
-                item.setFeatureId(newFeatureId);
+        synchronized (this) {
+            if (!mIdIndex.containsKey(oldFeatureId)) {
+                return false;
+            }
+            if (mIdIndex.containsKey(newFeatureId)) {
+                remove(newFeatureId);
+            }
+            // the entry may be seen by readers, rename a copy
+            mutable(mIdIndex.get(oldFeatureId)).setFeatureId(newFeatureId);
+            mHasEdits = true;
+            publish();
             return true;
         }
-        return false;
+    }
+
+    @Override
+    public void compact(File path) {
+        save(path); // no journal, every save writes the whole tree
     }
 
     @Override
@@ -182,7 +262,8 @@ public class GeometryRTree implements IGeometryCache {
         try {
             FileUtil.createDir(path.getParentFile());
             FileOutputStream fileOutputStream = new FileOutputStream(path);
-            DataOutputStream dataOutputStream = new DataOutputStream(fileOutputStream);
+            DataOutputStream dataOutputStream =
+                    new DataOutputStream(new BufferedOutputStream(fileOutputStream));
 
             dataOutputStream.writeInt(maxEntries);
             dataOutputStream.writeInt(minEntries);
@@ -201,10 +282,11 @@ public class GeometryRTree implements IGeometryCache {
     }
 
     @Override
-    public void load(File path) {
-        clear();
+    public synchronized void load(File path) {
+        reset();
 
         if (!path.exists()) {
+            publish();
             return;
         }
 
@@ -212,11 +294,15 @@ public class GeometryRTree implements IGeometryCache {
 
         try {
             FileInputStream fileInputStream = new FileInputStream(path);
-            DataInputStream dataInputStream = new DataInputStream(fileInputStream);
+            DataInputStream dataInputStream =
+                    new DataInputStream(new BufferedInputStream(fileInputStream));
 
             maxEntries = dataInputStream.readInt();
             minEntries = dataInputStream.readInt();
             size = dataInputStream.readInt();
+            // the saved size may be stale in old files, the file size bounds it
+            mIdIndex.ensureCapacity((int) Math.min(size, path.length() / ENTRY_SIZE));
+            mReadCount = 0;
 
             dataInputStream.readBoolean();
             root = new Node();
@@ -227,50 +313,52 @@ public class GeometryRTree implements IGeometryCache {
         } catch (IOException e) {
             e.printStackTrace();
         }
-    }
 
-    @Override
-    public Node getRoot() {
-        return root;
+        removeDuplicates();
+        size = mIdIndex.size();
+        publish();
     }
 
-    public List<IGeometryCacheItem> getItem(long featureId, Node n) {
-        List<IGeometryCacheItem> result = new ArrayList<>();
-        if (n.mLeaf){
-            for (Node e : n.mChildren){
-                if (!e.isNode()) {
-                    Entry entry = (Entry) e;
-                    if (entry.getFeatureId() == featureId){
-                        result.add(entry);
-                        //break;
-                    }
-                }
-            }
+    /**
+     * Old cache files may hold several entries for the same feature id. The index keeps the last
+     * one read, the others are dropped from the tree.
+     */
+    protected void removeDuplicates() {
+        if (mReadCount == mIdIndex.size()) {
+            return;
         }
-        else{
-            for (Node c : n.mChildren){
-                List<IGeometryCacheItem> entryes = getItem(featureId, c);
-                if (null != entryes){
-                    result.addAll(entryes);
-                    //return entry;
-                }
+
+        LinkedList<IGeometryCacheItem> entries = new LinkedList<>();
+        getAll(root, entries);
+
+        // rare legacy case, just rebuild the tree from the indexed entries
+        List<Entry> unique = new ArrayList<>(mIdIndex.size());
+        for (IGeometryCacheItem item : entries) {
+            Entry entry = (Entry) item;
+            if (mIdIndex.get(entry.mFeatureId) == entry) {
+                unique.add(entry);
             }
         }
-        return result;
+
+        clear();
+        for (Entry entry : unique) {
+            insert(entry.mFeatureId, entry.mCoords);
+        }
+        mHasEdits = true;
+    }
+
+    /**
+     * @return the last published root, it is never changed
+     */
+    @Override
+    public Node getRoot() {
+        return mSnapshot;
     }
 
     @Override
     public void changeIdForAll(long from, long to, Node n) {
-            for (Node e : n.mChildren){
-                if (e instanceof  Entry){
-                    Entry entry = (Entry) e;
-                    if (entry.getFeatureId() == from){
-                        entry.setFeatureId(to);
-//                        Log.e("CCACHH","RENAME YES");
-                    }
-                }
-                changeIdForAll(from, to, e);
-            }
+        // ids are unique, so the index finds the only entry to rename
+        changeId(from, to);
 
 
 
@@ -313,20 +401,60 @@ public class GeometryRTree implements IGeometryCache {
      *         envelope.
      */
     @Override
-    public synchronized List<IGeometryCacheItem> search(GeoEnvelope extent){
+    public List<IGeometryCacheItem> search(GeoEnvelope extent){
         LinkedList<IGeometryCacheItem> results = new LinkedList<>();
-        search(extent, root, results);
+        search(extent, mSnapshot, results);
         return results;
     }
 
     @Override
-    public synchronized List<IGeometryCacheItem> getAll() {
+    public void search(double minX, double minY, double maxX, double maxY, LongConsumer visitor){
+        search(minX, minY, maxX, maxY, mSnapshot, visitor);
+    }
+
+    @Override
+    public int search(double minX, double minY, double maxX, double maxY, LongList result){
+        result.clear();
+        search(minX, minY, maxX, maxY, (LongConsumer) result);
+        return result.size();
+    }
+
+    /**
+     * Best-first k nearest neighbour search: nodes are visited in order of their envelope
+     * distance to the point, so only the nodes closer than the k-th item are opened.
+     */
+    @Override
+    public int nearest(double x, double y, int k, double maxDistance, IFeatureDistance distance,
+                       LongList result){
+        result.clear();
+        NearestQueue queue = new NearestQueue(x, y, maxDistance, distance);
+        queue.push(0, 0, mSnapshot, NearestQueue.NODE);
+        while (queue.poll(k, result)) {
+            addNearest((Node) queue.getNode(), queue);
+        }
+        return result.size();
+    }
+
+    protected void addNearest(Node n, NearestQueue queue){
+        for (Node c : n.mChildren) {
+            GeoEnvelope env = c.mCoords;
+            if (!n.mLeaf) {
+                queue.add(env.mMinX, env.mMinY, env.mMaxX, env.mMaxY, 0, c, NearestQueue.NODE);
+            } else if (c instanceof Entry) {
+                queue.add(env.mMinX, env.mMinY, env.mMaxX, env.mMaxY, ((Entry) c).mFeatureId, null,
+                          NearestQueue.ITEM);
+            }
+        }
+    }
+
+    @Override
+    public List<IGeometryCacheItem> getAll() {
         LinkedList<IGeometryCacheItem> result = new LinkedList<>();
-        getAll(root, result);
+        getAll(mSnapshot, result);
         return result;
     }
 
-    protected void getAll(Node n, LinkedList<IGeometryCacheItem> results){
+    protected void getAll(Node n, List<IGeometryCacheItem> results){
         if (n.mLeaf){
             for (Node e : n.mChildren){
                 if (!e.isNode()) {
@@ -342,8 +470,22 @@ public class GeometryRTree implements IGeometryCache {
         }
     }
 
-    private void search(GeoEnvelope extent, Node n,
-                        LinkedList<IGeometryCacheItem> results){
+    protected void search(double minX, double minY, double maxX, double maxY, Node n,
+                          LongConsumer visitor){
+        for (Node c : n.mChildren) {
+            GeoEnvelope env = c.mCoords;
+            if (env.mMinX > maxX || env.mMinY > maxY || env.mMaxX < minX || env.mMaxY < minY) {
+                continue;
+            }
+            if (!n.mLeaf) {
+                search(minX, minY, maxX, maxY, c, visitor);
+            } else if (c instanceof Entry) {
+                visitor.accept(((Entry) c).mFeatureId);
+            }
+        }
+    }
+
+    protected void search(GeoEnvelope extent, Node n, List<IGeometryCacheItem> results){
         if (n.mLeaf)
         {
             for (Node e : n.mChildren)
@@ -374,45 +516,30 @@ public class GeometryRTree implements IGeometryCache {
      * @return true if the entry was deleted from the RTree.
      */
     @Override
-    public IGeometryCacheItem removeItem(long featureId){
-        Node l = findLeaf(root, featureId);
-        if ( l == null ) {
+    public synchronized IGeometryCacheItem removeItem(long featureId){
+        Entry entry = remove(featureId);
+        publish();
+        return entry;
+    }
+
+    private Entry remove(long featureId){
+        beginChange();
+        Entry entry = mIdIndex.remove(featureId);
+        if ( entry == null ) {
             return null;
         }
 
         mHasEdits = true;
 
-        condenseTree(l);
-            size--;
+        mutable(entry.mParent);
+        condenseTree(entry);
+        size--;
 
         if ( size == 0 ){
             root = buildRoot(true);
         }
 
-        if(l instanceof IGeometryCache)
-            return (IGeometryCacheItem) l;
-        return null;
-    }
-
-    private Node findLeaf(Node n, long featureId){
-        if (n.mLeaf){
-            for (Node c : n.mChildren){
-                if (!c.isNode() && ((Entry) c).mFeatureId == featureId)
-                {
-                    return c;
-                }
-            }
-        }
-        else{
-            for (Node c : n.mChildren){
-                Node result = findLeaf(c, featureId);
-                if (result != null)
-                {
-                    return result;
-                }
-            }
-        }
-        return null;
+        return entry;
     }
 
     private void condenseTree(Node n){
@@ -455,8 +582,8 @@ public class GeometryRTree implements IGeometryCache {
 
         for (Node ne : q){
             if (!ne.isNode()) {
-                Entry e = (Entry) ne;
-                insert(e.mFeatureId, e.mCoords);
+                // reuse the entry, so the index and items held by callers stay valid
+                insert((Entry) ne);
             }
         }
         size -= q.size();
@@ -465,12 +592,224 @@ public class GeometryRTree implements IGeometryCache {
     /**
      * Empties the RTree
      */
-    public void clear(){
+    public synchronized void clear(){
+        reset();
+        publish();
+    }
+
+    private void reset(){
+        beginChange();
         root = buildRoot(true);
+        mIdIndex.clear();
+        size = 0;
         mHasEdits = false;
         // let the GC take care of the rest.
     }
 
+    /**
+     * Makes the changes visible to readers. Nodes of the published tree become read only.
+     */
+    private void publish(){
+        mSnapshot = root;
+        mEpoch++;
+        if (mChangeStamp != 0) {
+            mIdLock.unlockWrite(mChangeStamp);
+            mChangeStamp = 0;
+        }
+    }
+
+    /**
+     * Called by the writer before it changes the id index or an entry in place
+     */
+    private void beginChange(){
+        if (mChangeStamp == 0) {
+            mChangeStamp = mIdLock.writeLock();
+        }
+    }
+
+    /**
+     * Returns a node which may be changed in place. A published node is copied first, its parent
+     * is made mutable the same way and gets the copy instead of the original.
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends Node> T mutable(T n){
+        if (n.mEpoch == mEpoch) {
+            return n;
+        }
+
+        T copy = (T) n.copy();
+        for (Node c : copy.mChildren) {
+            c.mParent = copy; // readers never follow parent links
+        }
+
+        if (n == root) {
+            root = copy;
+        } else if (null != n.mParent) {
+            Node parent = mutable(n.mParent);
+            parent.mChildren.set(parent.mChildren.indexOf(n), copy);
+            copy.mParent = parent;
+        }
+
+        if (copy instanceof Entry) {
+            Entry entry = (Entry) copy;
+            if (mIdIndex.get(entry.mFeatureId) == n) {
+                beginChange();
+                mIdIndex.put(entry.mFeatureId, entry);
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Replaces the RTree content with the given items using Sort-Tile-Recursive
+     * packing (Leutenegger, Edgington, Lopez, 1997). Much faster than inserting
+     * items one by one and gives full nodes with little overlap.
+     *
+     * @param ids
+     *          feature identificators
+     * @param envelopes
+     *          envelopes as minX, minY, maxX, maxY for each id
+     * @param count
+     *          number of items to load
+     */
+    @Override
+    public synchronized void bulkLoad(long[] ids, double[] envelopes, int count){
+        reset();
+        mHasEdits = true;
+        if (count <= 0) {
+            publish();
+            return;
+        }
+
+        Node[] level = new Node[count];
+        for (int i = 0; i < count; i++) {
+            int offset = i * 4;
+            Entry entry = new Entry(ids[i], new GeoEnvelope(envelopes[offset], envelopes[offset + 2],
+                                                            envelopes[offset + 1], envelopes[offset + 3]));
+            mIdIndex.put(ids[i], entry);
+            level[i] = entry;
+        }
+
+        int n = count;
+        if (mIdIndex.size() != count) {
+            // keep the last envelope for duplicated ids
+            n = 0;
+            for (int i = 0; i < count; i++) {
+                Entry entry = (Entry) level[i];
+                if (mIdIndex.get(entry.mFeatureId) == entry) {
+                    level[n++] = entry;
+                }
+            }
+        }
+
+        boolean leaf = true;
+        while (n > maxEntries) {
+            n = packLevel(level, n, leaf);
+            leaf = false;
+        }
+
+        root = buildRoot(leaf);
+        for (int i = 0; i < n; i++) {
+            root.add(level[i]);
+        }
+        tighten(root);
+        size = mIdIndex.size();
+        publish();
+    }
+
+    /**
+     * Packs one tree level: sort by x, cut into vertical slices, sort each slice by y and
+     * group every maxEntries nodes into a parent. Parents are stored at the head of the array.
+     *
+     * @return the number of parent nodes
+     */
+    private int packLevel(Node[] nodes, int count, boolean leaf){
+        int parentCount = (count + maxEntries - 1) / maxEntries;
+        int sliceSize = (int) Math.ceil(Math.sqrt(parentCount)) * maxEntries;
+
+        // sort on primitive keys, comparators that unbox envelope fields are several times slower
+        double[] keys = new double[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = nodes[i].mCoords.mMinX + nodes[i].mCoords.mMaxX;
+        }
+        sort(keys, nodes, 0, count - 1);
+        for (int i = 0; i < count; i++) {
+            keys[i] = nodes[i].mCoords.mMinY + nodes[i].mCoords.mMaxY;
+        }
+
+        int out = 0;
+        for (int start = 0; start < count; start += sliceSize) {
+            int end = Math.min(start + sliceSize, count);
+            sort(keys, nodes, start, end - 1);
+            for (int i = start; i < end; i += maxEntries) {
+                Node parent = new Node();
+                parent.mLeaf = leaf;
+                int last = Math.min(i + maxEntries, end);
+                for (int j = i; j < last; j++) {
+                    parent.add(nodes[j]);
+                }
+                tighten(parent);
+                // out never passes i, so the slots still to be read are intact
+                nodes[out++] = parent;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Sorts nodes by keys in place, both arrays are permuted the same way.
+     */
+    private static void sort(double[] keys, Node[] nodes, int low, int high){
+        while (high - low > 16) {
+            int middle = (low + high) >>> 1;
+            // median of three as pivot
+            if (keys[middle] < keys[low]) swap(keys, nodes, middle, low);
+            if (keys[high] < keys[low]) swap(keys, nodes, high, low);
+            if (keys[high] < keys[middle]) swap(keys, nodes, high, middle);
+            double pivot = keys[middle];
+
+            int i = low, j = high;
+            while (i <= j) {
+                while (keys[i] < pivot) i++;
+                while (keys[j] > pivot) j--;
+                if (i <= j) {
+                    swap(keys, nodes, i++, j--);
+                }
+            }
+
+            // recurse into the smaller part to bound the stack depth
+            if (j - low < high - i) {
+                sort(keys, nodes, low, j);
+                low = i;
+            } else {
+                sort(keys, nodes, i, high);
+                high = j;
+            }
+        }
+
+        for (int i = low + 1; i <= high; i++) {
+            double key = keys[i];
+            Node node = nodes[i];
+            int j = i - 1;
+            while (j >= low && keys[j] > key) {
+                keys[j + 1] = keys[j];
+                nodes[j + 1] = nodes[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            nodes[j + 1] = node;
+        }
+    }
+
+    private static void swap(double[] keys, Node[] nodes, int i, int j){
+        double key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        Node node = nodes[i];
+        nodes[i] = nodes[j];
+        nodes[j] = node;
+    }
+
     /**
      * Inserts the given entry into the RTree, associated with the given
      * rectangle.
@@ -480,11 +819,28 @@ public class GeometryRTree implements IGeometryCache {
      * @param envelope
      *          an envelope
      */
-    public IGeometryCacheItem insert(long featureId, GeoEnvelope envelope){
+    public synchronized IGeometryCacheItem insert(long featureId, GeoEnvelope envelope){
         Entry e = new Entry(featureId, envelope);
+        beginChange();
+        mIdIndex.put(featureId, e);
+        insert(e);
+        publish();
+        return e;
+    }
+
+    private Entry insert(Entry e){
+        if (seedPicker == SeedPicker.RSTAR) {
+            mReinsertedLevels = 0;
+            insert(e, 0);
+            size++;
+            return e;
+        }
+
         Node l = chooseLeaf(root, e);
         if(l == null)
             l = root;
+        // copies the path from the leaf to the root, all nodes changed below are on it
+        l = mutable(l);
 
         l.add(e);
         size++;
@@ -523,7 +879,233 @@ public class GeometryRTree implements IGeometryCache {
         }
     }
 
+    /**
+     * R* insertion of an entry (height 0) or a node of a forced reinsert
+     * @param height Height of the node to add the item to, leaves are 0
+     */
+    private void insert(Node item, int height){
+        Node n = root;
+        for (int h = getHeight(root); h > height; h--) {
+            n = chooseSubtree(n, item, h == 1);
+        }
+        n = mutable(n);
+        n.add(item);
+        if (n.mChildren.size() > maxEntries) {
+            overflow(n, height);
+        } else {
+            adjustTree(n, null, height);
+        }
+    }
+
+    private int getHeight(Node n){
+        int height = 0;
+        while (!n.mLeaf) {
+            n = n.mChildren.getFirst();
+            height++;
+        }
+        return height;
+    }
+
+    /**
+     * R* subtree choice: least overlap enlargement above leaves, least area enlargement above
+     * other nodes, ties go to the smaller area.
+     */
+    private Node chooseSubtree(Node n, Node item, boolean aboveLeaves){
+        GeoEnvelope env = item.mCoords;
+        Node best = null;
+        double bestOverlap = Double.MAX_VALUE, bestEnlargement = Double.MAX_VALUE;
+        double bestArea = Double.MAX_VALUE;
+        for (Node c : n.mChildren) {
+            GeoEnvelope cEnv = c.mCoords;
+            double minX = Math.min(cEnv.mMinX, env.mMinX), minY = Math.min(cEnv.mMinY, env.mMinY);
+            double maxX = Math.max(cEnv.mMaxX, env.mMaxX), maxY = Math.max(cEnv.mMaxY, env.mMaxY);
+            double area = cEnv.getArea();
+            double enlargement = (maxX - minX) * (maxY - minY) - area;
+
+            double overlap = 0;
+            if (aboveLeaves) {
+                for (Node o : n.mChildren) {
+                    if (o != c) {
+                        GeoEnvelope oEnv = o.mCoords;
+                        overlap += getOverlap(minX, minY, maxX, maxY, oEnv) -
+                                   getOverlap(cEnv.mMinX, cEnv.mMinY, cEnv.mMaxX, cEnv.mMaxY, oEnv);
+                    }
+                }
+            }
+
+            if (overlap < bestOverlap || overlap == bestOverlap &&
+                    (enlargement < bestEnlargement ||
+                     enlargement == bestEnlargement && area < bestArea)) {
+                best = c;
+                bestOverlap = overlap;
+                bestEnlargement = enlargement;
+                bestArea = area;
+            }
+        }
+        return best;
+    }
+
+    private static double getOverlap(double minX, double minY, double maxX, double maxY,
+                                     GeoEnvelope env){
+        double width = Math.min(maxX, env.mMaxX) - Math.max(minX, env.mMinX);
+        double height = Math.min(maxY, env.mMaxY) - Math.max(minY, env.mMinY);
+        return width > 0 && height > 0 ? width * height : 0;
+    }
+
+    /**
+     * R* overflow: the first overflow of a level reinserts the entries farthest from the node
+     * center, next ones split the node.
+     */
+    private void overflow(Node n, int height){
+        if (n != root && (mReinsertedLevels & (1 << height)) == 0) {
+            mReinsertedLevels |= 1 << height;
+
+            final double centerX = (n.mCoords.mMinX + n.mCoords.mMaxX) / 2;
+            final double centerY = (n.mCoords.mMinY + n.mCoords.mMaxY) / 2;
+            List<Node> children = new ArrayList<>(n.mChildren);
+            Collections.sort(children, new Comparator<Node>() {
+                @Override
+                public int compare(Node a, Node b) {
+                    return Double.compare(getCenterDistance(b, centerX, centerY),
+                                          getCenterDistance(a, centerX, centerY));
+                }
+            });
+
+            int count = Math.max(1, (int) (children.size() * REINSERT_SHARE));
+            List<Node> reinsert = children.subList(0, count);
+            n.mChildren.removeAll(reinsert);
+            adjustTree(n, null, height);
+
+            // closest first
+            for (int i = count - 1; i >= 0; i--) {
+                insert(reinsert.get(i), height);
+            }
+        } else {
+            Node[] splits = splitNode(n);
+            adjustTree(splits[0], splits[1], height);
+        }
+    }
+
+    private static double getCenterDistance(Node n, double x, double y){
+        double dx = (n.mCoords.mMinX + n.mCoords.mMaxX) / 2 - x;
+        double dy = (n.mCoords.mMinY + n.mCoords.mMaxY) / 2 - y;
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * adjustTree for R*: an overflowing parent goes through forced reinsert first
+     */
+    private void adjustTree(Node n, Node nn, int height){
+        if (n == root){
+            if (nn != null){
+                root = buildRoot(false);
+                root.add(n);
+                root.add(nn);
+            }
+            tighten(root);
+            return;
+        }
+        tighten(n);
+        if (nn != null){
+            tighten(nn);
+            if (n.mParent.mChildren.size() > maxEntries){
+                overflow(n.mParent, height + 1);
+                return;
+            }
+        }
+        adjustTree(n.mParent, null, height + 1);
+    }
+
+    /**
+     * R* split: the axis with the least margin sum over all distributions, then the
+     * distribution on it with the least overlap, ties go to the smaller area.
+     */
+    private Node[] rstarSplit(Node n){
+        Node[] children = n.mChildren.toArray(new Node[0]);
+        int count = children.length;
+        int min = Math.max(minEntries, (int) (maxEntries * SPLIT_MIN_SHARE));
+
+        Node[] best = null;
+        int bestSplit = 0;
+        double bestMargin = Double.MAX_VALUE;
+        for (int axis = 0; axis < 2; axis++) {
+            Node[] byMin = sortByAxis(children, axis, false);
+            Node[] byMax = sortByAxis(children, axis, true);
+            double margin = getMarginSum(byMin, min) + getMarginSum(byMax, min);
+            if (margin < bestMargin) {
+                bestMargin = margin;
+                double bestOverlap = Double.MAX_VALUE, bestArea = Double.MAX_VALUE;
+                for (Node[] sorted : new Node[][] {byMin, byMax}) {
+                    for (int split = min; split <= count - min; split++) {
+                        GeoEnvelope first = getEnvelope(sorted, 0, split);
+                        GeoEnvelope second = getEnvelope(sorted, split, count);
+                        double overlap = getOverlap(first.mMinX, first.mMinY, first.mMaxX,
+                                                    first.mMaxY, second);
+                        double area = first.getArea() + second.getArea();
+                        if (overlap < bestOverlap || overlap == bestOverlap && area < bestArea) {
+                            bestOverlap = overlap;
+                            bestArea = area;
+                            best = sorted;
+                            bestSplit = split;
+                        }
+                    }
+                }
+            }
+        }
+
+        Node nn = new Node(n.mCoords, n.mLeaf);
+        nn.mParent = n.mParent;
+        if (nn.mParent != null){
+            nn.mParent.add(nn);
+        }
+        n.mChildren.clear();
+        for (int i = 0; i < count; i++) {
+            (i < bestSplit ? n : nn).add(best[i]);
+        }
+        tighten(n, nn);
+        return new Node[]{ n, nn };
+    }
+
+    private static Node[] sortByAxis(Node[] nodes, final int axis, final boolean byMax){
+        Node[] sorted = nodes.clone();
+        Arrays.sort(sorted, new Comparator<Node>() {
+            @Override
+            public int compare(Node a, Node b) {
+                GeoEnvelope ea = a.mCoords, eb = b.mCoords;
+                if (axis == 0) {
+                    return byMax ? Double.compare(ea.mMaxX, eb.mMaxX)
+                                 : Double.compare(ea.mMinX, eb.mMinX);
+                }
+                return byMax ? Double.compare(ea.mMaxY, eb.mMaxY)
+                             : Double.compare(ea.mMinY, eb.mMinY);
+            }
+        });
+        return sorted;
+    }
+
+    private static double getMarginSum(Node[] sorted, int min){
+        double sum = 0;
+        for (int split = min; split <= sorted.length - min; split++) {
+            GeoEnvelope first = getEnvelope(sorted, 0, split);
+            GeoEnvelope second = getEnvelope(sorted, split, sorted.length);
+            sum += first.width() + first.height() + second.width() + second.height();
+        }
+        return sum;
+    }
+
+    private static GeoEnvelope getEnvelope(Node[] nodes, int from, int to){
+        GeoEnvelope env = new GeoEnvelope(nodes[from].mCoords);
+        for (int i = from + 1; i < to; i++) {
+            env.merge(nodes[i].mCoords);
+        }
+        return env;
+    }
+
     private Node[] splitNode(Node n){
+        if (seedPicker == SeedPicker.RSTAR) {
+            return rstarSplit(n);
+        }
+
         // TODO: this class probably calls "tighten" a little too often.
         // For instance the call at the end of the "while (!cc.isEmpty())" loop
         // could be modified and inlined because it's only adjusting for the addition
@@ -837,12 +1419,19 @@ public class GeometryRTree implements IGeometryCache {
         protected boolean mLeaf;
 
         protected Node mParent;
+        protected final int mEpoch = GeometryRTree.this.mEpoch;
 
         protected Node(){
             mCoords = new GeoEnvelope();
             mChildren = new LinkedList<>();
         }
 
+        protected Node copy(){
+            Node copy = new Node(mCoords, mLeaf);
+            copy.mChildren.addAll(mChildren);
+            return copy;
+        }
+
         public int size(){
             return mChildren.size();
         }
@@ -923,6 +1512,13 @@ public class GeometryRTree implements IGeometryCache {
             mFeatureId = featureId;
         }
 
+        @Override
+        protected Node copy(){
+            Entry copy = new Entry(mFeatureId, mCoords);
+            copy.mLeaf = mLeaf;
+            return copy;
+        }
+
         public boolean intersects(GeoEnvelope extent) {
             return mCoords.intersects(extent);
         }
@@ -939,6 +1535,11 @@ public class GeometryRTree implements IGeometryCache {
 
         @Override
         public void setFeatureId(long id) {
+            if (mIdIndex.get(mFeatureId) == this) {
+                beginChange();
+                mIdIndex.remove(mFeatureId);
+                mIdIndex.put(id, this);
+            }
             mFeatureId = id;
         }
 
@@ -947,6 +1548,8 @@ public class GeometryRTree implements IGeometryCache {
             super.read(stream);
 
             mFeatureId = stream.readLong();
+            mIdIndex.put(mFeatureId, this);
+            mReadCount++;
 //            Log.e("CCACHH","Read Entry ID = " + mFeatureId);
 
         }
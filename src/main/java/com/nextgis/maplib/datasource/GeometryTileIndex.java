@@ -0,0 +1,407 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplib.datasource;
+
+import com.nextgis.maplib.api.IGeometryCache;
+import com.nextgis.maplib.api.IGeometryCacheItem;
+import com.nextgis.maplib.util.GeoConstants;
+import com.nextgis.maplib.util.LongList;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Zoom aware feature index over 256 pixel tiles of zoom 0..max zoom (EPSG:3857).
+ *
+ * Every feature gets the first zoom it is shown from: the zoom its envelope grows to a pixel
+ * or the zoom it becomes the representative of its pixel. Features smaller than a pixel share
+ * it, only the first of them in quadkey order represents the pixel, so a zoom out returns at
+ * most one feature per pixel plus the features which are visible at this zoom by size. The max
+ * zoom is not thinned, all features are shown at it.
+ *
+ * Features of each level are sorted by the quadkey of their envelope center, a tile (z, x, y)
+ * is a range of keys. The index is immutable, rebuild it after the cache changes.
+ */
+public class GeometryTileIndex
+{
+    protected static final int TILE_BITS = 8; // 256 pixel tiles
+
+    protected final int mMaxZoom;
+    // quadkey resolution, a pixel of the max zoom
+    protected final int mKeyLevel;
+
+    // features of the level (show from zoom) sorted by quadkey of the center
+    protected long[][]   mKeys;
+    protected long[][]   mIds;
+    protected double[][] mEnvelopes;
+
+    // features larger than two pixels of zoom 0, scanned on each search
+    protected long[]   mLargeIds;
+    protected double[] mLargeEnvelopes;
+
+    public GeometryTileIndex(IGeometryCache cache)
+    {
+        this(cache, GeoConstants.DEFAULT_CACHE_MAX_ZOOM);
+    }
+
+    public GeometryTileIndex(IGeometryCache cache, int maxZoom)
+    {
+        if (maxZoom < 0 || maxZoom + TILE_BITS > 31) {
+            throw new IllegalArgumentException("Unsupported max zoom " + maxZoom);
+        }
+        mMaxZoom = maxZoom;
+        mKeyLevel = maxZoom + TILE_BITS;
+        build(cache.getAll());
+    }
+
+    public int getMaxZoom()
+    {
+        return mMaxZoom;
+    }
+
+    /**
+     * Search features shown at the zoom
+     * @param zoom Zoom level, zooms over the max zoom are searched as the max zoom
+     * @param result Reusable buffer, cleared before search
+     * @return Count of found features
+     */
+    public int search(
+            double minX,
+            double minY,
+            double maxX,
+            double maxY,
+            int zoom,
+            LongList result)
+    {
+        result.clear();
+        zoom = Math.max(0, Math.min(zoom, mMaxZoom));
+
+        for (int i = 0; i < mLargeIds.length; i++) {
+            if (intersects(mLargeEnvelopes, i, minX, minY, maxX, maxY)) {
+                result.add(mLargeIds[i]);
+            }
+        }
+
+        for (int level = 0; level <= zoom; level++) {
+            if (mKeys[level].length == 0) {
+                continue;
+            }
+
+            // features of the level are smaller than a tile of level + 7, so the center of
+            // each intersecting one is in a tile of that zoom touching the extent
+            int tileZoom = Math.min(zoom, level + TILE_BITS - 1);
+            double tileSize = GeoConstants.MERCATOR_MAX * 2 / (1 << tileZoom);
+            int last = (1 << tileZoom) - 1;
+            int beginX = getTile(minX - tileSize, tileZoom);
+            int beginY = getTile(minY - tileSize, tileZoom);
+            int endX = getTile(maxX + tileSize, tileZoom);
+            int endY = getTile(maxY + tileSize, tileZoom);
+            if (endX < 0 || endY < 0 || beginX > last || beginY > last) {
+                continue;
+            }
+            beginX = Math.max(beginX, 0);
+            beginY = Math.max(beginY, 0);
+            endX = Math.min(endX, last);
+            endY = Math.min(endY, last);
+
+            // an extent much larger than the zoom tiles, cheaper to scan the level
+            if ((long) (endX - beginX + 1) * (endY - beginY + 1) > mKeys[level].length) {
+                long[] ids = mIds[level];
+                for (int i = 0; i < ids.length; i++) {
+                    if (intersects(mEnvelopes[level], i, minX, minY, maxX, maxY)) {
+                        result.add(ids[i]);
+                    }
+                }
+                continue;
+            }
+
+            for (int x = beginX; x <= endX; x++) {
+                for (int y = beginY; y <= endY; y++) {
+                    search(level, tileZoom, x, y, minX, minY, maxX, maxY, result);
+                }
+            }
+        }
+        return result.size();
+    }
+
+    /**
+     * Features shown at the zoom with the envelope center in the tile
+     * @param x Tile column from the left
+     * @param y Tile row from the bottom
+     * @param result Reusable buffer, cleared before search
+     * @return Count of found features
+     */
+    public int getTile(
+            int zoom,
+            int x,
+            int y,
+            LongList result)
+    {
+        result.clear();
+        if (zoom < 0 || zoom > mMaxZoom) {
+            return 0;
+        }
+
+        for (int i = 0; i < mLargeIds.length; i++) {
+            double centerX = (mLargeEnvelopes[i * 4] + mLargeEnvelopes[i * 4 + 2]) / 2;
+            double centerY = (mLargeEnvelopes[i * 4 + 1] + mLargeEnvelopes[i * 4 + 3]) / 2;
+            if (getTile(centerX, zoom) == x && getTile(centerY, zoom) == y) {
+                result.add(mLargeIds[i]);
+            }
+        }
+        for (int level = 0; level <= zoom; level++) {
+            search(level, zoom, x, y, -Double.MAX_VALUE, -Double.MAX_VALUE, Double.MAX_VALUE,
+                   Double.MAX_VALUE, result);
+        }
+        return result.size();
+    }
+
+    /**
+     * @return Quadkey of the tile column and row with two bits per zoom level
+     */
+    public static long getQuadKey(
+            int x,
+            int y)
+    {
+        return spread(x) | spread(y) << 1;
+    }
+
+    protected void search(
+            int level,
+            int tileZoom,
+            int x,
+            int y,
+            double minX,
+            double minY,
+            double maxX,
+            double maxY,
+            LongList result)
+    {
+        long[] keys = mKeys[level];
+        int shift = 2 * (mKeyLevel - tileZoom);
+        long first = getQuadKey(x, y) << shift;
+        long end = first + (1L << shift);
+
+        long[] ids = mIds[level];
+        double[] envelopes = mEnvelopes[level];
+        for (int i = lowerBound(keys, first); i < keys.length && keys[i] < end; i++) {
+            if (intersects(envelopes, i, minX, minY, maxX, maxY)) {
+                result.add(ids[i]);
+            }
+        }
+    }
+
+    protected void build(List<IGeometryCacheItem> items)
+    {
+        int count = items.size();
+        long[] ids = new long[count];
+        long[] keys = new long[count];
+        double[] envelopes = new double[count * 4];
+        int[] visibleZoom = new int[count];
+        int[] shownZoom = new int[count];
+
+        double pixelSize = GeoConstants.MERCATOR_MAX * 2 / (1 << TILE_BITS);
+        int largeCount = 0;
+        int n = 0;
+        for (IGeometryCacheItem item : items) {
+            GeoEnvelope envelope = item.getEnvelope();
+            ids[n] = item.getFeatureId();
+            envelopes[n * 4] = envelope.getMinX();
+            envelopes[n * 4 + 1] = envelope.getMinY();
+            envelopes[n * 4 + 2] = envelope.getMaxX();
+            envelopes[n * 4 + 3] = envelope.getMaxY();
+            keys[n] = getQuadKey(getTile(envelope.getCenter().getX(), mKeyLevel),
+                                 getTile(envelope.getCenter().getY(), mKeyLevel));
+
+            // first zoom the envelope is not smaller than a pixel
+            double size = Math.max(envelope.width(), envelope.height());
+            int zoom = 0;
+            double zoomPixelSize = pixelSize;
+            while (zoom <= mMaxZoom && size < zoomPixelSize) {
+                zoom++;
+                zoomPixelSize /= 2;
+            }
+            visibleZoom[n] = zoom;
+            if (size >= pixelSize * 2) {
+                largeCount++;
+            }
+            n++;
+        }
+
+        int[] order = sort(keys, count);
+
+        // the representative of a pixel is the first smaller feature in quadkey order which is
+        // shown at the next zoom, so a feature shown at a zoom is shown at all larger ones
+        for (int i = 0; i < count; i++) {
+            shownZoom[i] = Math.min(visibleZoom[i], mMaxZoom);
+        }
+        for (int zoom = mMaxZoom - 1; zoom >= 0; zoom--) {
+            int shift = 2 * (mKeyLevel - zoom - TILE_BITS);
+            long lastPixel = -1;
+            for (int i : order) {
+                if (visibleZoom[i] > zoom && shownZoom[i] == zoom + 1) {
+                    long pixel = keys[i] >>> shift;
+                    if (pixel != lastPixel) {
+                        shownZoom[i] = zoom;
+                        lastPixel = pixel;
+                    }
+                }
+            }
+        }
+
+        int[] levelCount = new int[mMaxZoom + 1];
+        for (int i = 0; i < count; i++) {
+            if (!isLarge(envelopes, i, pixelSize)) {
+                levelCount[shownZoom[i]]++;
+            }
+        }
+        mKeys = new long[mMaxZoom + 1][];
+        mIds = new long[mMaxZoom + 1][];
+        mEnvelopes = new double[mMaxZoom + 1][];
+        for (int level = 0; level <= mMaxZoom; level++) {
+            mKeys[level] = new long[levelCount[level]];
+            mIds[level] = new long[levelCount[level]];
+            mEnvelopes[level] = new double[levelCount[level] * 4];
+            levelCount[level] = 0;
+        }
+        mLargeIds = new long[largeCount];
+        mLargeEnvelopes = new double[largeCount * 4];
+        largeCount = 0;
+
+        for (int i : order) {
+            if (isLarge(envelopes, i, pixelSize)) {
+                mLargeIds[largeCount] = ids[i];
+                System.arraycopy(envelopes, i * 4, mLargeEnvelopes, largeCount * 4, 4);
+                largeCount++;
+            } else {
+                int level = shownZoom[i];
+                int position = levelCount[level]++;
+                mKeys[level][position] = keys[i];
+                mIds[level][position] = ids[i];
+                System.arraycopy(envelopes, i * 4, mEnvelopes[level], position * 4, 4);
+            }
+        }
+    }
+
+    protected static boolean isLarge(
+            double[] envelopes,
+            int index,
+            double pixelSize)
+    {
+        double size = Math.max(envelopes[index * 4 + 2] - envelopes[index * 4],
+                               envelopes[index * 4 + 3] - envelopes[index * 4 + 1]);
+        return size >= pixelSize * 2;
+    }
+
+    protected static boolean intersects(
+            double[] envelopes,
+            int index,
+            double minX,
+            double minY,
+            double maxX,
+            double maxY)
+    {
+        int offset = index * 4;
+        return envelopes[offset] <= maxX && envelopes[offset + 1] <= maxY &&
+               envelopes[offset + 2] >= minX && envelopes[offset + 3] >= minY;
+    }
+
+    /**
+     * @return Tile column (or row) of the coordinate at the zoom, may be out of the tile range
+     */
+    protected static int getTile(
+            double coordinate,
+            int zoom)
+    {
+        double tile = (coordinate + GeoConstants.MERCATOR_MAX) / (GeoConstants.MERCATOR_MAX * 2) *
+                      (1 << zoom);
+        return (int) Math.max(Math.min(Math.floor(tile), Integer.MAX_VALUE / 2),
+                              Integer.MIN_VALUE / 2);
+    }
+
+    /**
+     * Spread bits of the value to the even bits of the result
+     */
+    protected static long spread(int value)
+    {
+        long result = value & 0xFFFFFFFFL;
+        result = (result | result << 16) & 0x0000FFFF0000FFFFL;
+        result = (result | result << 8) & 0x00FF00FF00FF00FFL;
+        result = (result | result << 4) & 0x0F0F0F0F0F0F0F0FL;
+        result = (result | result << 2) & 0x3333333333333333L;
+        result = (result | result << 1) & 0x5555555555555555L;
+        return result;
+    }
+
+    protected static int lowerBound(
+            long[] keys,
+            long key)
+    {
+        int low = 0, high = keys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * LSD radix sort of item indexes by key, 16 bits per pass
+     */
+    protected static int[] sort(
+            long[] keys,
+            int count)
+    {
+        int[] order = new int[count];
+        int[] buffer = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+
+        int[] offsets = new int[1 << 16];
+        for (int shift = 0; shift < 64; shift += 16) {
+            Arrays.fill(offsets, 0);
+            for (int i = 0; i < count; i++) {
+                offsets[(int) (keys[i] >>> shift) & 0xFFFF]++;
+            }
+            if (offsets[0] == count) {
+                continue; // all keys have zero bits here
+            }
+            for (int i = 0, sum = 0; i < offsets.length; i++) {
+                int digitCount = offsets[i];
+                offsets[i] = sum;
+                sum += digitCount;
+            }
+            for (int i = 0; i < count; i++) {
+                int index = order[i];
+                buffer[offsets[(int) (keys[index] >>> shift) & 0xFFFF]++] = index;
+            }
+            int[] swap = order;
+            order = buffer;
+            buffer = swap;
+        }
+        return order;
+    }
+}
@@ -0,0 +1,738 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplib.datasource;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static com.nextgis.maplib.util.GeoConstants.GTGeometryCollection;
+import static com.nextgis.maplib.util.GeoConstants.GTLineString;
+import static com.nextgis.maplib.util.GeoConstants.GTLinearRing;
+import static com.nextgis.maplib.util.GeoConstants.GTMultiLineString;
+import static com.nextgis.maplib.util.GeoConstants.GTMultiPoint;
+import static com.nextgis.maplib.util.GeoConstants.GTMultiPolygon;
+import static com.nextgis.maplib.util.GeoConstants.GTPoint;
+import static com.nextgis.maplib.util.GeoConstants.GTPolygon;
+
+
+/**
+ * Reads and writes the OGC well-known binary (WKB) and the tiny well-known binary (TWKB).
+ * <p>
+ * The reader takes ISO and PostGIS extended WKB of both byte orders, Z and M ordinates are
+ * skipped. The EWKB SRID replaces the CRS given to the reader. The writer produces little
+ * endian 2D WKB, a linear ring is written as a line string. An empty point is a point with
+ * NaN coordinates, as in WKB.
+ * <p>
+ * The geometry type codes of WKB are the same as GeoConstants.GT*.
+ */
+public class GeometryWKBCodec
+{
+    protected static final int MAX_DEPTH = 16;
+
+    protected static final int EWKB_Z    = 0x80000000;
+    protected static final int EWKB_M    = 0x40000000;
+    protected static final int EWKB_SRID = 0x20000000;
+
+    protected static final int TWKB_BBOX               = 0x01;
+    protected static final int TWKB_SIZE               = 0x02;
+    protected static final int TWKB_ID_LIST            = 0x04;
+    protected static final int TWKB_EXTENDED_PRECISION = 0x08;
+    protected static final int TWKB_EMPTY              = 0x10;
+
+    protected static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    protected int      mCRS;
+    protected double[] mCoordinates = new double[16];
+
+    // TWKB reader and writer state
+    protected int    mDimensions;
+    protected double mScale;
+    protected long[] mLast = new long[4];
+    protected byte[] mOutput;
+    protected int    mPosition;
+
+
+    /**
+     * @return True if the WKB geometry at the buffer position has Z ordinates. The buffer
+     * position is not changed.
+     */
+    public static boolean hasZ(ByteBuffer buffer)
+    {
+        int position = buffer.position();
+        if (buffer.limit() - position < 5) {
+            return false;
+        }
+        ByteOrder order = buffer.get(position) == 0 ? ByteOrder.BIG_ENDIAN
+                                                    : ByteOrder.LITTLE_ENDIAN;
+        int type = buffer.duplicate().order(order).getInt(position + 1);
+        int isoType = type & 0x0FFFFFFF;
+        return (type & EWKB_Z) != 0 || isoType / 1000 == 1 || isoType / 1000 == 3;
+    }
+
+
+    /**
+     * Read one WKB geometry from the buffer position, the position is moved past it
+     */
+    public GeoGeometry readWKB(
+            ByteBuffer buffer,
+            int crs)
+            throws IOException
+    {
+        mCRS = crs;
+        try {
+            return readWKBGeometry(buffer, 0);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("WKB is truncated");
+        }
+    }
+
+
+    protected GeoGeometry readWKBGeometry(
+            ByteBuffer buffer,
+            int depth)
+            throws IOException
+    {
+        byte byteOrder = buffer.get();
+        if (byteOrder == 0) {
+            buffer.order(ByteOrder.BIG_ENDIAN);
+        } else if (byteOrder == 1) {
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+        } else {
+            throw new IOException("Wrong WKB byte order " + byteOrder);
+        }
+
+        int typeWord = buffer.getInt();
+        int type = typeWord & 0x0FFFFFFF;
+        int isoDimensions = type / 1000;
+        type %= 1000;
+        boolean hasZ = (typeWord & EWKB_Z) != 0 || isoDimensions == 1 || isoDimensions == 3;
+        boolean hasM = (typeWord & EWKB_M) != 0 || isoDimensions == 2 || isoDimensions == 3;
+        if ((typeWord & EWKB_SRID) != 0) {
+            int srid = buffer.getInt();
+            if (depth == 0) {
+                mCRS = srid;
+            }
+        }
+        int dimensions = 2 + (hasZ ? 1 : 0) + (hasM ? 1 : 0);
+
+        GeoGeometry geometry;
+        switch (type) {
+            case GTPoint:
+                readWKBPoints(buffer, dimensions, 1);
+                geometry = new GeoPoint(mCoordinates[0], mCoordinates[1]);
+                break;
+            case GTLineString:
+                geometry = readWKBPart(buffer, dimensions, new GeoLineString());
+                break;
+            case GTPolygon:
+                GeoPolygon polygon = new GeoPolygon();
+                int ringCount = readWKBCount(buffer, 4);
+                for (int i = 0; i < ringCount; i++) {
+                    if (i == 0) {
+                        readWKBPart(buffer, dimensions, polygon.getOuterRing());
+                    } else {
+                        polygon.addInnerRing(
+                                (GeoLinearRing) readWKBPart(buffer, dimensions, new GeoLinearRing()));
+                    }
+                }
+                geometry = polygon;
+                break;
+            case GTMultiPoint:
+            case GTMultiLineString:
+            case GTMultiPolygon:
+            case GTGeometryCollection:
+                if (depth == MAX_DEPTH) {
+                    throw new IOException("Geometry collection is nested too deep");
+                }
+                GeoGeometryCollection collection = GeometryBlobCodec.newCollection(type);
+                int count = readWKBCount(buffer, 5);
+                for (int i = 0; i < count; i++) {
+                    add(collection, readWKBGeometry(buffer, depth + 1));
+                }
+                geometry = collection;
+                break;
+            default:
+                throw new IOException("Unsupported WKB geometry type " + typeWord);
+        }
+        geometry.setCRS(mCRS);
+        return geometry;
+    }
+
+
+    protected GeoLineString readWKBPart(
+            ByteBuffer buffer,
+            int dimensions,
+            GeoLineString part)
+            throws IOException
+    {
+        int count = readWKBCount(buffer, dimensions * 8);
+        readWKBPoints(buffer, dimensions, count);
+        part.setCoordinates(mCoordinates, count);
+        part.setCRS(mCRS);
+        return part;
+    }
+
+
+    protected void readWKBPoints(
+            ByteBuffer buffer,
+            int dimensions,
+            int count)
+    {
+        double[] coordinates = ensureCoordinates(count);
+        for (int i = 0; i < count; i++) {
+            coordinates[i * 2] = buffer.getDouble();
+            coordinates[i * 2 + 1] = buffer.getDouble();
+            for (int j = 2; j < dimensions; j++) {
+                buffer.getDouble();
+            }
+        }
+    }
+
+
+    /**
+     * Write little endian 2D WKB
+     */
+    public byte[] writeWKB(GeoGeometry geometry)
+            throws IOException
+    {
+        ByteBuffer buffer =
+                ByteBuffer.allocate(getWKBSize(geometry, 0)).order(ByteOrder.LITTLE_ENDIAN);
+        writeWKB(buffer, geometry);
+        return buffer.array();
+    }
+
+
+    protected int getWKBSize(
+            GeoGeometry geometry,
+            int depth)
+            throws IOException
+    {
+        switch (geometry.getType()) {
+            case GTPoint:
+                return 21;
+            case GTLineString:
+            case GTLinearRing:
+                return 9 + ((GeoLineString) geometry).getPointCount() * 16;
+            case GTPolygon:
+                GeoPolygon polygon = (GeoPolygon) geometry;
+                int size = 13 + polygon.getOuterRing().getPointCount() * 16;
+                for (int i = 0; i < polygon.getInnerRingCount(); i++) {
+                    size += 4 + polygon.getInnerRing(i).getPointCount() * 16;
+                }
+                return size;
+            case GTMultiPoint:
+            case GTMultiLineString:
+            case GTMultiPolygon:
+            case GTGeometryCollection:
+                if (depth == MAX_DEPTH) {
+                    throw new IOException("Geometry collection is nested too deep");
+                }
+                GeoGeometryCollection collection = (GeoGeometryCollection) geometry;
+                size = 9;
+                for (int i = 0; i < collection.size(); i++) {
+                    size += getWKBSize(collection.get(i), depth + 1);
+                }
+                return size;
+            default:
+                throw new IOException("Unknown geometry type " + geometry.getType());
+        }
+    }
+
+
+    protected void writeWKB(
+            ByteBuffer buffer,
+            GeoGeometry geometry)
+    {
+        int type = geometry.getType();
+        buffer.put((byte) 1);
+        buffer.putInt(type == GTLinearRing ? GTLineString : type);
+        switch (type) {
+            case GTPoint:
+                GeoPoint point = (GeoPoint) geometry;
+                buffer.putDouble(point.getX());
+                buffer.putDouble(point.getY());
+                break;
+            case GTLineString:
+            case GTLinearRing:
+                writeWKBPart(buffer, (GeoLineString) geometry);
+                break;
+            case GTPolygon:
+                GeoPolygon polygon = (GeoPolygon) geometry;
+                buffer.putInt(polygon.getInnerRingCount() + 1);
+                writeWKBPart(buffer, polygon.getOuterRing());
+                for (int i = 0; i < polygon.getInnerRingCount(); i++) {
+                    writeWKBPart(buffer, polygon.getInnerRing(i));
+                }
+                break;
+            default:
+                GeoGeometryCollection collection = (GeoGeometryCollection) geometry;
+                buffer.putInt(collection.size());
+                for (int i = 0; i < collection.size(); i++) {
+                    writeWKB(buffer, collection.get(i));
+                }
+                break;
+        }
+    }
+
+
+    protected void writeWKBPart(
+            ByteBuffer buffer,
+            GeoLineString part)
+    {
+        int count = part.getPointCount();
+        double[] coordinates = part.getCoordinates();
+        buffer.putInt(count);
+        for (int i = 0; i < count * 2; i++) {
+            buffer.putDouble(coordinates[i]);
+        }
+    }
+
+
+    /**
+     * Read one TWKB geometry from the buffer position, the position is moved past it. The
+     * bounding box, the size and the id list are skipped.
+     */
+    public GeoGeometry readTWKB(
+            ByteBuffer buffer,
+            int crs)
+            throws IOException
+    {
+        mCRS = crs;
+        try {
+            return readTWKBGeometry(buffer, 0);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("TWKB is truncated");
+        }
+    }
+
+
+    protected GeoGeometry readTWKBGeometry(
+            ByteBuffer buffer,
+            int depth)
+            throws IOException
+    {
+        int header = buffer.get();
+        int type = header & 0x0F;
+        int precision = (int) GeometryBlobCodec.unZigZag((header >> 4) & 0x0F);
+        int metadata = buffer.get();
+        mDimensions = 2;
+        if ((metadata & TWKB_EXTENDED_PRECISION) != 0) {
+            int extended = buffer.get();
+            mDimensions += (extended & 0x01) + ((extended >> 1) & 0x01);
+        }
+        mScale = Math.pow(10, precision);
+        Arrays.fill(mLast, 0);
+        if ((metadata & TWKB_SIZE) != 0) {
+            readVarLong(buffer);
+        }
+        if ((metadata & TWKB_BBOX) != 0) {
+            for (int i = 0; i < mDimensions * 2; i++) {
+                readVarLong(buffer);
+            }
+        }
+
+        boolean isEmpty = (metadata & TWKB_EMPTY) != 0;
+        GeoGeometry geometry;
+        switch (type) {
+            case GTPoint:
+                if (isEmpty) {
+                    geometry = new GeoPoint(Double.NaN, Double.NaN);
+                } else {
+                    readTWKBPoints(buffer, 1);
+                    geometry = new GeoPoint(mCoordinates[0], mCoordinates[1]);
+                }
+                break;
+            case GTLineString:
+                GeoLineString lineString = new GeoLineString();
+                if (!isEmpty) {
+                    readTWKBPart(buffer, lineString);
+                }
+                geometry = lineString;
+                break;
+            case GTPolygon:
+                GeoPolygon polygon = new GeoPolygon();
+                if (!isEmpty) {
+                    readTWKBPolygon(buffer, polygon);
+                }
+                geometry = polygon;
+                break;
+            case GTMultiPoint:
+            case GTMultiLineString:
+            case GTMultiPolygon:
+            case GTGeometryCollection:
+                if (depth == MAX_DEPTH) {
+                    throw new IOException("Geometry collection is nested too deep");
+                }
+                GeoGeometryCollection collection = GeometryBlobCodec.newCollection(type);
+                geometry = collection;
+                if (isEmpty) {
+                    break;
+                }
+                int count = readTWKBCount(buffer, 1);
+                if ((metadata & TWKB_ID_LIST) != 0) {
+                    for (int i = 0; i < count; i++) {
+                        readVarLong(buffer);
+                    }
+                }
+                for (int i = 0; i < count; i++) {
+                    switch (type) {
+                        case GTMultiPoint:
+                            readTWKBPoints(buffer, 1);
+                            GeoPoint point = new GeoPoint(mCoordinates[0], mCoordinates[1]);
+                            point.setCRS(mCRS);
+                            add(collection, point);
+                            break;
+                        case GTMultiLineString:
+                            add(collection, readTWKBPart(buffer, new GeoLineString()));
+                            break;
+                        case GTMultiPolygon:
+                            GeoPolygon member = new GeoPolygon();
+                            readTWKBPolygon(buffer, member);
+                            member.setCRS(mCRS);
+                            add(collection, member);
+                            break;
+                        default:
+                            add(collection, readTWKBGeometry(buffer, depth + 1));
+                            break;
+                    }
+                }
+                break;
+            default:
+                throw new IOException("Unsupported TWKB geometry type " + type);
+        }
+        geometry.setCRS(mCRS);
+        return geometry;
+    }
+
+
+    protected void readTWKBPolygon(
+            ByteBuffer buffer,
+            GeoPolygon polygon)
+            throws IOException
+    {
+        int ringCount = readTWKBCount(buffer, 1);
+        for (int i = 0; i < ringCount; i++) {
+            if (i == 0) {
+                readTWKBPart(buffer, polygon.getOuterRing());
+            } else {
+                polygon.addInnerRing((GeoLinearRing) readTWKBPart(buffer, new GeoLinearRing()));
+            }
+        }
+    }
+
+
+    protected GeoLineString readTWKBPart(
+            ByteBuffer buffer,
+            GeoLineString part)
+            throws IOException
+    {
+        int count = readTWKBCount(buffer, mDimensions);
+        readTWKBPoints(buffer, count);
+        part.setCoordinates(mCoordinates, count);
+        part.setCRS(mCRS);
+        return part;
+    }
+
+
+    protected void readTWKBPoints(
+            ByteBuffer buffer,
+            int count)
+            throws IOException
+    {
+        double[] coordinates = ensureCoordinates(count);
+        long[] last = mLast;
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < mDimensions; j++) {
+                last[j] += GeometryBlobCodec.unZigZag(readVarLong(buffer));
+            }
+            coordinates[i * 2] = last[0] / mScale;
+            coordinates[i * 2 + 1] = last[1] / mScale;
+        }
+    }
+
+
+    /**
+     * Write 2D TWKB without the bounding box, the size and the id list
+     * @param precision Count of decimal digits kept, -7 to 7
+     */
+    public byte[] writeTWKB(
+            GeoGeometry geometry,
+            int precision)
+            throws IOException
+    {
+        if (precision < -7 || precision > 7) {
+            throw new IllegalArgumentException("TWKB precision is out of range: " + precision);
+        }
+        if (null == mOutput) {
+            mOutput = new byte[256];
+        }
+        mPosition = 0;
+        writeTWKB(geometry, precision, 0);
+        return Arrays.copyOf(mOutput, mPosition);
+    }
+
+
+    protected void writeTWKB(
+            GeoGeometry geometry,
+            int precision,
+            int depth)
+            throws IOException
+    {
+        int type = geometry.getType();
+        if (type == GTLinearRing) {
+            type = GTLineString;
+        }
+        mScale = Math.pow(10, precision);
+        Arrays.fill(mLast, 0);
+        writeByte(type | (int) (GeometryBlobCodec.zigZag(precision) << 4));
+        if (isEmpty(geometry)) {
+            writeByte(TWKB_EMPTY);
+            return;
+        }
+        writeByte(0);
+
+        switch (type) {
+            case GTPoint:
+                GeoPoint point = (GeoPoint) geometry;
+                writeTWKBPoint(point.getX(), point.getY());
+                break;
+            case GTLineString:
+                writeTWKBPart((GeoLineString) geometry);
+                break;
+            case GTPolygon:
+                writeTWKBPolygon((GeoPolygon) geometry);
+                break;
+            case GTMultiPoint:
+            case GTMultiLineString:
+            case GTMultiPolygon:
+            case GTGeometryCollection:
+                if (depth == MAX_DEPTH) {
+                    throw new IOException("Geometry collection is nested too deep");
+                }
+                GeoGeometryCollection collection = (GeoGeometryCollection) geometry;
+                int count = collection.size();
+                writeVarLong(count);
+                for (int i = 0; i < count; i++) {
+                    GeoGeometry member = collection.get(i);
+                    switch (type) {
+                        case GTMultiPoint:
+                            GeoPoint memberPoint = (GeoPoint) member;
+                            writeTWKBPoint(memberPoint.getX(), memberPoint.getY());
+                            break;
+                        case GTMultiLineString:
+                            writeTWKBPart((GeoLineString) member);
+                            break;
+                        case GTMultiPolygon:
+                            writeTWKBPolygon((GeoPolygon) member);
+                            break;
+                        default:
+                            writeTWKB(member, precision, depth + 1);
+                            break;
+                    }
+                }
+                break;
+            default:
+                throw new IOException("Unknown geometry type " + type);
+        }
+    }
+
+
+    protected static boolean isEmpty(GeoGeometry geometry)
+    {
+        switch (geometry.getType()) {
+            case GTPoint:
+                GeoPoint point = (GeoPoint) geometry;
+                return Double.isNaN(point.getX()) && Double.isNaN(point.getY());
+            case GTLineString:
+            case GTLinearRing:
+                return ((GeoLineString) geometry).getPointCount() == 0;
+            case GTPolygon:
+                GeoPolygon polygon = (GeoPolygon) geometry;
+                return polygon.getOuterRing().getPointCount() == 0
+                        && polygon.getInnerRingCount() == 0;
+            default:
+                return ((GeoGeometryCollection) geometry).size() == 0;
+        }
+    }
+
+
+    protected void writeTWKBPolygon(GeoPolygon polygon)
+    {
+        int innerRingCount = polygon.getInnerRingCount();
+        writeVarLong(innerRingCount + 1);
+        writeTWKBPart(polygon.getOuterRing());
+        for (int i = 0; i < innerRingCount; i++) {
+            writeTWKBPart(polygon.getInnerRing(i));
+        }
+    }
+
+
+    protected void writeTWKBPart(GeoLineString part)
+    {
+        int count = part.getPointCount();
+        double[] coordinates = part.getCoordinates();
+        writeVarLong(count);
+        for (int i = 0; i < count; i++) {
+            writeTWKBPoint(coordinates[i * 2], coordinates[i * 2 + 1]);
+        }
+    }
+
+
+    protected void writeTWKBPoint(
+            double x,
+            double y)
+    {
+        long gridX = Math.round(x * mScale);
+        long gridY = Math.round(y * mScale);
+        writeVarLong(GeometryBlobCodec.zigZag(gridX - mLast[0]));
+        writeVarLong(GeometryBlobCodec.zigZag(gridY - mLast[1]));
+        mLast[0] = gridX;
+        mLast[1] = gridY;
+    }
+
+
+    protected void writeByte(int value)
+    {
+        if (mPosition == mOutput.length) {
+            mOutput = Arrays.copyOf(mOutput, mOutput.length * 2);
+        }
+        mOutput[mPosition++] = (byte) value;
+    }
+
+
+    protected void writeVarLong(long value)
+    {
+        while ((value & ~0x7FL) != 0) {
+            writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        writeByte((int) value);
+    }
+
+
+    protected static long readVarLong(ByteBuffer buffer)
+            throws IOException
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in TWKB");
+    }
+
+
+    /**
+     * Read a count and check it against the rest of the buffer
+     */
+    protected static int readWKBCount(
+            ByteBuffer buffer,
+            int minItemSize)
+            throws IOException
+    {
+        return checkCount(buffer, buffer.getInt() & 0xFFFFFFFFL, minItemSize);
+    }
+
+
+    protected static int readTWKBCount(
+            ByteBuffer buffer,
+            int minItemSize)
+            throws IOException
+    {
+        return checkCount(buffer, readVarLong(buffer), minItemSize);
+    }
+
+
+    protected static int checkCount(
+            ByteBuffer buffer,
+            long count,
+            int minItemSize)
+            throws IOException
+    {
+        if (count < 0 || count > buffer.remaining() / minItemSize) {
+            throw new IOException("Geometry is truncated");
+        }
+        return (int) count;
+    }
+
+
+    protected double[] ensureCoordinates(int count)
+    {
+        if (count * 2 > mCoordinates.length) {
+            mCoordinates = new double[Math.max(count * 2, mCoordinates.length * 2)];
+        }
+        return mCoordinates;
+    }
+
+
+    protected static void add(
+            GeoGeometryCollection collection,
+            GeoGeometry geometry)
+            throws IOException
+    {
+        try {
+            collection.add(geometry);
+        } catch (IllegalArgumentException | ClassCastException e) {
+            // a member of a wrong type
+            throw new IOException(e.getMessage());
+        }
+    }
+
+
+    /**
+     * @return Upper case hex of the bytes, the usual text form of WKB
+     */
+    public static String toHex(byte[] bytes)
+    {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0x0F];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0x0F];
+        }
+        return new String(chars);
+    }
+
+
+    public static byte[] fromHex(String hex)
+            throws IOException
+    {
+        int length = hex.length();
+        if (length % 2 != 0) {
+            throw new IOException("Odd length of a hex string");
+        }
+        byte[] bytes = new byte[length / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(i * 2), 16);
+            int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IOException("Wrong hex digit at " + i * 2);
+            }
+            bytes[i] = (byte) (high << 4 | low);
+        }
+        return bytes;
+    }
+}
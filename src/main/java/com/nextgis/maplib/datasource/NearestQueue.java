@@ -0,0 +1,177 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplib.datasource;
+
+import com.nextgis.maplib.api.IFeatureDistance;
+import com.nextgis.maplib.util.LongList;
+
+import java.util.Arrays;
+
+/**
+ * Priority queue for best-first nearest neighbour search (Hjaltason, Samet, 1999). Holds tree
+ * nodes and items keyed by squared distance to the query point: the envelope distance first,
+ * the exact distance after the item is refined.
+ *
+ * Nodes are either objects (GeometryRTree nodes) or positions (packed tree boxes).
+ */
+public class NearestQueue {
+
+    public static final byte NODE  = 0;
+    public static final byte ITEM  = 1;
+    public static final byte EXACT = 2;
+
+    protected double[] mKeys;
+    protected long[]   mValues;
+    protected Object[] mNodes;
+    protected byte[]   mTypes;
+    protected int      mSize;
+
+    protected double mKey;
+    protected long   mValue;
+    protected Object mNode;
+    protected byte   mType;
+
+    protected final double           mX, mY;
+    protected final double           mMaxKey;
+    protected final IFeatureDistance mDistance;
+
+    /**
+     * @param x Query point X
+     * @param y Query point Y
+     * @param maxDistance Items farther than this are skipped
+     * @param distance Exact distance to a feature or null to use envelope distance
+     */
+    public NearestQueue(double x, double y, double maxDistance, IFeatureDistance distance) {
+        mX = x;
+        mY = y;
+        mMaxKey = maxDistance * maxDistance;
+        mDistance = distance;
+        mKeys = new double[64];
+        mValues = new long[64];
+        mNodes = new Object[64];
+        mTypes = new byte[64];
+    }
+
+    /**
+     * Add a node or an item if its envelope is not too far
+     */
+    public void add(double minX, double minY, double maxX, double maxY, long value, Object node,
+                    byte type) {
+        double dx = minX > mX ? minX - mX : mX > maxX ? mX - maxX : 0;
+        double dy = minY > mY ? minY - mY : mY > maxY ? mY - maxY : 0;
+        double key = dx * dx + dy * dy;
+        if (key <= mMaxKey) {
+            push(key, value, node, type);
+        }
+    }
+
+    /**
+     * Take the closest entry. Items and nodes go to the current entry, so the caller expands
+     * them. Items found are added to the result, refined first if there is a distance
+     * callback.
+     * @return false if the queue is empty or the result has k items
+     */
+    public boolean poll(int k, LongList result) {
+        while (mSize > 0 && result.size() < k) {
+            pop();
+            if (mType == NODE) {
+                return true;
+            }
+
+            if (mType == ITEM && null != mDistance) {
+                double distance = mDistance.getDistance(mValue, mX, mY);
+                double key = distance * distance;
+                if (distance < Double.MAX_VALUE && key <= mMaxKey) {
+                    push(key, mValue, null, EXACT);
+                }
+            } else {
+                result.add(mValue);
+            }
+        }
+        return false;
+    }
+
+    public long getValue() {
+        return mValue;
+    }
+
+    public Object getNode() {
+        return mNode;
+    }
+
+    /**
+     * Add an entry with the known squared distance, e.g. a root node with 0
+     */
+    public void push(double key, long value, Object node, byte type) {
+        if (mSize == mKeys.length) {
+            int capacity = mSize * 2;
+            mKeys = Arrays.copyOf(mKeys, capacity);
+            mValues = Arrays.copyOf(mValues, capacity);
+            mNodes = Arrays.copyOf(mNodes, capacity);
+            mTypes = Arrays.copyOf(mTypes, capacity);
+        }
+
+        int i = mSize++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (mKeys[parent] <= key) {
+                break;
+            }
+            set(i, mKeys[parent], mValues[parent], mNodes[parent], mTypes[parent]);
+            i = parent;
+        }
+        set(i, key, value, node, type);
+    }
+
+    protected void pop() {
+        mKey = mKeys[0];
+        mValue = mValues[0];
+        mNode = mNodes[0];
+        mType = mTypes[0];
+
+        int last = --mSize;
+        double key = mKeys[last];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= last) {
+                break;
+            }
+            if (child + 1 < last && mKeys[child + 1] < mKeys[child]) {
+                child++;
+            }
+            if (key <= mKeys[child]) {
+                break;
+            }
+            set(i, mKeys[child], mValues[child], mNodes[child], mTypes[child]);
+            i = child;
+        }
+        set(i, key, mValues[last], mNodes[last], mTypes[last]);
+        mNodes[last] = null;
+    }
+
+    private void set(int i, double key, long value, Object node, byte type) {
+        mKeys[i] = key;
+        mValues[i] = value;
+        mNodes[i] = node;
+        mTypes[i] = type;
+    }
+}
@@ -0,0 +1,1147 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplib.datasource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+
+/**
+ * Clips geometries to an area given by a polygon or a multipolygon, holes included.
+ * <p>
+ * Polygons and lines are clipped by the Martinez-Rueda sweep: the edges of the geometry and of
+ * the area are swept from left to right and split where they cross, each piece learns from the
+ * piece below it whether it lies inside the other side, and the pieces inside are joined into
+ * the result. Points are tested with a {@link PreparedPolygon}.
+ * <p>
+ * The area edges are copied once into a packed interval tree over their x ranges, and a
+ * geometry is swept only against the area edges of its own x range, so one clipper serves a
+ * whole layer. If no area edge touches the geometry envelope the geometry is wholly inside or
+ * outside and is not swept at all. A clipper is not thread safe.
+ */
+public class PolygonClipper
+{
+    public static final int OUTSIDE = 0;
+    public static final int INSIDE  = 1;
+    public static final int CROSSES = 2;
+
+    protected static final int EDGE_SIZE = 4;
+
+    protected static final int NORMAL               = 0;
+    protected static final int NON_CONTRIBUTING     = 1;
+    protected static final int SAME_TRANSITION      = 2;
+    protected static final int DIFFERENT_TRANSITION = 3;
+
+    protected static final Comparator<SweepEvent> EVENT_ORDER = new Comparator<SweepEvent>()
+    {
+        @Override
+        public int compare(SweepEvent e1, SweepEvent e2)
+        {
+            return compareEvents(e1, e2);
+        }
+    };
+
+    protected static final Comparator<SweepEvent> SEGMENT_ORDER = new Comparator<SweepEvent>()
+    {
+        @Override
+        public int compare(SweepEvent le1, SweepEvent le2)
+        {
+            return compareSegments(le1, le2);
+        }
+    };
+
+    protected final GeoEnvelope     mEnvelope;
+    protected final PreparedPolygon mArea;
+    /** Edges as x1, y1, x2, y2 in the leaf order */
+    protected double[] mEdges;
+    protected int[]    mEdgeRings;
+    protected int      mEdgeCount;
+    protected int      mRingCount;
+    /** Leaf count rounded up to a power of two, node i has children 2i and 2i + 1 */
+    protected int      mLeafBase;
+    protected double[] mMinX;
+    protected double[] mMaxX;
+
+    /** Area edges of the current geometry x range */
+    protected int[] mBand = new int[64];
+    protected int   mBandCount;
+
+    protected final PriorityQueue<SweepEvent> mQueue     = new PriorityQueue<>(64, EVENT_ORDER);
+    protected final TreeSet<SweepEvent>       mSweepLine = new TreeSet<>(SEGMENT_ORDER);
+    protected final List<SweepEvent>          mSorted    = new ArrayList<>();
+    protected int mEventCount;
+
+    /** Segment intersection points */
+    protected double mX0, mY0, mX1, mY1;
+
+
+    /**
+     * @param area a polygon or a multipolygon
+     */
+    public PolygonClipper(GeoGeometry area)
+    {
+        mEnvelope = new GeoEnvelope(area.getEnvelope());
+        mArea = new PreparedPolygon(area);
+        mEdges = new double[64];
+        mEdgeRings = new int[16];
+        addEdges(area);
+        buildTree();
+    }
+
+
+    public GeoEnvelope getEnvelope()
+    {
+        return new GeoEnvelope(mEnvelope);
+    }
+
+
+    /**
+     * Tells where a geometry with this envelope may lie, a feature may be skipped or passed
+     * unchanged by its cached envelope before it is read.
+     *
+     * @return {@link #OUTSIDE}, {@link #INSIDE} or {@link #CROSSES} if the area boundary may
+     * cross the envelope
+     */
+    public int locate(GeoEnvelope envelope)
+    {
+        if (!mEnvelope.intersects(envelope)) {
+            return OUTSIDE;
+        }
+
+        double minX = envelope.getMinX(), minY = envelope.getMinY();
+        double maxX = envelope.getMaxX(), maxY = envelope.getMaxY();
+        mBandCount = 0;
+        collectBand(1, minX, maxX);
+        for (int i = 0; i < mBandCount; i++) {
+            int edge = mBand[i] * EDGE_SIZE;
+            double y1 = mEdges[edge + 1], y2 = mEdges[edge + 3];
+            if (Math.max(y1, y2) >= minY && Math.min(y1, y2) <= maxY) {
+                return CROSSES;
+            }
+        }
+
+        // the boundary does not come into the envelope, so it is inside or outside as a whole
+        return mArea.contains(minX, minY) ? INSIDE : OUTSIDE;
+    }
+
+
+    /**
+     * Clips a geometry to the area. A polygon cut into pieces becomes a multipolygon and a line
+     * becomes a multiline, multi geometries and collections keep their type.
+     *
+     * @return the clipped geometry, the geometry itself if it is wholly inside, or null if
+     * nothing is left
+     */
+    public GeoGeometry clip(GeoGeometry geometry)
+    {
+        if (null == geometry) {
+            return null;
+        }
+
+        if (geometry instanceof GeoPoint) {
+            GeoPoint point = (GeoPoint) geometry;
+            return mArea.contains(point.getX(), point.getY()) ? geometry : null;
+        }
+
+        GeoEnvelope envelope = geometry.getEnvelope();
+        if (!envelope.isInit()) {
+            return null;
+        }
+        switch (locate(envelope)) {
+            case OUTSIDE:
+                return null;
+            case INSIDE:
+                return geometry;
+        }
+
+        if (geometry instanceof GeoMultiPoint) {
+            return clipPoints((GeoMultiPoint) geometry);
+        } else if (geometry instanceof GeoLineString || geometry instanceof GeoMultiLineString) {
+            return clipLines(geometry, envelope);
+        } else if (geometry instanceof GeoPolygon || geometry instanceof GeoMultiPolygon) {
+            return clipPolygons(geometry, envelope);
+        } else if (geometry instanceof GeoGeometryCollection) {
+            GeoGeometryCollection collection = (GeoGeometryCollection) geometry;
+            GeoGeometryCollection result = new GeoGeometryCollection();
+            result.setCRS(geometry.getCRS());
+            for (int i = 0; i < collection.size(); i++) {
+                GeoGeometry part = clip(collection.get(i));
+                if (null != part) {
+                    result.add(part);
+                }
+            }
+            return result.size() == 0 ? null : result;
+        }
+        return null;
+    }
+
+
+    protected GeoGeometry clipPoints(GeoMultiPoint multiPoint)
+    {
+        GeoMultiPoint result = new GeoMultiPoint();
+        result.setCRS(multiPoint.getCRS());
+        for (int i = 0; i < multiPoint.size(); i++) {
+            GeoPoint point = multiPoint.get(i);
+            if (mArea.contains(point.getX(), point.getY())) {
+                result.add(new GeoPoint(point));
+            }
+        }
+        return result.size() == 0 ? null : result;
+    }
+
+
+    protected GeoGeometry clipLines(GeoGeometry geometry, GeoEnvelope envelope)
+    {
+        startSweep();
+        if (geometry instanceof GeoLineString) {
+            GeoLineString line = (GeoLineString) geometry;
+            addSubject(line.mCoordinates, line.mPointCount, false, 0, 0);
+        } else {
+            GeoMultiLineString multiLine = (GeoMultiLineString) geometry;
+            for (int i = 0; i < multiLine.size(); i++) {
+                GeoLineString line = multiLine.get(i);
+                addSubject(line.mCoordinates, line.mPointCount, false, i, i);
+            }
+        }
+        subdivide(envelope);
+
+        // pieces lying inside the area or on its boundary, in the order of the source edges
+        List<SweepEvent> pieces = new ArrayList<>();
+        for (SweepEvent event : mSorted) {
+            if (event.mLeft && event.mSubject && (event.mType != NORMAL || !event.mOtherInOut)) {
+                pieces.add(event);
+            }
+        }
+        pieces.sort(new Comparator<SweepEvent>()
+        {
+            @Override
+            public int compare(SweepEvent e1, SweepEvent e2)
+            {
+                if (e1.mPart != e2.mPart) {
+                    return e1.mPart < e2.mPart ? -1 : 1;
+                }
+                if (e1.mEdge != e2.mEdge) {
+                    return e1.mEdge < e2.mEdge ? -1 : 1;
+                }
+                return Double.compare(getEdgeOffset(e1), getEdgeOffset(e2));
+            }
+        });
+
+        GeoMultiLineString result = new GeoMultiLineString();
+        result.setCRS(geometry.getCRS());
+        GeoLineString line = null;
+        int part = -1;
+        double lastX = 0, lastY = 0;
+        for (SweepEvent piece : pieces) {
+            SweepEvent start = piece, end = piece.mOther;
+            if (getSquareDistance(piece.mOther, piece.mEdgeX, piece.mEdgeY) <
+                    getSquareDistance(piece, piece.mEdgeX, piece.mEdgeY)) {
+                start = piece.mOther;
+                end = piece;
+            }
+            if (null == line || piece.mPart != part || start.mX != lastX || start.mY != lastY) {
+                line = new GeoLineString();
+                line.setCRS(geometry.getCRS());
+                line.add(start.mX, start.mY);
+                result.add(line);
+                part = piece.mPart;
+            }
+            line.add(end.mX, end.mY);
+            lastX = end.mX;
+            lastY = end.mY;
+        }
+
+        finishSweep();
+        if (result.size() == 0) {
+            return null;
+        }
+        if (geometry instanceof GeoLineString && result.size() == 1) {
+            return result.get(0);
+        }
+        return result;
+    }
+
+
+    protected GeoGeometry clipPolygons(GeoGeometry geometry, GeoEnvelope envelope)
+    {
+        startSweep();
+        int contour = 0;
+        if (geometry instanceof GeoPolygon) {
+            addSubject((GeoPolygon) geometry, contour);
+        } else {
+            GeoMultiPolygon multiPolygon = (GeoMultiPolygon) geometry;
+            for (int i = 0; i < multiPolygon.size(); i++) {
+                contour = addSubject(multiPolygon.get(i), contour);
+            }
+        }
+        subdivide(envelope);
+
+        List<Contour> contours = connectEdges();
+        GeoMultiPolygon result = new GeoMultiPolygon();
+        result.setCRS(geometry.getCRS());
+        for (Contour outer : contours) {
+            if (outer.mHoleOf >= 0 || outer.mRing.getPointCount() < 4) {
+                continue;
+            }
+            GeoPolygon polygon = new GeoPolygon();
+            polygon.setCRS(geometry.getCRS());
+            polygon.mOuterRing = outer.mRing;
+            for (int hole : outer.mHoles) {
+                GeoLinearRing ring = contours.get(hole).mRing;
+                if (ring.getPointCount() >= 4) {
+                    polygon.addInnerRing(ring);
+                }
+            }
+            result.add(polygon);
+        }
+
+        finishSweep();
+        if (result.size() == 0) {
+            return null;
+        }
+        if (geometry instanceof GeoPolygon && result.size() == 1) {
+            return result.get(0);
+        }
+        return result;
+    }
+
+
+    protected int addSubject(GeoPolygon polygon, int contour)
+    {
+        GeoLinearRing outerRing = polygon.getOuterRing();
+        addSubject(outerRing.mCoordinates, outerRing.mPointCount, true, contour++, 0);
+        for (int i = 0; i < polygon.getInnerRingCount(); i++) {
+            GeoLinearRing ring = polygon.getInnerRing(i);
+            addSubject(ring.mCoordinates, ring.mPointCount, true, contour++, 0);
+        }
+        return contour;
+    }
+
+
+    /**
+     * Adds the edges of a ring or a line, the ring closing edge is added if it is missing.
+     */
+    protected void addSubject(double[] xy, int count, boolean ring, int contour, int part)
+    {
+        int edgeCount = ring ? count : count - 1;
+        for (int i = 0; i < edgeCount; i++) {
+            int j = i + 1 == count ? 0 : i + 1;
+            addSegment(xy[i * 2], xy[i * 2 + 1], xy[j * 2], xy[j * 2 + 1], true, contour, part, i);
+        }
+    }
+
+
+    protected void addSegment(double x1, double y1, double x2, double y2, boolean subject,
+                              int contour, int part, int edge)
+    {
+        // collapsed edges break the sweep
+        if (x1 == x2 && y1 == y2) {
+            return;
+        }
+
+        SweepEvent e1 = newEvent(x1, y1, subject);
+        SweepEvent e2 = newEvent(x2, y2, subject);
+        e1.mOther = e2;
+        e2.mOther = e1;
+        e1.mContour = e2.mContour = contour;
+        e1.mPart = e2.mPart = part;
+        e1.mEdge = e2.mEdge = edge;
+        e1.mEdgeX = e2.mEdgeX = x1;
+        e1.mEdgeY = e2.mEdgeY = y1;
+        SweepEvent left = e1, right = e2;
+        if (compareEvents(e1, e2) > 0) {
+            left = e2;
+            right = e1;
+        }
+        left.mLeft = true;
+        e1.setLine(left.mX, left.mY, right.mX, right.mY);
+        e2.copySource(e1);
+        mQueue.add(e1);
+        mQueue.add(e2);
+    }
+
+
+    protected SweepEvent newEvent(double x, double y, boolean subject)
+    {
+        return new SweepEvent(x, y, subject, mEventCount++);
+    }
+
+
+    protected void startSweep()
+    {
+        mEventCount = 0;
+    }
+
+
+    protected void finishSweep()
+    {
+        mQueue.clear();
+        mSweepLine.clear();
+        mSorted.clear();
+    }
+
+
+    /**
+     * Adds the area edges of the band and sweeps until the pieces right of both sides are left,
+     * the processed events are collected in order.
+     * <p>
+     * A segment learns whether it is inside from the segment below it once, when it comes into
+     * the sweep line. The band lacks the area edges lying wholly left of the geometry, so the
+     * band edges coming from the left learn it again at the left side of the geometry, where
+     * the sweep line holds all area edges passing there.
+     */
+    protected void subdivide(GeoEnvelope envelope)
+    {
+        double areaMaxX = -Double.MAX_VALUE;
+        for (int i = 0; i < mBandCount; i++) {
+            int edge = mBand[i];
+            int index = edge * EDGE_SIZE;
+            double x1 = mEdges[index], y1 = mEdges[index + 1];
+            double x2 = mEdges[index + 2], y2 = mEdges[index + 3];
+            addSegment(x1, y1, x2, y2, false, mEdgeRings[edge], 0, 0);
+            areaMaxX = Math.max(areaMaxX, Math.max(x1, x2));
+        }
+        double minX = envelope.getMinX();
+        double rightBound = Math.min(envelope.getMaxX(), areaMaxX);
+
+        TreeSet<SweepEvent> sweepLine = mSweepLine;
+        boolean entered = false;
+        while (!mQueue.isEmpty()) {
+            SweepEvent event = mQueue.poll();
+            if (event.mX > rightBound) {
+                break;
+            }
+            if (!entered && event.mX >= minX) {
+                SweepEvent prev = null;
+                for (SweepEvent segment : sweepLine) {
+                    computeFields(segment, prev);
+                    prev = segment;
+                }
+                entered = true;
+            }
+            mSorted.add(event);
+
+            if (event.mLeft) {
+                sweepLine.add(event);
+                SweepEvent prev = sweepLine.lower(event);
+                SweepEvent next = sweepLine.higher(event);
+                computeFields(event, prev);
+                if (null != next && possibleIntersection(event, next) == 2) {
+                    computeFields(event, prev);
+                    computeFields(next, event);
+                }
+                if (null != prev && possibleIntersection(prev, event) == 2) {
+                    computeFields(prev, sweepLine.lower(prev));
+                    computeFields(event, prev);
+                }
+                // a neighbour split at this point ends here, so it leaves first
+                if (endsAt(prev, event) || endsAt(next, event)) {
+                    sweepLine.remove(event);
+                    mSorted.remove(mSorted.size() - 1);
+                    mQueue.add(event);
+                }
+            } else {
+                SweepEvent left = event.mOther;
+                if (sweepLine.contains(left)) {
+                    SweepEvent prev = sweepLine.lower(left);
+                    SweepEvent next = sweepLine.higher(left);
+                    sweepLine.remove(left);
+                    if (null != prev && null != next) {
+                        possibleIntersection(prev, next);
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * @return true if the segment was split at the event point and its right end there is not
+     * processed yet
+     */
+    protected boolean endsAt(SweepEvent segment, SweepEvent event)
+    {
+        return null != segment && !segment.mOther.mLeft && isSamePoint(segment.mOther, event)
+                && mQueue.contains(segment.mOther);
+    }
+
+
+    /**
+     * Sets whether the region below the segment is inside its own side and inside the other
+     * side, by the closest segment below.
+     */
+    protected static void computeFields(SweepEvent event, SweepEvent prev)
+    {
+        if (null == prev) {
+            event.mInOut = false;
+            event.mOtherInOut = true;
+            event.mPrevInResult = null;
+        } else {
+            if (event.mSubject == prev.mSubject) {
+                event.mInOut = !prev.mInOut;
+                event.mOtherInOut = prev.mOtherInOut;
+            } else {
+                event.mInOut = !prev.mOtherInOut;
+                event.mOtherInOut = prev.isVertical() ? !prev.mInOut : prev.mInOut;
+            }
+            event.mPrevInResult =
+                    !inResult(prev) || prev.isVertical() ? prev.mPrevInResult : prev;
+        }
+
+        if (event.mType == SAME_TRANSITION) {
+            // both sides change together at an overlap, as its own side does
+            event.mResultTransition = !event.mInOut ? 1 : -1;
+        } else if (inResult(event)) {
+            event.mResultTransition = !event.mInOut && !event.mOtherInOut ? 1 : -1;
+        } else {
+            event.mResultTransition = 0;
+        }
+    }
+
+
+    protected static boolean inResult(SweepEvent event)
+    {
+        switch (event.mType) {
+            case NORMAL:
+                return !event.mOtherInOut;
+            case SAME_TRANSITION:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+
+    /**
+     * Splits the segments where they cross or overlap.
+     *
+     * @return 0 if nothing is split, 1 for a crossing, 2 if the segments share the left end and
+     * overlap, 3 for other overlaps
+     */
+    protected int possibleIntersection(SweepEvent se1, SweepEvent se2)
+    {
+        int count = intersection(se1, se2);
+        if (count == 0) {
+            return 0;
+        }
+        if (count == 1 && (isSamePoint(se1, se2) || isSamePoint(se1.mOther, se2.mOther))) {
+            return 0;
+        }
+        // overlapping edges of the same side
+        if (count == 2 && se1.mSubject == se2.mSubject) {
+            return 0;
+        }
+
+        if (count == 1) {
+            double x = mX0, y = mY0;
+            if (!isAt(se1, x, y) && !isAt(se1.mOther, x, y)) {
+                divideSegment(se1, x, y);
+            }
+            if (!isAt(se2, x, y) && !isAt(se2.mOther, x, y)) {
+                divideSegment(se2, x, y);
+            }
+            return 1;
+        }
+
+        boolean leftCoincide = isSamePoint(se1, se2);
+        boolean rightCoincide = isSamePoint(se1.mOther, se2.mOther);
+        SweepEvent left1 = se1, left2 = se2;
+        if (compareEvents(se1, se2) > 0) {
+            left1 = se2;
+            left2 = se1;
+        }
+        SweepEvent right1 = se1.mOther, right2 = se2.mOther;
+        if (compareEvents(se1.mOther, se2.mOther) > 0) {
+            right1 = se2.mOther;
+            right2 = se1.mOther;
+        }
+
+        if (leftCoincide) {
+            // both segments are equal or share the left end
+            se2.mType = NON_CONTRIBUTING;
+            se1.mType = se2.mInOut == se1.mInOut ? SAME_TRANSITION : DIFFERENT_TRANSITION;
+            if (!rightCoincide) {
+                divideSegment(right2.mOther, right1.mX, right1.mY);
+            }
+            return 2;
+        }
+        if (rightCoincide) {
+            divideSegment(left1, left2.mX, left2.mY);
+            return 3;
+        }
+        if (left1 != right2.mOther) {
+            // no segment holds the other one
+            divideSegment(left1, left2.mX, left2.mY);
+            divideSegment(left2, right1.mX, right1.mY);
+            return 3;
+        }
+        // one segment holds the other one
+        divideSegment(left1, left2.mX, left2.mY);
+        divideSegment(right2.mOther, right1.mX, right1.mY);
+        return 3;
+    }
+
+
+    protected void divideSegment(SweepEvent se, double x, double y)
+    {
+        SweepEvent r = newEvent(x, y, se.mSubject);
+        SweepEvent l = newEvent(x, y, se.mSubject);
+        r.mOther = se;
+        l.mOther = se.mOther;
+        l.mLeft = true;
+        r.copySource(se);
+        l.copySource(se);
+
+        // a rounding error can put the new left end after the right one
+        if (compareEvents(l, se.mOther) > 0) {
+            se.mOther.mLeft = true;
+            l.mLeft = false;
+        }
+
+        se.mOther.mOther = l;
+        se.mOther = r;
+        mQueue.add(l);
+        mQueue.add(r);
+    }
+
+
+    /**
+     * Intersects the segments of the left events a and b into {@link #mX0}, {@link #mY0} and
+     * for an overlap also {@link #mX1}, {@link #mY1}. The side tests go against the source
+     * edges, so an end lying on the other source edge is taken exactly even after the edges are
+     * split at rounded points.
+     *
+     * @return count of intersection points
+     */
+    protected int intersection(SweepEvent a, SweepEvent b)
+    {
+        double a1x = a.mX, a1y = a.mY, a2x = a.mOther.mX, a2y = a.mOther.mY;
+        double b1x = b.mX, b1y = b.mY, b2x = b.mOther.mX, b2y = b.mOther.mY;
+        double d1 = a.getSide(b1x, b1y);
+        double d2 = a.getSide(b2x, b2y);
+
+        if (d1 != 0 || d2 != 0) {
+            double d3 = b.getSide(a1x, a1y);
+            double d4 = b.getSide(a2x, a2y);
+            if (d1 == 0 && isInRange(b1x, b1y, a1x, a1y, a2x, a2y)) {
+                mX0 = b1x;
+                mY0 = b1y;
+            } else if (d2 == 0 && isInRange(b2x, b2y, a1x, a1y, a2x, a2y)) {
+                mX0 = b2x;
+                mY0 = b2y;
+            } else if (d3 == 0 && isInRange(a1x, a1y, b1x, b1y, b2x, b2y)) {
+                mX0 = a1x;
+                mY0 = a1y;
+            } else if (d4 == 0 && isInRange(a2x, a2y, b1x, b1y, b2x, b2y)) {
+                mX0 = a2x;
+                mY0 = a2y;
+            } else if (d1 != 0 && d2 != 0 && d3 != 0 && d4 != 0 && (d1 > 0) != (d2 > 0)
+                    && (d3 > 0) != (d4 > 0)) {
+                // the crossing of the source edges
+                double side1 = b.getSide(a.mLineX1, a.mLineY1);
+                double side2 = b.getSide(a.mLineX2, a.mLineY2);
+                double s = side1 / (side1 - side2);
+                mX0 = a.mLineX1 + s * (a.mLineX2 - a.mLineX1);
+                mY0 = a.mLineY1 + s * (a.mLineY2 - a.mLineY1);
+            } else {
+                return 0;
+            }
+            return 1;
+        }
+
+        // the segments are on the same line
+        double vax = a2x - a1x, vay = a2y - a1y;
+        double sqLengthA = vax * vax + vay * vay;
+        double sa = (vax * (b1x - a1x) + vay * (b1y - a1y)) / sqLengthA;
+        double sb = (vax * (b2x - a1x) + vay * (b2y - a1y)) / sqLengthA;
+        double sMin = Math.min(sa, sb), sMax = Math.max(sa, sb);
+        if (sMin > 1 || sMax < 0) {
+            return 0;
+        }
+
+        // the overlap ends are ends of the segments
+        if (sMin <= 0) {
+            mX0 = a1x;
+            mY0 = a1y;
+        } else if (sMin == sa) {
+            mX0 = b1x;
+            mY0 = b1y;
+        } else {
+            mX0 = b2x;
+            mY0 = b2y;
+        }
+        if (sMax >= 1) {
+            mX1 = a2x;
+            mY1 = a2y;
+        } else if (sMax == sb) {
+            mX1 = b2x;
+            mY1 = b2y;
+        } else {
+            mX1 = b1x;
+            mY1 = b1y;
+        }
+        return sMin == 1 || sMax == 0 ? 1 : 2;
+    }
+
+
+    protected static boolean isInRange(double x, double y, double x1, double y1, double x2,
+                                       double y2)
+    {
+        return x >= Math.min(x1, x2) && x <= Math.max(x1, x2) && y >= Math.min(y1, y2)
+                && y <= Math.max(y1, y2);
+    }
+
+
+    /**
+     * Joins the result segments into rings. Each ring learns from the closest result segment
+     * below it whether it is an outer ring or a hole and of which ring.
+     */
+    protected List<Contour> connectEdges()
+    {
+        List<SweepEvent> events = new ArrayList<>();
+        for (SweepEvent event : mSorted) {
+            event.mPos = -1;
+            if (event.mLeft ? event.isInResult() : event.mOther.isInResult()) {
+                events.add(event);
+            }
+        }
+
+        // overlapping edges can leave the events a bit out of order
+        for (int i = 1; i < events.size(); i++) {
+            SweepEvent event = events.get(i);
+            int j = i - 1;
+            while (j >= 0 && compareEvents(events.get(j), event) > 0) {
+                events.set(j + 1, events.get(j));
+                j--;
+            }
+            events.set(j + 1, event);
+        }
+
+        int count = events.size();
+        for (int i = 0; i < count; i++) {
+            events.get(i).mPos = i;
+        }
+        // now each event points to the position of its other end
+        for (int i = 0; i < count; i++) {
+            SweepEvent event = events.get(i);
+            if (!event.mLeft) {
+                int pos = event.mPos;
+                event.mPos = event.mOther.mPos;
+                event.mOther.mPos = pos;
+            }
+        }
+
+        boolean[] processed = new boolean[count];
+        List<Contour> contours = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (processed[i]) {
+                continue;
+            }
+
+            int contourId = contours.size();
+            Contour contour = newContour(events.get(i), contours, contourId);
+            contour.mRing.add(events.get(i).mX, events.get(i).mY);
+            int pos = i;
+            while (true) {
+                processed[pos] = true;
+                events.get(pos).mOutputContour = contourId;
+                pos = events.get(pos).mPos;
+                if (pos < 0) {
+                    break;
+                }
+                processed[pos] = true;
+                events.get(pos).mOutputContour = contourId;
+                contour.mRing.add(events.get(pos).mX, events.get(pos).mY);
+
+                pos = nextPos(pos, events, processed, i);
+                if (pos == i || pos < 0 || pos >= count || processed[pos]) {
+                    break;
+                }
+            }
+            contours.add(contour);
+        }
+        return contours;
+    }
+
+
+    protected static int nextPos(int pos, List<SweepEvent> events, boolean[] processed,
+                                 int origPos)
+    {
+        double x = events.get(pos).mX, y = events.get(pos).mY;
+        int newPos = pos + 1;
+        while (newPos < events.size() && events.get(newPos).mX == x
+                && events.get(newPos).mY == y) {
+            if (!processed[newPos]) {
+                return newPos;
+            }
+            newPos++;
+        }
+
+        newPos = pos - 1;
+        while (newPos > origPos && processed[newPos]) {
+            newPos--;
+        }
+        return newPos;
+    }
+
+
+    protected static Contour newContour(SweepEvent event, List<Contour> contours, int contourId)
+    {
+        Contour contour = new Contour();
+        SweepEvent below = event.mPrevInResult;
+        if (null == below || below.mOutputContour < 0) {
+            return contour;
+        }
+
+        Contour lower = contours.get(below.mOutputContour);
+        if (below.mResultTransition > 0) {
+            // inside the result, so a hole of the lower ring or of its outer ring
+            int outer = lower.mHoleOf >= 0 ? lower.mHoleOf : below.mOutputContour;
+            contours.get(outer).mHoles.add(contourId);
+            contour.mHoleOf = outer;
+        }
+        return contour;
+    }
+
+
+    protected static int compareEvents(SweepEvent e1, SweepEvent e2)
+    {
+        if (e1.mX != e2.mX) {
+            return e1.mX > e2.mX ? 1 : -1;
+        }
+        if (e1.mY != e2.mY) {
+            return e1.mY > e2.mY ? 1 : -1;
+        }
+        // right ends first
+        if (e1.mLeft != e2.mLeft) {
+            return e1.mLeft ? 1 : -1;
+        }
+        // the lower segment first
+        if (e1.getSide(e2.mOther.mX, e2.mOther.mY) != 0) {
+            return e1.isBelow(e2.mOther.mX, e2.mOther.mY) ? -1 : 1;
+        }
+        if (e1.mSubject != e2.mSubject) {
+            return e1.mSubject ? -1 : 1;
+        }
+        return Integer.compare(e1.mId, e2.mId);
+    }
+
+
+    /**
+     * Orders the left ends of the segments in the sweep line from bottom to top.
+     */
+    protected static int compareSegments(SweepEvent le1, SweepEvent le2)
+    {
+        if (le1 == le2) {
+            return 0;
+        }
+
+        if (le1.getSide(le2.mX, le2.mY) != 0 || le1.getSide(le2.mOther.mX, le2.mOther.mY) != 0) {
+            // not collinear
+            if (isSamePoint(le1, le2)) {
+                return le1.isBelow(le2.mOther.mX, le2.mOther.mY) ? -1 : 1;
+            }
+            if (le1.mX == le2.mX) {
+                return le1.mY < le2.mY ? -1 : 1;
+            }
+            // the later segment against the earlier one, a segment starting on the other one
+            // is ordered by its direction
+            if (compareEvents(le1, le2) > 0) {
+                return getSide(le2, le1) > 0 ? 1 : -1;
+            }
+            return getSide(le1, le2) > 0 ? -1 : 1;
+        }
+
+        if (le1.mSubject != le2.mSubject) {
+            return le1.mSubject ? -1 : 1;
+        }
+        if (isSamePoint(le1, le2)) {
+            if (le1.mContour != le2.mContour && !isSamePoint(le1.mOther, le2.mOther)) {
+                return le1.mContour > le2.mContour ? 1 : -1;
+            }
+            return Integer.compare(le1.mId, le2.mId);
+        }
+        return compareEvents(le1, le2) > 0 ? 1 : -1;
+    }
+
+
+    /**
+     * @return positive if the segment starts above the line of the left event le, or starts on
+     * it and goes above
+     */
+    protected static double getSide(SweepEvent le, SweepEvent segment)
+    {
+        double side = le.getSide(segment.mX, segment.mY);
+        if (side == 0) {
+            side = le.getSide(segment.mOther.mX, segment.mOther.mY);
+        }
+        return side;
+    }
+
+
+    protected static double signedArea(double x0, double y0, double x1, double y1, double x2,
+                                       double y2)
+    {
+        return (x0 - x2) * (y1 - y2) - (x1 - x2) * (y0 - y2);
+    }
+
+
+    protected static boolean isSamePoint(SweepEvent e1, SweepEvent e2)
+    {
+        return e1.mX == e2.mX && e1.mY == e2.mY;
+    }
+
+
+    protected static boolean isAt(SweepEvent event, double x, double y)
+    {
+        return event.mX == x && event.mY == y;
+    }
+
+
+    protected static double getSquareDistance(SweepEvent event, double x, double y)
+    {
+        double dx = event.mX - x, dy = event.mY - y;
+        return dx * dx + dy * dy;
+    }
+
+
+    /**
+     * @return the distance of the piece from the start of its source edge
+     */
+    protected static double getEdgeOffset(SweepEvent piece)
+    {
+        return Math.min(getSquareDistance(piece, piece.mEdgeX, piece.mEdgeY),
+                getSquareDistance(piece.mOther, piece.mEdgeX, piece.mEdgeY));
+    }
+
+
+    protected void collectBand(int node, double minX, double maxX)
+    {
+        if (mMaxX[node] < minX || mMinX[node] > maxX) {
+            return;
+        }
+
+        if (node >= mLeafBase) {
+            int edge = node - mLeafBase;
+            if (edge < mEdgeCount) {
+                if (mBandCount == mBand.length) {
+                    mBand = Arrays.copyOf(mBand, mBandCount * 2);
+                }
+                mBand[mBandCount++] = edge;
+            }
+            return;
+        }
+
+        collectBand(node * 2, minX, maxX);
+        collectBand(node * 2 + 1, minX, maxX);
+    }
+
+
+    protected void addEdges(GeoGeometry geometry)
+    {
+        if (geometry instanceof GeoPolygon) {
+            GeoPolygon polygon = (GeoPolygon) geometry;
+            addRing(polygon.getOuterRing());
+            for (int i = 0; i < polygon.getInnerRingCount(); i++) {
+                addRing(polygon.getInnerRing(i));
+            }
+        } else if (geometry instanceof GeoMultiPolygon) {
+            GeoMultiPolygon multiPolygon = (GeoMultiPolygon) geometry;
+            for (int i = 0; i < multiPolygon.size(); i++) {
+                addEdges(multiPolygon.get(i));
+            }
+        } else {
+            throw new IllegalArgumentException("Not a polygon geometry: " + geometry.getType());
+        }
+    }
+
+
+    /**
+     * Adds the ring edges including the closing one, collapsed edges are skipped.
+     */
+    protected void addRing(GeoLinearRing ring)
+    {
+        int count = ring.getPointCount();
+        if (count == 0) {
+            return;
+        }
+
+        int ringId = mRingCount++;
+        double[] xy = ring.mCoordinates;
+        double xj = xy[count * 2 - 2], yj = xy[count * 2 - 1];
+        for (int i = 0; i < count * 2; i += 2) {
+            double xi = xy[i], yi = xy[i + 1];
+            if (xi != xj || yi != yj) {
+                if ((mEdgeCount + 1) * EDGE_SIZE > mEdges.length) {
+                    mEdges = Arrays.copyOf(mEdges, mEdges.length * 2);
+                }
+                if (mEdgeCount == mEdgeRings.length) {
+                    mEdgeRings = Arrays.copyOf(mEdgeRings, mEdgeCount * 2);
+                }
+                mEdgeRings[mEdgeCount] = ringId;
+                int edge = mEdgeCount++ * EDGE_SIZE;
+                mEdges[edge] = xj;
+                mEdges[edge + 1] = yj;
+                mEdges[edge + 2] = xi;
+                mEdges[edge + 3] = yi;
+            }
+            xj = xi;
+            yj = yi;
+        }
+    }
+
+
+    /**
+     * Sorts the edges by the middle of their x range and packs them bottom up, as
+     * {@link PreparedPolygon} does for y.
+     */
+    protected void buildTree()
+    {
+        int count = mEdgeCount;
+        double[] keys = new double[count];
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = mEdges[i * EDGE_SIZE] + mEdges[i * EDGE_SIZE + 2];
+            order[i] = i;
+        }
+        SegmentIntersector.sort(keys, order, 0, count - 1);
+
+        double[] edges = new double[count * EDGE_SIZE];
+        int[] rings = new int[count];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(mEdges, order[i] * EDGE_SIZE, edges, i * EDGE_SIZE, EDGE_SIZE);
+            rings[i] = mEdgeRings[order[i]];
+        }
+        mEdges = edges;
+        mEdgeRings = rings;
+
+        int base = 1;
+        while (base < count) {
+            base *= 2;
+        }
+        mLeafBase = base;
+        mMinX = new double[base * 2];
+        mMaxX = new double[base * 2];
+        Arrays.fill(mMinX, Double.POSITIVE_INFINITY);
+        Arrays.fill(mMaxX, Double.NEGATIVE_INFINITY);
+        for (int i = 0; i < count; i++) {
+            int edge = i * EDGE_SIZE;
+            mMinX[base + i] = Math.min(edges[edge], edges[edge + 2]);
+            mMaxX[base + i] = Math.max(edges[edge], edges[edge + 2]);
+        }
+        for (int node = base - 1; node > 0; node--) {
+            mMinX[node] = Math.min(mMinX[node * 2], mMinX[node * 2 + 1]);
+            mMaxX[node] = Math.max(mMaxX[node * 2], mMaxX[node * 2 + 1]);
+        }
+    }
+
+
+    protected static class SweepEvent
+    {
+        protected final double  mX, mY;
+        protected final boolean mSubject;
+        protected final int     mId;
+        protected boolean    mLeft;
+        protected SweepEvent mOther;
+        protected int        mContour;
+        /** Source line part, edge and the edge start to restore the line order */
+        protected int        mPart, mEdge;
+        protected double     mEdgeX, mEdgeY;
+        /** Source edge from its left to its right end, split edges keep testing against it */
+        protected double     mLineX1, mLineY1, mLineX2, mLineY2;
+
+        protected int        mType       = NORMAL;
+        protected boolean    mInOut;
+        protected boolean    mOtherInOut = true;
+        protected SweepEvent mPrevInResult;
+        protected int        mResultTransition;
+        protected int        mPos;
+        protected int        mOutputContour = -1;
+
+
+        protected SweepEvent(double x, double y, boolean subject, int id)
+        {
+            mX = x;
+            mY = y;
+            mSubject = subject;
+            mId = id;
+        }
+
+
+        protected void copySource(SweepEvent event)
+        {
+            mContour = event.mContour;
+            mPart = event.mPart;
+            mEdge = event.mEdge;
+            mEdgeX = event.mEdgeX;
+            mEdgeY = event.mEdgeY;
+            setLine(event.mLineX1, event.mLineY1, event.mLineX2, event.mLineY2);
+        }
+
+
+        protected void setLine(double x1, double y1, double x2, double y2)
+        {
+            mLineX1 = x1;
+            mLineY1 = y1;
+            mLineX2 = x2;
+            mLineY2 = y2;
+        }
+
+
+        /**
+         * @return positive if the point is above the source edge
+         */
+        protected double getSide(double x, double y)
+        {
+            return signedArea(mLineX1, mLineY1, mLineX2, mLineY2, x, y);
+        }
+
+
+        protected boolean isBelow(double x, double y)
+        {
+            return getSide(x, y) > 0;
+        }
+
+
+        protected boolean isVertical()
+        {
+            return mX == mOther.mX;
+        }
+
+
+        protected boolean isInResult()
+        {
+            return mResultTransition != 0;
+        }
+    }
+
+
+    protected static class Contour
+    {
+        protected final GeoLinearRing mRing   = new GeoLinearRing();
+        protected final List<Integer> mHoles  = new ArrayList<>();
+        protected int                 mHoleOf = -1;
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplib.datasource;
+
+import java.util.Arrays;
+
+
+/**
+ * Point in polygon tests in O(log n) for many points against the same ring, polygon or
+ * multipolygon.
+ * <p>
+ * The edges are copied once into a packed interval tree over their y ranges. A test only visits
+ * the edges whose y range holds the point, and counts their crossings by the even-odd rule, the
+ * same way {@link GeoLinearRing#contains(double, double)} does. So the holes of a valid polygon
+ * are excluded. The result does not change if the geometry changes later.
+ */
+public class PreparedPolygon
+{
+    protected static final int EDGE_SIZE = 4;
+
+    protected final GeoEnvelope mEnvelope;
+    /** Edges as x1, y1, x2, y2 in the leaf order */
+    protected double[] mEdges;
+    protected int mEdgeCount;
+    /** Leaf count rounded up to a power of two, node i has children 2i and 2i + 1 */
+    protected int mLeafBase;
+    protected double[] mMinY;
+    protected double[] mMaxY;
+
+
+    /**
+     * @param geometry a ring, a polygon or a multipolygon
+     */
+    public PreparedPolygon(GeoGeometry geometry)
+    {
+        mEnvelope = new GeoEnvelope(geometry.getEnvelope());
+        mEdges = new double[64];
+        addEdges(geometry);
+        buildTree();
+    }
+
+
+    public GeoEnvelope getEnvelope()
+    {
+        return new GeoEnvelope(mEnvelope);
+    }
+
+
+    public boolean contains(double x, double y)
+    {
+        if (mEdgeCount == 0 || x < mEnvelope.getMinX() || x > mEnvelope.getMaxX()
+                || y < mEnvelope.getMinY() || y > mEnvelope.getMaxY()) {
+            return false;
+        }
+        return (countCrossings(1, x, y) & 1) == 1;
+    }
+
+
+    public boolean contains(GeoPoint point)
+    {
+        return contains(point.getX(), point.getY());
+    }
+
+
+    /**
+     * @param xy packed point coordinates as x, y pairs
+     * @return true if every point is inside
+     */
+    public boolean containsAll(double[] xy)
+    {
+        return containsAll(xy, xy.length / 2);
+    }
+
+
+    /**
+     * @param xy packed point coordinates as x, y pairs
+     * @param pointCount count of points to test from the start of the array
+     * @return true if every point is inside
+     */
+    public boolean containsAll(double[] xy, int pointCount)
+    {
+        for (int i = 0; i < pointCount; i++) {
+            if (!contains(xy[i * 2], xy[i * 2 + 1])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Tests each point, for example to assign survey points to a plot.
+     *
+     * @param xy packed point coordinates as x, y pairs
+     * @param result receives the test result of each point
+     * @return count of points inside
+     */
+    public int contains(double[] xy, boolean[] result)
+    {
+        int pointCount = Math.min(xy.length / 2, result.length);
+        int inside = 0;
+        for (int i = 0; i < pointCount; i++) {
+            result[i] = contains(xy[i * 2], xy[i * 2 + 1]);
+            if (result[i]) {
+                inside++;
+            }
+        }
+        return inside;
+    }
+
+
+    protected int countCrossings(int node, double x, double y)
+    {
+        if (y < mMinY[node] || y > mMaxY[node]) {
+            return 0;
+        }
+
+        if (node >= mLeafBase) {
+            int edge = node - mLeafBase;
+            if (edge >= mEdgeCount) {
+                return 0;
+            }
+            int i = edge * EDGE_SIZE;
+            double xi = mEdges[i], yi = mEdges[i + 1];
+            double xj = mEdges[i + 2], yj = mEdges[i + 3];
+            return ((yi > y) != (yj > y)) && (x < (xj - xi) * (y - yi) / (yj - yi) + xi) ? 1 : 0;
+        }
+
+        return countCrossings(node * 2, x, y) + countCrossings(node * 2 + 1, x, y);
+    }
+
+
+    protected void addEdges(GeoGeometry geometry)
+    {
+        if (geometry instanceof GeoLinearRing) {
+            addRing((GeoLinearRing) geometry);
+        } else if (geometry instanceof GeoPolygon) {
+            GeoPolygon polygon = (GeoPolygon) geometry;
+            addRing(polygon.getOuterRing());
+            for (int i = 0; i < polygon.getInnerRingCount(); i++) {
+                addRing(polygon.getInnerRing(i));
+            }
+        } else if (geometry instanceof GeoMultiPolygon) {
+            GeoMultiPolygon multiPolygon = (GeoMultiPolygon) geometry;
+            for (int i = 0; i < multiPolygon.size(); i++) {
+                addEdges(multiPolygon.get(i));
+            }
+        } else {
+            throw new IllegalArgumentException("Not a polygon geometry: " + geometry.getType());
+        }
+    }
+
+
+    /**
+     * Adds the ring edges including the closing one, horizontal edges never cross and are
+     * skipped.
+     */
+    protected void addRing(GeoLinearRing ring)
+    {
+        int count = ring.getPointCount();
+        if (count == 0) {
+            return;
+        }
+
+        double[] xy = ring.mCoordinates;
+        double xj = xy[count * 2 - 2], yj = xy[count * 2 - 1];
+        for (int i = 0; i < count * 2; i += 2) {
+            double xi = xy[i], yi = xy[i + 1];
+            if (yi != yj) {
+                if ((mEdgeCount + 1) * EDGE_SIZE > mEdges.length) {
+                    mEdges = Arrays.copyOf(mEdges, mEdges.length * 2);
+                }
+                int edge = mEdgeCount++ * EDGE_SIZE;
+                mEdges[edge] = xi;
+                mEdges[edge + 1] = yi;
+                mEdges[edge + 2] = xj;
+                mEdges[edge + 3] = yj;
+            }
+            xj = xi;
+            yj = yi;
+        }
+    }
+
+
+    /**
+     * Sorts the edges by the middle of their y range and packs them bottom up, so the nodes
+     * cover short y ranges and a test descends into few of them.
+     */
+    protected void buildTree()
+    {
+        int count = mEdgeCount;
+        double[] keys = new double[count];
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = mEdges[i * EDGE_SIZE + 1] + mEdges[i * EDGE_SIZE + 3];
+            order[i] = i;
+        }
+        SegmentIntersector.sort(keys, order, 0, count - 1);
+
+        double[] edges = new double[count * EDGE_SIZE];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(mEdges, order[i] * EDGE_SIZE, edges, i * EDGE_SIZE, EDGE_SIZE);
+        }
+        mEdges = edges;
+
+        int base = 1;
+        while (base < count) {
+            base *= 2;
+        }
+        mLeafBase = base;
+        mMinY = new double[base * 2];
+        mMaxY = new double[base * 2];
+        Arrays.fill(mMinY, Double.POSITIVE_INFINITY);
+        Arrays.fill(mMaxY, Double.NEGATIVE_INFINITY);
+        for (int i = 0; i < count; i++) {
+            double y1 = edges[i * EDGE_SIZE + 1], y2 = edges[i * EDGE_SIZE + 3];
+            mMinY[base + i] = Math.min(y1, y2);
+            mMaxY[base + i] = Math.max(y1, y2);
+        }
+        for (int node = base - 1; node > 0; node--) {
+            mMinY[node] = Math.min(mMinY[node * 2], mMinY[node * 2 + 1]);
+            mMaxY[node] = Math.max(mMaxY[node * 2], mMaxY[node * 2 + 1]);
+        }
+    }
+}
@@ -0,0 +1,377 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplib.datasource;
+
+import java.util.Arrays;
+
+
+/**
+ * Finds crossing segments of line strings and rings in O(n log n) for usual shapes.
+ * <p>
+ * Every part is cut into monotone chains: runs of segments going the same way in x and in y.
+ * Segments of one chain can only meet at shared vertices, and the envelope of any run of a
+ * chain is given by its end points. The chains are swept from left to right, and each pair of
+ * chains with overlapping envelopes is compared by halving the longer chain until single
+ * segments remain.
+ * <p>
+ * Segments are compared the same way as in {@link GeoLinearRing#intersects()}: pairs sharing
+ * an end point are skipped, parallel overlapping segments are not reported. The parts are not
+ * copied and must not change until the search is done. A segment index is the index of its
+ * first point in the part.
+ */
+public class SegmentIntersector
+{
+    protected GeoLineString[] mParts = new GeoLineString[4];
+    protected int mPartCount;
+
+    protected int[] mChainPart = new int[16];
+    protected int[] mChainStart = new int[16];
+    protected int[] mChainEnd = new int[16];
+    protected double[] mChainMinX = new double[16];
+    protected double[] mChainMaxX = new double[16];
+    protected double[] mChainMinY = new double[16];
+    protected double[] mChainMaxY = new double[16];
+    protected int mChainCount;
+
+    protected boolean mSamePart;
+    protected int mPart1, mSegment1, mPart2, mSegment2;
+
+
+    /**
+     * Adds a line string or a ring, rings are not closed here.
+     *
+     * @return the part index
+     */
+    public int addPart(GeoLineString part)
+    {
+        if (mPartCount == mParts.length) {
+            mParts = Arrays.copyOf(mParts, mPartCount * 2);
+        }
+        int index = mPartCount++;
+        mParts[index] = part;
+
+        double[] xy = part.mCoordinates;
+        int count = part.mPointCount;
+        int start = 0;
+        while (start < count - 1) {
+            int end = start + 1;
+            int quadrant = getQuadrant(xy, start);
+            while (end < count - 1 && getQuadrant(xy, end) == quadrant) {
+                end++;
+            }
+            addChain(index, start, end);
+            start = end;
+        }
+        return index;
+    }
+
+
+    public void clear()
+    {
+        Arrays.fill(mParts, 0, mPartCount, null);
+        mPartCount = 0;
+        mChainCount = 0;
+    }
+
+
+    /**
+     * Looks for crossing segments inside each part.
+     *
+     * @return true if a pair is found, see {@link #getPart1()} and others
+     */
+    public boolean findSelfIntersection()
+    {
+        mSamePart = true;
+        return find();
+    }
+
+
+    /**
+     * Looks for crossing segments of different parts.
+     *
+     * @return true if a pair is found, see {@link #getPart1()} and others
+     */
+    public boolean findPartsIntersection()
+    {
+        mSamePart = false;
+        return find();
+    }
+
+
+    /**
+     * @return the part of the first segment of the found pair, the pair is ordered by part and
+     * segment index
+     */
+    public int getPart1()
+    {
+        return mPart1;
+    }
+
+
+    public int getSegment1()
+    {
+        return mSegment1;
+    }
+
+
+    public int getPart2()
+    {
+        return mPart2;
+    }
+
+
+    public int getSegment2()
+    {
+        return mSegment2;
+    }
+
+
+    protected boolean find()
+    {
+        mPart1 = mSegment1 = mPart2 = mSegment2 = -1;
+
+        int count = mChainCount;
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        double[] keys = Arrays.copyOf(mChainMinX, count);
+        sort(keys, order, 0, count - 1);
+
+        int[] active = new int[16];
+        int activeCount = 0;
+        for (int i = 0; i < count; i++) {
+            int chain = order[i];
+            double minX = mChainMinX[chain];
+
+            int kept = 0;
+            for (int j = 0; j < activeCount; j++) {
+                int other = active[j];
+                // the rest of the chains start right of minX, so this one is done
+                if (mChainMaxX[other] < minX) {
+                    continue;
+                }
+                active[kept++] = other;
+
+                if (mChainMaxY[other] < mChainMinY[chain] || mChainMinY[other] > mChainMaxY[chain]) {
+                    continue;
+                }
+                if ((mChainPart[other] == mChainPart[chain]) != mSamePart) {
+                    continue;
+                }
+                if (compareChains(other, chain)) {
+                    return true;
+                }
+            }
+            activeCount = kept;
+
+            if (activeCount == active.length) {
+                active = Arrays.copyOf(active, activeCount * 2);
+            }
+            active[activeCount++] = chain;
+        }
+
+        return false;
+    }
+
+
+    protected boolean compareChains(int chain1, int chain2)
+    {
+        double[] xy1 = mParts[mChainPart[chain1]].mCoordinates;
+        double[] xy2 = mParts[mChainPart[chain2]].mCoordinates;
+        if (!compareRuns(xy1, mChainStart[chain1], mChainEnd[chain1], xy2, mChainStart[chain2],
+                mChainEnd[chain2])) {
+            return false;
+        }
+
+        int part1 = mChainPart[chain1], part2 = mChainPart[chain2];
+        if (part1 > part2 || part1 == part2 && mSegment1 > mSegment2) {
+            int segment = mSegment1;
+            mSegment1 = mSegment2;
+            mSegment2 = segment;
+            int part = part1;
+            part1 = part2;
+            part2 = part;
+        }
+        mPart1 = part1;
+        mPart2 = part2;
+        return true;
+    }
+
+
+    /**
+     * Compares two runs of monotone chains given by their first and last point indexes, the
+     * envelopes of the runs are known to overlap.
+     */
+    protected boolean compareRuns(double[] xy1, int start1, int end1, double[] xy2, int start2,
+                                  int end2)
+    {
+        if (end1 - start1 == 1 && end2 - start2 == 1) {
+            if (compareSegments(xy1, start1, xy2, start2)) {
+                mSegment1 = start1;
+                mSegment2 = start2;
+                return true;
+            }
+            return false;
+        }
+
+        // halve the longer run, the halves share the middle point
+        if (end1 - start1 >= end2 - start2) {
+            int middle = (start1 + end1) >>> 1;
+            return overlaps(xy1, start1, middle, xy2, start2, end2)
+                    && compareRuns(xy1, start1, middle, xy2, start2, end2)
+                    || overlaps(xy1, middle, end1, xy2, start2, end2)
+                    && compareRuns(xy1, middle, end1, xy2, start2, end2);
+        } else {
+            int middle = (start2 + end2) >>> 1;
+            return overlaps(xy1, start1, end1, xy2, start2, middle)
+                    && compareRuns(xy1, start1, end1, xy2, start2, middle)
+                    || overlaps(xy1, start1, end1, xy2, middle, end2)
+                    && compareRuns(xy1, start1, end1, xy2, middle, end2);
+        }
+    }
+
+
+    protected static boolean overlaps(double[] xy1, int start1, int end1, double[] xy2,
+                                      int start2, int end2)
+    {
+        double ax = xy1[start1 * 2], ay = xy1[start1 * 2 + 1];
+        double bx = xy1[end1 * 2], by = xy1[end1 * 2 + 1];
+        double cx = xy2[start2 * 2], cy = xy2[start2 * 2 + 1];
+        double dx = xy2[end2 * 2], dy = xy2[end2 * 2 + 1];
+        return Math.max(ax, bx) >= Math.min(cx, dx) && Math.min(ax, bx) <= Math.max(cx, dx)
+                && Math.max(ay, by) >= Math.min(cy, dy) && Math.min(ay, by) <= Math.max(cy, dy);
+    }
+
+
+    protected static boolean compareSegments(double[] xy1, int segment1, double[] xy2,
+                                             int segment2)
+    {
+        double ax = xy1[segment1 * 2], ay = xy1[segment1 * 2 + 1];
+        double bx = xy1[segment1 * 2 + 2], by = xy1[segment1 * 2 + 3];
+        double cx = xy2[segment2 * 2], cy = xy2[segment2 * 2 + 1];
+        double dx = xy2[segment2 * 2 + 2], dy = xy2[segment2 * 2 + 3];
+
+        if (ax == cx && ay == cy || ax == dx && ay == dy || bx == cx && by == cy
+                || bx == dx && by == dy)
+            return false;
+
+        double A1 = by - ay;
+        double B1 = ax - bx;
+        double C1 = A1 * ax + B1 * ay;
+        return GeoLineString.intersects(ax, ay, bx, by, cx, cy, dx, dy, A1, B1, C1);
+    }
+
+
+    /**
+     * @return the direction of the segment as two bits, a zero step counts as a positive one
+     */
+    protected static int getQuadrant(double[] xy, int segment)
+    {
+        int i = segment * 2;
+        return (xy[i + 2] >= xy[i] ? 1 : 0) | (xy[i + 3] >= xy[i + 1] ? 2 : 0);
+    }
+
+
+    protected void addChain(int part, int start, int end)
+    {
+        if (mChainCount == mChainPart.length) {
+            int capacity = mChainCount * 2;
+            mChainPart = Arrays.copyOf(mChainPart, capacity);
+            mChainStart = Arrays.copyOf(mChainStart, capacity);
+            mChainEnd = Arrays.copyOf(mChainEnd, capacity);
+            mChainMinX = Arrays.copyOf(mChainMinX, capacity);
+            mChainMaxX = Arrays.copyOf(mChainMaxX, capacity);
+            mChainMinY = Arrays.copyOf(mChainMinY, capacity);
+            mChainMaxY = Arrays.copyOf(mChainMaxY, capacity);
+        }
+
+        double[] xy = mParts[part].mCoordinates;
+        double ax = xy[start * 2], ay = xy[start * 2 + 1];
+        double bx = xy[end * 2], by = xy[end * 2 + 1];
+        int chain = mChainCount++;
+        mChainPart[chain] = part;
+        mChainStart[chain] = start;
+        mChainEnd[chain] = end;
+        mChainMinX[chain] = Math.min(ax, bx);
+        mChainMaxX[chain] = Math.max(ax, bx);
+        mChainMinY[chain] = Math.min(ay, by);
+        mChainMaxY[chain] = Math.max(ay, by);
+    }
+
+
+    /**
+     * Sorts items by keys in place, both arrays are permuted the same way.
+     */
+    protected static void sort(double[] keys, int[] items, int low, int high)
+    {
+        while (high - low > 16) {
+            int middle = (low + high) >>> 1;
+            // median of three as pivot
+            if (keys[middle] < keys[low]) swap(keys, items, middle, low);
+            if (keys[high] < keys[low]) swap(keys, items, high, low);
+            if (keys[high] < keys[middle]) swap(keys, items, high, middle);
+            double pivot = keys[middle];
+
+            int i = low, j = high;
+            while (i <= j) {
+                while (keys[i] < pivot) i++;
+                while (keys[j] > pivot) j--;
+                if (i <= j) {
+                    swap(keys, items, i++, j--);
+                }
+            }
+
+            // recurse into the smaller part to bound the stack depth
+            if (j - low < high - i) {
+                sort(keys, items, low, j);
+                low = i;
+            } else {
+                sort(keys, items, i, high);
+                high = j;
+            }
+        }
+
+        for (int i = low + 1; i <= high; i++) {
+            double key = keys[i];
+            int item = items[i];
+            int j = i - 1;
+            while (j >= low && keys[j] > key) {
+                keys[j + 1] = keys[j];
+                items[j + 1] = items[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            items[j + 1] = item;
+        }
+    }
+
+
+    protected static void swap(double[] keys, int[] items, int i, int j)
+    {
+        double key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        int item = items[i];
+        items[i] = items[j];
+        items[j] = item;
+    }
+}
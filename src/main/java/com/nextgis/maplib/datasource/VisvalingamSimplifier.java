@@ -0,0 +1,407 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplib.datasource;
+
+import com.nextgis.maplib.util.Constants;
+import com.nextgis.maplib.util.GeoConstants;
+import com.nextgis.maplib.util.LongIntHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Visvalingam-Whyatt simplification: the vertex forming the smallest triangle with its
+ * neighbours is removed first, until every triangle is at least tolerance^2 / 2.
+ * <p>
+ * Locked vertices are never removed, see {@link #lockSharedVertices(GeoGeometry, GeoGeometry)}.
+ * The result of a run between two locked vertices depends only on that run, and is the same
+ * when the run is walked backwards, so an edge shared by two features is simplified the same way
+ * in both and no gaps or overlaps appear between them. A ring without locks keeps its smallest
+ * vertex (by x, then y), and any ring keeps at least three vertices instead of collapsing.
+ * <p>
+ * This class is not thread-safe, the work arrays are reused between calls.
+ */
+public class VisvalingamSimplifier
+{
+    protected final LongIntHashMap mLocked = new LongIntHashMap();
+
+    protected double[] mXY;
+    protected double[] mArea = new double[16];
+    protected int[]    mPrev = new int[16];
+    protected int[]    mNext = new int[16];
+    /** Heap position of the vertex, or LOCKED, or REMOVED */
+    protected int[]    mHeapIndex = new int[16];
+    protected int[]    mHeap = new int[16];
+    protected int      mHeapSize;
+
+    protected static final int LOCKED  = -1;
+    protected static final int REMOVED = -2;
+
+
+    /**
+     * Locks the vertices of the geometry where an edge shared with the neighbour starts or ends,
+     * so the shared runs are simplified the same way in both geometries. Lock against every
+     * neighbour separately, the locks add up.
+     *
+     * @return true if the geometries have common vertices
+     */
+    public boolean lockSharedVertices(GeoGeometry geometry, GeoGeometry neighbour)
+    {
+        List<GeoLineString> parts = new ArrayList<>();
+        addParts(neighbour, parts);
+        LongIntHashMap vertices = new LongIntHashMap();
+        for (GeoLineString part : parts) {
+            for (int i = 0; i < part.getPointCount(); i++) {
+                vertices.put(getKey(part.getX(i), part.getY(i)), 1);
+            }
+        }
+
+        parts.clear();
+        addParts(geometry, parts);
+        boolean shared = false;
+        for (GeoLineString part : parts) {
+            int count = getVertexCount(part);
+            boolean ring = part instanceof GeoLinearRing;
+            for (int i = 0; i < count; i++) {
+                long key = getKey(part.getX(i), part.getY(i));
+                if (!vertices.containsKey(key)) {
+                    continue;
+                }
+                shared = true;
+
+                int prev = i > 0 ? i - 1 : ring ? count - 1 : -1;
+                int next = i < count - 1 ? i + 1 : ring ? 0 : -1;
+                if (prev < 0 || next < 0
+                        || !vertices.containsKey(getKey(part.getX(prev), part.getY(prev)))
+                        || !vertices.containsKey(getKey(part.getX(next), part.getY(next)))) {
+                    mLocked.put(key, 1);
+                }
+            }
+        }
+        return shared;
+    }
+
+
+    public void clearLocked()
+    {
+        mLocked.clear();
+    }
+
+
+    /**
+     * Simplifies lines and polygons, other geometries go to {@link GeoGeometry#simplify(double)}.
+     * Geometries too small to be seen at the tolerance are skipped the same way as there.
+     *
+     * @return the simplified geometry or null if nothing is left
+     */
+    public GeoGeometry simplify(GeoGeometry geometry, double tolerance)
+    {
+        double sqTolerance = tolerance * tolerance;
+
+        switch (geometry.getType()) {
+            case GeoConstants.GTLineString:
+            case GeoConstants.GTLinearRing: {
+                GeoLineString line = (GeoLineString) geometry;
+                double area = line.getEnvelope().getArea() * Constants.SIMPLIFY_TOENV_AREA_MULTIPLY;
+                if (sqTolerance > area * Constants.SIMPLIFY_SKIP_AREA_MULTIPLY) {
+                    return null;
+                }
+                return simplifyLine(line, sqTolerance);
+            }
+
+            case GeoConstants.GTPolygon: {
+                GeoPolygon polygon = (GeoPolygon) geometry;
+                GeoLinearRing outerRing =
+                        (GeoLinearRing) simplify((GeoGeometry) polygon.getOuterRing(), tolerance);
+                if (null == outerRing) {
+                    return null;
+                }
+
+                GeoPolygon result = new GeoPolygon();
+                result.setCRS(polygon.getCRS());
+                result.setOuterRing(outerRing);
+                for (int i = 0; i < polygon.getInnerRingCount(); i++) {
+                    GeoLinearRing ring = polygon.getInnerRing(i);
+                    // the same limit as GeoLinearRing.simplify(tolerance, true)
+                    if (sqTolerance > ring.getEnvelope().getArea() * 2) {
+                        continue;
+                    }
+                    result.addInnerRing((GeoLinearRing) simplifyLine(ring, sqTolerance));
+                }
+                return result;
+            }
+
+            case GeoConstants.GTMultiLineString:
+            case GeoConstants.GTMultiPolygon: {
+                GeoGeometryCollection collection = (GeoGeometryCollection) geometry;
+                GeoGeometryCollection result = collection.getInstance();
+                result.setCRS(collection.getCRS());
+                for (int i = 0; i < collection.size(); i++) {
+                    GeoGeometry part = simplify(collection.get(i), tolerance);
+                    if (null != part) {
+                        result.add(part);
+                    }
+                }
+                return result.size() > 0 ? result : null;
+            }
+
+            default:
+                return geometry.simplify(tolerance);
+        }
+    }
+
+
+    /**
+     * Removes the vertices forming triangles smaller than sqTolerance / 2.
+     */
+    protected GeoLineString simplifyLine(GeoLineString line, double sqTolerance)
+    {
+        boolean ring = line instanceof GeoLinearRing;
+        int count = getVertexCount(line);
+        int minimum = ring ? 3 : 2;
+        if (count <= minimum) {
+            return (GeoLineString) line.copy();
+        }
+
+        prepare(line, count, ring);
+
+        int remaining = count;
+        while (mHeapSize > 0 && remaining > minimum) {
+            int vertex = mHeap[0];
+            double area = mArea[vertex];
+            if (area >= sqTolerance) {
+                break;
+            }
+            removeTop();
+            mHeapIndex[vertex] = REMOVED;
+            remaining--;
+
+            int prev = mPrev[vertex], next = mNext[vertex];
+            mNext[prev] = next;
+            mPrev[next] = prev;
+            // a neighbour is never cheaper to remove than the vertex removed before it
+            updateArea(prev, area);
+            updateArea(next, area);
+        }
+
+        GeoLineString result = line.getInstance();
+        result.setCRS(line.getCRS());
+        result.ensureCapacity(ring ? remaining + 1 : remaining);
+        double[] xy = mXY;
+        for (int i = 0; i < count; i++) {
+            if (mHeapIndex[i] != REMOVED) {
+                result.add(xy[i * 2], xy[i * 2 + 1]);
+            }
+        }
+        if (ring) {
+            result.add(result.getX(0), result.getY(0));
+        }
+        return result;
+    }
+
+
+    protected void prepare(GeoLineString line, int count, boolean ring)
+    {
+        if (mArea.length < count) {
+            int capacity = Math.max(count, mArea.length * 2);
+            mArea = new double[capacity];
+            mPrev = new int[capacity];
+            mNext = new int[capacity];
+            mHeapIndex = new int[capacity];
+            mHeap = new int[capacity];
+        }
+        double[] xy = mXY = line.mCoordinates;
+
+        int smallest = 0;
+        boolean locked = false;
+        for (int i = 0; i < count; i++) {
+            mPrev[i] = i > 0 ? i - 1 : count - 1;
+            mNext[i] = i < count - 1 ? i + 1 : 0;
+            mHeapIndex[i] = 0;
+            if (mLocked.containsKey(getKey(xy[i * 2], xy[i * 2 + 1]))) {
+                mHeapIndex[i] = LOCKED;
+                locked = true;
+            }
+            if (xy[i * 2] < xy[smallest * 2]
+                    || xy[i * 2] == xy[smallest * 2] && xy[i * 2 + 1] < xy[smallest * 2 + 1]) {
+                smallest = i;
+            }
+        }
+        if (ring) {
+            // an extra lock inside a shared run would split it in this ring only
+            if (!locked) {
+                mHeapIndex[smallest] = LOCKED;
+            }
+        } else {
+            mHeapIndex[0] = LOCKED;
+            mHeapIndex[count - 1] = LOCKED;
+        }
+
+        mHeapSize = 0;
+        for (int i = 0; i < count; i++) {
+            if (mHeapIndex[i] != LOCKED) {
+                mArea[i] = getArea(mPrev[i], i, mNext[i]);
+                mHeapIndex[i] = mHeapSize;
+                mHeap[mHeapSize++] = i;
+            }
+        }
+        for (int i = mHeapSize / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+
+    protected void updateArea(int vertex, double minArea)
+    {
+        int index = mHeapIndex[vertex];
+        if (index < 0) {
+            return;
+        }
+        double old = mArea[vertex];
+        mArea[vertex] = Math.max(getArea(mPrev[vertex], vertex, mNext[vertex]), minArea);
+        if (mArea[vertex] < old) {
+            siftUp(index);
+        } else {
+            siftDown(index);
+        }
+    }
+
+
+    /**
+     * Doubled area of the triangle, the terms are added so that the result is bit for bit the
+     * same for the reversed triangle.
+     */
+    protected double getArea(int a, int b, int c)
+    {
+        double[] xy = mXY;
+        double ax = xy[a * 2], ay = xy[a * 2 + 1];
+        double bx = xy[b * 2], by = xy[b * 2 + 1];
+        double cx = xy[c * 2], cy = xy[c * 2 + 1];
+        return Math.abs((ax * (by - cy) + cx * (ay - by)) + bx * (cy - ay));
+    }
+
+
+    /**
+     * Orders by area, then by coordinates, so equal triangles go the same way in both
+     * directions of a run.
+     */
+    protected boolean less(int a, int b)
+    {
+        if (mArea[a] != mArea[b]) {
+            return mArea[a] < mArea[b];
+        }
+        double[] xy = mXY;
+        if (xy[a * 2] != xy[b * 2]) {
+            return xy[a * 2] < xy[b * 2];
+        }
+        return xy[a * 2 + 1] < xy[b * 2 + 1];
+    }
+
+
+    protected void removeTop()
+    {
+        int last = mHeap[--mHeapSize];
+        if (mHeapSize > 0) {
+            mHeap[0] = last;
+            mHeapIndex[last] = 0;
+            siftDown(0);
+        }
+    }
+
+
+    protected void siftUp(int index)
+    {
+        int vertex = mHeap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!less(vertex, mHeap[parent])) {
+                break;
+            }
+            mHeap[index] = mHeap[parent];
+            mHeapIndex[mHeap[index]] = index;
+            index = parent;
+        }
+        mHeap[index] = vertex;
+        mHeapIndex[vertex] = index;
+    }
+
+
+    protected void siftDown(int index)
+    {
+        int vertex = mHeap[index];
+        while (true) {
+            int child = index * 2 + 1;
+            if (child >= mHeapSize) {
+                break;
+            }
+            if (child + 1 < mHeapSize && less(mHeap[child + 1], mHeap[child])) {
+                child++;
+            }
+            if (!less(mHeap[child], vertex)) {
+                break;
+            }
+            mHeap[index] = mHeap[child];
+            mHeapIndex[mHeap[index]] = index;
+            index = child;
+        }
+        mHeap[index] = vertex;
+        mHeapIndex[vertex] = index;
+    }
+
+
+    /**
+     * @return count of distinct vertices, the closing point of a ring is not counted
+     */
+    protected static int getVertexCount(GeoLineString line)
+    {
+        int count = line.getPointCount();
+        if (line instanceof GeoLinearRing && ((GeoLinearRing) line).isClosed()) {
+            count--;
+        }
+        return count;
+    }
+
+
+    protected static long getKey(double x, double y)
+    {
+        return Double.doubleToLongBits(x) * 0x9E3779B97F4A7C15L + Double.doubleToLongBits(y);
+    }
+
+
+    protected static void addParts(GeoGeometry geometry, List<GeoLineString> parts)
+    {
+        if (geometry instanceof GeoLineString) {
+            parts.add((GeoLineString) geometry);
+        } else if (geometry instanceof GeoPolygon) {
+            GeoPolygon polygon = (GeoPolygon) geometry;
+            parts.add(polygon.getOuterRing());
+            for (int i = 0; i < polygon.getInnerRingCount(); i++) {
+                parts.add(polygon.getInnerRing(i));
+            }
+        } else if (geometry instanceof GeoGeometryCollection) {
+            GeoGeometryCollection collection = (GeoGeometryCollection) geometry;
+            for (int i = 0; i < collection.size(); i++) {
+                addParts(collection.get(i), parts);
+            }
+        }
+    }
+}
@@ -33,13 +33,10 @@ import com.nextgis.maplib.api.ITextStyle;
 import com.nextgis.maplib.datasource.GeoGeometry;
 import com.nextgis.maplib.datasource.GeoLineString;
 import com.nextgis.maplib.datasource.GeoMultiLineString;
-import com.nextgis.maplib.datasource.GeoPoint;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.util.List;
-
 import static com.nextgis.maplib.util.Constants.JSON_DISPLAY_NAME;
 import static com.nextgis.maplib.util.Constants.JSON_NAME_KEY;
 import static com.nextgis.maplib.util.Constants.JSON_TYPE_KEY;
@@ -184,15 +181,15 @@ public class SimpleLineStyle extends Style implements ITextStyle {
         paint.setStrokeCap(mStrokeCap);
         paint.setStrokeWidth(scaledWidth);
 
-        List<GeoPoint> points = lineString.getPoints();
+        int pointCount = lineString.getPointCount();
 
         Path path = new Path();
-        path.incReserve(points.size());
+        path.incReserve(pointCount);
 
-        path.moveTo((float) points.get(0).getX(), (float) points.get(0).getY());
+        path.moveTo((float) lineString.getX(0), (float) lineString.getY(0));
 
-        for (int i = 1; i < points.size(); ++i) {
-            path.lineTo((float) points.get(i).getX(), (float) points.get(i).getY());
+        for (int i = 1; i < pointCount; ++i) {
+            path.lineTo((float) lineString.getX(i), (float) lineString.getY(i));
         }
 
         display.drawPath(path, paint);
@@ -208,19 +205,19 @@ public class SimpleLineStyle extends Style implements ITextStyle {
         paint.setStrokeCap(Paint.Cap.BUTT);
         paint.setStrokeWidth(scaledWidth);
 
-        List<GeoPoint> points = lineString.getPoints();
+        int pointCount = lineString.getPointCount();
 
         // workaround for "DashPathEffect/drawLine not working properly when hardwareAccelerated="true""
         // https://code.google.com/p/android/issues/detail?id=29944
 
         // get all points to the main path
         Path mainPath = new Path();
-        mainPath.incReserve(points.size());
+        mainPath.incReserve(pointCount);
 
-        mainPath.moveTo((float) points.get(0).getX(), (float) points.get(0).getY());
+        mainPath.moveTo((float) lineString.getX(0), (float) lineString.getY(0));
 
-        for (int i = 1; i < points.size(); ++i) {
-            mainPath.lineTo((float) points.get(i).getX(), (float) points.get(i).getY());
+        for (int i = 1; i < pointCount; ++i) {
+            mainPath.lineTo((float) lineString.getX(i), (float) lineString.getY(i));
         }
 
         // draw along the main path
@@ -235,7 +232,7 @@ public class SimpleLineStyle extends Style implements ITextStyle {
         Path dashPath = new Path();
         dashPath.incReserve((int) (2 * length / (dash + gap)));
 
-        dashPath.moveTo((float) points.get(0).getX(), (float) points.get(0).getY());
+        dashPath.moveTo((float) lineString.getX(0), (float) lineString.getY(0));
 
         while (distance < length) {
             // get a point from the main path
@@ -282,15 +279,15 @@ public class SimpleLineStyle extends Style implements ITextStyle {
         edgingPaint.setStrokeCap(Paint.Cap.BUTT);
         edgingPaint.setStrokeWidth(scaledWidth * 3);
 
-        List<GeoPoint> points = lineString.getPoints();
+        int pointCount = lineString.getPointCount();
 
         Path path = new Path();
-        path.incReserve(points.size());
+        path.incReserve(pointCount);
 
-        path.moveTo((float) points.get(0).getX(), (float) points.get(0).getY());
+        path.moveTo((float) lineString.getX(0), (float) lineString.getY(0));
 
-        for (int i = 1; i < points.size(); ++i) {
-            path.lineTo((float) points.get(i).getX(), (float) points.get(i).getY());
+        for (int i = 1; i < pointCount; ++i) {
+            path.lineTo((float) lineString.getX(i), (float) lineString.getY(i));
         }
 
         display.drawPath(path, edgingPaint);
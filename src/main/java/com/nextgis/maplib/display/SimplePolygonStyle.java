@@ -32,6 +32,7 @@ import android.text.TextUtils;
 
 import com.nextgis.maplib.api.ITextStyle;
 import com.nextgis.maplib.datasource.GeoGeometry;
+import com.nextgis.maplib.datasource.GeoLineString;
 import com.nextgis.maplib.datasource.GeoMultiPolygon;
 import com.nextgis.maplib.datasource.GeoPoint;
 import com.nextgis.maplib.datasource.GeoPolygon;
@@ -223,13 +224,11 @@ public class SimplePolygonStyle extends Style implements ITextStyle {
     }
 
     protected Path getPath(GeoPolygon polygon) {
-        List<GeoPoint> points = polygon.getOuterRing().getPoints();
         Path polygonPath = new Path();
-        appendPath(polygonPath, points);
+        appendPath(polygonPath, polygon.getOuterRing());
 
         for (int i = 0; i < polygon.getInnerRingCount(); i++) {
-            points = polygon.getInnerRing(i).getPoints();
-            appendPath(polygonPath, points);
+            appendPath(polygonPath, polygon.getInnerRing(i));
         }
 
         polygonPath.setFillType(Path.FillType.EVEN_ODD);
@@ -237,6 +236,19 @@ public class SimplePolygonStyle extends Style implements ITextStyle {
         return polygonPath;
     }
 
+    protected void appendPath(Path polygonPath, GeoLineString ring) {
+        int pointCount = ring.getPointCount();
+        if (pointCount > 0) {
+            polygonPath.moveTo((float) ring.getX(0), (float) ring.getY(0));
+
+            for (int i = 1; i < pointCount; i++) {
+                polygonPath.lineTo((float) ring.getX(i), (float) ring.getY(i));
+            }
+
+            polygonPath.close();
+        }
+    }
+
     protected void appendPath(Path polygonPath, List<GeoPoint> points) {
         float x0, y0;
 
@@ -189,20 +189,14 @@ public class SimpleTiledPolygonStyle extends Style {
     }
 
     protected Path getPath(GeoLineString lineString) {
-        List<GeoPoint> points = lineString.getPoints();
+        int pointCount = lineString.getPointCount();
         Path path = new Path();
-        float x0, y0;
-
-        if (points.size() > 0) {
-            x0 = (float) points.get(0).getX();
-            y0 = (float) points.get(0).getY();
-            path.moveTo(x0, y0);
 
-            for (int i = 1; i < points.size(); i++) {
-                x0 = (float) points.get(i).getX();
-                y0 = (float) points.get(i).getY();
+        if (pointCount > 0) {
+            path.moveTo((float) lineString.getX(0), (float) lineString.getY(0));
 
-                path.lineTo(x0, y0);
+            for (int i = 1; i < pointCount; i++) {
+                path.lineTo((float) lineString.getX(i), (float) lineString.getY(i));
             }
         }
 
@@ -210,13 +204,11 @@ public class SimpleTiledPolygonStyle extends Style {
     }
 
     protected Path getPath(GeoPolygon polygon) {
-        List<GeoPoint> points = polygon.getOuterRing().getPoints();
         Path polygonPath = new Path();
-        appendPath(polygonPath, points);
+        appendPath(polygonPath, polygon.getOuterRing());
 
         for (int i = 0; i < polygon.getInnerRingCount(); i++) {
-            points = polygon.getInnerRing(i).getPoints();
-            appendPath(polygonPath, points);
+            appendPath(polygonPath, polygon.getInnerRing(i));
         }
 
         polygonPath.setFillType(Path.FillType.EVEN_ODD);
@@ -224,6 +216,19 @@ public class SimpleTiledPolygonStyle extends Style {
         return polygonPath;
     }
 
+    protected void appendPath(Path polygonPath, GeoLineString ring) {
+        int pointCount = ring.getPointCount();
+        if (pointCount > 0) {
+            polygonPath.moveTo((float) ring.getX(0), (float) ring.getY(0));
+
+            for (int i = 1; i < pointCount; i++) {
+                polygonPath.lineTo((float) ring.getX(i), (float) ring.getY(i));
+            }
+
+            polygonPath.close();
+        }
+    }
+
     protected void appendPath(Path polygonPath, List<GeoPoint> points) {
         float x0, y0;
 
@@ -38,7 +38,6 @@ import com.nextgis.maplib.map.TrackLayer;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.util.List;
 import java.util.Map;
 
 
@@ -106,20 +105,20 @@ public class TrackRenderer
             }
 
             mPaint.setColor(layer.getColor(entry.getKey()));
-            List<GeoPoint> points = entry.getValue().getPoints();
-            for (int k = 1; k < points.size(); k++) {
+            GeoLineString line = entry.getValue();
+            for (int k = 1; k < line.getPointCount(); k++) {
                 if (Thread.currentThread().isInterrupted()) {
                     break;
                 }
 
                 display.drawLine(
-                        (float) points.get(k - 1).getX(), (float) points.get(k - 1).getY(),
-                        (float) points.get(k).getX(), (float) points.get(k).getY(), mPaint);
+                        (float) line.getX(k - 1), (float) line.getY(k - 1),
+                        (float) line.getX(k), (float) line.getY(k), mPaint);
             }
 
             // draw start and finish flag
-            if (mEndingMarker != null) {
-                GeoPoint endings = points.get(0);
+            if (mEndingMarker != null && line.getPointCount() > 0) {
+                GeoPoint endings = line.getPoint(0);
                 Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
                 ColorFilter filter = new PorterDuffColorFilter(Color.GREEN, PorterDuff.Mode.SRC_ATOP);
                 paint.setColorFilter(filter);
@@ -128,7 +127,7 @@ public class TrackRenderer
                 canvas.drawBitmap(ending, 0, 0, paint);
                 display.drawBitmap(ending, endings, 0, ending.getHeight());
 
-                endings = points.get(points.size() - 1);
+                endings = line.getPoint(line.getPointCount() - 1);
                 filter = new PorterDuffColorFilter(Color.RED, PorterDuff.Mode.SRC_ATOP);
                 paint.setColorFilter(filter);
                 canvas = new Canvas(ending);
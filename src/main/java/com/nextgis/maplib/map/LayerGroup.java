@@ -539,6 +539,8 @@ public class LayerGroup
         for (ILayer layer : mLayers.values()) {
             if (layer instanceof LayerGroup) {
                 ((LayerGroup) layer).clearLayers();
+            } else if (layer instanceof VectorLayer) {
+                ((VectorLayer) layer).compactCache();
             }
         }
         mLayers.clear();
@@ -33,6 +33,7 @@ import android.util.Log;
 import androidx.annotation.Nullable;
 
 import com.google.gson.JsonArray;
+import com.nextgis.maplib.api.IFeatureVisitor;
 import com.nextgis.maplib.api.ILayer;
 import com.nextgis.maplib.api.ITextStyle;
 import com.nextgis.maplib.datasource.GeoGeometry;
@@ -44,6 +45,7 @@ import com.nextgis.maplib.datasource.GeoMultiPoint;
 import com.nextgis.maplib.datasource.GeoMultiPolygon;
 import com.nextgis.maplib.datasource.GeoPoint;
 import com.nextgis.maplib.datasource.GeoPolygon;
+import com.nextgis.maplib.datasource.GeometryBlobView;
 import com.nextgis.maplib.display.FieldStyleRule;
 import com.nextgis.maplib.display.RuleFeatureRenderer;
 import com.nextgis.maplib.display.SimpleLineStyle;
@@ -77,6 +79,7 @@ import org.maplibre.android.style.sources.TileSet;
 import org.maplibre.geojson.Feature;
 import org.maplibre.geojson.FeatureCollection;
 import org.maplibre.geojson.Geometry;
+import org.maplibre.geojson.GeometryCollection;
 import org.maplibre.geojson.LineString;
 import org.maplibre.geojson.MultiLineString;
 import org.maplibre.geojson.MultiPoint;
@@ -85,7 +88,6 @@ import org.maplibre.geojson.Point;
 import org.maplibre.geojson.Polygon;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -270,82 +272,75 @@ public class MPLFeaturesUtils {
         boolean ruleStyle =  layer.getRenderer() instanceof RuleFeatureRenderer;
 
         List<org.maplibre.geojson.Feature> lineFeatures = new ArrayList<>();
-        Map<Long, com.nextgis.maplib.datasource.Feature> features = layer.getFeatures();
-        int i = 0;
-        Iterator<Map.Entry<Long, com.nextgis.maplib.datasource.Feature>> iterator = features.entrySet().iterator();
-
-        while (iterator.hasNext()){
-            Map.Entry<Long, com.nextgis.maplib.datasource.Feature> entry = iterator.next();
-            i++;
-            Long id = entry.getKey();
-            com.nextgis.maplib.datasource.Feature feature = entry.getValue();
-            GeoLineString geoLineGeometry = (GeoLineString) feature.getGeometry();
-            LineString lineString = getLineString(geoLineGeometry);
-            Feature lineFeature = org.maplibre.geojson.Feature.fromGeometry(lineString);
-            lineFeature.addStringProperty(prop_layerid, String.valueOf(layer.getId()));
-            lineFeature.addStringProperty(prop_order, String.valueOf(i));
-            lineFeature.addStringProperty(prop_featureid, String.valueOf(id));
-            lineFeature.addStringProperty(prop_color, colorBlue);
-
-            applyTextAndStyle(
-                    layer,
-                    feature,
-                    lineFeature,
-                    GTLineString,
-                    ruleStyle,
-                    needSignatures,
-                    signatureField,
-                    commonText  );
-            lineFeatures.add(lineFeature);
-            iterator.remove();
-        }
+        final int[] order = {0};
+        layer.scan(null, null, GeoConstants.DEFAULT_CACHE_MAX_ZOOM + 1, new IFeatureVisitor() {
+            @Override
+            public boolean visit(com.nextgis.maplib.datasource.Feature feature) {
+                int i = ++order[0];
+                long id = feature.getId();
+                GeoLineString geoLineGeometry = (GeoLineString) feature.getGeometry();
+                LineString lineString = getLineString(geoLineGeometry);
+                Feature lineFeature = org.maplibre.geojson.Feature.fromGeometry(lineString);
+                lineFeature.addStringProperty(prop_layerid, String.valueOf(layer.getId()));
+                lineFeature.addStringProperty(prop_order, String.valueOf(i));
+                lineFeature.addStringProperty(prop_featureid, String.valueOf(id));
+                lineFeature.addStringProperty(prop_color, colorBlue);
+
+                applyTextAndStyle(
+                        layer,
+                        feature,
+                        lineFeature,
+                        GTLineString,
+                        ruleStyle,
+                        needSignatures,
+                        signatureField,
+                        commonText  );
+                lineFeatures.add(lineFeature);
+                return true;
+            }
+        });
         return lineFeatures;
     }
 
     private static List<Feature> getMultiLineFeatures(VectorLayer layer, String signatureField,
                                                       boolean needSignatures, String commonText){
 
-        boolean ruleStyle = false;
-        if (layer.getRenderer() instanceof RuleFeatureRenderer) { // feature render
-            ruleStyle = true;
-        }
+        final boolean ruleStyle = layer.getRenderer() instanceof RuleFeatureRenderer;
 
         List<org.maplibre.geojson.Feature> lineFeatures = new ArrayList<>();
-        Map<Long, com.nextgis.maplib.datasource.Feature> features = layer.getFeatures();
-        int i = 0;
-        Iterator<Map.Entry<Long, com.nextgis.maplib.datasource.Feature>> iterator = features.entrySet().iterator();
-
-        while (iterator.hasNext()){
-            Map.Entry<Long, com.nextgis.maplib.datasource.Feature> entry = iterator.next();
-            List<LineString> linesArray = new ArrayList<>();
-            i++;
-            Long id = entry.getKey();
-            com.nextgis.maplib.datasource.Feature feature = entry.getValue();
-            GeoMultiLineString geoMultiLineString = (GeoMultiLineString) feature.getGeometry();
-            for (int j = 0; j < geoMultiLineString.size(); j++) {
-                GeoLineString geoLineString = geoMultiLineString.get(j);
-                LineString lineString = getLineString(geoLineString);
-                linesArray.add(lineString);
+        final int[] order = {0};
+        layer.scan(null, null, GeoConstants.DEFAULT_CACHE_MAX_ZOOM + 1, new IFeatureVisitor() {
+            @Override
+            public boolean visit(com.nextgis.maplib.datasource.Feature feature) {
+                List<LineString> linesArray = new ArrayList<>();
+                int i = ++order[0];
+                long id = feature.getId();
+                GeoMultiLineString geoMultiLineString = (GeoMultiLineString) feature.getGeometry();
+                for (int j = 0; j < geoMultiLineString.size(); j++) {
+                    GeoLineString geoLineString = geoMultiLineString.get(j);
+                    LineString lineString = getLineString(geoLineString);
+                    linesArray.add(lineString);
+                }
+                MultiLineString multiLineString = MultiLineString.fromLineStrings(linesArray);
+                Feature lineFeature = Feature.fromGeometry(multiLineString);
+                lineFeature.addStringProperty(prop_layerid, String.valueOf(layer.getId()));
+                lineFeature.addStringProperty(prop_order, String.valueOf(i));
+                lineFeature.addStringProperty(prop_featureid, String.valueOf(id));
+                lineFeature.addStringProperty(prop_color, colorBlue);
+
+                applyTextAndStyle(
+                        layer,
+                        feature,
+                        lineFeature,
+                        GTMultiLineString,
+                        ruleStyle,
+                        needSignatures,
+                        signatureField,
+                        commonText );
+                lineFeatures.add(lineFeature);
+                return true;
             }
-            MultiLineString multiLineString = MultiLineString.fromLineStrings(linesArray);
-            Feature lineFeature = Feature.fromGeometry(multiLineString);
-            lineFeature.addStringProperty(prop_layerid, String.valueOf(layer.getId()));
-            lineFeature.addStringProperty(prop_order, String.valueOf(i));
-            lineFeature.addStringProperty(prop_featureid, String.valueOf(id));
-            lineFeature.addStringProperty(prop_color, colorBlue);
-
-            applyTextAndStyle(
-                    layer,
-                    feature,
-                    lineFeature,
-                    GTMultiLineString,
-                    ruleStyle,
-                    needSignatures,
-                    signatureField,
-                    commonText );
-            lineFeatures.add(lineFeature);
-            iterator.remove();
-        }
+        });
         return lineFeatures;
     }
 
@@ -355,39 +350,36 @@ public class MPLFeaturesUtils {
         boolean ruleStyle = layer.getRenderer() instanceof RuleFeatureRenderer;
 
         List<org.maplibre.geojson.Feature> pointFeatures = new ArrayList<>();
-        Map<Long, com.nextgis.maplib.datasource.Feature> features = layer.getFeatures();
-        int i = 0;
-        Iterator<Map.Entry<Long, com.nextgis.maplib.datasource.Feature>> iterator = features.entrySet().iterator();
-
-        while (iterator.hasNext()){
-            Map.Entry<Long, com.nextgis.maplib.datasource.Feature> entry = iterator.next();
-
-            i++;
-            Long id = entry.getKey();
-            com.nextgis.maplib.datasource.Feature feature = entry.getValue();
-            GeoPoint geoPointGeometry = (GeoPoint) feature.getGeometry();
-            if (geoPointGeometry == null)
-                continue;
-            double[] lonLat = convert3857To4326(geoPointGeometry.getX(), geoPointGeometry.getY());
-            Point point = Point.fromLngLat(lonLat[0], lonLat[1]);
-            Feature pointFeature = org.maplibre.geojson.Feature.fromGeometry(point);
-            pointFeature.addStringProperty(prop_layerid, String.valueOf(layer.getId()));
-            pointFeature.addStringProperty(prop_order, String.valueOf(i));
-            pointFeature.addStringProperty(prop_featureid, String.valueOf(id));
-
-            applyTextAndStyle(
-                    layer,
-                    feature,
-                    pointFeature,
-                    GTPoint,
-                    ruleStyle,
-                    needSignatures,
-                    signatureField,
-                    commonText );
-
-            pointFeatures.add(pointFeature);
-            iterator.remove();
-        }
+        final int[] order = {0};
+        layer.scan(null, null, GeoConstants.DEFAULT_CACHE_MAX_ZOOM + 1, new IFeatureVisitor() {
+            @Override
+            public boolean visit(com.nextgis.maplib.datasource.Feature feature) {
+                int i = ++order[0];
+                long id = feature.getId();
+                GeoPoint geoPointGeometry = (GeoPoint) feature.getGeometry();
+                if (geoPointGeometry == null)
+                    return true;
+                double[] lonLat = convert3857To4326(geoPointGeometry.getX(), geoPointGeometry.getY());
+                Point point = Point.fromLngLat(lonLat[0], lonLat[1]);
+                Feature pointFeature = org.maplibre.geojson.Feature.fromGeometry(point);
+                pointFeature.addStringProperty(prop_layerid, String.valueOf(layer.getId()));
+                pointFeature.addStringProperty(prop_order, String.valueOf(i));
+                pointFeature.addStringProperty(prop_featureid, String.valueOf(id));
+
+                applyTextAndStyle(
+                        layer,
+                        feature,
+                        pointFeature,
+                        GTPoint,
+                        ruleStyle,
+                        needSignatures,
+                        signatureField,
+                        commonText );
+
+                pointFeatures.add(pointFeature);
+                return true;
+            }
+        });
         return pointFeatures;
     }
 
@@ -396,42 +388,35 @@ public class MPLFeaturesUtils {
         boolean ruleStyle = layer.getRenderer() instanceof RuleFeatureRenderer;
 
         List<org.maplibre.geojson.Feature> mpointFeatures = new ArrayList<>();
-        Map<Long, com.nextgis.maplib.datasource.Feature> features = layer.getFeatures();
-        int i = 0;
-        Iterator<Map.Entry<Long, com.nextgis.maplib.datasource.Feature>> iterator = features.entrySet().iterator();
-        while (iterator.hasNext()){
-            Map.Entry<Long, com.nextgis.maplib.datasource.Feature> entry = iterator.next();
-            i++;
-            Long id = entry.getKey();
-            com.nextgis.maplib.datasource.Feature feature = entry.getValue();
-            GeoMultiPoint geoMultiPointtGeometry = (GeoMultiPoint) feature.getGeometry();
-            List<Point> pointList = new ArrayList<>();
-            for (int j = 0; j < geoMultiPointtGeometry.size(); j++) {
-                GeoPoint geoPointGeometry = (GeoPoint) geoMultiPointtGeometry.get(j);
-                double[] lonLat = convert3857To4326(geoPointGeometry.getX(), geoPointGeometry.getY());
-                Point point = Point.fromLngLat(lonLat[0], lonLat[1]);
-                pointList.add(point);
-            }
-            MultiPoint multiPoint = MultiPoint.fromLngLats(pointList);
-            Feature mpointFeature = org.maplibre.geojson.Feature.fromGeometry(multiPoint);
-            mpointFeature.addStringProperty(prop_layerid, String.valueOf(layer.getId()));
-            mpointFeature.addStringProperty(prop_order, String.valueOf(i));
-            mpointFeature.addStringProperty(prop_featureid, String.valueOf(id));
-
-            applyTextAndStyle(
-                    layer,
-                    feature,
-                    mpointFeature,
-                    GTMultiPoint,
-                    ruleStyle,
-                    needSignatures,
-                    signatureField,
-                    commonText
-            );
+        final int[] order = {0};
+        layer.scan(null, null, GeoConstants.DEFAULT_CACHE_MAX_ZOOM + 1, new IFeatureVisitor() {
+            @Override
+            public boolean visit(com.nextgis.maplib.datasource.Feature feature) {
+                int i = ++order[0];
+                long id = feature.getId();
+                GeoMultiPoint geoMultiPointtGeometry = (GeoMultiPoint) feature.getGeometry();
+                List<Point> pointList = getPoints(geoMultiPointtGeometry);
+                MultiPoint multiPoint = MultiPoint.fromLngLats(pointList);
+                Feature mpointFeature = org.maplibre.geojson.Feature.fromGeometry(multiPoint);
+                mpointFeature.addStringProperty(prop_layerid, String.valueOf(layer.getId()));
+                mpointFeature.addStringProperty(prop_order, String.valueOf(i));
+                mpointFeature.addStringProperty(prop_featureid, String.valueOf(id));
+
+                applyTextAndStyle(
+                        layer,
+                        feature,
+                        mpointFeature,
+                        GTMultiPoint,
+                        ruleStyle,
+                        needSignatures,
+                        signatureField,
+                        commonText
+                );
 
-            mpointFeatures.add(mpointFeature);
-            iterator.remove();
-        }
+                mpointFeatures.add(mpointFeature);
+                return true;
+            }
+        });
         return mpointFeatures;
     }
 
@@ -441,36 +426,35 @@ public class MPLFeaturesUtils {
         boolean ruleStyle = layer.getRenderer() instanceof RuleFeatureRenderer;
 
         List<org.maplibre.geojson.Feature> vectorFeatures = new ArrayList<>();
-        Map<Long, com.nextgis.maplib.datasource.Feature> features = layer.getFeatures();
-        int i = 0;
-        Iterator<Map.Entry<Long, com.nextgis.maplib.datasource.Feature>> iterator = features.entrySet().iterator();
-        while (iterator.hasNext()) {
-            Map.Entry<Long, com.nextgis.maplib.datasource.Feature> entry = iterator.next();
-            i++;
-            Long id = entry.getKey();
-            com.nextgis.maplib.datasource.Feature feature = entry.getValue();
-
-            GeoPolygon geoPolygonGeometry = (GeoPolygon) feature.getGeometry();
-            if (geoPolygonGeometry == null)
-                continue;
-            org.maplibre.geojson.Feature polyFeature = getFeatureFromNGFeaturePolygon(geoPolygonGeometry);
-            polyFeature.addStringProperty(prop_layerid, String.valueOf(layer.getId()));
-            polyFeature.addStringProperty(prop_order, String.valueOf(i));
-            polyFeature.addStringProperty(prop_featureid, String.valueOf(id));
-
-            applyTextAndStyle(
-                    layer,
-                    feature,
-                    polyFeature,
-                    GTPolygon,
-                    ruleStyle,
-                    needSignatures,
-                    signatureField,
-                    commonText );
-
-            vectorFeatures.add(polyFeature);
-            iterator.remove();  // free immediately
-        }
+        final int[] order = {0};
+        layer.scan(null, null, GeoConstants.DEFAULT_CACHE_MAX_ZOOM + 1, new IFeatureVisitor() {
+            @Override
+            public boolean visit(com.nextgis.maplib.datasource.Feature feature) {
+                int i = ++order[0];
+                long id = feature.getId();
+
+                GeoPolygon geoPolygonGeometry = (GeoPolygon) feature.getGeometry();
+                if (geoPolygonGeometry == null)
+                    return true;
+                org.maplibre.geojson.Feature polyFeature = getFeatureFromNGFeaturePolygon(geoPolygonGeometry);
+                polyFeature.addStringProperty(prop_layerid, String.valueOf(layer.getId()));
+                polyFeature.addStringProperty(prop_order, String.valueOf(i));
+                polyFeature.addStringProperty(prop_featureid, String.valueOf(id));
+
+                applyTextAndStyle(
+                        layer,
+                        feature,
+                        polyFeature,
+                        GTPolygon,
+                        ruleStyle,
+                        needSignatures,
+                        signatureField,
+                        commonText );
+
+                vectorFeatures.add(polyFeature);
+                return true;
+            }
+        });
         return vectorFeatures;
     }
 
@@ -480,44 +464,42 @@ public class MPLFeaturesUtils {
         boolean ruleStyle = layer.getRenderer() instanceof RuleFeatureRenderer;
 
         List<org.maplibre.geojson.Feature> vectorFeatures = new ArrayList<>();
-        Map<Long, com.nextgis.maplib.datasource.Feature> features = layer.getFeatures();
-        int i = 0;
-        Iterator<Map.Entry<Long, com.nextgis.maplib.datasource.Feature>> iterator = features.entrySet().iterator();
-
-        while (iterator.hasNext()) {
-            Map.Entry<Long, com.nextgis.maplib.datasource.Feature> entry = iterator.next();
-            i++;
-            Long id = entry.getKey();
-            com.nextgis.maplib.datasource.Feature feature = entry.getValue();
-            GeoGeometryCollection geoGeometryCollection = (GeoGeometryCollection) feature.getGeometry();
-            ArrayList<Polygon> polygons = new ArrayList<>();
-            for (int j = 0; j < geoGeometryCollection.size(); j++) {
-                GeoPolygon polygonNG = (GeoPolygon) geoGeometryCollection.getGeometry(j);
-                Polygon polygonML = getPolygonSeparFromNGFeaturePolygon(polygonNG);
-                polygons.add(polygonML);
-            }
-            MultiPolygon multiPolygon = MultiPolygon.fromPolygons(polygons);
-            org.maplibre.geojson.Feature mpolyFeature = Feature.fromGeometry(multiPolygon);
-            mpolyFeature.addStringProperty(prop_layerid, String.valueOf(layer.getId()));
-            mpolyFeature.addStringProperty(prop_order, String.valueOf(i));
-            mpolyFeature.addStringProperty(prop_featureid, String.valueOf(id));
-            if (signatureField != null) {
-                mpolyFeature.addStringProperty(prop_signature_text, getSpaceCorrectedText(entry.getValue().getFieldValueAsString(signatureField)));
-            }
+        final int[] order = {0};
+        layer.scan(null, null, GeoConstants.DEFAULT_CACHE_MAX_ZOOM + 1, new IFeatureVisitor() {
+            @Override
+            public boolean visit(com.nextgis.maplib.datasource.Feature feature) {
+                int i = ++order[0];
+                long id = feature.getId();
+                GeoGeometryCollection geoGeometryCollection = (GeoGeometryCollection) feature.getGeometry();
+                ArrayList<Polygon> polygons = new ArrayList<>();
+                for (int j = 0; j < geoGeometryCollection.size(); j++) {
+                    GeoPolygon polygonNG = (GeoPolygon) geoGeometryCollection.getGeometry(j);
+                    Polygon polygonML = getPolygonSeparFromNGFeaturePolygon(polygonNG);
+                    polygons.add(polygonML);
+                }
+                MultiPolygon multiPolygon = MultiPolygon.fromPolygons(polygons);
+                org.maplibre.geojson.Feature mpolyFeature = Feature.fromGeometry(multiPolygon);
+                mpolyFeature.addStringProperty(prop_layerid, String.valueOf(layer.getId()));
+                mpolyFeature.addStringProperty(prop_order, String.valueOf(i));
+                mpolyFeature.addStringProperty(prop_featureid, String.valueOf(id));
+                if (signatureField != null) {
+                    mpolyFeature.addStringProperty(prop_signature_text, getSpaceCorrectedText(feature.getFieldValueAsString(signatureField)));
+                }
 
-            applyTextAndStyle(
-                    layer,
-                    feature,
-                    mpolyFeature,
-                    GTMultiPolygon,
-                    ruleStyle,
-                    needSignatures,
-                    signatureField,
-                    commonText);
-
-            vectorFeatures.add(mpolyFeature);
-            iterator.remove();
-        }
+                applyTextAndStyle(
+                        layer,
+                        feature,
+                        mpolyFeature,
+                        GTMultiPolygon,
+                        ruleStyle,
+                        needSignatures,
+                        signatureField,
+                        commonText);
+
+                vectorFeatures.add(mpolyFeature);
+                return true;
+            }
+        });
         return vectorFeatures;
     }
 
@@ -719,57 +701,147 @@ public class MPLFeaturesUtils {
     }
 
 
-    static public LineString getLineString(GeoLineString geoLineGeometry) {
-        List<Point> pointList = new ArrayList<>();
-        for (int j = 0; j < geoLineGeometry.getPointCount(); j++) {
-            GeoPoint geoPointGeometry = (GeoPoint) geoLineGeometry.getPoint(j);
-            double[] lonLat = convert3857To4326(geoPointGeometry.getX(), geoPointGeometry.getY());
-            Point point = Point.fromLngLat(lonLat[0], lonLat[1]);
-            pointList.add(point);
+    /**
+     * Web Mercator vertices of the blob part as MapLibre points
+     */
+    static public List<Point> getPoints(GeometryBlobView view, int part) {
+        int count = view.getPointCount(part);
+        double[] xy = new double[count * 2];
+        view.getCoordinates(part, xy, 0);
+        return getPoints(xy, count);
+    }
+
+    /**
+     * Web Mercator vertices of the line string as MapLibre points, the line is not changed
+     */
+    static public List<Point> getPoints(GeoLineString line) {
+        int count = line.getPointCount();
+        double[] xy = new double[count * 2];
+        System.arraycopy(line.getCoordinates(), 0, xy, 0, count * 2);
+        return getPoints(xy, count);
+    }
+
+    /**
+     * Web Mercator points of the multipoint as MapLibre points
+     */
+    static public List<Point> getPoints(GeoMultiPoint multiPoint) {
+        int count = multiPoint.size();
+        double[] xy = new double[count * 2];
+        for (int i = 0; i < count; i++) {
+            GeoPoint point = multiPoint.get(i);
+            xy[i * 2] = point.getX();
+            xy[i * 2 + 1] = point.getY();
+        }
+        return getPoints(xy, count);
+    }
+
+    /**
+     * Convert the packed Web Mercator coordinates in place and wrap them as MapLibre points
+     */
+    static List<Point> getPoints(double[] xy, int count) {
+        convert3857To4326(xy, 0, count);
+        List<Point> points = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            points.add(Point.fromLngLat(xy[i * 2], xy[i * 2 + 1]));
+        }
+        return points;
+    }
+
+    static public List<List<Point>> getRings(GeoPolygon polygon) {
+        List<List<Point>> rings = new ArrayList<>(polygon.getInnerRingCount() + 1);
+        rings.add(getPoints(polygon.getOuterRing()));
+        for (int i = 0; i < polygon.getInnerRingCount(); i++) {
+            rings.add(getPoints(polygon.getInnerRing(i)));
         }
-        return LineString.fromLngLats(pointList);
+        return rings;
+    }
+
+    static public List<List<Point>> getRings(GeometryBlobView view, int geometry) {
+        int first = view.getFirstPart(geometry);
+        int count = view.getPartCount(geometry);
+        List<List<Point>> rings = new ArrayList<>(count);
+        for (int part = first; part < first + count; part++) {
+            rings.add(getPoints(view, part));
+        }
+        return rings;
+    }
+
+    /**
+     * Convert the geometry blob straight to a MapLibre geometry, no NextGIS geometry is built
+     */
+    static public Geometry getGeometry(GeometryBlobView view) {
+        int geometryCount = view.getGeometryCount();
+        switch (view.getType()) {
+            case GTPoint:
+                return getPoints(view, 0).get(0);
+            case GeoConstants.GTLineString:
+            case GeoConstants.GTLinearRing:
+                return LineString.fromLngLats(getPoints(view, 0));
+            case GTPolygon:
+                return Polygon.fromLngLats(getRings(view, 0));
+            case GTMultiPoint: {
+                List<Point> points = new ArrayList<>(geometryCount);
+                for (int i = 0; i < geometryCount; i++) {
+                    points.addAll(getPoints(view, view.getFirstPart(i)));
+                }
+                return MultiPoint.fromLngLats(points);
+            }
+            case GTMultiLineString: {
+                List<List<Point>> lines = new ArrayList<>(geometryCount);
+                for (int i = 0; i < geometryCount; i++) {
+                    lines.add(getPoints(view, view.getFirstPart(i)));
+                }
+                return MultiLineString.fromLngLats(lines);
+            }
+            case GTMultiPolygon: {
+                List<List<List<Point>>> polygons = new ArrayList<>(geometryCount);
+                for (int i = 0; i < geometryCount; i++) {
+                    polygons.add(getRings(view, i));
+                }
+                return MultiPolygon.fromLngLats(polygons);
+            }
+            case GeoConstants.GTGeometryCollection: {
+                List<Geometry> geometries = new ArrayList<>(geometryCount);
+                for (int i = 0; i < geometryCount; i++) {
+                    switch (view.getGeometryType(i)) {
+                        case GTPoint:
+                            geometries.add(getPoints(view, view.getFirstPart(i)).get(0));
+                            break;
+                        case GeoConstants.GTLineString:
+                            geometries.add(LineString.fromLngLats(getPoints(view, view.getFirstPart(i))));
+                            break;
+                        case GTPolygon:
+                            geometries.add(Polygon.fromLngLats(getRings(view, i)));
+                            break;
+                    }
+                }
+                return GeometryCollection.fromGeometries(geometries);
+            }
+            default:
+                return null;
+        }
+    }
+
+    static public LineString getLineString(GeoLineString geoLineGeometry) {
+        return LineString.fromLngLats(getPoints(geoLineGeometry));
     }
 
 
     public static org.maplibre.geojson.Feature getFeatureFromNGFeatureMultiLine(GeoMultiLineString geoLineGeometry) {
         List<List<Point>> mline = new ArrayList<>();
         for (int j = 0; j < geoLineGeometry.size(); j++) {
-            GeoLineString lineitem = geoLineGeometry.get(j);
-            List<Point> points = new ArrayList<>();
-            for (GeoPoint item : lineitem.getPoints()) {
-                double[] lonLat = convert3857To4326(item.getX(), item.getY());
-                points.add(Point.fromLngLat(lonLat[0], lonLat[1]));
-            }
-            mline.add(points);
+            mline.add(getPoints(geoLineGeometry.get(j)));
         }
         return org.maplibre.geojson.Feature.fromGeometry(org.maplibre.geojson.MultiLineString.fromLngLats(mline));
     }
 
     public static org.maplibre.geojson.Feature getFeatureFromNGFeatureLine(GeoLineString geoLineGeometry) {
-        List<Point> points = new ArrayList<>();
-        for (GeoPoint item : geoLineGeometry.getPoints()) {
-            double[] lonLat = convert3857To4326(item.getX(), item.getY());
-            points.add(Point.fromLngLat(lonLat[0], lonLat[1]));
-        }
+        List<Point> points = getPoints(geoLineGeometry);
         return org.maplibre.geojson.Feature.fromGeometry(org.maplibre.geojson.LineString.fromLngLats(points));
     }
 
     public static org.maplibre.geojson.Feature getFeatureFromNGFeaturePolygon(GeoPolygon geoPolygonGeometry) {
-        List<List<Point>> points = new ArrayList<>();
-        List<Point> outerRing = new ArrayList<>();
-        for (GeoPoint item : geoPolygonGeometry.getOuterRing().getPoints()) {
-            double[] lonLat = convert3857To4326(item.getX(), item.getY());
-            outerRing.add(Point.fromLngLat(lonLat[0], lonLat[1]));
-        }
-        points.add(outerRing);
-        for (GeoLinearRing innerRing : geoPolygonGeometry.getInnerRings()) {
-            List<Point> newInnerRing = new ArrayList<>();
-            for (GeoPoint itemPoint : innerRing.getPoints()) {
-                double[] lonLat = convert3857To4326(itemPoint.getX(), itemPoint.getY());
-                newInnerRing.add(Point.fromLngLat(lonLat[0], lonLat[1]));
-            }
-            points.add(newInnerRing);
-        }
+        List<List<Point>> points = getRings(geoPolygonGeometry);
         return org.maplibre.geojson.Feature.fromGeometry(org.maplibre.geojson.Polygon.fromLngLats(points));
     }
 
@@ -791,52 +863,18 @@ public class MPLFeaturesUtils {
     }
 
     public static org.maplibre.geojson.Feature getFeatureFromNGFeatureMultiPoint(GeoMultiPoint geoGeometry) {
-        List<Point> points = new ArrayList<>();
-        for (int i = 0; i < geoGeometry.size(); i++) {
-            GeoPoint geoPoint = geoGeometry.get(i);
-            double[] lonLat = convert3857To4326(geoPoint.getX(), geoPoint.getY());
-            Point point = Point.fromLngLat(lonLat[0], lonLat[1]);
-            points.add(point);
-        }
+        List<Point> points = getPoints(geoGeometry);
         MultiPoint multiPoint = MultiPoint.fromLngLats(points);
         return org.maplibre.geojson.Feature.fromGeometry(multiPoint);
     }
 
     public static org.maplibre.geojson.Feature getPolygonFromNGFeaturePolygon(GeoPolygon geoPolygonGeometry) {
-        List<List<Point>> points = new ArrayList<>();
-        List<Point> outerRing = new ArrayList<>();
-        for (GeoPoint item : geoPolygonGeometry.getOuterRing().getPoints()) {
-            double[] lonLat = convert3857To4326(item.getX(), item.getY());
-            outerRing.add(Point.fromLngLat(lonLat[0], lonLat[1]));
-        }
-        points.add(outerRing);
-        for (GeoLinearRing innerRing : geoPolygonGeometry.getInnerRings()) {
-            List<Point> newInnerRing = new ArrayList<>();
-            for (GeoPoint itemPoint : innerRing.getPoints()) {
-                double[] lonLat = convert3857To4326(itemPoint.getX(), itemPoint.getY());
-                newInnerRing.add(Point.fromLngLat(lonLat[0], lonLat[1]));
-            }
-            points.add(newInnerRing);
-        }
+        List<List<Point>> points = getRings(geoPolygonGeometry);
         return org.maplibre.geojson.Feature.fromGeometry(org.maplibre.geojson.Polygon.fromLngLats(points));
     }
 
     public static org.maplibre.geojson.Polygon getPolygonSeparFromNGFeaturePolygon(GeoPolygon geoPolygonGeometry) {
-        List<List<Point>> points = new ArrayList<>();
-        List<Point> outerRing = new ArrayList<>();
-        for (GeoPoint item : geoPolygonGeometry.getOuterRing().getPoints()) {
-            double[] lonLat = convert3857To4326(item.getX(), item.getY());
-            outerRing.add(Point.fromLngLat(lonLat[0], lonLat[1]));
-        }
-        points.add(outerRing);
-        for (GeoLinearRing innerRing : geoPolygonGeometry.getInnerRings()) {
-            List<Point> newInnerRing = new ArrayList<>();
-            for (GeoPoint itemPoint : innerRing.getPoints()) {
-                double[] lonLat = convert3857To4326(itemPoint.getX(), itemPoint.getY());
-                newInnerRing.add(Point.fromLngLat(lonLat[0], lonLat[1]));
-            }
-            points.add(newInnerRing);
-        }
+        List<List<Point>> points = getRings(geoPolygonGeometry);
         return org.maplibre.geojson.Polygon.fromLngLats(points);
     }
 
@@ -860,6 +898,17 @@ public class MPLFeaturesUtils {
         return new double[]{lon, lat};
     }
 
+    /**
+     * Convert the points [from, to) of the packed x0, y0, x1, y1, ... array in place, the same
+     * values as {@link #convert3857To4326(double, double)}
+     */
+    static public void convert3857To4326(double[] xy, int from, int to) {
+        for (int i = from * 2; i < to * 2; i += 2) {
+            xy[i] = xy[i] * 180 / 20037508.34;
+            xy[i + 1] = Math.toDegrees(Math.atan(Math.sinh(xy[i + 1] * Math.PI / 20037508.34)));
+        }
+    }
+
     static public double[] convert4326To3857(double lon, double lat) {
         double x = lon * 20037508.34 / 180;
         double y = Math.log(Math.tan(Math.PI / 4 + Math.toRadians(lat) / 2)) * 20037508.34 / Math.PI;
@@ -56,7 +56,7 @@ public class MapContentProviderHelper
     protected DatabaseHelper mDatabaseHelper;
 
     protected static final String DBNAME           = "layers";
-    protected static final int    DATABASE_VERSION = 5;
+    protected static final int    DATABASE_VERSION = 7;
 
 
     public MapContentProviderHelper(
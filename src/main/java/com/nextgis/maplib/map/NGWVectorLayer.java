@@ -47,6 +47,7 @@ import com.nextgis.maplib.datasource.Feature;
 import com.nextgis.maplib.datasource.Field;
 import com.nextgis.maplib.datasource.GeoGeometry;
 import com.nextgis.maplib.datasource.GeoGeometryFactory;
+import com.nextgis.maplib.datasource.GeometryWKBCodec;
 import com.nextgis.maplib.datasource.ngw.Connection;
 import com.nextgis.maplib.datasource.ngw.SyncAdapter;
 import com.nextgis.maplib.util.AccountUtil;
@@ -126,6 +127,7 @@ public class NGWVectorLayer
     protected static final String JSON_SERVERWHERE_KEY       = "server_where";
     protected static final String JSON_TRACKED_KEY           = "tracked";
     protected static final String JSON_SYNC_DIRECTION_KEY    = "sync_direction";
+    protected static final String JSON_GEOM_FORMAT_KEY       = "geom_format";
 
     protected static final int TYPE_CHANGES_TABLE     = 125;
     protected static final int TYPE_CHANGES_FEATURE   = 126;
@@ -151,6 +153,7 @@ public class NGWVectorLayer
     protected String mServerWhere;
     protected boolean mTracked;
     protected int mSyncDirection = DIRECTION_BOTH; //1 - to server only, 2 - from server only, 3 - both directions
+    protected String mGeometryFormat = NGWUtil.GEOM_FORMAT_WKT;
     //check where to sync on GSM/WI-FI for data/attachments
 
 
@@ -264,6 +267,7 @@ public class NGWVectorLayer
         rootConfig.put(JSON_TRACKED_KEY, mTracked);
         rootConfig.put(GeoConstants.GEOJSON_CRS, mCRS);
         rootConfig.put(JSON_SYNC_DIRECTION_KEY, mSyncDirection);
+        rootConfig.put(JSON_GEOM_FORMAT_KEY, mGeometryFormat);
 
         return rootConfig;
     }
@@ -291,6 +295,7 @@ public class NGWVectorLayer
         mNGWLayerType = jsonObject.optInt(JSON_NGWLAYER_TYPE_KEY, Constants.LAYERTYPE_NGW_VECTOR);
         mServerWhere = jsonObject.optString(JSON_SERVERWHERE_KEY);
         mSyncDirection = jsonObject.optInt(JSON_SYNC_DIRECTION_KEY, DIRECTION_BOTH);
+        mGeometryFormat = jsonObject.optString(JSON_GEOM_FORMAT_KEY, NGWUtil.GEOM_FORMAT_WKT);
     }
 
 
@@ -332,7 +337,21 @@ public class NGWVectorLayer
         if (mTracked)
             return NGWUtil.getTrackedFeaturesUrl(accountData.url, mRemoteId, getPreferences().getLong(SettingsConstants.KEY_PREF_LAST_SYNC_TIMESTAMP, 0));
         else
-            return NGWUtil.getFeaturesUrl(accountData.url, mRemoteId, mServerWhere);
+            return NGWUtil.getFeaturesUrl(accountData.url, mRemoteId, mServerWhere)
+                    + getGeometryFormatParameter();
+    }
+
+
+    /**
+     * @return The query parameter to exchange geometries in the binary format, or an empty
+     * string for WKT
+     */
+    protected String getGeometryFormatParameter()
+    {
+        if (NGWUtil.GEOM_FORMAT_WKT.equals(mGeometryFormat)) {
+            return "";
+        }
+        return "&" + NGWUtil.NGWKEY_GEOM_FORMAT + "=" + mGeometryFormat;
     }
 
 
@@ -452,7 +471,8 @@ public class NGWVectorLayer
         JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
         reader.beginArray();
 
-        SQLiteDatabase db = DatabaseContext.getDbForLayer(this);
+        // set the pragmas which speed up writing
+        DatabaseContext.getDbForLayer(this);
 
         int streamSize = in.available();
         if (null != progressor) {
@@ -463,34 +483,40 @@ public class NGWVectorLayer
         }
 
         int featureCount = 0;
-        while (reader.hasNext()) {
-            try {
-                final Feature feature = NGWUtil.readNGWFeature(reader, fields, mCRS);
-                if (feature.getGeometry() == null || !feature.getGeometry().isValid())
-                    continue;
-                createFeatureBatch(feature, db, false);
-            } catch (OutOfMemoryError | IllegalStateException | IOException | NumberFormatException |
-                     NGException e) {
-                e.printStackTrace();
-                if (e instanceof NGException && ((NGException) e).getMessage() != null )
-                    throw new NGException(((NGException) e).getMessage());
-                if (null != progressor)
-                    throw new NGException(getContext().getString(R.string.error_download_data));
-
-                save();
-                return;
-            }
-
-            if (null != progressor) {
-                if (progressor.isCanceled()) {
-                    save();
+        // the layer is empty, so build the cache at once when all features are stored
+        beginBulkLoad();
+        try {
+            while (reader.hasNext()) {
+                try {
+                    final Feature feature = NGWUtil.readNGWFeature(reader, fields, mCRS);
+                    if (feature.getGeometry() == null || !feature.getGeometry().isValid())
+                        continue;
+                    append(feature);
+                } catch (OutOfMemoryError | IllegalStateException | IOException | NumberFormatException |
+                         NGException e) {
+                    e.printStackTrace();
+                    if (e instanceof NGException && ((NGException) e).getMessage() != null )
+                        throw new NGException(((NGException) e).getMessage());
+                    if (null != progressor)
+                        throw new NGException(getContext().getString(R.string.error_download_data));
+
+                    commit();
                     return;
                 }
-                progressor.setValue(streamSize - in.available());
-                progressor.setMessage(getContext().getString(R.string.process_features) + ": " + featureCount);
-            }
 
-            ++featureCount;
+                if (null != progressor) {
+                    if (progressor.isCanceled()) {
+                        commit();
+                        return;
+                    }
+                    progressor.setValue(streamSize - in.available());
+                    progressor.setMessage(getContext().getString(R.string.process_features) + ": " + featureCount);
+                }
+
+                ++featureCount;
+            }
+        } finally {
+            commit();
         }
         reader.endArray();
         reader.close();
@@ -731,6 +757,18 @@ public class NGWVectorLayer
         mSyncDirection = direction;
     }
 
+    public String getGeometryFormat() {
+        return mGeometryFormat;
+    }
+
+    /**
+     * Set to NGWUtil.GEOM_FORMAT_WKB if the server offers the binary geometry format, features
+     * are downloaded and sent as hex encoded WKB then. WKT is used by default.
+     */
+    public void setGeometryFormat(String geometryFormat) {
+        mGeometryFormat = geometryFormat;
+    }
+
     public boolean sendLocalChanges(SyncResult syncResult)
     {
         HyperLog.v(Constants.TAG, "NGWVectorLayer: " + getName() + " sendLocalChanges START" );
@@ -1314,6 +1352,7 @@ public class NGWVectorLayer
 //            Log.e("FEA", "changeFeatureId failed!!!");
 
         }
+        mOverviewBuilder.changeId(oldFeatureId, newFeatureId);
 
         //update id in cache
         Intent notify = new Intent(Constants.NOTIFY_UPDATE);
@@ -2032,7 +2071,8 @@ public class NGWVectorLayer
     protected HttpResponse addFeatureOnServer(String payload, AccountUtil.AccountData accountData) throws IOException {
 //        AccountUtil.AccountData accountData = AccountUtil.getAccountData(mContext, mAccountName);
 
-        return NetworkUtil.post(NGWUtil.getFeaturesUrl(accountData.url, mRemoteId) + appendix(),
+        return NetworkUtil.post(NGWUtil.getFeaturesUrl(accountData.url, mRemoteId) + appendix()
+                        + getGeometryFormatParameter(),
                 payload, accountData.login, accountData.password, false);
     }
 
@@ -2163,7 +2203,8 @@ public class NGWVectorLayer
 //        AccountUtil.AccountData accountData = AccountUtil.getAccountData(mContext, mAccountName);
 
         // change on server
-        String url = NGWUtil.getFeatureUrl(accountData.url, mRemoteId, featureId);
+        String url = NGWUtil.getFeatureUrl(accountData.url, mRemoteId, featureId)
+                + getGeometryFormatParameter();
         return NetworkUtil.put(url, payload, accountData.login, accountData.password, false);
     }
 
@@ -2254,7 +2295,11 @@ public class NGWVectorLayer
             if (mCRS != GeoConstants.CRS_WEB_MERCATOR)
                 geometry.project(mCRS);
 
-            rootObject.put(NGWUtil.NGWKEY_GEOM, geometry.toWKT(true));
+            if (NGWUtil.GEOM_FORMAT_WKB.equals(mGeometryFormat)) {
+                rootObject.put(NGWUtil.NGWKEY_GEOM, GeometryWKBCodec.toHex(geometry.toWKB()));
+            } else {
+                rootObject.put(NGWUtil.NGWKEY_GEOM, geometry.toWKT(true));
+            }
             //rootObject.put("id", cursor.getLong(cursor.getColumnIndex(FIELD_ID)));
         }
 
@@ -0,0 +1,507 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplib.map;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.util.Log;
+
+import com.nextgis.maplib.util.Constants;
+import com.nextgis.maplib.util.GeoConstants;
+import com.nextgis.maplib.util.LongList;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.nextgis.maplib.util.Constants.FIELD_GEOM;
+import static com.nextgis.maplib.util.Constants.FIELD_ID;
+import static com.nextgis.maplib.util.Constants.FIELD_OVERVIEW_DIRTY;
+import static com.nextgis.maplib.util.Constants.NOT_FOUND;
+import static com.nextgis.maplib.util.Constants.TAG;
+
+
+/**
+ * Builds the simplified geometries of the lower zooms in the background, so writing a feature
+ * does not wait for them.
+ * <p>
+ * A written row gets a stamp in {@link Constants#FIELD_OVERVIEW_DIRTY} and its id is queued.
+ * The queue is drained in batches: the overviews of a batch are built in parallel on all cores
+ * and written in one transaction, only to the rows which still have the stamp read before the
+ * build. A row written again meanwhile is queued again. The stamps survive a restart, the dirty
+ * rows are loaded by the drain thread when the layer is loaded. The readers draw the full
+ * geometry of a row while it has a stamp.
+ */
+public class OverviewBuilder
+{
+    protected static final int BATCH_SIZE = 256;
+
+    protected static ExecutorService mDrainExecutor;
+    protected static ExecutorService mBuildExecutor;
+    protected static int             mThreadCount;
+
+    protected final VectorLayer   mLayer;
+    protected final AtomicLong    mStamp;
+    /** Rows with stale overviews, the renderer draws their full geometry */
+    protected final Set<Long>     mDirty;
+    protected final Set<Long>     mQueue;
+    /** Queued rows written one by one, their neighbours sharing edges are rebuilt too */
+    protected final Set<Long>     mRebuildNeighbours;
+    /** The stamped rows are loaded or a load is requested */
+    protected boolean             mLoaded;
+    /** The drain thread should load the stamped rows before the next batch */
+    protected boolean             mLoadPending;
+    protected boolean             mRunning;
+
+
+    public OverviewBuilder(VectorLayer layer)
+    {
+        mLayer = layer;
+        mStamp = new AtomicLong(System.currentTimeMillis());
+        mDirty = new HashSet<>();
+        mQueue = new LinkedHashSet<>();
+        mRebuildNeighbours = new HashSet<>();
+    }
+
+
+    /**
+     * @return A new stamp to mark the written row dirty
+     */
+    public long nextStamp()
+    {
+        return mStamp.incrementAndGet();
+    }
+
+
+    /**
+     * Queue the row written with a stamp
+     */
+    public synchronized void add(long featureId)
+    {
+        requestLoad(false);
+        mDirty.add(featureId);
+        mQueue.add(featureId);
+        mRebuildNeighbours.add(featureId);
+        start();
+    }
+
+
+    /**
+     * Queue all rows with a stamp, for example after a bulk load. Their overviews are built
+     * against each other, so the neighbours are not rebuilt.
+     */
+    public synchronized void addDirty()
+    {
+        requestLoad(true);
+        start();
+    }
+
+
+    /**
+     * Move the queued row to its new identificator, the row keeps its stamp
+     */
+    public synchronized void changeId(
+            long oldFeatureId,
+            long newFeatureId)
+    {
+        if (oldFeatureId == newFeatureId || !mDirty.remove(oldFeatureId)) {
+            return;
+        }
+        mDirty.add(newFeatureId);
+        mQueue.remove(oldFeatureId);
+        mQueue.add(newFeatureId);
+        if (mRebuildNeighbours.remove(oldFeatureId)) {
+            mRebuildNeighbours.add(newFeatureId);
+        }
+        start();
+    }
+
+
+    /**
+     * Continue the build stopped while the layer collected the envelopes of a bulk load
+     */
+    public synchronized void resume()
+    {
+        start();
+    }
+
+
+    /**
+     * Forget the queued rows, for example when the table is dropped or created
+     */
+    public synchronized void clear()
+    {
+        mDirty.clear();
+        mQueue.clear();
+        mRebuildNeighbours.clear();
+        mLoaded = false;
+        mLoadPending = false;
+    }
+
+
+    protected void requestLoad(boolean force)
+    {
+        if (mLoaded && !force) {
+            return;
+        }
+        mLoaded = true;
+        mLoadPending = true;
+    }
+
+
+    /**
+     * Queue the rows with a stamp, on the drain thread. The query runs out of the lock.
+     */
+    protected void loadDirty()
+    {
+        MapContentProviderHelper map = (MapContentProviderHelper) MapBase.getInstance();
+        if (null == map) {
+            return;
+        }
+
+        LongList ids = new LongList();
+        Cursor cursor = null;
+        try {
+            cursor = map.getDatabase(true).query(mLayer.getPath().getName(),
+                    new String[] {FIELD_ID}, FIELD_OVERVIEW_DIRTY + " IS NOT NULL", null, null,
+                    null, FIELD_ID);
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(0));
+            }
+        } catch (SQLiteException e) {
+            // the table is not created or upgraded yet
+            synchronized (this) {
+                mLoaded = false;
+            }
+            return;
+        } finally {
+            if (null != cursor) {
+                cursor.close();
+            }
+        }
+
+        synchronized (this) {
+            // the table is dropped or created during the query
+            if (!mLoaded) {
+                return;
+            }
+            for (int i = 0; i < ids.size(); i++) {
+                mDirty.add(ids.get(i));
+                mQueue.add(ids.get(i));
+            }
+        }
+    }
+
+
+    protected void start()
+    {
+        if (mRunning || mQueue.isEmpty() && !mLoadPending) {
+            return;
+        }
+        mRunning = true;
+        getDrainExecutor().execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                drain();
+            }
+        });
+    }
+
+
+    protected void drain()
+    {
+        while (true) {
+            boolean load;
+            synchronized (this) {
+                load = mLoadPending;
+                mLoadPending = false;
+            }
+            if (load) {
+                loadDirty();
+            }
+
+            long[] ids;
+            boolean[] rebuildNeighbours;
+            synchronized (this) {
+                // the point thinning and the shared edges search the cache, so wait for the
+                // envelopes of a bulk load, see VectorLayer.endCacheBulkLoad()
+                if (mQueue.isEmpty() && !mLoadPending || mLayer.isCacheBulkLoading()) {
+                    mRunning = false;
+                    return;
+                }
+                if (mQueue.isEmpty()) {
+                    continue;
+                }
+                ids = new long[Math.min(BATCH_SIZE, mQueue.size())];
+                rebuildNeighbours = new boolean[ids.length];
+                Iterator<Long> iterator = mQueue.iterator();
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = iterator.next();
+                    iterator.remove();
+                    rebuildNeighbours[i] = mRebuildNeighbours.remove(ids[i]);
+                }
+            }
+
+            try {
+                buildBatch(ids, rebuildNeighbours);
+            } catch (RuntimeException e) {
+                // the rows keep their stamps and are queued again for the next start
+                Log.e(TAG, "Overview build failed: " + e.getMessage());
+                synchronized (this) {
+                    for (int i = 0; i < ids.length; i++) {
+                        if (mDirty.contains(ids[i])) {
+                            mQueue.add(ids[i]);
+                            if (rebuildNeighbours[i]) {
+                                mRebuildNeighbours.add(ids[i]);
+                            }
+                        }
+                    }
+                    mRunning = false;
+                }
+                return;
+            }
+        }
+    }
+
+
+    protected void buildBatch(
+            final long[] ids,
+            final boolean[] rebuildNeighbours)
+    {
+        MapContentProviderHelper map = (MapContentProviderHelper) MapBase.getInstance();
+        if (null == map) {
+            throw new IllegalStateException(
+                    "The map should extends MapContentProviderHelper or inherited");
+        }
+        final SQLiteDatabase readDb = map.getDatabase(true);
+
+        final ContentValues[] values = new ContentValues[ids.length];
+        final LongList[] neighbours = new LongList[ids.length];
+        final ContentValues[][] neighbourValues = new ContentValues[ids.length][];
+        final long[] stamps = new long[ids.length];
+        int threadCount = Math.min(getThreadCount(), ids.length);
+        List<Callable<Void>> tasks = new ArrayList<>(threadCount);
+        for (int thread = 0; thread < threadCount; thread++) {
+            final int first = thread;
+            final int step = threadCount;
+            tasks.add(new Callable<Void>()
+            {
+                @Override
+                public Void call()
+                {
+                    for (int i = first; i < ids.length; i += step) {
+                        neighbours[i] = rebuildNeighbours[i] ? new LongList() : null;
+                        stamps[i] = readStamp(readDb, ids[i]);
+                        if (stamps[i] != NOT_FOUND) {
+                            values[i] = build(readDb, ids[i], neighbours[i]);
+                        }
+                        // the neighbours are read here, the transaction below only writes
+                        if (null != values[i] && null != neighbours[i]) {
+                            filterDirty(neighbours[i]);
+                            neighbourValues[i] =
+                                    mLayer.buildSharedNeighbours(neighbours[i], ids[i]);
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+
+        try {
+            for (Future<Void> future : getBuildExecutor().invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+
+        SQLiteDatabase db = map.getDatabase(false);
+        String table = mLayer.getPath().getName();
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < ids.length; i++) {
+                if (null == values[i]) {
+                    continue;
+                }
+                mLayer.updateCached(db, table, values[i],
+                        FIELD_ID + " = ? AND " + FIELD_OVERVIEW_DIRTY + " = ?",
+                        new String[] {String.valueOf(ids[i]), String.valueOf(stamps[i])});
+                if (null != neighbourValues[i]) {
+                    mLayer.updateSharedNeighbours(db, neighbours[i], neighbourValues[i]);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        synchronized (this) {
+            for (long id : ids) {
+                // a row written again during the build is queued again and stays dirty
+                if (!mQueue.contains(id)) {
+                    mDirty.remove(id);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * @return The stamp of the row or NOT_FOUND if the row is missing or clean
+     */
+    protected long readStamp(
+            SQLiteDatabase db,
+            long featureId)
+    {
+        Cursor cursor = db.query(mLayer.getPath().getName(), new String[] {FIELD_OVERVIEW_DIRTY},
+                FIELD_ID + " = " + featureId, null, null, null, null);
+        try {
+            if (cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getLong(0);
+            }
+            return NOT_FOUND;
+        } finally {
+            cursor.close();
+        }
+    }
+
+
+    /**
+     * @return The overview columns of the row and a cleared stamp, or null if the row has no
+     * geometry
+     */
+    protected ContentValues build(
+            SQLiteDatabase db,
+            long featureId,
+            LongList sharedNeighbours)
+    {
+        byte[] blob = mLayer.readLargeBlob(db, featureId);
+        if (null == blob) {
+            return null;
+        }
+
+        ContentValues values = new ContentValues();
+        values.put(FIELD_GEOM, blob);
+        for (int zoom = GeoConstants.DEFAULT_CACHE_MAX_ZOOM;
+             zoom > GeoConstants.DEFAULT_MIN_ZOOM;
+             zoom -= 2) {
+            values.putNull(Constants.FIELD_GEOM_ + zoom);
+        }
+        try {
+            mLayer.prepareGeometry(values, featureId, sharedNeighbours, NOT_FOUND);
+        } catch (IOException | ClassNotFoundException e) {
+            e.printStackTrace();
+        }
+        values.remove(FIELD_GEOM);
+        values.putNull(FIELD_OVERVIEW_DIRTY);
+        return values;
+    }
+
+
+    /**
+     * Keep the neighbours which are not waiting for a build, the others see the new geometry
+     * when they are built
+     */
+    protected synchronized void filterDirty(LongList featureIds)
+    {
+        LongList clean = new LongList(featureIds.size());
+        for (int i = 0; i < featureIds.size(); i++) {
+            if (!mDirty.contains(featureIds.get(i))) {
+                clean.add(featureIds.get(i));
+            }
+        }
+        featureIds.clear();
+        for (int i = 0; i < clean.size(); i++) {
+            featureIds.add(clean.get(i));
+        }
+    }
+
+
+    protected static synchronized int getThreadCount()
+    {
+        if (mThreadCount < 1) {
+            mThreadCount = Math.max(1, Runtime.getRuntime().availableProcessors());
+        }
+        return mThreadCount;
+    }
+
+
+    /**
+     * One thread drains the queues of all layers, so their writes do not compete
+     */
+    protected static synchronized ExecutorService getDrainExecutor()
+    {
+        if (null == mDrainExecutor) {
+            mDrainExecutor = Executors.newSingleThreadExecutor(new BackgroundThreadFactory());
+        }
+        return mDrainExecutor;
+    }
+
+
+    protected static synchronized ExecutorService getBuildExecutor()
+    {
+        if (null == mBuildExecutor) {
+            mBuildExecutor = Executors.newFixedThreadPool(getThreadCount(),
+                    new BackgroundThreadFactory());
+        }
+        return mBuildExecutor;
+    }
+
+
+    protected static class BackgroundThreadFactory
+            implements ThreadFactory
+    {
+        @Override
+        public Thread newThread(final Runnable runnable)
+        {
+            Thread thread = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    android.os.Process.setThreadPriority(
+                            android.os.Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "OverviewBuilder");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -154,7 +154,7 @@ public abstract class TMSLayer
             rootConfig.put(JSON_RENDERERPROPS_KEY, jsonStore.toJSON());
         }
 
-        if  (mExtents.getMaxX() != null &&  mExtents.getMinX()!= null && mExtents.getMaxY()!= null && mExtents.getMinY()!= null) {
+        if  (mExtents.isInit()) {
             rootConfig.put(Constants.JSON_BBOX_MAXX_KEY, mExtents.getMaxX());
             rootConfig.put(Constants.JSON_BBOX_MINX_KEY, mExtents.getMinX());
             rootConfig.put(Constants.JSON_BBOX_MAXY_KEY, mExtents.getMaxY());
@@ -51,6 +51,9 @@ import android.util.Pair;
 import android.widget.Toast;
 
 import com.nextgis.maplib.R;
+import com.nextgis.maplib.api.IFeatureClipListener;
+import com.nextgis.maplib.api.IFeatureDistance;
+import com.nextgis.maplib.api.IFeatureVisitor;
 import com.nextgis.maplib.api.IGISApplication;
 import com.nextgis.maplib.api.IGeometryCache;
 import com.nextgis.maplib.api.IGeometryCacheItem;
@@ -66,7 +69,14 @@ import com.nextgis.maplib.datasource.GeoMultiPoint;
 import com.nextgis.maplib.datasource.GeoMultiPolygon;
 import com.nextgis.maplib.datasource.GeoPoint;
 import com.nextgis.maplib.datasource.GeoPolygon;
+import com.nextgis.maplib.datasource.GeometryBlobCodec;
+import com.nextgis.maplib.datasource.GeometryBlobView;
+import com.nextgis.maplib.datasource.GeometryMappedRTree;
+import com.nextgis.maplib.datasource.GeometryPlainList;
 import com.nextgis.maplib.datasource.GeometryRTree;
+import com.nextgis.maplib.datasource.GeometryTileIndex;
+import com.nextgis.maplib.datasource.PolygonClipper;
+import com.nextgis.maplib.datasource.VisvalingamSimplifier;
 import com.nextgis.maplib.datasource.ngw.Connection;
 import com.nextgis.maplib.display.FieldStyleRule;
 import com.nextgis.maplib.display.RuleFeatureRenderer;
@@ -83,6 +93,7 @@ import com.nextgis.maplib.util.FileUtil;
 import com.nextgis.maplib.util.GeoConstants;
 import com.nextgis.maplib.util.GeoJSONUtil;
 import com.nextgis.maplib.util.LayerUtil;
+import com.nextgis.maplib.util.LongList;
 import com.nextgis.maplib.util.MapUtil;
 import com.nextgis.maplib.util.NGException;
 import com.nextgis.maplib.util.NGWUtil;
@@ -104,6 +115,7 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -193,6 +205,10 @@ public class VectorLayer
     protected static final String JSON_FIELDS_KEY        = "fields";
     protected static final String JSON_EDITABLE_KEY      = "is_editable";
     protected static final String JSON_NEW_EDITABLE_KEY      = "is_new_editable";
+    protected static final String JSON_CACHE_SPLIT_KEY       = "cache_split";
+    protected static final String JSON_OVERVIEW_ENCODING_KEY = "overview_encoding";
+    protected static final String JSON_SIMPLIFY_METHOD_KEY   = "simplify_method";
+    protected static final String JSON_SHARED_EDGES_KEY      = "simplify_shared_edges";
 
     protected static final String CONTENT_ATTACH_TYPE = "vnd.android.cursor.dir/*";
     protected static final String NO_SYNC             = "no_sync";
@@ -205,6 +221,29 @@ public class VectorLayer
     protected static final String META  = "meta.json";
     protected static final String RTREE = "rtree";
 
+    /**
+     * Layers up to this number of features use {@link GeometryPlainList}, a linear scan over
+     * primitive arrays beats the R-tree search there
+     */
+    protected static final int PLAIN_CACHE_MAX_FEATURES = 256;
+    /**
+     * Rows written in one transaction of a bulk load
+     */
+    protected static final int BULK_TRANSACTION_SIZE = 1000;
+    /**
+     * Compiled statements kept by a layer
+     */
+    protected static final int STATEMENT_CACHE_SIZE = 32;
+    /**
+     * Identificators selected by one query of a scan
+     */
+    protected static final int SCAN_CHUNK_SIZE = 500;
+    /**
+     * Geometries up to this size are read by the main cursor, larger ones by chunks of this size,
+     * so a row always fits the 2 MB cursor window
+     */
+    protected static final int BLOB_CHUNK_SIZE = 1024 * 1024;
+
     public static final String ATTACH_DISPLAY_NAME = MediaStore.MediaColumns.DISPLAY_NAME;
     public static final String ATTACH_SIZE         = MediaStore.MediaColumns.SIZE;
     public static final String ATTACH_ID           = MediaStore.MediaColumns._ID;
@@ -213,6 +252,15 @@ public class VectorLayer
     public static final String ATTACH_DATE_ADDED   = MediaStore.MediaColumns.DATE_ADDED;
     public static final String ATTACH_DESCRIPTION  = MediaStore.Images.ImageColumns.DESCRIPTION;
 
+    /**
+     * Radial distance simplification of the overviews, see {@link GeoGeometry#simplify(double)}
+     */
+    public static final int SIMPLIFY_RADIAL      = 0;
+    /**
+     * Visvalingam-Whyatt simplification of the overviews, see {@link VisvalingamSimplifier}
+     */
+    public static final int SIMPLIFY_VISVALINGAM = 1;
+
     public static final int COLUMN_TYPE_UNKNOWN = 0;
     public static final int COLUMN_TYPE_STRING  = 1;
     public static final int COLUMN_TYPE_LONG    = 2;
@@ -231,6 +279,19 @@ public class VectorLayer
     protected boolean mIsLocked;
 
     protected boolean mIsEditable = true;
+    /**
+     * Insertion algorithm of the geometry cache tree
+     */
+    protected GeometryRTree.SeedPicker mCacheSplit = GeometryRTree.SeedPicker.QUADRATIC;
+    /**
+     * Blob encoding of the simplified geometries in the FIELD_GEOM_ columns
+     */
+    protected int mOverviewEncoding = GeometryBlobCodec.ENCODING_GRID;
+    /**
+     * Simplification of the overviews, one of SIMPLIFY_*
+     */
+    protected int     mSimplifyMethod = SIMPLIFY_RADIAL;
+    protected boolean mSimplifySharedEdges;
 
     // can we edit layer (true) or not (false
 
@@ -241,6 +302,48 @@ public class VectorLayer
      */
     protected IGeometryCache mCache;
     protected List<Long>     mIgnoreFeatures;
+    /**
+     * Envelopes collected for {@link IGeometryCache#bulkLoad(long[], double[], int)}, null if
+     * the cache is updated item by item
+     */
+    protected volatile long[] mBulkIds;
+    protected double[]        mBulkEnvelopes;
+    protected int             mBulkCount;
+    /**
+     * Database of the bulk load started by {@link #beginBulkLoad()}, null out of it
+     */
+    protected SQLiteDatabase mBulkDb;
+    protected int            mBulkRows;
+    protected boolean        mBulkLocalIds;
+    /**
+     * Compiled statements of the calling thread. A statement keeps its bindings, so the threads
+     * do not share them and nothing is locked while a statement runs.
+     */
+    protected final ThreadLocal<StatementCache> mStatements = new ThreadLocal<StatementCache>()
+    {
+        @Override
+        protected StatementCache initialValue()
+        {
+            return new StatementCache();
+        }
+    };
+    /**
+     * Incremented by {@link #clearStatements()}, the other threads drop their statements on
+     * the next use
+     */
+    protected volatile int                      mStatementGeneration;
+    /**
+     * Features to draw by zoom, built from the cache in the background on demand, null until it
+     * is built and after the cache changes. Guarded by {@link #mTileIndexLock}.
+     */
+    protected GeometryTileIndex          mTileIndex;
+    protected int                        mCacheVersion;
+    protected boolean                    mTileIndexBuilding;
+    protected final Object               mTileIndexLock = new Object();
+    /**
+     * Builds the simplified geometries of the written features in the background
+     */
+    protected final OverviewBuilder      mOverviewBuilder = new OverviewBuilder(this);
     final IGISApplication application;
 
     public VectorLayer(
@@ -332,6 +435,7 @@ public class VectorLayer
         for (int i = 2; i <= GeoConstants.DEFAULT_CACHE_MAX_ZOOM; i += 2) {
             tableCreate += Constants.FIELD_GEOM_ + i + " BLOB, ";
         }
+        tableCreate += Constants.FIELD_OVERVIEW_DIRTY + " INTEGER, ";
         tableCreate += Constants.FIELD_GEOM + " BLOB";
         for (Field field : mFields.values()) {
             tableCreate += ", '" + field.getName() + "'";
@@ -362,6 +466,8 @@ public class VectorLayer
         MapContentProviderHelper map = (MapContentProviderHelper) MapBase.getInstance();
         SQLiteDatabase db = map.getDatabase(false);
         db.execSQL(tableCreate);
+        clearStatements();
+        mOverviewBuilder.clear();
         setDefaultRenderer();
 
         save();
@@ -457,15 +563,23 @@ public class VectorLayer
     protected ContentValues getFeatureContentValues(Feature feature)
     {
         final ContentValues values = feature.getContentValues(true);
-        try {
-            prepareGeometry(values);
-        } catch (IOException | ClassNotFoundException e) {
-            e.printStackTrace();
-        }
+        markOverviewsDirty(values);
         return values;
     }
 
 
+    /**
+     * Stamp the row to build its simplified geometries in the background, call
+     * {@link OverviewBuilder#add(long)} after the row is written
+     */
+    protected void markOverviewsDirty(ContentValues values)
+    {
+        if (values.containsKey(FIELD_GEOM)) {
+            values.put(Constants.FIELD_OVERVIEW_DIRTY, mOverviewBuilder.nextStamp());
+        }
+    }
+
+
     public long createFeature(Feature feature)
             throws SQLiteException
     {
@@ -479,7 +593,7 @@ public class VectorLayer
 
         // check if such id already used
         // maybe was added previous session
-        if (mCache.getItem(feature.getId()) != null) {
+        if (mCache.isItemExist(feature.getId())) {
             return NOT_FOUND;
         }
 
@@ -496,6 +610,7 @@ public class VectorLayer
             //update bbox
 //            Log.e("CCACHH","create feature: " + rowId);
             cacheGeometryEnvelope(rowId, feature.getGeometry());
+            mOverviewBuilder.add(rowId);
             save();
         }
 
@@ -534,18 +649,120 @@ public class VectorLayer
 //            Log.e("CCACHH","createFeatureBatch: " + rowId);
             cacheGeometryEnvelope(rowId, feature.getGeometry());
             // add attach info
+            postAttachments(feature);
+        }
+    }
 
-            if (feature.getAttachments().keySet().size() > 0) {
-                new Handler(Looper.getMainLooper()).postDelayed(new Runnable() {
-                    @Override
-                    public void run() {
-                        for ( String key :  feature.getAttachments().keySet()){
-                            final AttachItem item = feature.getAttachments().get(key);
-                            putOneAttachment(item, feature);
-                        }
+
+    /**
+     * Start a bulk load of features by {@link #append(Feature)}. The rows are written in
+     * transactions of {@link #BULK_TRANSACTION_SIZE} by the cached statement of their column set,
+     * no insert broadcast is sent for them and the cache is filled at once in {@link #commit()}.
+     * @param useExtraLargeStartId Give the features local identificators starting from
+     *                             {@link Constants#MIN_LOCAL_FEATURE_ID}
+     */
+    public void beginBulkLoad(boolean useExtraLargeStartId)
+    {
+        if (null != mBulkDb) {
+            throw new IllegalStateException("The bulk load is already started");
+        }
+
+        MapContentProviderHelper map = (MapContentProviderHelper) MapBase.getInstance();
+        if (null == map) {
+            throw new IllegalArgumentException(
+                    "The map should extends MapContentProviderHelper or inherited");
+        }
+
+        mBulkDb = map.getDatabase(false);
+        mBulkRows = 0;
+        mBulkLocalIds = useExtraLargeStartId;
+        beginCacheBulkLoad(0);
+        mBulkDb.beginTransaction();
+    }
+
+
+    public void beginBulkLoad()
+    {
+        beginBulkLoad(false);
+    }
+
+
+    /**
+     * Write the feature in the bulk load started by {@link #beginBulkLoad()}
+     * @param feature Feature to write
+     * @return New row identificator or NOT_FOUND if the feature geometry does not fit the layer
+     */
+    public long append(final Feature feature)
+            throws SQLiteException
+    {
+        if (null == mBulkDb) {
+            throw new IllegalStateException("The bulk load is not started");
+        }
+        if (null == feature.getGeometry() || !checkGeometryType(feature)) {
+            return NOT_FOUND;
+        }
+
+        final ContentValues values = getFeatureContentValues(feature);
+        if (mBulkLocalIds) {
+            values.put(FIELD_ID, Math.max(getUniqId(), MIN_LOCAL_FEATURE_ID));
+        }
+
+        long rowId = insertViaSql(mBulkDb, values, mPath.getName());
+        if (rowId == NOT_FOUND) {
+            return NOT_FOUND;
+        }
+
+        updateUniqId(rowId);
+        cacheGeometryEnvelope(rowId, feature.getGeometry());
+        postAttachments(feature);
+
+        if (++mBulkRows % BULK_TRANSACTION_SIZE == 0) {
+            mBulkDb.setTransactionSuccessful();
+            mBulkDb.endTransaction();
+            mBulkDb.beginTransaction();
+        }
+        return rowId;
+    }
+
+
+    /**
+     * Finish the bulk load: commit the last transaction, fill the cache with the appended
+     * features and save the layer
+     */
+    public void commit()
+    {
+        if (null == mBulkDb) {
+            return;
+        }
+
+        try {
+            mBulkDb.setTransactionSuccessful();
+        } finally {
+            mBulkDb.endTransaction();
+            mBulkDb = null;
+            endCacheBulkLoad();
+        }
+
+        save();
+        if (mBulkRows > 0) {
+            mOverviewBuilder.addDirty();
+            notifyLayerChanged();
+        }
+    }
+
+
+    protected void postAttachments(final Feature feature)
+    {
+        if (feature.getAttachments().keySet().size() > 0) {
+            new Handler(Looper.getMainLooper()).postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    for ( String key :  feature.getAttachments().keySet()){
+                        final AttachItem item = feature.getAttachments().get(key);
+                        putOneAttachment(item, feature);
                     }
-                }, 500);
-            }
+                }
+            }, 500);
         }
     }
 
@@ -635,6 +852,7 @@ public class VectorLayer
         MapContentProviderHelper map = (MapContentProviderHelper) MapBase.getInstance();
         SQLiteDatabase db = map.getDatabase(false);
         db.execSQL(fieldCreate);
+        clearStatements();
     }
 
 
@@ -652,42 +870,190 @@ public class VectorLayer
             envelope = geoGeometry.getEnvelope();
         }
         mExtents.merge(envelope);
+        if (null != mBulkIds) {
+            bufferEnvelope(rowId, envelope);
+            return;
+        }
 //        Log.e("CCACHH","cacheGeometryEnvelope addItem: " + rowId);
-        List<IGeometryCacheItem> list= mCache.getItem(rowId);
-        if (list == null || list.isEmpty())
+        if (!mCache.isItemExist(rowId)) {
             mCache.addItem(rowId, envelope);
+            checkCacheType();
+            invalidateTileIndex();
+        }
+    }
+
+
+    /**
+     * Start collecting envelopes instead of adding them to the cache one by one. The cache is
+     * filled at once in {@link #endCacheBulkLoad()}.
+     * @param capacity Expected number of features
+     */
+    protected void beginCacheBulkLoad(int capacity)
+    {
+        capacity = Math.max(capacity, 64);
+        mBulkIds = new long[capacity];
+        mBulkEnvelopes = new double[capacity * 4];
+        mBulkCount = 0;
+    }
+
+
+    protected void bufferEnvelope(
+            long rowId,
+            GeoEnvelope envelope)
+    {
+        if (mBulkCount == mBulkIds.length) {
+            mBulkIds = Arrays.copyOf(mBulkIds, mBulkCount * 2);
+            mBulkEnvelopes = Arrays.copyOf(mBulkEnvelopes, mBulkCount * 8);
+        }
+
+        int offset = mBulkCount * 4;
+        mBulkIds[mBulkCount] = rowId;
+        mBulkEnvelopes[offset] = envelope.getMinX();
+        mBulkEnvelopes[offset + 1] = envelope.getMinY();
+        mBulkEnvelopes[offset + 2] = envelope.getMaxX();
+        mBulkEnvelopes[offset + 3] = envelope.getMaxY();
+        mBulkCount++;
+    }
+
+
+    protected void endCacheBulkLoad()
+    {
+        if (null == mBulkIds) {
+            return;
+        }
+
+        if (mCache.size() == 0) {
+            IGeometryCache cache = createNewCache(mBulkCount);
+            cache.bulkLoad(mBulkIds, mBulkEnvelopes, mBulkCount);
+            mCache = cache;
+        } else {
+            for (int i = 0; i < mBulkCount; i++) {
+                int offset = i * 4;
+                mCache.addItem(mBulkIds[i], new GeoEnvelope(mBulkEnvelopes[offset],
+                        mBulkEnvelopes[offset + 2], mBulkEnvelopes[offset + 1],
+                        mBulkEnvelopes[offset + 3]));
+            }
+            checkCacheType();
+        }
+
+        mBulkIds = null;
+        mBulkEnvelopes = null;
+        mBulkCount = 0;
+        invalidateTileIndex();
+        // the overviews need the neighbours in the cache
+        mOverviewBuilder.resume();
+    }
+
+
+    /**
+     * @return true while the envelopes are collected instead of added to the cache
+     */
+    protected boolean isCacheBulkLoading()
+    {
+        return null != mBulkIds;
     }
 
 
     protected boolean checkPointOverlaps(
             GeoPoint pt,
             double tolerance)
+    {
+        return checkPointOverlaps(pt.getX(), pt.getY(), tolerance, new LongList(4));
+    }
+
+
+    protected boolean checkPointOverlaps(
+            double x,
+            double y,
+            double tolerance,
+            LongList result)
     {
         double halfTolerance = tolerance * 0.3; // 0.85?
-        GeoEnvelope envelope = new GeoEnvelope(pt.getX() - halfTolerance, pt.getX() + halfTolerance,
-                pt.getY() - halfTolerance, pt.getY() + halfTolerance);
-        return !mCache.search(envelope).isEmpty();
+        result.clear();
+        return mCache.search(x - halfTolerance, y - halfTolerance,
+                x + halfTolerance, y + halfTolerance, result) > 0;
+    }
+
+
+    /**
+     * The features are in the cache when their overviews are built, so a point is hidden only by
+     * the points of the features with a lower identificator
+     * @param featureId The feature id or NOT_FOUND to check all cached points
+     */
+    protected boolean checkPointOverlaps(
+            double x,
+            double y,
+            double tolerance,
+            LongList result,
+            long featureId)
+    {
+        if (!checkPointOverlaps(x, y, tolerance, result)) {
+            return false;
+        }
+        if (featureId == NOT_FOUND) {
+            return true;
+        }
+        for (int i = 0; i < result.size(); i++) {
+            if (result.get(i) < featureId) {
+                return true;
+            }
+        }
+        return false;
     }
 
 
     protected void prepareGeometry(final ContentValues values)
             throws IOException, ClassNotFoundException
     {
-        GeoGeometry geometry = GeoGeometryFactory.fromBlob(values.getAsByteArray(FIELD_GEOM));
-        if (null == geometry) {
+        Long featureId = values.getAsLong(FIELD_ID);
+        prepareGeometry(values, null == featureId ? NOT_FOUND : featureId, null, NOT_FOUND);
+    }
+
+
+    /**
+     * Put the simplified geometries for the lower zooms to the values
+     * @param values Values with the geometry blob
+     * @param featureId The feature id, it is not its own neighbour, or NOT_FOUND
+     * @param sharedNeighbours If not null, receives the features sharing vertices with this one,
+     *                         their overviews should be rebuilt
+     * @param newNeighbourId A feature written but not cached yet to check for shared vertices,
+     *                       or NOT_FOUND
+     */
+    protected void prepareGeometry(
+            final ContentValues values,
+            long featureId,
+            LongList sharedNeighbours,
+            long newNeighbourId)
+            throws IOException, ClassNotFoundException
+    {
+        byte[] blob = values.getAsByteArray(FIELD_GEOM);
+        if (null == blob) {
             return;
         }
 
-        if (geometry.getType() == GeoConstants.GTPoint) {
+        GeometryBlobView view = new GeometryBlobView().wrap(blob);
+        if (view.getType() == GeoConstants.GTPoint) {
+            // a point is never simplified, so store the same blob for the visible zooms
+            double x = view.getX(0, 0), y = view.getY(0, 0);
+            LongList result = new LongList(4);
             for (int zoom = GeoConstants.DEFAULT_CACHE_MAX_ZOOM;
                  zoom > GeoConstants.DEFAULT_MIN_ZOOM;
                  zoom -= 2) {
-                if (!checkPointOverlaps((GeoPoint) geometry,
-                        MapUtil.getPixelSize(zoom) * Constants.SAMPLE_DISTANCE_PX)) {
-                    values.put(Constants.FIELD_GEOM_ + zoom, geometry.toBlob());
+                if (!checkPointOverlaps(x, y,
+                        MapUtil.getPixelSize(zoom) * Constants.SAMPLE_DISTANCE_PX, result,
+                        featureId)) {
+                    values.put(Constants.FIELD_GEOM_ + zoom, blob);
                 }
             }
-        } else if (geometry.getType() == GeoConstants.GTMultiPoint) {
+            return;
+        }
+
+        GeoGeometry geometry = GeoGeometryFactory.fromBlob(blob);
+        if (null == geometry) {
+            return;
+        }
+
+        if (geometry.getType() == GeoConstants.GTMultiPoint) {
             for (int zoom = GeoConstants.DEFAULT_CACHE_MAX_ZOOM;
                  zoom > GeoConstants.DEFAULT_MIN_ZOOM;
                  zoom -= 2) {
@@ -697,14 +1063,17 @@ public class VectorLayer
                 if (multiPoint.size() == 0) {
                     break;
                 } else if (multiPoint.size() == 1) {
-                    if (!checkPointOverlaps(multiPoint.get(0),
-                            MapUtil.getPixelSize(zoom) * Constants.SAMPLE_DISTANCE_PX)) {
-                        values.put(Constants.FIELD_GEOM_ + zoom, newGeometry.toBlob());
+                    GeoPoint point = multiPoint.get(0);
+                    if (!checkPointOverlaps(point.getX(), point.getY(),
+                            MapUtil.getPixelSize(zoom) * Constants.SAMPLE_DISTANCE_PX,
+                            new LongList(4), featureId)) {
+                        values.put(Constants.FIELD_GEOM_ + zoom,
+                                newGeometry.toBlob(mOverviewEncoding));
                     } else {
                         break;
                     }
                 } else {
-                    values.put(Constants.FIELD_GEOM_ + zoom, newGeometry.toBlob());
+                    values.put(Constants.FIELD_GEOM_ + zoom, newGeometry.toBlob(mOverviewEncoding));
                 }
                 geometry = newGeometry;
             }
@@ -715,21 +1084,127 @@ public class VectorLayer
                 ((GeoMultiPolygon) geometry).closeRings();
             }
 
+            VisvalingamSimplifier simplifier = null;
+            if (mSimplifyMethod == SIMPLIFY_VISVALINGAM) {
+                simplifier = new VisvalingamSimplifier();
+                if (mSimplifySharedEdges) {
+                    lockSharedVertices(simplifier, geometry, featureId, sharedNeighbours,
+                            newNeighbourId);
+                }
+            }
+
             for (int zoom = GeoConstants.DEFAULT_CACHE_MAX_ZOOM;
                  zoom > GeoConstants.DEFAULT_MIN_ZOOM;
                  zoom -= 2) {
-                GeoGeometry newGeometry = geometry.simplify(
-                        MapUtil.getPixelSize(zoom) * Constants.SAMPLE_DISTANCE_PX); // 4 pixels;
+                double tolerance = MapUtil.getPixelSize(zoom) * Constants.SAMPLE_DISTANCE_PX; // 4 pixels
+                GeoGeometry newGeometry = null == simplifier
+                        ? geometry.simplify(tolerance)
+                        : simplifier.simplify(geometry, tolerance);
                 if (null == newGeometry) {
                     break;
                 }
-                values.put(Constants.FIELD_GEOM_ + zoom, newGeometry.toBlob());
+                values.put(Constants.FIELD_GEOM_ + zoom, newGeometry.toBlob(mOverviewEncoding));
                 geometry = newGeometry;
             }
         }
     }
 
 
+    /**
+     * Lock the vertices where the geometry starts or stops sharing edges with the cached
+     * features around it
+     */
+    protected void lockSharedVertices(
+            VisvalingamSimplifier simplifier,
+            GeoGeometry geometry,
+            long featureId,
+            LongList sharedNeighbours,
+            long newNeighbourId)
+    {
+        GeoEnvelope envelope = geometry.getEnvelope();
+        LongList candidates = new LongList();
+        mCache.search(envelope.getMinX(), envelope.getMinY(), envelope.getMaxX(),
+                envelope.getMaxY(), candidates);
+        if (newNeighbourId != NOT_FOUND) {
+            candidates.add(newNeighbourId);
+        }
+        for (int i = 0; i < candidates.size(); i++) {
+            long id = candidates.get(i);
+            // the cache may already hold the new neighbour, check it once
+            if (id == featureId || id == newNeighbourId && i < candidates.size() - 1) {
+                continue;
+            }
+            GeoGeometry neighbour = getGeometryForId(id);
+            if (null != neighbour && simplifier.lockSharedVertices(geometry, neighbour)
+                    && null != sharedNeighbours) {
+                sharedNeighbours.add(id);
+            }
+        }
+    }
+
+
+    /**
+     * Build the overviews of the features which got a new neighbour sharing their edges. The
+     * geometries are read here, so call it out of a write transaction.
+     * @param featureIds The features to rebuild
+     * @param changedId The feature just written
+     * @return The overview columns by feature, null for a feature without geometry
+     */
+    protected ContentValues[] buildSharedNeighbours(LongList featureIds, long changedId)
+    {
+        ContentValues[] result = new ContentValues[featureIds.size()];
+        if (changedId == NOT_FOUND) {
+            return result;
+        }
+
+        for (int i = 0; i < featureIds.size(); i++) {
+            long id = featureIds.get(i);
+            GeoGeometry geometry = getGeometryForId(id);
+            if (null == geometry) {
+                continue;
+            }
+
+            ContentValues values = new ContentValues();
+            try {
+                values.put(FIELD_GEOM, geometry.toBlob());
+                for (int zoom = GeoConstants.DEFAULT_CACHE_MAX_ZOOM;
+                     zoom > GeoConstants.DEFAULT_MIN_ZOOM;
+                     zoom -= 2) {
+                    values.putNull(Constants.FIELD_GEOM_ + zoom);
+                }
+                prepareGeometry(values, id, null, changedId);
+                values.remove(FIELD_GEOM);
+                result[i] = values;
+            } catch (IOException | ClassNotFoundException | SQLiteException e) {
+                e.printStackTrace();
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * Write the overviews built by {@link #buildSharedNeighbours(LongList, long)}
+     */
+    protected void updateSharedNeighbours(
+            SQLiteDatabase db,
+            LongList featureIds,
+            ContentValues[] values)
+    {
+        for (int i = 0; i < featureIds.size(); i++) {
+            if (null == values[i]) {
+                continue;
+            }
+            try {
+                updateCached(db, mPath.getName(), values[i], FIELD_ID + " = ?",
+                        new String[] {String.valueOf(featureIds.get(i))});
+            } catch (SQLiteException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+
     public Style getDefaultStyleNoExcept() {
         try {
             return ((SimpleFeatureRenderer)getRenderer()).getStyle();
@@ -839,6 +1314,10 @@ public class VectorLayer
         JSONObject rootConfig = super.toJSON();
         rootConfig.put(JSON_GEOMETRY_TYPE_KEY, mGeometryType);
         rootConfig.put(JSON_NEW_EDITABLE_KEY, mIsEditable);
+        rootConfig.put(JSON_CACHE_SPLIT_KEY, mCacheSplit.name());
+        rootConfig.put(JSON_OVERVIEW_ENCODING_KEY, mOverviewEncoding);
+        rootConfig.put(JSON_SIMPLIFY_METHOD_KEY, mSimplifyMethod);
+        rootConfig.put(JSON_SHARED_EDGES_KEY, mSimplifySharedEdges);
 
         if (null != mFields) {
             JSONArray fields = new JSONArray();
@@ -880,6 +1359,18 @@ public class VectorLayer
         super.fromJSON(jsonObject);
         mGeometryType = jsonObject.getInt(JSON_GEOMETRY_TYPE_KEY);
         mIsEditable = jsonObject.optBoolean(JSON_NEW_EDITABLE_KEY, true);
+        try {
+            mCacheSplit = GeometryRTree.SeedPicker.valueOf(
+                    jsonObject.optString(JSON_CACHE_SPLIT_KEY, mCacheSplit.name()));
+        } catch (IllegalArgumentException e) {
+            e.printStackTrace();
+        }
+        if (mCacheSplit != GeometryRTree.SeedPicker.QUADRATIC) {
+            mCache = createNewCache();
+        }
+        mOverviewEncoding = jsonObject.optInt(JSON_OVERVIEW_ENCODING_KEY, mOverviewEncoding);
+        mSimplifyMethod = jsonObject.optInt(JSON_SIMPLIFY_METHOD_KEY, mSimplifyMethod);
+        mSimplifySharedEdges = jsonObject.optBoolean(JSON_SHARED_EDGES_KEY, mSimplifySharedEdges);
 
         if (jsonObject.has(JSON_FIELDS_KEY)) {
             mFields = new LinkedHashMap<>();
@@ -905,6 +1396,8 @@ public class VectorLayer
         }
 
         reloadCache();
+        // the rows written before a restart may still wait for their overviews
+        mOverviewBuilder.addDirty();
 
         if (jsonObject.has(Constants.JSON_RENDERERPROPS_KEY)) {
             setRenderer(jsonObject.getJSONObject(Constants.JSON_RENDERERPROPS_KEY));
@@ -914,6 +1407,18 @@ public class VectorLayer
     }
 
 
+    /**
+     * Write the geometry cache as a full snapshot instead of the snapshot and its change journal.
+     * Called when the layer is closed.
+     */
+    public void compactCache()
+    {
+        if (!mIsCacheRebuilding) {
+            mCache.compact(new File(mPath, RTREE));
+        }
+    }
+
+
     protected synchronized void reloadCache()
             throws SQLiteException
     {
@@ -921,7 +1426,19 @@ public class VectorLayer
         mCacheLoaded = false;
 
 //        Log.e("CCACHH","reloadCache mCache.load");
-        mCache.load(new File(mPath, RTREE));
+        File path = new File(mPath, RTREE);
+        try {
+            boolean isPlainList = GeometryPlainList.isPlainListFile(path);
+            if (path.exists() && isPlainList != mCache instanceof GeometryPlainList) {
+                mCache = isPlainList ? new GeometryPlainList()
+                                     : new GeometryMappedRTree(mCacheSplit);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        mCache.load(path);
+        checkCacheType();
+        invalidateTileIndex();
 
         mCacheLoaded = true;
     }
@@ -936,6 +1453,8 @@ public class VectorLayer
             MapContentProviderHelper map = (MapContentProviderHelper) MapBase.getInstance();
             SQLiteDatabase db = map.getDatabase(false);
             String tableDrop = "DROP TABLE IF EXISTS " + mPath.getName();
+            clearStatements();
+            mOverviewBuilder.clear();
             db.execSQL(tableDrop);
         } catch (SQLiteFullException e) {
             e.printStackTrace();
@@ -1346,13 +1865,7 @@ public class VectorLayer
 
     protected long insertInternal(ContentValues contentValues)
     {
-        if (contentValues.containsKey(Constants.FIELD_GEOM)) {
-            try {
-                prepareGeometry(contentValues);
-            } catch (IOException | ClassNotFoundException e) {
-                e.printStackTrace();
-            }
-        }
+        markOverviewsDirty(contentValues);
 
         MapContentProviderHelper map = (MapContentProviderHelper) MapBase.getInstance();
         if (null == map) {
@@ -1369,6 +1882,10 @@ public class VectorLayer
 
 
         if (rowId != Constants.NOT_FOUND) {
+            if (contentValues.containsKey(Constants.FIELD_GEOM)) {
+                mOverviewBuilder.add(rowId);
+            }
+
             Intent notify = new Intent(Constants.NOTIFY_INSERT);
             notify.putExtra(FIELD_ID, rowId);
             notify.putExtra(Constants.NOTIFY_LAYER_NAME, mPath.getName()); // if we need mAuthority?
@@ -1382,36 +1899,16 @@ public class VectorLayer
     }
 
     public long insertViaSql(SQLiteDatabase db, ContentValues contentValues, String table){
-        StringBuilder cols = new StringBuilder();
-        StringBuilder vals = new StringBuilder();
-        List<Object> args = new ArrayList<>();
-
-        for (Map.Entry<String, Object> e : contentValues.valueSet()) {
-            if (cols.length() > 0) {
-                cols.append(", ");
-                vals.append(", ");
+        List<String> columns = getColumns(contentValues);
+        SQLiteStatement statement = getInsertStatement(db, table, columns);
+        try {
+            for (int i = 0; i < columns.size(); i++) {
+                bindValue(statement, i + 1, contentValues.get(columns.get(i)));
             }
-            cols.append("\"").append(e.getKey().replace("\"", "\"\"")).append("\"");
-            vals.append("?");
-            args.add(e.getValue());
-        }
-
-        String sql = "INSERT INTO "  + escapeIdentifier (table) +
-                " (" + cols + ") VALUES (" + vals + ")";
-
-        Log.d("SSQL", sql);
-        Log.d("SSQL","args" +  args.toArray());
-
-        db.execSQL(sql, args.toArray());
-
-        Cursor c = db.rawQuery("SELECT last_insert_rowid()", null);
-        long id = -1;
-
-        if (c.moveToFirst()) {
-            id = c.getLong(0);
+            return statement.executeInsert();
+        } finally {
+            statement.clearBindings();
         }
-        c.close();
-        return id;
     }
 
     public static int updateViaSql(SQLiteDatabase db,
@@ -1424,51 +1921,203 @@ public class VectorLayer
             return 0;
         }
 
-        StringBuilder sql = new StringBuilder();
-        List<Object> bindArgs = new ArrayList<>();
-
-        sql.append("UPDATE ").append(escapeIdentifier(table)).append(" SET ");
+        List<String> columns = getColumns(values);
+        SQLiteStatement stmt = db.compileStatement(getUpdateSql(table, columns, whereClause));
+        try {
+            // 🔥 return num of  updated rows
+            return executeUpdate(stmt, values, columns, whereClause, whereArgs);
+        } finally {
+            stmt.close();
+        }
+    }
+
+
+    /**
+     * The same as {@link #updateViaSql(SQLiteDatabase, String, ContentValues, String, String[])}
+     * by a statement from the layer cache
+     */
+    protected int updateCached(SQLiteDatabase db,
+                               String table,
+                               ContentValues values,
+                               String whereClause,
+                               String[] whereArgs) {
 
-        boolean first = true;
+        if (values == null || values.size() == 0) {
+            return 0;
+        }
 
-        for (Map.Entry<String, Object> e : values.valueSet()) {
-            if (!first) {
+        List<String> columns = getColumns(values);
+        String key = "UPDATE " + table + " " + TextUtils.join(",", columns) + " WHERE "
+                + whereClause;
+        StatementCache cache = getStatementCache(db);
+        SQLiteStatement stmt = cache.get(key);
+        if (null == stmt) {
+            stmt = db.compileStatement(getUpdateSql(table, columns, whereClause));
+            cache.put(key, stmt);
+        }
+        try {
+            return executeUpdate(stmt, values, columns, whereClause, whereArgs);
+        } finally {
+            stmt.clearBindings();
+        }
+    }
+
+
+    /**
+     * @return Column names of the values in a stable order, so equal column sets share a statement
+     */
+    protected static List<String> getColumns(ContentValues values)
+    {
+        List<String> columns = new ArrayList<>(values.keySet());
+        Collections.sort(columns);
+        return columns;
+    }
+
+
+    protected static String getUpdateSql(String table, List<String> columns, String whereClause)
+    {
+        StringBuilder sql = new StringBuilder();
+        sql.append("UPDATE ").append(escapeIdentifier(table)).append(" SET ");
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
                 sql.append(", ");
             }
-            first = false;
-            sql.append(escapeIdentifier(e.getKey())).append(" = ?");
-            bindArgs.add(e.getValue());
+            sql.append(escapeIdentifier(columns.get(i))).append(" = ?");
         }
-
         if (whereClause != null && !whereClause.trim().isEmpty()) {
             sql.append(" WHERE ").append(whereClause);
+        }
+        return sql.toString();
+    }
+
 
-            if (whereArgs != null) {
-                Collections.addAll(bindArgs, whereArgs);
+    protected static int executeUpdate(SQLiteStatement stmt,
+                                       ContentValues values,
+                                       List<String> columns,
+                                       String whereClause,
+                                       String[] whereArgs) {
+        // bind args
+        for (int i = 0; i < columns.size(); i++) {
+            bindValue(stmt, i + 1, values.get(columns.get(i)));
+        }
+        if (whereClause != null && !whereClause.trim().isEmpty() && whereArgs != null) {
+            for (int i = 0; i < whereArgs.length; i++) {
+                bindValue(stmt, columns.size() + i + 1, whereArgs[i]);
             }
         }
+        return stmt.executeUpdateDelete();
+    }
 
-        SQLiteStatement stmt = db.compileStatement(sql.toString());
 
-        // bind args
-        for (int i = 0; i < bindArgs.size(); i++) {
-            Object arg = bindArgs.get(i);
-            int index = i + 1;
-
-            if (arg == null) {
-                stmt.bindNull(index);
-            } else if (arg instanceof byte[]) {
-                stmt.bindBlob(index, (byte[]) arg);
-            } else if (arg instanceof Float || arg instanceof Double) {
-                stmt.bindDouble(index, ((Number) arg).doubleValue());
-            } else if (arg instanceof Number) {
-                stmt.bindLong(index, ((Number) arg).longValue());
-            } else {
-                stmt.bindString(index, arg.toString());
+    protected static void bindValue(SQLiteStatement stmt, int index, Object arg)
+    {
+        if (arg == null) {
+            stmt.bindNull(index);
+        } else if (arg instanceof byte[]) {
+            stmt.bindBlob(index, (byte[]) arg);
+        } else if (arg instanceof Float || arg instanceof Double) {
+            stmt.bindDouble(index, ((Number) arg).doubleValue());
+        } else if (arg instanceof Number) {
+            stmt.bindLong(index, ((Number) arg).longValue());
+        } else {
+            stmt.bindString(index, arg.toString());
+        }
+    }
+
+
+    /**
+     * @return Cached insert statement of the column set for the calling thread, clear its
+     * bindings after the execution
+     */
+    protected SQLiteStatement getInsertStatement(
+            SQLiteDatabase db,
+            String table,
+            List<String> columns)
+    {
+        String key = "INSERT " + table + " " + TextUtils.join(",", columns);
+        StatementCache cache = getStatementCache(db);
+        SQLiteStatement statement = cache.get(key);
+        if (null == statement) {
+            StringBuilder sql = new StringBuilder("INSERT INTO ");
+            sql.append(escapeIdentifier(table)).append(" (");
+            for (int i = 0; i < columns.size(); i++) {
+                sql.append(i == 0 ? "" : ", ").append(escapeIdentifier(columns.get(i)));
+            }
+            sql.append(") VALUES (");
+            for (int i = 0; i < columns.size(); i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(")");
+            statement = db.compileStatement(sql.toString());
+            cache.put(key, statement);
+        }
+        return statement;
+    }
+
+
+    /**
+     * @return The statements of the calling thread, dropped if they belong to another database
+     * or the cache is cleared since they were compiled
+     */
+    protected StatementCache getStatementCache(SQLiteDatabase db)
+    {
+        StatementCache cache = mStatements.get();
+        int generation = mStatementGeneration;
+        if (db != cache.mDb || generation != cache.mGeneration) {
+            cache.closeAll();
+            cache.mDb = db;
+            cache.mGeneration = generation;
+        }
+        return cache;
+    }
+
+
+    /**
+     * Close the cached statements, they are compiled against the table schema
+     */
+    protected void clearStatements()
+    {
+        mStatementGeneration++;
+        mStatements.get().closeAll();
+    }
+
+
+    /**
+     * Compiled statements by operation and column set, the least recently used one is closed
+     * over {@link #STATEMENT_CACHE_SIZE}
+     */
+    protected static class StatementCache
+            extends LinkedHashMap<String, SQLiteStatement>
+    {
+        protected SQLiteDatabase mDb;
+        protected int            mGeneration;
+
+
+        public StatementCache()
+        {
+            super(16, 0.75f, true);
+        }
+
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SQLiteStatement> eldest)
+        {
+            if (size() > STATEMENT_CACHE_SIZE) {
+                eldest.getValue().close();
+                return true;
             }
+            return false;
         }
 
-        return stmt.executeUpdateDelete(); // 🔥 return num of  updated rows
+
+        public void closeAll()
+        {
+            for (SQLiteStatement statement : values()) {
+                statement.close();
+            }
+            clear();
+            mDb = null;
+        }
     }
 
 
@@ -1879,7 +2528,8 @@ public class VectorLayer
             ContentValues values,
             long id)
     {
-        int result = update(id, values, Constants.FIELD_ID + " = " + id, null);
+        int result = update(id, values, Constants.FIELD_ID + " = ?",
+                new String[] {String.valueOf(id)});
         if (result > 0) {
             addChange(id, CHANGE_OPERATION_CHANGED);
         }
@@ -1903,20 +2553,25 @@ public class VectorLayer
                     "The map should extends MapContentProviderHelper or inherited");
         }
 
-        if (values.containsKey(Constants.FIELD_GEOM)) {
-            try {
-                // remove current cache item to not intersect with itself
-//                mCache.removeItem(rowId);
-                prepareGeometry(values);
-            } catch (IOException | ClassNotFoundException e) {
-                e.printStackTrace();
-            }
-        }
+        markOverviewsDirty(values);
 
         SQLiteDatabase db = map.getDatabase(false);
         //int result = db.update(mPath.getName(), values, selection, selectionArgs);
-        int result = updateViaSql(db, mPath.getName(), values, selection, selectionArgs);
+        int result = updateCached(db, mPath.getName(), values, selection, selectionArgs);
         if (result > 0) {
+            long newRowId = rowId;
+            if (rowId != Constants.NOT_FOUND && values.containsKey(Constants.FIELD_ID)) {
+                newRowId = values.getAsLong(Constants.FIELD_ID);
+                mOverviewBuilder.changeId(rowId, newRowId);
+            }
+            if (values.containsKey(Constants.FIELD_GEOM)) {
+                if (rowId == Constants.NOT_FOUND) {
+                    mOverviewBuilder.addDirty();
+                } else {
+                    mOverviewBuilder.add(newRowId);
+                }
+            }
+
             Intent notify;
             if (rowId == Constants.NOT_FOUND) {
                 if (values.containsKey(Constants.FIELD_GEOM)) {
@@ -2032,14 +2687,20 @@ public class VectorLayer
             case TYPE_FEATURE:
                 featureId = uri.getLastPathSegment();
                 featureIdL = Long.parseLong(featureId);
-                String changeSel = FIELD_ID + " = " + featureId;
+                // the id is bound, so updates of any feature share a statement
+                String changeSel = FIELD_ID + " = ?";
+                String[] changeArgs;
                 if (TextUtils.isEmpty(selection)) {
                     selection = changeSel;
+                    changeArgs = new String[] {featureId};
                 } else {
                     selection = selection + " AND " + changeSel;
+                    changeArgs = null == selectionArgs ? new String[] {featureId}
+                            : Arrays.copyOf(selectionArgs, selectionArgs.length + 1);
+                    changeArgs[changeArgs.length - 1] = featureId;
                 }
 
-                result = update(featureIdL, values, selection, selectionArgs);
+                result = update(featureIdL, values, selection, changeArgs);
 
                 if (result > 0) {
                     String fragment = uri.getFragment();
@@ -2251,6 +2912,68 @@ public class VectorLayer
         mIsEditable = isEditable;
     }
 
+    public GeometryRTree.SeedPicker getCacheSplit() {
+        return mCacheSplit;
+    }
+
+    /**
+     * Select the geometry cache insertion algorithm. {@link GeometryRTree.SeedPicker#RSTAR}
+     * inserts slower and keeps less overlapping nodes for edited or ordered data, e.g. survey
+     * tracks. Applies to features added after the last full cache snapshot.
+     */
+    public void setCacheSplit(GeometryRTree.SeedPicker cacheSplit) {
+        if (mCacheSplit == cacheSplit) {
+            return;
+        }
+        compactCache();
+        mCacheSplit = cacheSplit;
+        if (!mIsCacheRebuilding) {
+            mCache = createNewCache();
+            reloadCache();
+        }
+    }
+
+    public int getOverviewEncoding() {
+        return mOverviewEncoding;
+    }
+
+    /**
+     * Select the blob encoding of the simplified geometries drawn at the lower zooms.
+     * {@link GeometryBlobCodec#ENCODING_FLOAT} takes more space than the grid, but is decoded
+     * faster. Applies to features written afterwards.
+     * @param overviewEncoding One of GeometryBlobCodec.ENCODING_*
+     */
+    public void setOverviewEncoding(int overviewEncoding) {
+        mOverviewEncoding = overviewEncoding;
+    }
+
+    public int getSimplifyMethod() {
+        return mSimplifyMethod;
+    }
+
+    /**
+     * Select the simplification of the geometries drawn at the lower zooms. Applies to features
+     * written afterwards.
+     * @param simplifyMethod One of SIMPLIFY_*
+     */
+    public void setSimplifyMethod(int simplifyMethod) {
+        mSimplifyMethod = simplifyMethod;
+    }
+
+    public boolean isSimplifySharedEdges() {
+        return mSimplifySharedEdges;
+    }
+
+    /**
+     * Keep the edges shared by features the same in their simplified geometries, so adjacent
+     * parcels get no gaps and overlaps at the lower zooms. Works with
+     * {@link #SIMPLIFY_VISVALINGAM} only. Writing a feature rewrites the overviews of the
+     * features it shares vertices with.
+     */
+    public void setSimplifySharedEdges(boolean simplifySharedEdges) {
+        mSimplifySharedEdges = simplifySharedEdges;
+    }
+
     public boolean isFieldsInitialized() {
         return mFields != null;
     }
@@ -2431,12 +3154,11 @@ public class VectorLayer
 
         if (mCache.removeItem(rowId) != null) {
 //            Log.e("CCACHH","mCache.removeItem");
+            invalidateTileIndex();
+            // saves the cache too, only the change is appended to its journal
             save();
             notifyLayerChanged();
         }
-//        Log.e("CCACHH","mCache.save");
-        mCache.save(new File(mPath, RTREE));
-
     }
 
 
@@ -2458,6 +3180,7 @@ public class VectorLayer
                 } catch (SQLiteException e) {
                     e.printStackTrace();
                 }
+                clearStatements();
             }
             // 2. get geometry
             String[] columns = new String[] {FIELD_ID, FIELD_GEOM};
@@ -2502,6 +3225,92 @@ public class VectorLayer
             // 4. save layer
             save();
         }
+        // database version 6 has the compact geometry blobs
+        if (oldVersion < 6) {
+            compactGeometryBlobs(sqLiteDatabase);
+        }
+        // database version 7 builds the overviews in the background
+        if (oldVersion < 7) {
+            try {
+                sqLiteDatabase.execSQL("ALTER TABLE " + mPath.getName() + " ADD COLUMN "
+                        + Constants.FIELD_OVERVIEW_DIRTY + " INTEGER;");
+            } catch (SQLiteException e) {
+                e.printStackTrace();
+            }
+            clearStatements();
+        }
+    }
+
+
+    /**
+     * Rewrite the version 1 geometry blobs in the {@link GeometryBlobCodec} format. Goes row by
+     * row, so a large geometry does not overflow the cursor window. A row which fails is left
+     * as is, both formats are readable.
+     */
+    protected void compactGeometryBlobs(SQLiteDatabase sqLiteDatabase)
+    {
+        String tableName = mPath.getName();
+        LongList rowIds = new LongList();
+        Cursor cursor = sqLiteDatabase.query(
+                tableName, new String[] {FIELD_ID}, null, null, null, null, null);
+        if (null != cursor) {
+            while (cursor.moveToNext()) {
+                rowIds.add(cursor.getLong(0));
+            }
+            cursor.close();
+        }
+
+        String[] columns = new String[GeoConstants.DEFAULT_CACHE_MAX_ZOOM / 2];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = Constants.FIELD_GEOM_ + (i + 1) * 2;
+        }
+
+        sqLiteDatabase.beginTransaction();
+        try {
+            for (int i = 0; i < rowIds.size(); i++) {
+                long rowId = rowIds.get(i);
+                ContentValues values = new ContentValues();
+                Cursor overviews = null;
+                try {
+                    byte[] blob = readLargeBlob(sqLiteDatabase, tableName, rowId);
+                    if (null != blob && !GeometryBlobCodec.isCompact(blob)) {
+                        GeoGeometry geometry = GeoGeometryFactory.fromBlob(blob);
+                        if (null != geometry) {
+                            values.put(FIELD_GEOM, geometry.toBlob());
+                        }
+                    }
+
+                    overviews = sqLiteDatabase.query(tableName, columns,
+                            FIELD_ID + " = " + rowId, null, null, null, null);
+                    if (null != overviews && overviews.moveToFirst()) {
+                        for (int j = 0; j < columns.length; j++) {
+                            blob = overviews.getBlob(j);
+                            if (null == blob || GeometryBlobCodec.isCompact(blob)) {
+                                continue;
+                            }
+                            GeoGeometry geometry = GeoGeometryFactory.fromBlob(blob);
+                            if (null != geometry) {
+                                values.put(columns[j], geometry.toBlob(mOverviewEncoding));
+                            }
+                        }
+                    }
+                } catch (IOException | SQLiteException e) {
+                    Log.d(Constants.TAG, "Layer: " + getName() + ", feature: " + rowId);
+                    e.printStackTrace();
+                } finally {
+                    if (null != overviews) {
+                        overviews.close();
+                    }
+                }
+
+                if (values.size() > 0) {
+                    sqLiteDatabase.update(tableName, values, FIELD_ID + " = " + rowId, null);
+                }
+            }
+            sqLiteDatabase.setTransactionSuccessful();
+        } finally {
+            sqLiteDatabase.endTransaction();
+        }
     }
 
 
@@ -2512,6 +3321,7 @@ public class VectorLayer
 //        Log.e("/**/CCACHH","mCache.clear");
 
         mCache.clear();
+        invalidateTileIndex();
         save();
         notifyLayerChanged();
     }
@@ -2552,19 +3362,13 @@ public class VectorLayer
         if (oldRowId != Constants.NOT_FOUND) {
 //            Log.e("CCACHH","changeId from " + oldRowId + " to " + rowId);
             boolean result = mCache.changeId(oldRowId, rowId);
+            invalidateTileIndex();
+            mOverviewBuilder.changeId(oldRowId, rowId);
 
 
 //            Log.e("CCACHH","changeId result " + (result? "TRUE" : "FALSE"));
             //mCache.changeIdForAll (oldRowId, rowId, mCache.getRoot());
 
-            if (result) {
-                if (mCache instanceof GeometryRTree)
-                    ((GeometryRTree) mCache).setHasEdits(true);
-                mCache.save(new File(mPath, RTREE));
-            }
-
-
-
             if (DEBUG_MODE)
                 Log.d(Constants.TAG, "mCache: changing id from " + oldRowId + " to " + rowId);
             needSave = true;
@@ -2574,6 +3378,7 @@ public class VectorLayer
         if (null != geom && !attributesOnly) {
 //            Log.e("CCACHH","mCache.removeItem: " + rowId);
             mCache.removeItem(rowId);
+            invalidateTileIndex();
 //            Log.e("CCACHH","notifyUpdate: " + rowId);
             cacheGeometryEnvelope(rowId, geom);
             if (DEBUG_MODE)
@@ -2624,7 +3429,7 @@ public class VectorLayer
         }
         SQLiteDatabase db = map.getDatabase(true);
 
-        byte[] geomBlob = readLargeBlob(db,mPath.getName(),  rowId );
+        byte[] geomBlob = readLargeBlob(db, rowId);
         if (geomBlob != null) {
             try {
                 return  GeoGeometryFactory.fromBlob(geomBlob);
@@ -2736,28 +3541,207 @@ public class VectorLayer
             return getGeometryForId(rowId, db);
         }
 
-        String[] columns = new String[] {Constants.FIELD_GEOM_ + zoom};
+        String[] columns = new String[] {Constants.FIELD_GEOM_ + getOverviewZoom(zoom),
+                Constants.FIELD_OVERVIEW_DIRTY};
         String selection = Constants.FIELD_ID + " = " + rowId;
+        Cursor cursor = db.query(mPath.getName(), columns, selection, null, null, null, null);
+        if (null == cursor) {
+            return null;
+        }
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            // draw the full geometry until the overviews are built
+            if (!cursor.isNull(1)) {
+                return getGeometryForId(rowId, db);
+            }
+            return GeoGeometryFactory.fromBlob(cursor.getBlob(0));
+        } catch (IOException e) {
+            return null;
+        } finally {
+            cursor.close();
+        }
+    }
 
-        return getGeometryFromQuery(columns, selection, db);
+
+    /**
+     * @return The zoom of the overview column to read at the zoom, the overviews are stored for
+     * the even zooms from 2 to {@link GeoConstants#DEFAULT_CACHE_MAX_ZOOM}
+     */
+    protected static int getOverviewZoom(int zoom)
+    {
+        int evenZoom = zoom - (zoom & 1);
+        return Math.max(2, Math.min(GeoConstants.DEFAULT_CACHE_MAX_ZOOM, evenZoom));
     }
 
 
     public List<Long> query(GeoEnvelope env) {
-        List<IGeometryCacheItem> items;
-        if (null == env || !env.isInit() || !mExtents.isInit() || env.contains(mExtents))
-            items = mCache.getAll();
-        else
-            items = mCache.search(env);
+        LongList ids = new LongList();
+        int count = query(env, ids);
 
-        List<Long> result = new ArrayList<>(items.size());
-        for (IGeometryCacheItem item : items)
-            result.add(item.getFeatureId());
+        List<Long> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            result.add(ids.get(i));
 
         return result;
     }
 
 
+    /**
+     * Query feature identificators without boxing them
+     * @param env Envelope to search, all features if null
+     * @param result Reusable buffer, cleared before search
+     * @return Count of found features
+     */
+    public int query(GeoEnvelope env, LongList result) {
+        if (null == env || !env.isInit() || !mExtents.isInit() || env.contains(mExtents))
+            return mCache.search(-Double.MAX_VALUE, -Double.MAX_VALUE, Double.MAX_VALUE,
+                    Double.MAX_VALUE, result);
+
+        return mCache.search(env.getMinX(), env.getMinY(), env.getMaxX(), env.getMaxY(), result);
+    }
+
+
+    /**
+     * Query features to draw at the zoom. Up to {@link GeoConstants#DEFAULT_CACHE_MAX_ZOOM}
+     * features smaller than a pixel are thinned to one per pixel, so a zoomed out view gets a
+     * bounded set of features instead of the whole layer. Until the tile index is built in the
+     * background all features in the envelope are returned.
+     * @param env Envelope to search, the whole layer if null
+     * @param zoom Map zoom level
+     * @param result Reusable buffer, cleared before search
+     * @return Count of found features
+     */
+    public int query(GeoEnvelope env, int zoom, LongList result) {
+        if (zoom > GeoConstants.DEFAULT_CACHE_MAX_ZOOM)
+            return query(env, result);
+
+        GeometryTileIndex index = getTileIndex();
+        if (null == index)
+            return query(env, result);
+        if (null == env || !env.isInit())
+            return index.search(-Double.MAX_VALUE, -Double.MAX_VALUE, Double.MAX_VALUE,
+                    Double.MAX_VALUE, zoom, result);
+
+        return index.search(env.getMinX(), env.getMinY(), env.getMaxX(), env.getMaxY(), zoom,
+                result);
+    }
+
+
+    /**
+     * @return The tile index or null if it is not built yet, then it is built in the background
+     */
+    protected GeometryTileIndex getTileIndex() {
+        final int version;
+        synchronized (mTileIndexLock) {
+            if (null != mTileIndex || mTileIndexBuilding)
+                return mTileIndex;
+            mTileIndexBuilding = true;
+            version = mCacheVersion;
+        }
+
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                GeometryTileIndex index = null;
+                try {
+                    index = new GeometryTileIndex(mCache);
+                } finally {
+                    synchronized (mTileIndexLock) {
+                        mTileIndexBuilding = false;
+                        // an index of a changed cache is dropped, the next query builds it again
+                        if (version == mCacheVersion)
+                            mTileIndex = index;
+                    }
+                }
+            }
+        });
+        return null;
+    }
+
+
+    protected void invalidateTileIndex() {
+        synchronized (mTileIndexLock) {
+            mCacheVersion++;
+            mTileIndex = null;
+        }
+    }
+
+
+    /**
+     * Find features nearest to the point, closest first. Use it for tap to select and snapping
+     * instead of searching a guessed envelope. Candidates are taken from the cache by envelope
+     * distance, only they are loaded to measure the distance to the geometry.
+     * @param x Point X coordinate in the layer CRS
+     * @param y Point Y coordinate in the layer CRS
+     * @param k Maximum count of features
+     * @param maxDistance Features farther than this are skipped
+     * @param result Reusable buffer, cleared before search
+     * @return Count of found features
+     */
+    public int nearest(double x, double y, int k, double maxDistance, LongList result)
+    {
+        final GeoPoint point = new GeoPoint(x, y);
+        return mCache.nearest(x, y, k, maxDistance, new IFeatureDistance()
+        {
+            @Override
+            public double getDistance(long featureId, double x, double y)
+            {
+                GeoGeometry geometry = getGeometryForId(featureId);
+                return null == geometry ? Double.MAX_VALUE : geometry.distance(point);
+            }
+        }, result);
+    }
+
+
+    /**
+     * Clip the layer features to the area. Features are read and passed to the listener one at
+     * a time, so the layer is never loaded whole. Features outside the area bounds are not
+     * read, features wholly inside the area by their envelope are passed unchanged.
+     * @param area Polygon or multipolygon in the layer CRS
+     * @param listener Receives each feature part inside the area
+     * @param progressor Progress and cancel, may be null
+     * @return Count of features passed to the listener
+     */
+    public int clip(GeoGeometry area, IFeatureClipListener listener, IProgressor progressor)
+    {
+        PolygonClipper clipper = new PolygonClipper(area);
+        GeoEnvelope extent = clipper.getEnvelope();
+        // only the identificators are kept, the geometries are read one at a time
+        LongList ids = new LongList();
+        int found = mCache.search(extent.getMinX(), extent.getMinY(), extent.getMaxX(),
+                extent.getMaxY(), ids);
+        if (null != progressor) {
+            progressor.setMax(found);
+        }
+
+        GeoEnvelope envelope = new GeoEnvelope();
+        int count = 0;
+        for (int i = 0; i < found; i++) {
+            if (null != progressor) {
+                if (progressor.isCanceled()) {
+                    break;
+                }
+                progressor.setValue(i);
+            }
+
+            long featureId = ids.get(i);
+            GeoGeometry geometry = getGeometryForId(featureId);
+            if (null == geometry
+                    || clipper.locate(geometry.getEnvelope(envelope)) == PolygonClipper.OUTSIDE) {
+                continue;
+            }
+            GeoGeometry clipped = clipper.clip(geometry);
+            if (null != clipped) {
+                listener.onFeatureClipped(featureId, clipped);
+                count++;
+            }
+        }
+        return count;
+    }
+
+
     public void hideFeature(long featureId)
     {
         if (featureId != NOT_FOUND) {
@@ -2804,7 +3788,47 @@ public class VectorLayer
     }
 
     protected IGeometryCache createNewCache() {
-        return new GeometryRTree();
+        return createNewCache(null == mCache ? 0 : mCache.size());
+    }
+
+    /**
+     * @param featureCount Expected number of features
+     * @return Plain list for small layers, R-tree for the others
+     */
+    protected IGeometryCache createNewCache(int featureCount) {
+        if (featureCount <= PLAIN_CACHE_MAX_FEATURES) {
+            return new GeometryPlainList();
+        }
+        return new GeometryMappedRTree(mCacheSplit);
+    }
+
+    /**
+     * Move the cache of a layer grown over {@link #PLAIN_CACHE_MAX_FEATURES} from the plain list
+     * to the R-tree
+     */
+    protected void checkCacheType() {
+        if (!(mCache instanceof GeometryPlainList) || mCache.size() <= PLAIN_CACHE_MAX_FEATURES) {
+            return;
+        }
+
+        List<IGeometryCacheItem> items = mCache.getAll();
+        long[] ids = new long[items.size()];
+        double[] envelopes = new double[items.size() * 4];
+        int count = 0;
+        for (IGeometryCacheItem item : items) {
+            GeoEnvelope envelope = item.getEnvelope();
+            int offset = count * 4;
+            ids[count] = item.getFeatureId();
+            envelopes[offset] = envelope.getMinX();
+            envelopes[offset + 1] = envelope.getMinY();
+            envelopes[offset + 2] = envelope.getMaxX();
+            envelopes[offset + 3] = envelope.getMaxY();
+            count++;
+        }
+
+        IGeometryCache cache = new GeometryMappedRTree(mCacheSplit);
+        cache.bulkLoad(ids, envelopes, count);
+        mCache = cache;
     }
 
     public void rebuildCache(IProgressor progressor)
@@ -2822,21 +3846,31 @@ public class VectorLayer
                 }
 
                 mIsCacheRebuilding = true;
-                mCache = createNewCache();
+                mCache = createNewCache(cursor.getCount());
+                beginCacheBulkLoad(cursor.getCount());
+                GeoEnvelope envelope = new GeoEnvelope();
+                GeometryBlobView view = new GeometryBlobView();
                 int counter = 0;
                 do {
-                    GeoGeometry geometry = null;
-                    try {
-                        geometry = GeoGeometryFactory.fromBlob(cursor.getBlob(1));
-                    } catch (IOException e) {
-                        e.printStackTrace();
+                    // only the envelope is needed, read it from the blob as is
+                    byte[] blob = cursor.getBlob(1);
+                    boolean isRead = false;
+                    if (null != blob) {
+                        try {
+                            view.wrap(blob);
+                            isRead = true;
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
                     }
 
-                    if (null != geometry) {
+                    if (isRead) {
                         long rowId = cursor.getLong(0);
                         try { // fail on debugapp
-//                            Log.e("CCACHH","mCache.addItem: geometry.getEnvelope" );
-                            mCache.addItem(rowId, geometry.getEnvelope());
+                            view.getEnvelope(envelope);
+                            if (envelope.isInit()) {
+                                bufferEnvelope(rowId, envelope);
+                            }
                         } catch ( Exception ex){
                             Log.e("rebuild cache envelope fail", ex != null ? ex.getMessage() : "null message");
                         }
@@ -2853,6 +3887,7 @@ public class VectorLayer
 
                 } while (cursor.moveToNext());
 
+                endCacheBulkLoad();
                 mIsCacheRebuilding = false;
             }
             cursor.close();
@@ -2930,10 +3965,12 @@ public class VectorLayer
         final LinkedHashMap<Long, Feature> featureListMap = new LinkedHashMap<>();
 
         final List<Field> fields = getFields();
-        String[] projection = new String[fields.size() +1] ; // only ID, better all fields except  geom
+        String[] projection = new String[fields.size() + 3];
         projection[0] = "_id";
         for (int i = 0; i < fields.size(); i++)
             projection[i+1] = "\"" + fields.get(i).getName() + "\"";
+        int blobIndex = fields.size() + 1;
+        addBlobColumns(projection, blobIndex, FIELD_GEOM);
 
         Cursor cursor = query(projection,  null, null, "_id", null);
 //        final Cursor cursor = query(null, null, null, null, null);
@@ -2954,7 +3991,7 @@ public class VectorLayer
             final Feature feature1 = new Feature(cursor.getLong(0), fields);
             feature1.fromCursorWithoutGeometry(cursor);
 
-            byte[] geomBlob = readLargeBlob(db,mPath.getName(),  feature1.getId() );
+            byte[] geomBlob = readBlob(db, cursor, blobIndex, FIELD_GEOM, feature1.getId());
             if (geomBlob != null) {
                 try {
                     feature1.setGeometry(GeoGeometryFactory.fromBlob(geomBlob));
@@ -2969,16 +4006,303 @@ public class VectorLayer
         return featureListMap;
     }
 
+    /**
+     * Visit the layer features one at a time, ordered by identificator, instead of building a
+     * map of the whole layer. One feature instance is reused for all rows and its geometry is
+     * read only when the visitor asks for it.
+     * @param projection Fields to read, all fields if null
+     * @param envelope Visit only the features whose cache envelope intersects it, all features
+     *                 if null
+     * @param zoom Read the overview geometry of the zoom rounded down to an even one, at least 2,
+     *             or the full geometry for zooms over
+     *             {@link GeoConstants#DEFAULT_CACHE_MAX_ZOOM}. Up to it only the features to draw
+     *             at the zoom are visited, see {@link #query(GeoEnvelope, int, LongList)}
+     * @param visitor Called for each feature
+     * @return Count of visited features
+     */
+    public int scan(
+            String[] projection,
+            GeoEnvelope envelope,
+            int zoom,
+            IFeatureVisitor visitor)
+    {
+        MapContentProviderHelper map = (MapContentProviderHelper) MapBase.getInstance();
+        if (null == map) {
+            throw new IllegalArgumentException(
+                    "The map should extends MapContentProviderHelper or inherited");
+        }
+
+        List<Field> fields = getFields();
+        if (null != projection) {
+            List<String> names = Arrays.asList(projection);
+            List<Field> selected = new ArrayList<>(projection.length);
+            for (Field field : fields) {
+                if (names.contains(field.getName())) {
+                    selected.add(field);
+                }
+            }
+            fields = selected;
+        }
+        String geometryColumn = zoom > GeoConstants.DEFAULT_CACHE_MAX_ZOOM
+                ? FIELD_GEOM
+                : Constants.FIELD_GEOM_ + getOverviewZoom(zoom);
+        String[] columns = new String[fields.size() + 4];
+        columns[0] = FIELD_ID;
+        for (int i = 0; i < fields.size(); i++) {
+            columns[i + 1] = "\"" + fields.get(i).getName() + "\"";
+        }
+        addBlobColumns(columns, fields.size() + 1, geometryColumn);
+        columns[fields.size() + 3] = Constants.FIELD_OVERVIEW_DIRTY;
+
+        ScanFeature feature = new ScanFeature(fields, map.getDatabase(true), geometryColumn);
+
+        boolean wholeLayer = null == envelope || !envelope.isInit() || !mExtents.isInit()
+                || envelope.contains(mExtents);
+        boolean thinned = zoom <= GeoConstants.DEFAULT_CACHE_MAX_ZOOM && null != getTileIndex();
+        if (wholeLayer && !thinned) {
+            scanRows(query(columns, null, null, FIELD_ID, null), feature, visitor);
+            return feature.mCount;
+        }
+
+        LongList found = new LongList();
+        if (thinned) {
+            query(envelope, zoom, found);
+        } else {
+            query(envelope, found);
+        }
+        long[] ids = found.toArray();
+        Arrays.sort(ids);
+        for (int start = 0; start < ids.length; start += SCAN_CHUNK_SIZE) {
+            StringBuilder selection = new StringBuilder(FIELD_ID).append(" IN (");
+            for (int i = start; i < Math.min(start + SCAN_CHUNK_SIZE, ids.length); i++) {
+                selection.append(i == start ? "" : ",").append(ids[i]);
+            }
+            selection.append(")");
+            if (!scanRows(query(columns, selection.toString(), null, FIELD_ID, null), feature,
+                    visitor)) {
+                break;
+            }
+        }
+        return feature.mCount;
+    }
+
+
+    /**
+     * @return false if the visitor stopped the scan
+     */
+    protected boolean scanRows(
+            Cursor cursor,
+            ScanFeature feature,
+            IFeatureVisitor visitor)
+    {
+        if (null == cursor) {
+            return true;
+        }
+
+        try {
+            while (cursor.moveToNext()) {
+                feature.reset();
+                feature.fromCursorWithoutGeometry(cursor);
+                int blobIndex = feature.mFields.size() + 1;
+                if (!cursor.isNull(blobIndex)) {
+                    feature.mBlob = cursor.getBlob(blobIndex);
+                }
+                feature.mBlobSize = cursor.getLong(blobIndex + 1);
+                feature.mOverviewDirty = !cursor.isNull(blobIndex + 2);
+                feature.mCount++;
+                if (!visitor.visit(feature)) {
+                    return false;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return true;
+    }
+
+
+    /**
+     * Feature of {@link #scan(String[], GeoEnvelope, int, IFeatureVisitor)}, the geometry is read
+     * on the first request
+     */
+    protected class ScanFeature
+            extends Feature
+    {
+        protected final SQLiteDatabase mDb;
+        protected final String         mGeometryColumn;
+        protected boolean              mGeometryRead;
+        protected byte[]               mBlob;
+        protected long                 mBlobSize;
+        /** The row has a stamp, its overviews are not built yet */
+        protected boolean              mOverviewDirty;
+        protected int                  mCount;
+
+
+        public ScanFeature(
+                List<Field> fields,
+                SQLiteDatabase db,
+                String geometryColumn)
+        {
+            super(NOT_FOUND, fields);
+            mDb = db;
+            mGeometryColumn = geometryColumn;
+        }
+
+
+        protected void reset()
+        {
+            mFieldValues.clear();
+            mGeometry = null;
+            mGeometryRead = false;
+            mBlob = null;
+        }
+
+
+        @Override
+        public void setGeometry(GeoGeometry geometry)
+        {
+            super.setGeometry(geometry);
+            mGeometryRead = true;
+        }
+
+
+        @Override
+        public GeoGeometry getGeometry()
+        {
+            if (!mGeometryRead) {
+                mGeometryRead = true;
+                byte[] blob;
+                if (!FIELD_GEOM.equals(mGeometryColumn) && mOverviewDirty) {
+                    blob = readLargeBlob(mDb, mId);
+                } else if (null == mBlob && mBlobSize > 0) {
+                    blob = readBlobChunks(mDb, mGeometryColumn, mId, mBlobSize);
+                } else {
+                    blob = mBlob;
+                }
+                mBlob = null;
+                try {
+                    mGeometry = GeoGeometryFactory.fromBlob(blob);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            return mGeometry;
+        }
+    }
+
+
+    /**
+     * Put the blob and the blob size of the column to the projection at the index. The blob is
+     * null if it does not fit a chunk.
+     */
+    protected static void addBlobColumns(
+            String[] projection,
+            int index,
+            String column)
+    {
+        projection[index] = "CASE WHEN length(" + column + ") > " + BLOB_CHUNK_SIZE
+                + " THEN NULL ELSE " + column + " END";
+        projection[index + 1] = "length(" + column + ")";
+    }
+
+
+    /**
+     * Read the blob of the columns added by {@link #addBlobColumns(String[], int, String)}, an
+     * oversize blob is read by chunks
+     */
+    protected byte[] readBlob(
+            SQLiteDatabase db,
+            Cursor cursor,
+            int index,
+            String column,
+            long rowId)
+    {
+        if (!cursor.isNull(index)) {
+            return cursor.getBlob(index);
+        }
+        long size = cursor.getLong(index + 1);
+        return size > 0 ? readBlobChunks(db, column, rowId, size) : null;
+    }
+
+
+    /**
+     * Read the blob by substr() chunks of {@link #BLOB_CHUNK_SIZE}
+     * @return The blob or null if the row is missing or changed while reading
+     */
+    protected byte[] readBlobChunks(
+            SQLiteDatabase db,
+            String column,
+            long rowId,
+            long size)
+    {
+        if (size > Integer.MAX_VALUE) {
+            return null;
+        }
+
+        byte[] result = new byte[(int) size];
+        String table = mPath.getName();
+        for (int offset = 0; offset < result.length; offset += BLOB_CHUNK_SIZE) {
+            Cursor cursor = db.rawQuery(
+                    "SELECT substr(" + column + ", " + (offset + 1) + ", " + BLOB_CHUNK_SIZE
+                            + ") FROM " + table + " WHERE " + FIELD_ID + " = " + rowId, null);
+            try {
+                if (!cursor.moveToFirst() || cursor.isNull(0)) {
+                    return null;
+                }
+                byte[] chunk = cursor.getBlob(0);
+                if (chunk.length != Math.min(BLOB_CHUNK_SIZE, result.length - offset)) {
+                    return null;
+                }
+                System.arraycopy(chunk, 0, result, offset, chunk.length);
+            } finally {
+                cursor.close();
+            }
+        }
+        return result;
+    }
+
+
     public static byte[] readLargeBlob(SQLiteDatabase db, String tableName, long rowId) {
         String sql = "SELECT " + FIELD_GEOM + " FROM " + tableName + " WHERE _id = ?";
         SQLiteStatement st = db.compileStatement(sql);
-        st.bindLong(1, rowId);
+        try {
+            return readLargeBlob(st, rowId);
+        } finally {
+            st.close();
+        }
+    }
+
+    /**
+     * Read the geometry blob by the cached statement of the layer
+     */
+    protected byte[] readLargeBlob(SQLiteDatabase db, long rowId) {
+        return readLargeBlob(db, FIELD_GEOM, rowId);
+    }
+
+    /**
+     * @param column The geometry or an overview column
+     */
+    protected byte[] readLargeBlob(SQLiteDatabase db, String column, long rowId) {
+        String key = "SELECT " + column;
+        StatementCache cache = getStatementCache(db);
+        SQLiteStatement st = cache.get(key);
+        if (null == st) {
+            st = db.compileStatement("SELECT " + column + " FROM " + mPath.getName()
+                    + " WHERE _id = ?");
+            cache.put(key, st);
+        }
+        return readLargeBlob(st, rowId);
+    }
 
-        ParcelFileDescriptor pfd = null;
+    protected static byte[] readLargeBlob(SQLiteStatement st, long rowId) {
+        ParcelFileDescriptor pfd;
         try {
+            st.bindLong(1, rowId);
             pfd = st.simpleQueryForBlobFileDescriptor();
         } catch (SQLiteDoneException e) {
             return null;
+        } finally {
+            st.clearBindings();
         }
 
         if (pfd == null)
@@ -3073,7 +4397,7 @@ public class VectorLayer
             feature = new Feature(cursor.getLong(0), fields);
             feature.fromCursorWithoutGeometry(cursor);
 
-            byte[] geomBlob = readLargeBlob(db,mPath.getName(),  feature.getId() );
+            byte[] geomBlob = readLargeBlob(db, feature.getId());
             if (geomBlob != null) {
                 try {
                     feature.setGeometry(GeoGeometryFactory.fromBlob(geomBlob));
@@ -161,47 +161,56 @@ public class GeoJSONUtil {
         JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
         boolean isWGS84 = srs == GeoConstants.CRS_WGS84;
         long counter = 0;
-        reader.beginObject();
-        while (reader.hasNext()) {
-            String name = reader.nextName();
-            if(name.equals(GeoConstants.GEOJSON_TYPE_FEATURES)){
-                reader.beginArray();
-                while (reader.hasNext()) {
-                    Feature feature = readGeoJSONFeature(reader, layer, isWGS84);
-                    if (null != feature) {
-                        if(layer.getFields() != null && !layer.getFields().isEmpty()){
-                            if (feature.getGeometry() != null)
-                                layer.create(feature.getGeometry().getType(), feature.getFields());
-
-                            db = DatabaseContext.getDbForLayer(layer);
-                        }
+        boolean isBulkLoad = false;
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if(name.equals(GeoConstants.GEOJSON_TYPE_FEATURES)){
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        Feature feature = readGeoJSONFeature(reader, layer, isWGS84);
+                        if (null != feature) {
+                            if(feature.getGeometry() != null) {
+                                if (!isBulkLoad) {
+                                    // the table is created from the first feature, out of the bulk transaction
+                                    if (layer.getFields() == null || layer.getFields().isEmpty()) {
+                                        layer.create(feature.getGeometry().getType(), feature.getFields());
+                                        db = DatabaseContext.getDbForLayer(layer);
+                                    }
+                                    layer.beginBulkLoad(true);
+                                    isBulkLoad = true;
+                                }
 
-                        if(feature.getGeometry() != null) {
-                            layer.createFeatureBatch(feature, db, true);
-                            if(null != progressor){
-                                if (progressor.isCanceled()) {
-                                    layer.save();
-                                    return;
+                                layer.append(feature);
+                                if(null != progressor){
+                                    if (progressor.isCanceled()) {
+                                        return;
+                                    }
+                                    progressor.setValue(streamSize - in.available());
+                                    progressor.setMessage(layer.getContext().getString(R.string.process_features) + ": " + counter++);
                                 }
-                                progressor.setValue(streamSize - in.available());
-                                progressor.setMessage(layer.getContext().getString(R.string.process_features) + ": " + counter++);
                             }
                         }
                     }
+                    reader.endArray();
+                }
+                else {
+                    reader.skipValue();
                 }
-                reader.endArray();
             }
-            else {
-                reader.skipValue();
+            reader.endObject();
+        } finally {
+            if (isBulkLoad) {
+                layer.commit();
+            } else {
+                layer.save();
             }
         }
-        reader.endObject();
         reader.close();
 
         //if(null != db)
         //    db.close(); // return pragma to init
-
-        layer.save();
     }
 
     // TODO refactor it and fillLayerFromGeoJsonStream
@@ -220,45 +229,55 @@ public class GeoJSONUtil {
 
         JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
         long counter = 0;
-        reader.beginObject();
-        while (reader.hasNext()) {
-            String name = reader.nextName();
-            if (name.equals(GeoConstants.GEOJSON_TYPE_FEATURES)) {
-                reader.beginArray();
-                while (reader.hasNext()) {
-                    Feature feature = readGeoJSONFeature(reader, layer, isWGS84);
-                    if (null != feature) {
-                        if (layer.getFields() == null || layer.getFields().isEmpty()) {
-                            if (feature.getGeometry() != null)
-                                layer.create(feature.getGeometry().getType(), feature.getFields());
-
-                            db = DatabaseContext.getDbForLayer(layer);
-                        }
+        boolean isBulkLoad = false;
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals(GeoConstants.GEOJSON_TYPE_FEATURES)) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        Feature feature = readGeoJSONFeature(reader, layer, isWGS84);
+                        if (null != feature) {
+                            if (feature.getGeometry() != null) {
+                                if (!isBulkLoad) {
+                                    // the table is created from the first feature, out of the bulk transaction
+                                    if (layer.getFields() == null || layer.getFields().isEmpty()) {
+                                        layer.create(feature.getGeometry().getType(), feature.getFields());
+                                        db = DatabaseContext.getDbForLayer(layer);
+                                    }
+                                    layer.beginBulkLoad(true);
+                                    isBulkLoad = true;
+                                }
 
-                        if (feature.getGeometry() != null) {
-                            layer.createFeatureBatch(feature, db, true);
-                            if(null != progressor){
-                                if (progressor.isCanceled()) {
-                                    layer.save();
-                                    return;
+                                layer.append(feature);
+                                if(null != progressor){
+                                    if (progressor.isCanceled()) {
+                                        return;
+                                    }
+                                    progressor.setValue(streamSize - in.available());
+                                    progressor.setMessage(layer.getContext().getString(R.string.process_features) + ": " + counter++);
                                 }
-                                progressor.setValue(streamSize - in.available());
-                                progressor.setMessage(layer.getContext().getString(R.string.process_features) + ": " + counter++);
                             }
                         }
                     }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
                 }
-                reader.endArray();
+            }
+            reader.endObject();
+        } finally {
+            if (isBulkLoad) {
+                layer.commit();
             } else {
-                reader.skipValue();
+                layer.save();
             }
         }
-        reader.endObject();
         reader.close();
 
         //if(null != db)
         //   db.close(); // return pragma to init
-        layer.save();
     }
 
     private static Feature readGeoJSONFeature(JsonReader reader, VectorLayer layer, boolean isWGS84) throws IOException {
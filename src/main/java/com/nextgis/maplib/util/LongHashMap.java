@@ -0,0 +1,228 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplib.util;
+
+/**
+ * Hash map with primitive long keys (open addressing, linear probing). Used for feature id
+ * lookups where boxing every id into a Long is too expensive.
+ *
+ * This class is not thread-safe.
+ */
+public class LongHashMap<V>
+{
+    protected static final int   DEFAULT_CAPACITY = 16;
+    protected static final float LOAD_FACTOR      = 0.6f;
+
+    protected long[]    mKeys;
+    protected Object[]  mValues;
+    protected boolean[] mUsed;
+    protected int       mSize;
+    protected int       mMask;
+    protected int       mThreshold;
+
+
+    public LongHashMap()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+
+    public LongHashMap(int expectedSize)
+    {
+        allocate(tableSizeFor((int) (expectedSize / LOAD_FACTOR) + 1));
+    }
+
+
+    /**
+     * Grow the table, so the expected count of keys is put without rehashing
+     */
+    public void ensureCapacity(int expectedSize)
+    {
+        int capacity = tableSizeFor((int) (expectedSize / LOAD_FACTOR) + 1);
+        if (capacity > mKeys.length) {
+            rehash(capacity);
+        }
+    }
+
+
+    public int size()
+    {
+        return mSize;
+    }
+
+
+    public boolean isEmpty()
+    {
+        return mSize == 0;
+    }
+
+
+    public boolean containsKey(long key)
+    {
+        return indexOf(key) >= 0;
+    }
+
+
+    @SuppressWarnings("unchecked")
+    public V get(long key)
+    {
+        int index = indexOf(key);
+        return index < 0 ? null : (V) mValues[index];
+    }
+
+
+    /**
+     * Put value to the map
+     * @param key Key
+     * @param value Value
+     * @return Previous value for the key or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value)
+    {
+        int index = slot(key);
+        while (mUsed[index]) {
+            if (mKeys[index] == key) {
+                V previous = (V) mValues[index];
+                mValues[index] = value;
+                return previous;
+            }
+            index = (index + 1) & mMask;
+        }
+
+        mUsed[index] = true;
+        mKeys[index] = key;
+        mValues[index] = value;
+        if (++mSize > mThreshold) {
+            rehash(mKeys.length << 1);
+        }
+        return null;
+    }
+
+
+    /**
+     * Remove value from the map
+     * @param key Key
+     * @return Removed value or null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key)
+    {
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+
+        V previous = (V) mValues[index];
+        mSize--;
+
+        // backward shift deletion, keeps probe chains intact without tombstones
+        int gap = index;
+        int next = (gap + 1) & mMask;
+        while (mUsed[next]) {
+            int home = slot(mKeys[next]);
+            if (((next - home) & mMask) >= ((next - gap) & mMask)) {
+                mKeys[gap] = mKeys[next];
+                mValues[gap] = mValues[next];
+                gap = next;
+            }
+            next = (next + 1) & mMask;
+        }
+        mUsed[gap] = false;
+        mValues[gap] = null;
+
+        return previous;
+    }
+
+
+    public void clear()
+    {
+        if (mSize == 0) {
+            return;
+        }
+        for (int i = 0; i < mUsed.length; i++) {
+            mUsed[i] = false;
+            mValues[i] = null;
+        }
+        mSize = 0;
+    }
+
+
+    protected int indexOf(long key)
+    {
+        int index = slot(key);
+        while (mUsed[index]) {
+            if (mKeys[index] == key) {
+                return index;
+            }
+            index = (index + 1) & mMask;
+        }
+        return Constants.NOT_FOUND;
+    }
+
+
+    protected int slot(long key)
+    {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mMask;
+    }
+
+
+    protected void allocate(int capacity)
+    {
+        mKeys = new long[capacity];
+        mValues = new Object[capacity];
+        mUsed = new boolean[capacity];
+        mMask = capacity - 1;
+        mThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+
+    protected void rehash(int capacity)
+    {
+        long[] keys = mKeys;
+        Object[] values = mValues;
+        boolean[] used = mUsed;
+
+        allocate(capacity);
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i]) {
+                int index = slot(keys[i]);
+                while (mUsed[index]) {
+                    index = (index + 1) & mMask;
+                }
+                mUsed[index] = true;
+                mKeys[index] = keys[i];
+                mValues[index] = values[i];
+            }
+        }
+    }
+
+
+    protected static int tableSizeFor(int size)
+    {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < size) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
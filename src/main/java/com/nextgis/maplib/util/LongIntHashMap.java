@@ -0,0 +1,208 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplib.util;
+
+/**
+ * Hash map with primitive long keys and int values (open addressing, linear probing), e.g. for
+ * feature id to array index lookups.
+ *
+ * This class is not thread-safe.
+ */
+public class LongIntHashMap
+{
+    protected static final int   DEFAULT_CAPACITY = 16;
+    protected static final float LOAD_FACTOR      = 0.6f;
+
+    protected long[]    mKeys;
+    protected int[]     mValues;
+    protected boolean[] mUsed;
+    protected int       mSize;
+    protected int       mMask;
+    protected int       mThreshold;
+
+
+    public LongIntHashMap()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+
+    public LongIntHashMap(int expectedSize)
+    {
+        allocate(tableSizeFor((int) (expectedSize / LOAD_FACTOR) + 1));
+    }
+
+
+    public int size()
+    {
+        return mSize;
+    }
+
+
+    public boolean containsKey(long key)
+    {
+        return indexOf(key) >= 0;
+    }
+
+
+    /**
+     * @return Value for the key or {@link Constants#NOT_FOUND}
+     */
+    public int get(long key)
+    {
+        int index = indexOf(key);
+        return index < 0 ? Constants.NOT_FOUND : mValues[index];
+    }
+
+
+    /**
+     * Put value to the map
+     * @param key Key
+     * @param value Value
+     * @return Previous value for the key or {@link Constants#NOT_FOUND}
+     */
+    public int put(long key, int value)
+    {
+        int index = slot(key);
+        while (mUsed[index]) {
+            if (mKeys[index] == key) {
+                int previous = mValues[index];
+                mValues[index] = value;
+                return previous;
+            }
+            index = (index + 1) & mMask;
+        }
+
+        mUsed[index] = true;
+        mKeys[index] = key;
+        mValues[index] = value;
+        if (++mSize > mThreshold) {
+            rehash(mKeys.length << 1);
+        }
+        return Constants.NOT_FOUND;
+    }
+
+
+    /**
+     * Remove value from the map
+     * @param key Key
+     * @return Removed value or {@link Constants#NOT_FOUND}
+     */
+    public int remove(long key)
+    {
+        int index = indexOf(key);
+        if (index < 0) {
+            return Constants.NOT_FOUND;
+        }
+
+        int previous = mValues[index];
+        mSize--;
+
+        // backward shift deletion, keeps probe chains intact without tombstones
+        int gap = index;
+        int next = (gap + 1) & mMask;
+        while (mUsed[next]) {
+            int home = slot(mKeys[next]);
+            if (((next - home) & mMask) >= ((next - gap) & mMask)) {
+                mKeys[gap] = mKeys[next];
+                mValues[gap] = mValues[next];
+                gap = next;
+            }
+            next = (next + 1) & mMask;
+        }
+        mUsed[gap] = false;
+
+        return previous;
+    }
+
+
+    public void clear()
+    {
+        if (mSize == 0) {
+            return;
+        }
+        for (int i = 0; i < mUsed.length; i++) {
+            mUsed[i] = false;
+        }
+        mSize = 0;
+    }
+
+
+    protected int indexOf(long key)
+    {
+        int index = slot(key);
+        while (mUsed[index]) {
+            if (mKeys[index] == key) {
+                return index;
+            }
+            index = (index + 1) & mMask;
+        }
+        return Constants.NOT_FOUND;
+    }
+
+
+    protected int slot(long key)
+    {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mMask;
+    }
+
+
+    protected void allocate(int capacity)
+    {
+        mKeys = new long[capacity];
+        mValues = new int[capacity];
+        mUsed = new boolean[capacity];
+        mMask = capacity - 1;
+        mThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+
+    protected void rehash(int capacity)
+    {
+        long[] keys = mKeys;
+        int[] values = mValues;
+        boolean[] used = mUsed;
+
+        allocate(capacity);
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i]) {
+                int index = slot(keys[i]);
+                while (mUsed[index]) {
+                    index = (index + 1) & mMask;
+                }
+                mUsed[index] = true;
+                mKeys[index] = keys[i];
+                mValues[index] = values[i];
+            }
+        }
+    }
+
+
+    protected static int tableSizeFor(int size)
+    {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < size) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplib.util;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Growable array of primitive longs. Keep one instance and {@link #clear()} it between queries
+ * to collect feature ids without allocations.
+ *
+ * This class is not thread-safe.
+ */
+public class LongList
+        implements LongConsumer
+{
+    protected long[] mData;
+    protected int    mSize;
+
+
+    public LongList()
+    {
+        this(16);
+    }
+
+
+    public LongList(int capacity)
+    {
+        mData = new long[Math.max(capacity, 1)];
+    }
+
+
+    @Override
+    public void accept(long value)
+    {
+        add(value);
+    }
+
+
+    public void add(long value)
+    {
+        if (mSize == mData.length) {
+            mData = Arrays.copyOf(mData, mSize * 2);
+        }
+        mData[mSize++] = value;
+    }
+
+
+    public long get(int index)
+    {
+        if (index >= mSize) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + mSize);
+        }
+        return mData[index];
+    }
+
+
+    public int size()
+    {
+        return mSize;
+    }
+
+
+    public boolean isEmpty()
+    {
+        return mSize == 0;
+    }
+
+
+    public void clear()
+    {
+        mSize = 0;
+    }
+
+
+    /**
+     * @return the backing array, valid items are in [0, size)
+     */
+    public long[] getData()
+    {
+        return mData;
+    }
+
+
+    public long[] toArray()
+    {
+        return Arrays.copyOf(mData, mSize);
+    }
+}
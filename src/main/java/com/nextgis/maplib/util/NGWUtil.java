@@ -36,6 +36,7 @@ import com.nextgis.maplib.datasource.Feature;
 import com.nextgis.maplib.datasource.Field;
 import com.nextgis.maplib.datasource.GeoGeometry;
 import com.nextgis.maplib.datasource.GeoGeometryFactory;
+import com.nextgis.maplib.datasource.GeometryWKBCodec;
 import com.nextgis.maplib.datasource.ngw.Connection;
 import com.nextgis.maplib.datasource.ngw.INGWResource;
 import com.nextgis.maplib.datasource.ngw.Resource;
@@ -54,6 +55,7 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.net.HttpURLConnection;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -105,6 +107,13 @@ public class NGWUtil
     public static String NGWKEY_LOOKUP_TABLE    = "lookup_table";
     public static String NGWKEY_RESMETA         = "resmeta";
     public static String NGWKEY_ITEMS           = "items";
+    public static String NGWKEY_GEOM_FORMAT     = "geom_format";
+
+    /**
+     * Feature geometry formats, WKB goes in JSON as a hex string
+     */
+    public static final String GEOM_FORMAT_WKT = "wkt";
+    public static final String GEOM_FORMAT_WKB = "wkb";
     public static String NGUA = "";
     public static String NGID = "";
     public static String UUID = "";
@@ -503,7 +512,16 @@ public class NGWUtil
                         wkt.startsWith("POLYGON Z") || wkt.startsWith("MULTIPOLYGON Z")) {
                     throw new NGException("POINTZ");
                 }
-                GeoGeometry geom = GeoGeometryFactory.fromWKT(wkt, nSRS);
+                GeoGeometry geom;
+                if (isWKB(wkt)) {
+                    ByteBuffer wkb = ByteBuffer.wrap(GeometryWKBCodec.fromHex(wkt));
+                    if (GeometryWKBCodec.hasZ(wkb)) {
+                        throw new NGException("POINTZ");
+                    }
+                    geom = GeoGeometryFactory.fromWKB(wkb, nSRS);
+                } else {
+                    geom = GeoGeometryFactory.fromWKT(wkt, nSRS);
+                }
                 geom.setCRS(nSRS);
                 if (nSRS != GeoConstants.CRS_WEB_MERCATOR) {
                     geom.project(GeoConstants.CRS_WEB_MERCATOR);
@@ -524,6 +542,26 @@ public class NGWUtil
     }
 
 
+    /**
+     * @return True if the feature geometry is hex encoded WKB. It starts with the byte order
+     * byte, 00 or 01, and WKT starts with a letter.
+     */
+    public static boolean isWKB(String geometry)
+    {
+        return geometry.length() > 1 && geometry.charAt(0) == '0';
+    }
+
+
+    public static GeoGeometry geometryFromNGW(String geometry, int nSRS)
+            throws IOException
+    {
+        if (isWKB(geometry)) {
+            return GeoGeometryFactory.fromWKB(geometry, nSRS);
+        }
+        return GeoGeometryFactory.fromWKT(geometry, nSRS);
+    }
+
+
     public static void readNGWFeatureFields(Feature feature, JsonReader reader, List<Field> fields)
             throws IOException, IllegalStateException, NumberFormatException
     {
@@ -781,7 +819,12 @@ public class NGWUtil
             String wkt = featureJSONObject.getString(NGWUtil.NGWKEY_GEOM);
             JSONObject fieldsJSONObject = featureJSONObject.getJSONObject(NGWUtil.NGWKEY_FIELDS);
             Feature feature = new Feature(id, fields);
-            GeoGeometry geom = GeoGeometryFactory.fromWKT(wkt, nSRS);
+            GeoGeometry geom;
+            try {
+                geom = geometryFromNGW(wkt, nSRS);
+            } catch (IOException e) {
+                geom = null;
+            }
             if (null == geom)
                 continue;
 
@@ -0,0 +1,184 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplib.datasource;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.nextgis.maplib.util.GeoConstants.CRS_WEB_MERCATOR;
+import static com.nextgis.maplib.util.GeoConstants.CRS_WGS84;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+public class GeometryBlobCodecTest
+{
+    protected static final String[] GEOMETRIES = {
+            "POINT (4187035.123 7509221.5)",
+            "LINESTRING (4187035.123 7509221.5, 4187100 7509300.001, -20037508.342 -100)",
+            "POLYGON((0 0, 100 0, 100 100, 0 100, 0 0),(10 10, 20 10, 20 20, 10 10))",
+            "MULTIPOINT ((1 2), (3.5 -4.25))",
+            "MULTILINESTRING ((0 0, 1 1), (2 2, 3 3, 4 5))",
+            "MULTIPOLYGON(((0 0, 10 0, 10 10, 0 0)),((20 20, 30 20, 30 30, 20 20)))"};
+
+
+    @Test
+    public void gridRoundTrip()
+            throws IOException
+    {
+        for (GeoGeometry geometry : getGeometries(CRS_WEB_MERCATOR)) {
+            byte[] blob = new GeometryBlobCodec().encode(geometry, GeometryBlobCodec.ENCODING_GRID);
+            assertTrue(GeometryBlobCodec.isCompact(blob));
+            assertSameGeometry(geometry, GeoGeometryFactory.fromBlob(blob));
+        }
+    }
+
+
+    @Test
+    public void doubleRoundTrip()
+            throws IOException
+    {
+        for (GeoGeometry geometry : getGeometries(CRS_WGS84)) {
+            // the grid is for Web Mercator only, other CRS are written as doubles
+            GeometryBlobCodec codec = new GeometryBlobCodec();
+            GeoGeometry decoded = codec.decode(codec.encode(geometry, GeometryBlobCodec.ENCODING_GRID));
+            assertEquals(GeometryBlobCodec.ENCODING_DOUBLE, codec.getEncoding());
+            assertEquals(CRS_WGS84, codec.getCRS());
+            assertSameGeometry(geometry, decoded);
+        }
+    }
+
+
+    @Test
+    public void offGridFallsBackToDoubles()
+            throws IOException
+    {
+        GeoGeometry geometry = GeoGeometryFactory.fromWKT("POINT (0.0001 1e17)", CRS_WEB_MERCATOR);
+        GeometryBlobCodec codec = new GeometryBlobCodec();
+        GeoGeometry decoded = codec.decode(codec.encode(geometry, GeometryBlobCodec.ENCODING_GRID));
+        assertEquals(GeometryBlobCodec.ENCODING_DOUBLE, codec.getEncoding());
+        assertSameGeometry(geometry, decoded);
+    }
+
+
+    @Test
+    public void floatRoundTrip()
+            throws IOException
+    {
+        GeoLineString line = (GeoLineString) GeoGeometryFactory.fromWKT(
+                "LINESTRING (4187035.123 7509221.5, 4187100 7509300.001)", CRS_WEB_MERCATOR);
+        GeoLineString decoded = (GeoLineString) GeoGeometryFactory.fromBlob(
+                line.toBlob(GeometryBlobCodec.ENCODING_FLOAT));
+        assertEquals(line.getPointCount(), decoded.getPointCount());
+        for (int i = 0; i < line.getPointCount(); i++) {
+            // float offsets from the envelope corner
+            assertEquals(line.getX(i), decoded.getX(i), 0.01);
+            assertEquals(line.getY(i), decoded.getY(i), 0.01);
+        }
+    }
+
+
+    @Test
+    public void oldBlobIsNotCompact()
+            throws IOException
+    {
+        GeoGeometry geometry = GeoGeometryFactory.fromWKT("POINT (1 2)", CRS_WEB_MERCATOR);
+        byte[] blob = geometry.toBlobV1();
+        assertFalse(GeometryBlobCodec.isCompact(blob));
+        assertSameGeometry(geometry, GeoGeometryFactory.fromBlob(blob));
+    }
+
+
+    @Test
+    public void truncatedBlobFails()
+            throws IOException
+    {
+        int[] encodings = {
+                GeometryBlobCodec.ENCODING_GRID,
+                GeometryBlobCodec.ENCODING_FLOAT,
+                GeometryBlobCodec.ENCODING_DOUBLE};
+        for (GeoGeometry geometry : getGeometries(CRS_WEB_MERCATOR)) {
+            String wkt = geometry.toWKT(true);
+            for (int encoding : encodings) {
+                byte[] blob = new GeometryBlobCodec().encode(geometry, encoding);
+                for (int length = 0; length < blob.length; length++) {
+                    try {
+                        new GeometryBlobCodec().decode(blob, 0, length);
+                        fail(wkt + " is decoded from " + length + " of " + blob.length + " bytes");
+                    } catch (IOException expected) {
+                        // a short blob is an error, not garbage coordinates
+                    }
+                }
+            }
+        }
+    }
+
+
+    @Test(expected = IOException.class)
+    public void unknownVersionFails()
+            throws IOException
+    {
+        new GeometryBlobCodec().decode(new byte[] {3, 0, 0});
+    }
+
+
+    /**
+     * Compares the WKT, the collection equals() does not look at the members
+     */
+    /**
+     * The WKT reader does not take collections, so the collection is built
+     */
+    protected static List<GeoGeometry> getGeometries(int crs)
+    {
+        List<GeoGeometry> geometries = new ArrayList<>();
+        for (String wkt : GEOMETRIES) {
+            geometries.add(GeoGeometryFactory.fromWKT(wkt, crs));
+        }
+        GeoGeometryCollection collection = new GeoGeometryCollection();
+        collection.add(GeoGeometryFactory.fromWKT("POINT (1 1)", crs));
+        collection.add(GeoGeometryFactory.fromWKT("LINESTRING (0 0, 5 5)", crs));
+        collection.setCRS(crs);
+        geometries.add(collection);
+        return geometries;
+    }
+
+
+    protected static void assertSameGeometry(
+            GeoGeometry expected,
+            GeoGeometry actual)
+    {
+        assertEquals(expected.getCRS(), actual.getCRS());
+        assertEquals(expected.toWKT(true), actual.toWKT(true));
+        // the collection WKT has no member types
+        if (expected instanceof GeoGeometryCollection) {
+            GeoGeometryCollection collection = (GeoGeometryCollection) expected;
+            assertEquals(collection.size(), ((GeoGeometryCollection) actual).size());
+            for (int i = 0; i < collection.size(); i++) {
+                assertSameGeometry(collection.get(i), ((GeoGeometryCollection) actual).get(i));
+            }
+        }
+    }
+}
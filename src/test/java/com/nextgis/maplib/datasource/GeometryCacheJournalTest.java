@@ -0,0 +1,226 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplib.datasource;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class GeometryCacheJournalTest
+{
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+
+    @Test
+    public void replayAppliesChanges()
+            throws IOException
+    {
+        File path = new File(mFolder.getRoot(), "cache.journal");
+        GeometryCacheJournal journal = new GeometryCacheJournal();
+        journal.add(1, envelope(1));
+        journal.add(2, envelope(2));
+        journal.add(3, envelope(3));
+        journal.remove(2);
+        journal.changeId(3, 30);
+        assertTrue(journal.hasPending());
+        journal.append(path, 7);
+        assertFalse(journal.hasPending());
+
+        GeometryRTree cache = new GeometryRTree();
+        assertTrue(GeometryCacheJournal.replay(path, 7, cache));
+        assertEquals(2, cache.size());
+        assertEnvelope(envelope(1), cache.getItem(1).get(0).getEnvelope());
+        assertFalse(cache.isItemExist(2));
+        assertFalse(cache.isItemExist(3));
+        assertEnvelope(envelope(3), cache.getItem(30).get(0).getEnvelope());
+    }
+
+
+    @Test
+    public void tornRecordIsDropped()
+            throws IOException
+    {
+        File path = new File(mFolder.getRoot(), "cache.journal");
+        GeometryCacheJournal journal = new GeometryCacheJournal();
+        journal.add(1, envelope(1));
+        journal.add(2, envelope(2));
+        long size = journal.append(path, 7);
+
+        // a crash in the middle of the last record
+        setLength(path, size - 5);
+
+        GeometryRTree cache = new GeometryRTree();
+        assertTrue(GeometryCacheJournal.replay(path, 7, cache));
+        assertEquals(1, cache.size());
+        assertTrue(cache.isItemExist(1));
+        assertFalse(cache.isItemExist(2));
+
+        // the tail is cut, so the next records follow the last good one
+        journal.add(3, envelope(3));
+        journal.append(path, 7);
+        cache = new GeometryRTree();
+        assertTrue(GeometryCacheJournal.replay(path, 7, cache));
+        assertEquals(2, cache.size());
+        assertTrue(cache.isItemExist(1));
+        assertEnvelope(envelope(3), cache.getItem(3).get(0).getEnvelope());
+    }
+
+
+    @Test
+    public void tornHeaderIsIgnored()
+            throws IOException
+    {
+        File path = new File(mFolder.getRoot(), "cache.journal");
+        GeometryCacheJournal journal = new GeometryCacheJournal();
+        journal.add(1, envelope(1));
+        journal.append(path, 7);
+        setLength(path, 6);
+
+        GeometryRTree cache = new GeometryRTree();
+        assertFalse(GeometryCacheJournal.replay(path, 7, cache));
+        assertEquals(0, cache.size());
+    }
+
+
+    @Test
+    public void otherGenerationIsIgnored()
+            throws IOException
+    {
+        File path = new File(mFolder.getRoot(), "cache.journal");
+        GeometryCacheJournal journal = new GeometryCacheJournal();
+        journal.add(1, envelope(1));
+        journal.append(path, 7);
+
+        GeometryRTree cache = new GeometryRTree();
+        assertFalse(GeometryCacheJournal.replay(path, 8, cache));
+        assertEquals(0, cache.size());
+
+        // a journal of another snapshot is started over
+        journal.add(2, envelope(2));
+        journal.append(path, 8);
+        assertFalse(GeometryCacheJournal.replay(path, 7, cache));
+        assertTrue(GeometryCacheJournal.replay(path, 8, cache));
+        assertEquals(1, cache.size());
+        assertTrue(cache.isItemExist(2));
+    }
+
+
+    @Test
+    public void mappedTreeReplaysJournal()
+            throws IOException
+    {
+        File path = new File(mFolder.getRoot(), "cache.rtree");
+        GeometryMappedRTree tree = new GeometryMappedRTree();
+        for (int i = 0; i < 100; i++) {
+            tree.addItem(i, envelope(i));
+        }
+        tree.save(path);
+
+        tree.removeItem(5);
+        tree.addItem(200, envelope(200));
+        tree.changeId(7, 170);
+        tree.save(path);
+        File journalPath = GeometryMappedRTree.getJournalPath(path);
+        assertTrue(journalPath.exists());
+
+        GeometryMappedRTree loaded = new GeometryMappedRTree();
+        loaded.load(path);
+        assertEquals(100, loaded.size());
+        assertFalse(loaded.isItemExist(5));
+        assertFalse(loaded.isItemExist(7));
+        assertTrue(loaded.isItemExist(170));
+        assertEnvelope(envelope(200), loaded.getItem(200).get(0).getEnvelope());
+
+        // a crash while the last change is appended
+        tree.addItem(300, envelope(300));
+        tree.save(path);
+        setLength(journalPath, journalPath.length() - 1);
+        loaded = new GeometryMappedRTree();
+        loaded.load(path);
+        assertEquals(100, loaded.size());
+        assertFalse(loaded.isItemExist(300));
+        assertTrue(loaded.isItemExist(200));
+
+        // a full snapshot makes the journal stale
+        File stale = new File(mFolder.getRoot(), "stale.journal");
+        copy(journalPath, stale);
+        tree.compact(path);
+        assertFalse(journalPath.exists());
+        copy(stale, journalPath);
+        loaded = new GeometryMappedRTree();
+        loaded.load(path);
+        assertEquals(101, loaded.size());
+        assertTrue(loaded.isItemExist(300));
+        assertTrue(loaded.isItemExist(170));
+    }
+
+
+    protected static GeoEnvelope envelope(long id)
+    {
+        return new GeoEnvelope(id, id + 1, id * 2, id * 2 + 1);
+    }
+
+
+    protected static void assertEnvelope(
+            GeoEnvelope expected,
+            GeoEnvelope actual)
+    {
+        assertEquals(expected.getMinX(), actual.getMinX(), 0);
+        assertEquals(expected.getMinY(), actual.getMinY(), 0);
+        assertEquals(expected.getMaxX(), actual.getMaxX(), 0);
+        assertEquals(expected.getMaxY(), actual.getMaxY(), 0);
+    }
+
+
+    protected static void setLength(
+            File path,
+            long length)
+            throws IOException
+    {
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        try {
+            file.setLength(length);
+        } finally {
+            file.close();
+        }
+    }
+
+
+    protected static void copy(
+            File from,
+            File to)
+            throws IOException
+    {
+        Files.copy(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplib.datasource;
+
+import com.nextgis.maplib.api.IGeometryCache;
+import com.nextgis.maplib.api.IGeometryCacheItem;
+import com.nextgis.maplib.util.LongList;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * The packed tree with its tombstones and delta must answer as the object tree given the same
+ * changes
+ */
+public class GeometryMappedRTreeTest
+{
+    protected static final int    COUNT  = 5000;
+    protected static final double EXTENT = 10000;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+
+    @Test
+    public void bulkLoadMatchesObjectTree()
+    {
+        Random random = new Random(1);
+        GeometryMappedRTree packed = new GeometryMappedRTree();
+        GeometryRTree expected = new GeometryRTree();
+        bulkLoad(random, packed, expected);
+
+        assertSame(random, expected, packed);
+    }
+
+
+    @Test
+    public void tombstonesMatchObjectTree()
+    {
+        Random random = new Random(2);
+        GeometryMappedRTree packed = new GeometryMappedRTree();
+        GeometryRTree expected = new GeometryRTree();
+        bulkLoad(random, packed, expected);
+
+        for (int round = 0; round < 5; round++) {
+            change(random, packed, expected, 500);
+            assertSame(random, expected, packed);
+        }
+    }
+
+
+    @Test
+    public void saveAndLoadKeepChanges()
+    {
+        Random random = new Random(3);
+        GeometryMappedRTree packed = new GeometryMappedRTree();
+        GeometryRTree expected = new GeometryRTree();
+        bulkLoad(random, packed, expected);
+        File path = new File(mFolder.getRoot(), "cache.rtree");
+        packed.save(path);
+
+        // journaled changes
+        change(random, packed, expected, 300);
+        packed.save(path);
+        GeometryMappedRTree loaded = new GeometryMappedRTree();
+        loaded.load(path);
+        assertSame(random, expected, loaded);
+
+        // a full snapshot of the merged tombstones and delta
+        change(random, loaded, expected, 300);
+        loaded.compact(path);
+        assertFalse(GeometryMappedRTree.getJournalPath(path).exists());
+        assertSame(random, expected, loaded);
+        loaded = new GeometryMappedRTree();
+        loaded.load(path);
+        assertSame(random, expected, loaded);
+    }
+
+
+    @Test
+    public void bulkLoadKeepsLastDuplicate()
+    {
+        long[] ids = {5, 3, 5};
+        double[] envelopes = {0, 0, 1, 1, 10, 10, 11, 11, 20, 20, 21, 21};
+        GeometryMappedRTree packed = new GeometryMappedRTree();
+        packed.bulkLoad(ids, envelopes, ids.length);
+
+        assertEquals(2, packed.size());
+        assertEquals(20, packed.getItem(5).get(0).getEnvelope().getMinX(), 0);
+        LongList result = new LongList();
+        assertEquals(0, packed.search(0, 0, 1, 1, result));
+    }
+
+
+    protected static void bulkLoad(
+            Random random,
+            IGeometryCache... caches)
+    {
+        long[] ids = new long[COUNT];
+        double[] envelopes = new double[COUNT * 4];
+        for (int i = 0; i < COUNT; i++) {
+            ids[i] = i * 3 + 1;
+            GeoEnvelope envelope = randomEnvelope(random);
+            envelopes[i * 4] = envelope.getMinX();
+            envelopes[i * 4 + 1] = envelope.getMinY();
+            envelopes[i * 4 + 2] = envelope.getMaxX();
+            envelopes[i * 4 + 3] = envelope.getMaxY();
+        }
+        for (IGeometryCache cache : caches) {
+            cache.bulkLoad(ids, envelopes, COUNT);
+        }
+    }
+
+
+    /**
+     * Random adds, moves, removes and id changes, to packed and delta items alike
+     */
+    protected static void change(
+            Random random,
+            IGeometryCache packed,
+            IGeometryCache expected,
+            int count)
+    {
+        long maxId = COUNT * 3 + count;
+        for (int i = 0; i < count; i++) {
+            long id = random.nextInt((int) maxId);
+            switch (random.nextInt(3)) {
+                case 0:
+                    GeoEnvelope envelope = randomEnvelope(random);
+                    packed.addItem(id, envelope);
+                    expected.removeItem(id);
+                    expected.addItem(id, envelope);
+                    break;
+                case 1:
+                    assertEquals(null != expected.removeItem(id), null != packed.removeItem(id));
+                    break;
+                default:
+                    long newId = random.nextInt((int) maxId);
+                    assertEquals(expected.changeId(id, newId), packed.changeId(id, newId));
+                    break;
+            }
+        }
+    }
+
+
+    protected static void assertSame(
+            Random random,
+            IGeometryCache expected,
+            IGeometryCache actual)
+    {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.getAll().size(), actual.getAll().size());
+        for (IGeometryCacheItem item : expected.getAll()) {
+            assertTrue(actual.isItemExist(item.getFeatureId()));
+            GeoEnvelope envelope = actual.getItem(item.getFeatureId()).get(0).getEnvelope();
+            assertEquals(item.getEnvelope().getMinX(), envelope.getMinX(), 0);
+            assertEquals(item.getEnvelope().getMaxY(), envelope.getMaxY(), 0);
+        }
+
+        LongList expectedIds = new LongList();
+        LongList actualIds = new LongList();
+        for (int i = 0; i < 50; i++) {
+            GeoEnvelope window = randomWindow(random);
+            expected.search(window.getMinX(), window.getMinY(), window.getMaxX(), window.getMaxY(),
+                            expectedIds);
+            actual.search(window.getMinX(), window.getMinY(), window.getMaxX(), window.getMaxY(),
+                          actualIds);
+            assertSameIds(expectedIds, actualIds);
+            assertEquals(expectedIds.size(), actual.search(window).size());
+        }
+
+        for (int i = 0; i < 20; i++) {
+            double x = random.nextDouble() * EXTENT;
+            double y = random.nextDouble() * EXTENT;
+            expected.nearest(x, y, 10, EXTENT, null, expectedIds);
+            actual.nearest(x, y, 10, EXTENT, null, actualIds);
+            assertSameIds(expectedIds, actualIds);
+        }
+    }
+
+
+    protected static void assertSameIds(
+            LongList expected,
+            LongList actual)
+    {
+        long[] expectedIds = expected.toArray();
+        long[] actualIds = actual.toArray();
+        Arrays.sort(expectedIds);
+        Arrays.sort(actualIds);
+        assertTrue(Arrays.toString(expectedIds) + " != " + Arrays.toString(actualIds),
+                   Arrays.equals(expectedIds, actualIds));
+    }
+
+
+    protected static GeoEnvelope randomEnvelope(Random random)
+    {
+        double x = random.nextDouble() * EXTENT;
+        double y = random.nextDouble() * EXTENT;
+        // mostly points, as most features of a layer are small
+        double size = random.nextInt(4) == 0 ? random.nextDouble() * 50 : 0;
+        return new GeoEnvelope(x, x + size, y, y + size);
+    }
+
+
+    protected static GeoEnvelope randomWindow(Random random)
+    {
+        double x = random.nextDouble() * EXTENT;
+        double y = random.nextDouble() * EXTENT;
+        double size = random.nextDouble() * EXTENT / 4;
+        return new GeoEnvelope(x, x + size, y, y + size);
+    }
+}
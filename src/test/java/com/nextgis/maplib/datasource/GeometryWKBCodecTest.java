@@ -0,0 +1,195 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplib.datasource;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.nextgis.maplib.util.GeoConstants.CRS_WEB_MERCATOR;
+import static com.nextgis.maplib.util.GeoConstants.CRS_WGS84;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+public class GeometryWKBCodecTest
+{
+    protected static final String[] GEOMETRIES = {
+            "POINT (1.5 -2.25)",
+            "LINESTRING (0 0, 100.125 50, -20 30)",
+            "POLYGON((0 0, 100 0, 100 100, 0 100, 0 0),(10 10, 20 10, 20 20, 10 10))",
+            "MULTIPOINT ((1 2), (3.5 -4.25))",
+            "MULTILINESTRING ((0 0, 1 1), (2 2, 3 3, 4 5))",
+            "MULTIPOLYGON(((0 0, 10 0, 10 10, 0 0)),((20 20, 30 20, 30 30, 20 20)))"};
+
+
+    @Test
+    public void readKnownWKB()
+            throws IOException
+    {
+        String[] hexes = {
+                "0101000000000000000000F03F0000000000000040", // little endian
+                "00000000013FF00000000000004000000000000000", // big endian
+                "0101000020E6100000000000000000F03F0000000000000040", // EWKB with SRID 4326
+                "01E9030000000000000000F03F00000000000000400000000000000840"}; // ISO POINT Z
+        for (String hex : hexes) {
+            GeoPoint point = (GeoPoint) GeoGeometryFactory.fromWKB(hex, CRS_WEB_MERCATOR);
+            assertEquals(1, point.getX(), 0);
+            assertEquals(2, point.getY(), 0);
+        }
+
+        assertEquals(CRS_WGS84, GeoGeometryFactory.fromWKB(hexes[2], CRS_WEB_MERCATOR).getCRS());
+        assertFalse(GeometryWKBCodec.hasZ(ByteBuffer.wrap(GeometryWKBCodec.fromHex(hexes[0]))));
+        assertTrue(GeometryWKBCodec.hasZ(ByteBuffer.wrap(GeometryWKBCodec.fromHex(hexes[3]))));
+    }
+
+
+    @Test
+    public void writeKnownWKB()
+            throws IOException
+    {
+        GeoGeometry point = GeoGeometryFactory.fromWKT("POINT (1 2)", CRS_WEB_MERCATOR);
+        assertEquals("0101000000000000000000F03F0000000000000040",
+                     GeometryWKBCodec.toHex(point.toWKB()));
+    }
+
+
+    @Test
+    public void wkbRoundTrip()
+            throws IOException
+    {
+        for (GeoGeometry geometry : getGeometries(CRS_WEB_MERCATOR)) {
+            String wkt = geometry.toWKT(true);
+            byte[] wkb = new GeometryWKBCodec().writeWKB(geometry);
+            ByteBuffer buffer = ByteBuffer.wrap(wkb);
+            assertSameGeometry(geometry, GeoGeometryFactory.fromWKB(buffer, CRS_WEB_MERCATOR));
+            assertEquals(wkt, wkb.length, buffer.position());
+        }
+    }
+
+
+    @Test
+    public void readKnownTWKB()
+            throws IOException
+    {
+        // POINT (1 2) with no precision, the coordinates are zig-zag varints
+        byte[] twkb = {0x01, 0x00, 0x02, 0x04};
+        GeoPoint point = (GeoPoint) GeoGeometryFactory.fromTWKB(ByteBuffer.wrap(twkb), CRS_WGS84);
+        assertEquals(1, point.getX(), 0);
+        assertEquals(2, point.getY(), 0);
+        assertEquals(CRS_WGS84, point.getCRS());
+    }
+
+
+    @Test
+    public void twkbRoundTrip()
+            throws IOException
+    {
+        for (GeoGeometry geometry : getGeometries(CRS_WEB_MERCATOR)) {
+            String wkt = geometry.toWKT(true);
+            byte[] twkb = new GeometryWKBCodec().writeTWKB(geometry, 3);
+            ByteBuffer buffer = ByteBuffer.wrap(twkb);
+            assertSameGeometry(geometry, GeoGeometryFactory.fromTWKB(buffer, CRS_WEB_MERCATOR));
+            assertEquals(wkt, twkb.length, buffer.position());
+        }
+    }
+
+
+    @Test
+    public void truncatedInputFails()
+            throws IOException
+    {
+        for (GeoGeometry geometry : getGeometries(CRS_WEB_MERCATOR)) {
+            String wkt = geometry.toWKT(true);
+            byte[] wkb = new GeometryWKBCodec().writeWKB(geometry);
+            for (int length = 0; length < wkb.length; length++) {
+                try {
+                    new GeometryWKBCodec().readWKB(
+                            ByteBuffer.wrap(Arrays.copyOf(wkb, length)), CRS_WEB_MERCATOR);
+                    fail(wkt + " is read from " + length + " of " + wkb.length + " WKB bytes");
+                } catch (IOException expected) {
+                    // truncated
+                }
+            }
+
+            byte[] twkb = new GeometryWKBCodec().writeTWKB(geometry, 3);
+            for (int length = 0; length < twkb.length; length++) {
+                try {
+                    new GeometryWKBCodec().readTWKB(
+                            ByteBuffer.wrap(Arrays.copyOf(twkb, length)), CRS_WEB_MERCATOR);
+                    fail(wkt + " is read from " + length + " of " + twkb.length + " TWKB bytes");
+                } catch (IOException expected) {
+                    // truncated
+                }
+            }
+        }
+    }
+
+
+    @Test(expected = IOException.class)
+    public void hugeCountFails()
+            throws IOException
+    {
+        // a line string of 2^31 - 1 points in 9 bytes must not allocate the points
+        GeoGeometryFactory.fromWKB("0102000000FFFFFF7F", CRS_WEB_MERCATOR);
+    }
+
+
+    /**
+     * The WKT reader does not take collections, so the collection is built
+     */
+    protected static List<GeoGeometry> getGeometries(int crs)
+    {
+        List<GeoGeometry> geometries = new ArrayList<>();
+        for (String wkt : GEOMETRIES) {
+            geometries.add(GeoGeometryFactory.fromWKT(wkt, crs));
+        }
+        GeoGeometryCollection collection = new GeoGeometryCollection();
+        collection.add(GeoGeometryFactory.fromWKT("POINT (1 1)", crs));
+        collection.add(GeoGeometryFactory.fromWKT("LINESTRING (0 0, 5 5)", crs));
+        collection.setCRS(crs);
+        geometries.add(collection);
+        return geometries;
+    }
+
+
+    protected static void assertSameGeometry(
+            GeoGeometry expected,
+            GeoGeometry actual)
+    {
+        assertEquals(expected.getCRS(), actual.getCRS());
+        assertEquals(expected.toWKT(true), actual.toWKT(true));
+        // the collection WKT has no member types
+        if (expected instanceof GeoGeometryCollection) {
+            GeoGeometryCollection collection = (GeoGeometryCollection) expected;
+            assertEquals(collection.size(), ((GeoGeometryCollection) actual).size());
+            for (int i = 0; i < collection.size(); i++) {
+                assertSameGeometry(collection.get(i), ((GeoGeometryCollection) actual).get(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Project:  NextGIS Mobile
+ * Purpose:  Mobile GIS for Android.
+ * *****************************************************************************
+ * Copyright (c) 2026 NextGIS, info@nextgis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextgis.maplib.datasource;
+
+import org.junit.Test;
+
+import static com.nextgis.maplib.util.GeoConstants.CRS_WEB_MERCATOR;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+
+public class PolygonClipperTest
+{
+    protected static final double EPSILON = 1e-9;
+
+    protected static final String SQUARE = "POLYGON((0 0, 10 0, 10 10, 0 10, 0 0))";
+    protected static final String SQUARE_WITH_HOLE =
+            "POLYGON((0 0, 10 0, 10 10, 0 10, 0 0),(4 4, 6 4, 6 6, 4 6, 4 4))";
+    // a U open to the top, the gap is 4 < x < 6
+    protected static final String U_SHAPE =
+            "POLYGON((0 0, 10 0, 10 10, 6 10, 6 2, 4 2, 4 10, 0 10, 0 0))";
+
+
+    @Test
+    public void overlappingSquares()
+    {
+        GeoGeometry result = clip(SQUARE, "POLYGON((5 5, 15 5, 15 15, 5 15, 5 5))");
+        assertEquals(25, getArea(result), EPSILON);
+        GeoEnvelope envelope = result.getEnvelope();
+        assertEquals(5, envelope.getMinX(), EPSILON);
+        assertEquals(5, envelope.getMinY(), EPSILON);
+        assertEquals(10, envelope.getMaxX(), EPSILON);
+        assertEquals(10, envelope.getMaxY(), EPSILON);
+    }
+
+
+    @Test
+    public void triangleCut()
+    {
+        // the half of the triangle left of x = 10
+        GeoGeometry result = clip(SQUARE, "POLYGON((5 0, 15 0, 5 10, 5 0))");
+        assertEquals(50 - 12.5, getArea(result), EPSILON);
+    }
+
+
+    @Test
+    public void insideAndOutside()
+    {
+        PolygonClipper clipper = new PolygonClipper(parse(SQUARE));
+        GeoGeometry inside = parse("POLYGON((1 1, 2 1, 2 2, 1 1))");
+        assertSame(inside, clipper.clip(inside));
+        assertNull(clipper.clip(parse("POLYGON((11 11, 12 11, 12 12, 11 11))")));
+        assertNull(clipper.clip(parse("LINESTRING (20 0, 30 10)")));
+
+        assertEquals(PolygonClipper.INSIDE, clipper.locate(new GeoEnvelope(1, 2, 1, 2)));
+        assertEquals(PolygonClipper.OUTSIDE, clipper.locate(new GeoEnvelope(11, 12, 11, 12)));
+        assertEquals(PolygonClipper.CROSSES, clipper.locate(new GeoEnvelope(9, 11, 1, 2)));
+    }
+
+
+    @Test
+    public void hole()
+    {
+        PolygonClipper clipper = new PolygonClipper(parse(SQUARE_WITH_HOLE));
+        assertEquals(96, getArea(clipper.clip(parse(SQUARE))), EPSILON);
+        // wholly in the hole
+        assertNull(clipper.clip(parse("POLYGON((4.5 4.5, 5.5 4.5, 5.5 5.5, 4.5 4.5))")));
+        assertEquals(PolygonClipper.OUTSIDE, clipper.locate(new GeoEnvelope(4.5, 5.5, 4.5, 5.5)));
+
+        GeoGeometry line = clipper.clip(parse("LINESTRING (-5 5, 15 5)"));
+        assertTrue(line instanceof GeoMultiLineString);
+        assertEquals(2, ((GeoMultiLineString) line).size());
+        assertEquals(8, getLength(line), EPSILON);
+    }
+
+
+    @Test
+    public void concaveAreaSplitsPolygon()
+    {
+        GeoGeometry result = clip(U_SHAPE, "POLYGON((-1 5, 11 5, 11 6, -1 6, -1 5))");
+        assertTrue(result instanceof GeoMultiPolygon);
+        assertEquals(2, ((GeoMultiPolygon) result).size());
+        assertEquals(8, getArea(result), EPSILON);
+    }
+
+
+    @Test
+    public void lines()
+    {
+        GeoGeometry result = clip(SQUARE, "LINESTRING (-5 5, 15 5)");
+        assertEquals(10, getLength(result), EPSILON);
+
+        // along the boundary the line stays
+        result = clip(SQUARE, "LINESTRING (2 0, 8 0)");
+        assertNotNull(result);
+        assertEquals(6, getLength(result), EPSILON);
+
+        result = clip(U_SHAPE, "LINESTRING (-1 5, 11 5)");
+        assertEquals(2, ((GeoMultiLineString) result).size());
+        assertEquals(8, getLength(result), EPSILON);
+    }
+
+
+    @Test
+    public void points()
+    {
+        GeoGeometry result = clip(SQUARE, "MULTIPOINT ((1 1), (11 1), (5 5), (-1 -1))");
+        assertEquals("MULTIPOINT (1.0 1.0, 5.0 5.0)", result.toWKT(true));
+        assertNull(clip(U_SHAPE, "POINT (5 5)"));
+        assertNotNull(clip(U_SHAPE, "POINT (5 1)"));
+    }
+
+
+    @Test
+    public void multiPolygonArea()
+    {
+        GeoGeometry area = parse("MULTIPOLYGON(((0 0, 10 0, 10 10, 0 10, 0 0)), "
+                                 + "((20 0, 30 0, 30 10, 20 10, 20 0)))");
+        GeoGeometry result = new PolygonClipper(area).clip(
+                parse("POLYGON((5 2, 25 2, 25 4, 5 4, 5 2))"));
+        assertEquals(2, ((GeoMultiPolygon) result).size());
+        assertEquals(20, getArea(result), EPSILON);
+    }
+
+
+    protected static GeoGeometry parse(String wkt)
+    {
+        return GeoGeometryFactory.fromWKT(wkt, CRS_WEB_MERCATOR);
+    }
+
+
+    protected static GeoGeometry clip(
+            String area,
+            String geometry)
+    {
+        return new PolygonClipper(parse(area)).clip(parse(geometry));
+    }
+
+
+    /**
+     * Planar area, GeoPolygon.getArea() is on the sphere
+     */
+    protected static double getArea(GeoGeometry geometry)
+    {
+        if (geometry instanceof GeoMultiPolygon) {
+            GeoMultiPolygon multiPolygon = (GeoMultiPolygon) geometry;
+            double area = 0;
+            for (int i = 0; i < multiPolygon.size(); i++) {
+                area += getArea(multiPolygon.get(i));
+            }
+            return area;
+        }
+
+        GeoPolygon polygon = (GeoPolygon) geometry;
+        double area = Math.abs(getRingArea(polygon.getOuterRing()));
+        for (int i = 0; i < polygon.getInnerRingCount(); i++) {
+            area -= Math.abs(getRingArea(polygon.getInnerRing(i)));
+        }
+        return area;
+    }
+
+
+    protected static double getRingArea(GeoLineString ring)
+    {
+        double area = 0;
+        int count = ring.getPointCount();
+        for (int i = 0; i < count; i++) {
+            int next = (i + 1) % count;
+            area += ring.getX(i) * ring.getY(next) - ring.getX(next) * ring.getY(i);
+        }
+        return area / 2;
+    }
+
+
+    /**
+     * Planar length, GeoLineString.getLength() is on the ellipsoid
+     */
+    protected static double getLength(GeoGeometry geometry)
+    {
+        if (geometry instanceof GeoMultiLineString) {
+            GeoMultiLineString multiLine = (GeoMultiLineString) geometry;
+            double length = 0;
+            for (int i = 0; i < multiLine.size(); i++) {
+                length += getLength(multiLine.get(i));
+            }
+            return length;
+        }
+
+        GeoLineString line = (GeoLineString) geometry;
+        double length = 0;
+        for (int i = 1; i < line.getPointCount(); i++) {
+            length += Math.hypot(line.getX(i) - line.getX(i - 1), line.getY(i) - line.getY(i - 1));
+        }
+        return length;
+    }
+}